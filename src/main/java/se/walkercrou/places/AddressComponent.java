@@ -1,6 +1,7 @@
 package se.walkercrou.places;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
@@ -10,7 +11,7 @@ import java.util.List;
  * and "NY" (the US state).
  */
 public class AddressComponent {
-    private final List<String> types = new ArrayList<>();
+    private TypeSet types = TypeSet.EMPTY;
     private String longName, shortName;
 
     protected AddressComponent() {
@@ -63,7 +64,19 @@ public class AddressComponent {
      * @return this
      */
     protected AddressComponent addType(String type) {
-        types.add(type);
+        return addTypes(Collections.singletonList(type));
+    }
+
+    /**
+     * Adds a collection of types to this components list of types
+     *
+     * @param types to add
+     * @return this
+     */
+    protected AddressComponent addTypes(Collection<String> types) {
+        List<String> merged = new ArrayList<>(this.types.asList());
+        merged.addAll(types);
+        this.types = TypeSet.of(merged);
         return this;
     }
 
@@ -73,6 +86,35 @@ public class AddressComponent {
      * @return types
      */
     public List<String> getTypes() {
-        return Collections.unmodifiableList(types);
+        return types.asList();
+    }
+
+    /**
+     * Returns this components types as a {@link TypeSet}.
+     *
+     * @return types
+     */
+    public TypeSet getTypeSet() {
+        return types;
+    }
+
+    /**
+     * Returns true if this component has the specified type.
+     *
+     * @param type to check
+     * @return true if this component has the type
+     */
+    public boolean hasType(String type) {
+        return types.contains(type);
+    }
+
+    /**
+     * Returns true if this component has at least one of the types of the specified mask.
+     *
+     * @param mask of types
+     * @return true if this component has any of the types
+     */
+    public boolean hasAnyType(TypeSet mask) {
+        return types.containsAny(mask);
     }
 }
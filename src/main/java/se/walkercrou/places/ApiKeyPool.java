@@ -0,0 +1,309 @@
+package se.walkercrou.places;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static se.walkercrou.places.Statuses.STATUS_OVER_QUERY_LIMIT;
+import static se.walkercrou.places.Statuses.STATUS_REQUEST_DENIED;
+
+/**
+ * A pool of API keys that requests are spread across. A key is selected for every request with {@link #acquire()} and
+ * the pool keeps track of how many requests were made with each key. Keys that are answered with
+ * {@link Statuses#STATUS_OVER_QUERY_LIMIT} or {@link Statuses#STATUS_REQUEST_DENIED} are quarantined and will not be
+ * selected again until the quarantine ends.
+ * <p>
+ * This class is safe for use by multiple threads.
+ */
+public class ApiKeyPool {
+    /**
+     * The default amount of milliseconds a key is quarantined for.
+     */
+    public static final long DEFAULT_QUARANTINE_MILLIS = 60 * 1000;
+
+    private final List<KeyStats> keys;
+    private final Strategy strategy;
+    private final long quarantineMillis;
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    /**
+     * Creates a new pool of the specified keys.
+     *
+     * @param strategy         to select keys with
+     * @param quarantineMillis amount of milliseconds to quarantine exhausted keys for
+     * @param keys             to use
+     */
+    public ApiKeyPool(Strategy strategy, long quarantineMillis, String... keys) {
+        if (keys.length == 0)
+            throw new IllegalArgumentException("Must specify at least one API key");
+        List<KeyStats> stats = new ArrayList<>(keys.length);
+        for (String key : keys)
+            stats.add(new KeyStats(key));
+        this.keys = Collections.unmodifiableList(stats);
+        this.strategy = strategy;
+        this.quarantineMillis = quarantineMillis;
+    }
+
+    /**
+     * Creates a new pool of the specified keys that are selected in turn.
+     *
+     * @param keys to use
+     */
+    public ApiKeyPool(String... keys) {
+        this(Strategy.ROUND_ROBIN, DEFAULT_QUARANTINE_MILLIS, keys);
+    }
+
+    /**
+     * Returns the strategy used to select keys.
+     *
+     * @return strategy
+     */
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Returns the first key in the pool.
+     *
+     * @return first key
+     */
+    public String getPrimaryKey() {
+        return keys.get(0).getKey();
+    }
+
+    /**
+     * Returns the usage statistics for every key in the pool.
+     *
+     * @return key statistics
+     */
+    public List<KeyStats> getStats() {
+        return keys;
+    }
+
+    /**
+     * Returns the usage statistics for the specified key, or null if it is not part of the pool.
+     *
+     * @param key to get statistics for
+     * @return key statistics
+     */
+    public KeyStats getStats(String key) {
+        for (KeyStats stats : keys) {
+            if (stats.key.equals(key))
+                return stats;
+        }
+        return null;
+    }
+
+    /**
+     * Sets the amount of requests the specified key may make before it is considered exhausted. Keys have no quota by
+     * default.
+     *
+     * @param key   to set quota of
+     * @param quota amount of requests
+     * @return this
+     */
+    public ApiKeyPool setQuota(String key, long quota) {
+        KeyStats stats = getStats(key);
+        if (stats == null)
+            throw new IllegalArgumentException("Unknown API key");
+        stats.quota = quota;
+        return this;
+    }
+
+    /**
+     * Resets the request counts of every key, for example when a new quota period begins.
+     */
+    public void resetUsage() {
+        for (KeyStats stats : keys)
+            stats.requests.set(0);
+    }
+
+    /**
+     * Selects a key for a new request and counts the request against it. When every key is quarantined or exhausted
+     * the key that leaves quarantine first is returned.
+     *
+     * @return key to use
+     */
+    public String acquire() {
+        KeyStats selected = select(System.currentTimeMillis());
+        selected.requests.incrementAndGet();
+        return selected.key;
+    }
+
+    /**
+     * Counts another request against a key that was previously acquired, for example when requesting the next page of
+     * a search with the page token that was issued to the key.
+     *
+     * @param key that was used
+     */
+    public void recordUse(String key) {
+        KeyStats stats = getStats(key);
+        if (stats != null)
+            stats.requests.incrementAndGet();
+    }
+
+    /**
+     * Records the status the server responded with to a request made with the specified key. Keys that are over their
+     * query limit or that have been denied are quarantined.
+     *
+     * @param key        that was used
+     * @param statusCode of response
+     */
+    public void recordStatus(String key, String statusCode) {
+        KeyStats stats = getStats(key);
+        if (stats == null || statusCode == null)
+            return;
+        if (statusCode.equals(STATUS_OVER_QUERY_LIMIT))
+            stats.overQueryLimit.incrementAndGet();
+        else if (statusCode.equals(STATUS_REQUEST_DENIED))
+            stats.denied.incrementAndGet();
+        else
+            return;
+        stats.quarantinedUntil = System.currentTimeMillis() + quarantineMillis;
+    }
+
+    private KeyStats select(long now) {
+        int size = keys.size();
+        int start = (cursor.getAndIncrement() & Integer.MAX_VALUE) % size;
+        KeyStats best = null;
+        for (int i = 0; i < size; i++) {
+            KeyStats stats = keys.get((start + i) % size);
+            if (!stats.isAvailable(now))
+                continue;
+            if (strategy == Strategy.ROUND_ROBIN)
+                return stats;
+            if (best == null || strategy.compare(stats, best) < 0)
+                best = stats;
+        }
+        if (best != null)
+            return best;
+
+        // every key is unavailable, use the one that recovers first
+        for (KeyStats stats : keys) {
+            if (best == null || stats.quarantinedUntil < best.quarantinedUntil)
+                best = stats;
+        }
+        return best;
+    }
+
+    /**
+     * Strategies for selecting the key of the next request.
+     */
+    public enum Strategy {
+        /**
+         * Keys are selected in turn.
+         */
+        ROUND_ROBIN,
+        /**
+         * The key with the least requests is selected.
+         */
+        LEAST_USED,
+        /**
+         * The key that has used the smallest fraction of its quota is selected.
+         */
+        QUOTA_AWARE;
+
+        private int compare(KeyStats a, KeyStats b) {
+            if (this == LEAST_USED)
+                return Long.compare(a.getRequests(), b.getRequests());
+            return Double.compare(a.getUsedQuota(), b.getUsedQuota());
+        }
+    }
+
+    /**
+     * Usage statistics of a single key in a pool.
+     */
+    public static class KeyStats {
+        private final String key;
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong overQueryLimit = new AtomicLong();
+        private final AtomicLong denied = new AtomicLong();
+        private volatile long quota = Long.MAX_VALUE;
+        private volatile long quarantinedUntil;
+
+        private KeyStats(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Returns the API key.
+         *
+         * @return key
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the amount of requests made with this key.
+         *
+         * @return amount of requests
+         */
+        public long getRequests() {
+            return requests.get();
+        }
+
+        /**
+         * Returns the amount of times this key was answered with {@link Statuses#STATUS_OVER_QUERY_LIMIT}.
+         *
+         * @return amount of over query limit responses
+         */
+        public long getOverQueryLimitCount() {
+            return overQueryLimit.get();
+        }
+
+        /**
+         * Returns the amount of times this key was answered with {@link Statuses#STATUS_REQUEST_DENIED}.
+         *
+         * @return amount of denied responses
+         */
+        public long getDeniedCount() {
+            return denied.get();
+        }
+
+        /**
+         * Returns the amount of requests this key may make, {@link Long#MAX_VALUE} if unlimited.
+         *
+         * @return quota
+         */
+        public long getQuota() {
+            return quota;
+        }
+
+        /**
+         * Returns the fraction of the quota that has been used.
+         *
+         * @return used quota between 0 and 1
+         */
+        public double getUsedQuota() {
+            return quota == Long.MAX_VALUE ? 0 : Math.min(1, requests.get() / (double) quota);
+        }
+
+        /**
+         * Returns the time in milliseconds at which this key leaves quarantine.
+         *
+         * @return end of quarantine
+         */
+        public long getQuarantinedUntil() {
+            return quarantinedUntil;
+        }
+
+        /**
+         * Returns true if this key is not quarantined and has quota left at the specified time.
+         *
+         * @param now time in milliseconds
+         * @return true if available
+         */
+        public boolean isAvailable(long now) {
+            return now >= quarantinedUntil && requests.get() < quota;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("KeyStats{requests=%d, overQueryLimit=%d, denied=%d}", getRequests(),
+                    getOverQueryLimitCount(), getDeniedCount());
+        }
+    }
+}
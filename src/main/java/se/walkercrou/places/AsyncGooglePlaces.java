@@ -0,0 +1,306 @@
+package se.walkercrou.places;
+
+import se.walkercrou.places.exception.GooglePlacesException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the blocking calls of a {@link GooglePlacesInterface} on an {@link ExecutorService}. Each call, including the
+ * delay between the pages of a search, occupies a single task of the executor.
+ * <p>
+ * When no executor is specified, a virtual thread per task executor is used if the running JVM supports it (Java 21 and
+ * newer) so that thousands of requests can be waiting on the network at once without a large thread pool. Older JVMs
+ * fall back to a cached thread pool. Since every call then runs on a new virtual thread, buffers that the client keeps
+ * per thread, such as the one request URLs are built in, are not reused between calls; specify a thread pool instead if
+ * the calls are short and many.
+ * <p>
+ * On Java 21 to 23, a virtual thread that blocks while holding a monitor also blocks the platform thread it runs on.
+ * The connection pool of the {@link DefaultRequestHandler} holds one while a new connection is opened, so only as many
+ * connections as there are carrier threads, by default one per processor, can be opened at once, and other virtual
+ * threads wait for them. Requests on connections that are already open are not affected, and Java 24 no longer blocks
+ * the platform thread. Specify a thread pool on those versions if many connections are opened at the same time.
+ * <p>
+ * The {@link RequestTag} of the thread that submits a call is carried over to the thread that runs it.
+ */
+public class AsyncGooglePlaces {
+    private final GooglePlacesInterface client;
+    private final ExecutorService executor;
+
+    /**
+     * Creates a new AsyncGooglePlaces that submits its calls to the specified executor.
+     *
+     * @param client   to delegate calls to
+     * @param executor to run calls on
+     */
+    public AsyncGooglePlaces(GooglePlacesInterface client, ExecutorService executor) {
+        this.client = client;
+        this.executor = executor;
+    }
+
+    /**
+     * Creates a new AsyncGooglePlaces that runs its calls on virtual threads when available.
+     *
+     * @param client to delegate calls to
+     * @see #newDefaultExecutor()
+     */
+    public AsyncGooglePlaces(GooglePlacesInterface client) {
+        this(client, newDefaultExecutor());
+    }
+
+    /**
+     * Returns true if the running JVM is able to create virtual threads.
+     *
+     * @return true if virtual threads are available
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns a new executor that starts a virtual thread for each task, or a new cached thread pool if virtual threads
+     * are not available on the running JVM.
+     *
+     * @return new executor
+     */
+    public static ExecutorService newDefaultExecutor() {
+        if (!isVirtualThreadsAvailable())
+            return Executors.newCachedThreadPool();
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            throw new GooglePlacesException(e);
+        }
+    }
+
+    /**
+     * Returns the client calls are delegated to.
+     *
+     * @return client
+     */
+    public GooglePlacesInterface getClient() {
+        return client;
+    }
+
+    /**
+     * Returns the executor calls are submitted to.
+     *
+     * @return executor
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Shuts down the underlying executor. Calls that have already been submitted will still complete.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private <T> Future<T> submit(Callable<T> call) {
+        return executor.submit(RequestTag.current().wrap(call));
+    }
+
+    /**
+     * Submits {@link GooglePlacesInterface#getNearbyPlaces(double, double, double, int, Param...)}.
+     *
+     * @param lat         latitude
+     * @param lng         longitude
+     * @param radius      radius
+     * @param limit       the maximum amount of places to return
+     * @param extraParams any extra parameters to include in the request URL
+     * @return future places
+     */
+    public Future<List<Place>> getNearbyPlaces(final double lat, final double lng, final double radius,
+                                               final int limit, final Param... extraParams) {
+        return submit(new Callable<List<Place>>() {
+            @Override
+            public List<Place> call() {
+                return client.getNearbyPlaces(lat, lng, radius, limit, extraParams);
+            }
+        });
+    }
+
+    /**
+     * Submits {@link GooglePlacesInterface#getNearbyPlacesRankedByDistance(double, double, int, Param...)}.
+     *
+     * @param lat         latitude
+     * @param lng         longitude
+     * @param limit       the maximum amount of places to return
+     * @param extraParams any extra parameters to include in the request URL
+     * @return future places
+     */
+    public Future<List<Place>> getNearbyPlacesRankedByDistance(final double lat, final double lng, final int limit,
+                                                               final Param... extraParams) {
+        return submit(new Callable<List<Place>>() {
+            @Override
+            public List<Place> call() {
+                return client.getNearbyPlacesRankedByDistance(lat, lng, limit, extraParams);
+            }
+        });
+    }
+
+    /**
+     * Submits {@link GooglePlacesInterface#getPlacesByQuery(String, int, Param...)}.
+     *
+     * @param query       to search for
+     * @param limit       the maximum amount of places to return
+     * @param extraParams any extra parameters to include in the request URL
+     * @return future places
+     */
+    public Future<List<Place>> getPlacesByQuery(final String query, final int limit, final Param... extraParams) {
+        return submit(new Callable<List<Place>>() {
+            @Override
+            public List<Place> call() {
+                return client.getPlacesByQuery(query, limit, extraParams);
+            }
+        });
+    }
+
+    /**
+     * Submits {@link GooglePlacesInterface#getPlacesByRadar(double, double, double, int, Param...)}.
+     *
+     * @param lat         latitude
+     * @param lng         longitude
+     * @param radius      radius
+     * @param limit       the maximum amount of places to return
+     * @param extraParams any extra parameters to include in the request URL
+     * @return future places
+     */
+    public Future<List<Place>> getPlacesByRadar(final double lat, final double lng, final double radius,
+                                                final int limit, final Param... extraParams) {
+        return submit(new Callable<List<Place>>() {
+            @Override
+            public List<Place> call() {
+                return client.getPlacesByRadar(lat, lng, radius, limit, extraParams);
+            }
+        });
+    }
+
+    /**
+     * Returns a publisher of {@link GooglePlacesInterface#getNearbyPlaces(double, double, double, int, Param...)} that
+     * fetches pages on the executor as places are requested.
+     *
+     * @param lat         latitude
+     * @param lng         longitude
+     * @param radius      radius
+     * @param limit       the maximum amount of places to publish
+     * @param extraParams any extra parameters to include in the request URL
+     * @return new publisher
+     * @throws IllegalStateException if the client is not a {@link GooglePlaces}
+     */
+    public PlacePublisher publishNearbyPlaces(double lat, double lng, double radius, int limit,
+                                              Param... extraParams) {
+        return PlacePublisher.nearby(publishingClient(), executor, lat, lng, radius, limit, extraParams);
+    }
+
+    /**
+     * Returns a publisher of {@link GooglePlacesInterface#getPlacesByQuery(String, int, Param...)} that fetches pages
+     * on the executor as places are requested.
+     *
+     * @param query       to search for
+     * @param limit       the maximum amount of places to publish
+     * @param extraParams any extra parameters to include in the request URL
+     * @return new publisher
+     * @throws IllegalStateException if the client is not a {@link GooglePlaces}
+     */
+    public PlacePublisher publishPlacesByQuery(String query, int limit, Param... extraParams) {
+        return PlacePublisher.byQuery(publishingClient(), executor, query, limit, extraParams);
+    }
+
+    /**
+     * Returns a publisher of {@link GooglePlacesInterface#getPlacesByRadar(double, double, double, int, Param...)}.
+     *
+     * @param lat         latitude
+     * @param lng         longitude
+     * @param radius      radius
+     * @param limit       the maximum amount of places to publish
+     * @param extraParams any extra parameters to include in the request URL
+     * @return new publisher
+     * @throws IllegalStateException if the client is not a {@link GooglePlaces}
+     */
+    public PlacePublisher publishPlacesByRadar(double lat, double lng, double radius, int limit,
+                                               Param... extraParams) {
+        return PlacePublisher.byRadar(publishingClient(), executor, lat, lng, radius, limit, extraParams);
+    }
+
+    private GooglePlaces publishingClient() {
+        if (!(client instanceof GooglePlaces))
+            throw new IllegalStateException("Publishers require a GooglePlaces client");
+        return (GooglePlaces) client;
+    }
+
+    /**
+     * Submits {@link GooglePlacesInterface#getPlaceById(String, Param...)}.
+     *
+     * @param placeId     the place id
+     * @param extraParams any extra parameters to include in the request URL
+     * @return future place
+     */
+    public Future<Place> getPlaceById(final String placeId, final Param... extraParams) {
+        return submit(new Callable<Place>() {
+            @Override
+            public Place call() {
+                return client.getPlaceById(placeId, extraParams);
+            }
+        });
+    }
+
+    /**
+     * Submits one {@link GooglePlacesInterface#getPlaceById(String, Param...)} call for each of the specified ids. The
+     * returned futures are in the same order as the ids.
+     *
+     * @param placeIds    the place ids
+     * @param extraParams any extra parameters to include in the request URLs
+     * @return future places
+     */
+    public List<Future<Place>> getPlacesById(Collection<String> placeIds, Param... extraParams) {
+        List<Future<Place>> futures = new ArrayList<>(placeIds.size());
+        for (String placeId : placeIds)
+            futures.add(getPlaceById(placeId, extraParams));
+        return futures;
+    }
+
+    /**
+     * Submits {@link GooglePlacesInterface#getPlacePredictions(String, Param...)}.
+     *
+     * @param input       text to predict from
+     * @param extraParams any extra parameters to include in the request URL
+     * @return future predictions
+     */
+    public Future<List<Prediction>> getPlacePredictions(final String input, final Param... extraParams) {
+        return submit(new Callable<List<Prediction>>() {
+            @Override
+            public List<Prediction> call() {
+                return client.getPlacePredictions(input, extraParams);
+            }
+        });
+    }
+
+    /**
+     * Submits {@link GooglePlacesInterface#getQueryPredictions(String, Param...)}.
+     *
+     * @param input       text to predict from
+     * @param extraParams any extra parameters to include in the request URL
+     * @return future predictions
+     */
+    public Future<List<Prediction>> getQueryPredictions(final String input, final Param... extraParams) {
+        return submit(new Callable<List<Prediction>>() {
+            @Override
+            public List<Prediction> call() {
+                return client.getQueryPredictions(input, extraParams);
+            }
+        });
+    }
+}
@@ -0,0 +1,161 @@
+package se.walkercrou.places;
+
+import org.apache.http.client.methods.HttpPost;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A {@link RequestHandler} that charges every request to a {@link BudgetTracker} under the tenant of the current
+ * {@link RequestTag}, and refuses or degrades requests that do not fit the budget.
+ * <pre>
+ * BudgetRequestHandler handler = new BudgetRequestHandler(client.getRequestHandler(), budget)
+ *         .setPolicy(BudgetRequestHandler.Policy.FEWER_PAGES).setCache(ReplayRequestHandler.replay(archive));
+ * client.setRequestHandler(handler);
+ * </pre>
+ * A request that does not fit is answered by the cache if one is set, and otherwise fails with a
+ * {@link BudgetTracker.BudgetExceededException}. When this handler is the request handler of a {@link GooglePlaces}
+ * client, or is reached from it through {@link DelegatingRequestHandler}s such as a {@link NegativeCacheRequestHandler},
+ * searches with more than one page are checked against the budget before their first page is requested, and are
+ * refused or read fewer pages depending on the {@link Policy}. This class is safe for use by multiple threads.
+ */
+public class BudgetRequestHandler implements DelegatingRequestHandler {
+    private final RequestHandler handler;
+    private final BudgetTracker tracker;
+    private volatile Policy policy = Policy.REJECT;
+    private volatile RequestHandler cache;
+
+    /**
+     * Creates a new handler in front of the specified handler.
+     *
+     * @param handler to send requests with
+     * @param tracker to charge requests to
+     */
+    public BudgetRequestHandler(RequestHandler handler, BudgetTracker tracker) {
+        this.handler = handler;
+        this.tracker = tracker;
+    }
+
+    /**
+     * Sets what happens to a search whose pages do not all fit the budget. Defaults to {@link Policy#REJECT}.
+     *
+     * @param policy of searches
+     * @return this
+     */
+    public BudgetRequestHandler setPolicy(Policy policy) {
+        this.policy = policy;
+        return this;
+    }
+
+    /**
+     * Returns what happens to a search whose pages do not all fit the budget.
+     *
+     * @return policy of searches
+     */
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Sets the handler that answers requests that do not fit the budget, such as a {@link ReplayRequestHandler} of
+     * earlier responses. Requests answered by the cache are not charged.
+     *
+     * @param cache of responses, or null to refuse requests that do not fit
+     * @return this
+     */
+    public BudgetRequestHandler setCache(RequestHandler cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * Returns the handler requests are sent with.
+     *
+     * @return request handler
+     */
+    @Override
+    public RequestHandler getHandler() {
+        return handler;
+    }
+
+    /**
+     * Returns the tracker requests are charged to.
+     *
+     * @return budget tracker
+     */
+    public BudgetTracker getTracker() {
+        return tracker;
+    }
+
+    /**
+     * Returns how many of the specified amount of pages of a search the current tenant may request.
+     *
+     * @param method of api
+     * @param pages  the search would read
+     * @return amount of pages to read, at least one
+     * @throws BudgetTracker.BudgetExceededException if the search does not fit the budget and may not be degraded
+     */
+    public int preflight(String method, int pages) throws BudgetTracker.BudgetExceededException {
+        if (cache != null)
+            return pages; // pages that do not fit are read from the cache
+        String tenant = RequestTag.current().getTenant();
+        long affordable = tracker.getAffordable(tenant, method);
+        if (affordable >= pages)
+            return pages;
+        if (policy == Policy.FEWER_PAGES && affordable > 0)
+            return (int) affordable;
+        throw tracker.reject(tenant, method);
+    }
+
+    private RequestHandler route(String uri) throws IOException {
+        try {
+            tracker.charge(RequestTag.current().getTenant(), CostModel.methodOf(uri));
+            return handler;
+        } catch (BudgetTracker.BudgetExceededException e) {
+            RequestHandler cache = this.cache;
+            if (cache == null)
+                throw e;
+            return cache;
+        }
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+        return handler.getCharacterEncoding();
+    }
+
+    @Override
+    public void setCharacterEncoding(String characterEncoding) {
+        handler.setCharacterEncoding(characterEncoding);
+    }
+
+    @Override
+    public InputStream getInputStream(String uri) throws IOException {
+        return route(uri).getInputStream(uri);
+    }
+
+    @Override
+    public String get(String uri) throws IOException {
+        return route(uri).get(uri);
+    }
+
+    @Override
+    public String post(HttpPost data) throws IOException {
+        return route(data.getURI().toString()).post(data);
+    }
+
+    /**
+     * What happens to a search whose pages do not all fit the budget.
+     */
+    public enum Policy {
+        /**
+         * The search is refused before its first page is requested.
+         */
+        REJECT,
+
+        /**
+         * The search reads as many pages as fit the budget, and returns the places of those pages.
+         */
+        FEWER_PAGES
+    }
+}
@@ -0,0 +1,362 @@
+package se.walkercrou.places;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps track of what requests have cost against a global budget and a budget per tenant, the tenant being the one
+ * of the {@link RequestTag} a request is made with. Requests are charged by a {@link BudgetRequestHandler}.
+ * <pre>
+ * BudgetTracker budget = new BudgetTracker(CostModel.standard()).setGlobalLimit(200000000)
+ *         .setTenantLimit("crawler", 150000000);
+ * client.setRequestHandler(new BudgetRequestHandler(client.getRequestHandler(), budget));
+ * ...
+ * System.out.println(budget.getReport());
+ * </pre>
+ * A request is only charged if it fits both the global budget and the budget of its tenant, so the budgets are never
+ * exceeded. Budgets are not bound to a period, call {@link #reset()} when a new billing period starts. This class is
+ * safe for use by multiple threads.
+ */
+public class BudgetTracker {
+    private final CostModel costs;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Long> tenantLimits = new HashMap<>();
+    private final Map<String, Long> tenantSpent = new HashMap<>();
+    private final Map<String, Long> methodSpent = new HashMap<>();
+    private final Map<String, Long> methodRequests = new HashMap<>();
+    private long globalLimit = Long.MAX_VALUE;
+    private long spent, rejected;
+
+    /**
+     * Creates a new tracker without limits.
+     *
+     * @param costs of requests
+     */
+    public BudgetTracker(CostModel costs) {
+        this.costs = costs;
+    }
+
+    /**
+     * Returns the prices requests are charged at.
+     *
+     * @return cost model
+     */
+    public CostModel getCostModel() {
+        return costs;
+    }
+
+    /**
+     * Sets the budget of all requests together.
+     *
+     * @param limit of costs, {@link Long#MAX_VALUE} for no limit
+     * @return this
+     */
+    public BudgetTracker setGlobalLimit(long limit) {
+        lock.lock();
+        try {
+            globalLimit = limit;
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Sets the budget of the requests of the specified tenant.
+     *
+     * @param tenant of requests, or null for untagged requests
+     * @param limit  of costs, {@link Long#MAX_VALUE} for no limit
+     * @return this
+     */
+    public BudgetTracker setTenantLimit(String tenant, long limit) {
+        lock.lock();
+        try {
+            tenantLimits.put(tenant, limit);
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Returns what all requests have cost.
+     *
+     * @return total cost
+     */
+    public long getSpent() {
+        lock.lock();
+        try {
+            return spent;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns what the requests of the specified tenant have cost.
+     *
+     * @param tenant of requests, or null for untagged requests
+     * @return cost of tenant
+     */
+    public long getSpent(String tenant) {
+        lock.lock();
+        try {
+            return get(tenantSpent, tenant);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns what the specified tenant can still spend within its own and the global budget.
+     *
+     * @param tenant of requests, or null for untagged requests
+     * @return remaining budget
+     */
+    public long getRemaining(String tenant) {
+        lock.lock();
+        try {
+            return remaining(tenant);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns how many requests of the specified method the specified tenant can still afford.
+     *
+     * @param tenant of requests, or null for untagged requests
+     * @param method of api
+     * @return amount of requests, {@link Long#MAX_VALUE} if the method costs nothing
+     */
+    public long getAffordable(String tenant, String method) {
+        long cost = costs.getCost(method);
+        return cost == 0 ? Long.MAX_VALUE : getRemaining(tenant) / cost;
+    }
+
+    private long remaining(String tenant) {
+        Long limit = tenantLimits.get(tenant);
+        long tenantRemaining = limit == null ? Long.MAX_VALUE : limit - get(tenantSpent, tenant);
+        return Math.max(0, Math.min(globalLimit - spent, tenantRemaining));
+    }
+
+    /**
+     * Charges a request of the specified method to the specified tenant.
+     *
+     * @param tenant of request, or null for an untagged request
+     * @param method of api
+     * @throws BudgetExceededException if the request does not fit the budget, in which case nothing is charged
+     */
+    public void charge(String tenant, String method) throws BudgetExceededException {
+        long cost = costs.getCost(method);
+        lock.lock();
+        try {
+            if (cost > remaining(tenant))
+                throw reject(tenant, method);
+            spent += cost;
+            tenantSpent.put(tenant, get(tenantSpent, tenant) + cost);
+            methodSpent.put(method, get(methodSpent, method) + cost);
+            methodRequests.put(method, get(methodRequests, method) + 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Counts a refused request.
+     *
+     * @param tenant of request
+     * @param method of api
+     * @return exception to throw
+     */
+    BudgetExceededException reject(String tenant, String method) {
+        lock.lock();
+        try {
+            rejected++;
+        } finally {
+            lock.unlock();
+        }
+        return new BudgetExceededException(tenant, method);
+    }
+
+    /**
+     * Forgets what requests have cost, for example at the start of a new billing period. Limits are kept.
+     */
+    public void reset() {
+        lock.lock();
+        try {
+            spent = 0;
+            rejected = 0;
+            tenantSpent.clear();
+            methodSpent.clear();
+            methodRequests.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a snapshot of what requests have cost so far.
+     *
+     * @return cost report
+     */
+    public Report getReport() {
+        lock.lock();
+        try {
+            Map<String, Long> limits = new HashMap<>(tenantLimits);
+            for (String tenant : tenantSpent.keySet()) {
+                if (!limits.containsKey(tenant))
+                    limits.put(tenant, Long.MAX_VALUE);
+            }
+            return new Report(spent, globalLimit, rejected, new HashMap<>(tenantSpent), limits,
+                    new TreeMap<>(methodSpent), new TreeMap<>(methodRequests));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long get(Map<String, Long> map, String key) {
+        Long value = map.get(key);
+        return value != null ? value : 0;
+    }
+
+    /**
+     * Thrown when a request is refused because it does not fit the budget.
+     */
+    public static class BudgetExceededException extends IOException {
+        private final String tenant, method;
+
+        private BudgetExceededException(String tenant, String method) {
+            super("Budget " + (tenant != null ? "of " + tenant + " " : "") + "exceeded by request of " + method);
+            this.tenant = tenant;
+            this.method = method;
+        }
+
+        /**
+         * Returns the tenant of the refused request, or null if it was untagged.
+         *
+         * @return tenant
+         */
+        public String getTenant() {
+            return tenant;
+        }
+
+        /**
+         * Returns the API method of the refused request.
+         *
+         * @return api method
+         */
+        public String getMethod() {
+            return method;
+        }
+    }
+
+    /**
+     * A snapshot of what requests have cost, see {@link #toString()} for a readable summary.
+     */
+    public static class Report {
+        private final long spent, globalLimit, rejected;
+        private final Map<String, Long> tenantSpent, tenantLimits, methodSpent, methodRequests;
+
+        private Report(long spent, long globalLimit, long rejected, Map<String, Long> tenantSpent,
+                       Map<String, Long> tenantLimits, Map<String, Long> methodSpent,
+                       Map<String, Long> methodRequests) {
+            this.spent = spent;
+            this.globalLimit = globalLimit;
+            this.rejected = rejected;
+            this.tenantSpent = Collections.unmodifiableMap(tenantSpent);
+            this.tenantLimits = Collections.unmodifiableMap(tenantLimits);
+            this.methodSpent = Collections.unmodifiableMap(methodSpent);
+            this.methodRequests = Collections.unmodifiableMap(methodRequests);
+        }
+
+        /**
+         * Returns what all requests have cost.
+         *
+         * @return total cost
+         */
+        public long getSpent() {
+            return spent;
+        }
+
+        /**
+         * Returns the budget of all requests together.
+         *
+         * @return global limit
+         */
+        public long getGlobalLimit() {
+            return globalLimit;
+        }
+
+        /**
+         * Returns the amount of requests that were refused.
+         *
+         * @return amount of requests
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * Returns what the requests of every tenant have cost, with the null key for untagged requests.
+         *
+         * @return cost by tenant
+         */
+        public Map<String, Long> getTenantSpent() {
+            return tenantSpent;
+        }
+
+        /**
+         * Returns the budget of every tenant that has a budget or has made requests.
+         *
+         * @return limit by tenant
+         */
+        public Map<String, Long> getTenantLimits() {
+            return tenantLimits;
+        }
+
+        /**
+         * Returns what the requests of every API method have cost.
+         *
+         * @return cost by method
+         */
+        public Map<String, Long> getMethodSpent() {
+            return methodSpent;
+        }
+
+        /**
+         * Returns the amount of requests of every API method.
+         *
+         * @return requests by method
+         */
+        public Map<String, Long> getMethodRequests() {
+            return methodRequests;
+        }
+
+        private static String limit(long limit) {
+            return limit == Long.MAX_VALUE ? "unlimited" : Long.toString(limit);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder report = new StringBuilder();
+            report.append("total ").append(spent).append(" of ").append(limit(globalLimit)).append(", ")
+                    .append(rejected).append(" rejected\n");
+            for (Map.Entry<String, Long> entry : tenantLimits.entrySet()) {
+                Long tenantSpent = this.tenantSpent.get(entry.getKey());
+                report.append("tenant ").append(entry.getKey() != null ? entry.getKey() : "(untagged)").append(' ')
+                        .append(tenantSpent != null ? tenantSpent : 0).append(" of ").append(limit(entry.getValue()))
+                        .append('\n');
+            }
+            for (Map.Entry<String, Long> entry : methodSpent.entrySet()) {
+                report.append("method ").append(entry.getKey()).append(' ').append(entry.getValue()).append(" in ")
+                        .append(methodRequests.get(entry.getKey())).append(" requests\n");
+            }
+            return report.toString();
+        }
+    }
+}
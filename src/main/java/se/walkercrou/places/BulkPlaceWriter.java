@@ -0,0 +1,425 @@
+package se.walkercrou.places;
+
+import se.walkercrou.places.exception.GooglePlacesException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Adds or deletes many places with concurrent requests.
+ * <pre>
+ * BulkPlaceWriter writer = new BulkPlaceWriter(client, executor).setConcurrency(32).setRate(new RateLimiter(50, 10));
+ * BulkPlaceWriter.Summary summary = writer.addAll(catalogue.iterator());
+ * for (BulkPlaceWriter.Result result : summary.getFailures())
+ *     retryLater(result.getBuilder());
+ * </pre>
+ * Places are read from the iterator as requests can be sent and request bodies are written straight to the
+ * connection. The summary keeps a small {@link Result} of every item, but the builder of an item is only kept if the
+ * item failed: the builders of succeeded items are released once they have been passed to the {@link Listener}, which
+ * sees every result as soon as it is known. When details are requested with {@link #setFetchPlaces(boolean)}, they are
+ * fetched after every place has been added so that the details do not hold up the writes, and are kept in the
+ * results.
+ * <p>
+ * A writer can run one bulk operation at a time.
+ */
+public class BulkPlaceWriter {
+    /**
+     * The default maximum amount of requests in flight.
+     */
+    public static final int DEFAULT_CONCURRENCY = 16;
+
+    private final GooglePlaces client;
+    private final Executor executor;
+    private int concurrency = DEFAULT_CONCURRENCY;
+    private RateLimiter rate;
+    private boolean fetchPlaces;
+    private Listener listener;
+
+    /**
+     * Creates a new writer.
+     *
+     * @param client   to send requests with
+     * @param executor to send requests on
+     */
+    public BulkPlaceWriter(GooglePlaces client, Executor executor) {
+        this.client = client;
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the maximum amount of requests in flight.
+     *
+     * @param concurrency maximum amount of requests
+     * @return this
+     */
+    public BulkPlaceWriter setConcurrency(int concurrency) {
+        if (concurrency < 1)
+            throw new IllegalArgumentException("Concurrency must be at least one");
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * Sets the limiter that every request takes a permit from, or null to send requests as fast as the concurrency
+     * allows.
+     *
+     * @param rate limiter of requests
+     * @return this
+     */
+    public BulkPlaceWriter setRate(RateLimiter rate) {
+        this.rate = rate;
+        return this;
+    }
+
+    /**
+     * Sets whether the details of added places are fetched.
+     *
+     * @param fetchPlaces true to fetch details
+     * @return this
+     */
+    public BulkPlaceWriter setFetchPlaces(boolean fetchPlaces) {
+        this.fetchPlaces = fetchPlaces;
+        return this;
+    }
+
+    /**
+     * Sets the listener that is notified of every result as soon as it is known.
+     *
+     * @param listener of results
+     * @return this
+     */
+    public BulkPlaceWriter setListener(Listener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Adds every place of the specified iterator and waits until all of them have been added.
+     *
+     * @param builders of places to add
+     * @return summary of the operation
+     * @throws InterruptedException if interrupted while sending requests, requests in flight are finished first
+     */
+    public Summary addAll(Iterator<PlaceBuilder> builders) throws InterruptedException {
+        long start = System.nanoTime();
+        List<Result> results = new ArrayList<>();
+        final Semaphore inFlight = new Semaphore(concurrency);
+        try {
+            while (builders.hasNext()) {
+                final Result result = new Result(results.size(), builders.next(), null);
+                results.add(result);
+                submit(inFlight, new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            result.placeId = client.addPlaceForId(result.builder);
+                        } catch (GooglePlacesException e) {
+                            result.error = e;
+                        }
+                        if (!fetchPlaces || result.error != null)
+                            complete(result);
+                    }
+                });
+            }
+        } finally {
+            inFlight.acquireUninterruptibly(concurrency);
+            inFlight.release(concurrency);
+        }
+
+        if (fetchPlaces) {
+            try {
+                for (final Result result : results) {
+                    if (result.error != null)
+                        continue;
+                    submit(inFlight, new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                result.place = client.getPlaceById(result.placeId);
+                            } catch (GooglePlacesException e) {
+                                // the place has been added, only its details are missing
+                                result.error = e;
+                            }
+                            complete(result);
+                        }
+                    });
+                }
+            } finally {
+                inFlight.acquireUninterruptibly(concurrency);
+            }
+        }
+        return new Summary(results, System.nanoTime() - start);
+    }
+
+    /**
+     * Adds every place of the specified list.
+     *
+     * @param builders of places to add
+     * @return summary of the operation
+     * @throws InterruptedException if interrupted while sending requests
+     * @see #addAll(Iterator)
+     */
+    public Summary addAll(List<PlaceBuilder> builders) throws InterruptedException {
+        return addAll(builders.iterator());
+    }
+
+    /**
+     * Deletes the places of every id of the specified iterator and waits until all of them have been deleted.
+     *
+     * @param placeIds of places to delete
+     * @return summary of the operation
+     * @throws InterruptedException if interrupted while sending requests, requests in flight are finished first
+     */
+    public Summary deleteAll(Iterator<String> placeIds) throws InterruptedException {
+        long start = System.nanoTime();
+        List<Result> results = new ArrayList<>();
+        Semaphore inFlight = new Semaphore(concurrency);
+        try {
+            while (placeIds.hasNext()) {
+                final Result result = new Result(results.size(), null, placeIds.next());
+                results.add(result);
+                submit(inFlight, new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            client.deletePlaceById(result.placeId);
+                        } catch (GooglePlacesException e) {
+                            result.error = e;
+                        }
+                        complete(result);
+                    }
+                });
+            }
+        } finally {
+            inFlight.acquireUninterruptibly(concurrency);
+        }
+        return new Summary(results, System.nanoTime() - start);
+    }
+
+    /**
+     * Deletes the places of every id of the specified list.
+     *
+     * @param placeIds of places to delete
+     * @return summary of the operation
+     * @throws InterruptedException if interrupted while sending requests
+     * @see #deleteAll(Iterator)
+     */
+    public Summary deleteAll(List<String> placeIds) throws InterruptedException {
+        return deleteAll(placeIds.iterator());
+    }
+
+    private void submit(final Semaphore inFlight, final Runnable request) throws InterruptedException {
+        RateLimiter rate = this.rate;
+        if (rate != null)
+            rate.acquire();
+        inFlight.acquire();
+        final RequestTag tag = RequestTag.current();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    RequestTag previous = RequestTag.set(tag);
+                    try {
+                        request.run();
+                    } finally {
+                        RequestTag.set(previous);
+                        inFlight.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private void complete(Result result) {
+        Listener listener = this.listener;
+        try {
+            if (listener != null)
+                listener.onResult(result);
+        } finally {
+            // only failed items need their builder afterwards, to be retried
+            if (result.error == null)
+                result.builder = null;
+        }
+    }
+
+    /**
+     * Is notified of results while a bulk operation is running. Called from the threads of the executor.
+     */
+    public interface Listener {
+        /**
+         * Called once for every item. This is the last time the builder of an item that succeeded is available.
+         *
+         * @param result of item
+         */
+        void onResult(Result result);
+    }
+
+    /**
+     * The result of one item of a bulk operation.
+     */
+    public static class Result {
+        private final int index;
+        private volatile PlaceBuilder builder;
+        private volatile String placeId;
+        private volatile Place place;
+        private volatile GooglePlacesException error;
+
+        private Result(int index, PlaceBuilder builder, String placeId) {
+            this.index = index;
+            this.builder = builder;
+            this.placeId = placeId;
+        }
+
+        /**
+         * Returns the position of the item in the input.
+         *
+         * @return index of item
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Returns the builder of the place that was added. The builder of an item that succeeded is released once the
+         * item has been passed to the listener.
+         *
+         * @return builder, or null for deletes and succeeded items
+         */
+        public PlaceBuilder getBuilder() {
+            return builder;
+        }
+
+        /**
+         * Returns the id of the place that was added or deleted.
+         *
+         * @return place id, or null if the place could not be added
+         */
+        public String getPlaceId() {
+            return placeId;
+        }
+
+        /**
+         * Returns the details of the added place.
+         *
+         * @return place, or null if details were not fetched
+         */
+        public Place getPlace() {
+            return place;
+        }
+
+        /**
+         * Returns the error of the item. An added place whose details could not be fetched has both an id and an
+         * error.
+         *
+         * @return error, or null if the item succeeded
+         */
+        public GooglePlacesException getError() {
+            return error;
+        }
+
+        /**
+         * Returns true if the item succeeded.
+         *
+         * @return true if succeeded
+         */
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Result{index=%d, placeId=%s, error=%s}", index, placeId, error);
+        }
+    }
+
+    /**
+     * The outcome of a bulk operation.
+     */
+    public static class Summary {
+        private final List<Result> results;
+        private final long elapsedNanos;
+        private final int failed;
+
+        private Summary(List<Result> results, long elapsedNanos) {
+            this.results = Collections.unmodifiableList(results);
+            this.elapsedNanos = elapsedNanos;
+            int failed = 0;
+            for (Result result : results) {
+                if (!result.isSuccess())
+                    failed++;
+            }
+            this.failed = failed;
+        }
+
+        /**
+         * Returns the results of every item in the order of the input.
+         *
+         * @return results
+         */
+        public List<Result> getResults() {
+            return results;
+        }
+
+        /**
+         * Returns the results of the items that failed.
+         *
+         * @return failed results
+         */
+        public List<Result> getFailures() {
+            List<Result> failures = new ArrayList<>(failed);
+            for (Result result : results) {
+                if (!result.isSuccess())
+                    failures.add(result);
+            }
+            return failures;
+        }
+
+        /**
+         * Returns the amount of items that succeeded.
+         *
+         * @return amount of successes
+         */
+        public int getSucceeded() {
+            return results.size() - failed;
+        }
+
+        /**
+         * Returns the amount of items that failed.
+         *
+         * @return amount of failures
+         */
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * Returns the time the operation took.
+         *
+         * @return elapsed nanoseconds
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Returns the amount of items handled per second.
+         *
+         * @return throughput
+         */
+        public double getThroughput() {
+            return results.size() / (elapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d succeeded, %d failed, %.1f items/s", getSucceeded(), failed, getThroughput());
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package se.walkercrou.places;
+
+import org.apache.http.client.methods.HttpUriRequest;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The state of a call that can be cancelled from another thread or that has a deadline. While a context is set on a
+ * thread, the {@link DefaultRequestHandler} registers every request it sends with the context, and cancelling the
+ * context or reaching its deadline aborts the request that is in flight.
+ * <pre>
+ * CallContext context = new CallContext();
+ * CallContext previous = CallContext.set(context);
+ * try {
+ *     client.getNearbyPlaces(lat, lng, radius); // context.cancel() from another thread aborts this
+ * } finally {
+ *     CallContext.set(previous);
+ * }
+ * </pre>
+ * A context with a deadline, see {@link #withTimeout(long)}, also limits the connect and read timeouts of requests and
+ * the wait for a page token, and searches with more than one page return the places of the pages they have read when
+ * the deadline is reached. A context is passed to a single call with a {@link DeadlineParam}.
+ * <p>
+ * This class is safe for use by multiple threads.
+ */
+public final class CallContext {
+    private static final ThreadLocal<CallContext> current = new ThreadLocal<>();
+    private static final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "places-call-deadline");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    static {
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition done = lock.newCondition();
+    private final long deadline;
+    private final boolean hasDeadline;
+    private volatile boolean cancelled;
+    private HttpUriRequest request;
+    private ScheduledFuture<?> expiry;
+
+    /**
+     * Creates a new context without a deadline.
+     */
+    public CallContext() {
+        this(0, false);
+    }
+
+    private CallContext(long deadline, boolean hasDeadline) {
+        this.deadline = deadline;
+        this.hasDeadline = hasDeadline;
+    }
+
+    /**
+     * Returns a new context whose deadline is the specified time from now.
+     *
+     * @param timeoutMillis time until the deadline
+     * @return new context
+     */
+    public static CallContext withTimeout(long timeoutMillis) {
+        return new CallContext(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis), true);
+    }
+
+    /**
+     * Returns the context of the current thread.
+     *
+     * @return current context, or null if none is set
+     */
+    public static CallContext current() {
+        return current.get();
+    }
+
+    /**
+     * Sets the context of the current thread.
+     *
+     * @param context to set, or null to remove the context
+     * @return the previous context of the current thread
+     */
+    public static CallContext set(CallContext context) {
+        CallContext previous = current.get();
+        if (context == null)
+            current.remove();
+        else
+            current.set(context);
+        return previous;
+    }
+
+    /**
+     * Cancels the call and aborts the request of the call that is in flight, if any.
+     */
+    public void cancel() {
+        HttpUriRequest request;
+        lock.lock();
+        try {
+            cancelled = true;
+            request = this.request;
+            done.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (request != null)
+            request.abort();
+    }
+
+    /**
+     * Returns true if the call has been cancelled.
+     *
+     * @return true if cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Returns true if the deadline of the call has been reached.
+     *
+     * @return true if expired
+     */
+    public boolean isExpired() {
+        return hasDeadline && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * Returns true if the call has a deadline.
+     *
+     * @return true if there is a deadline
+     */
+    public boolean hasDeadline() {
+        return hasDeadline;
+    }
+
+    /**
+     * Returns the time left until the deadline.
+     *
+     * @return remaining milliseconds, zero once expired or {@link Long#MAX_VALUE} if there is no deadline
+     */
+    public long getRemainingMillis() {
+        if (!hasDeadline)
+            return Long.MAX_VALUE;
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+
+    /**
+     * Throws if the call has been cancelled or its deadline has been reached.
+     *
+     * @throws InterruptedIOException if the call may not continue
+     */
+    void check() throws InterruptedIOException {
+        if (cancelled)
+            throw new InterruptedIOException("Call cancelled");
+        if (isExpired())
+            throw new InterruptedIOException("Call deadline exceeded");
+    }
+
+    /**
+     * Waits for the specified time unless the call is cancelled first. Does not wait at all if the deadline would be
+     * reached first.
+     *
+     * @param millis to wait
+     * @return true if waited for the whole time, false if the call may not continue afterwards
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean sleep(long millis) throws InterruptedException {
+        if (getRemainingMillis() <= millis)
+            return false;
+        long nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        lock.lock();
+        try {
+            while (!cancelled && nanos > 0)
+                nanos = done.awaitNanos(nanos);
+            return !cancelled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for the specified time like a request that takes that long, which is cut short by the deadline or by
+     * cancelling the call.
+     *
+     * @param millis to wait
+     * @throws InterruptedIOException if the call was cancelled or its deadline was reached before the time was up
+     * @throws InterruptedException   if interrupted while waiting
+     */
+    void pause(long millis) throws InterruptedIOException, InterruptedException {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        if (hasDeadline)
+            nanos = Math.min(nanos, deadline - System.nanoTime());
+        lock.lock();
+        try {
+            while (!cancelled && nanos > 0)
+                nanos = done.awaitNanos(nanos);
+        } finally {
+            lock.unlock();
+        }
+        check();
+    }
+
+    /**
+     * Registers a request that is about to be sent. The request is aborted right away if the call has been cancelled
+     * or has expired, and otherwise when the deadline is reached.
+     *
+     * @param request to register
+     */
+    void attach(final HttpUriRequest request) {
+        lock.lock();
+        try {
+            if (!cancelled && !isExpired()) {
+                this.request = request;
+                if (hasDeadline) {
+                    expiry = timer.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            abort(request);
+                        }
+                    }, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        request.abort();
+    }
+
+    private void abort(HttpUriRequest request) {
+        lock.lock();
+        try {
+            if (this.request != request)
+                return; // completed in time
+        } finally {
+            lock.unlock();
+        }
+        request.abort();
+    }
+
+    /**
+     * Unregisters a request that has completed.
+     *
+     * @param request to unregister
+     */
+    void detach(HttpUriRequest request) {
+        lock.lock();
+        try {
+            if (this.request == request) {
+                this.request = null;
+                if (expiry != null) {
+                    expiry.cancel(false);
+                    expiry = null;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package se.walkercrou.places;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static se.walkercrou.places.GooglePlacesInterface.*;
+
+/**
+ * An immutable snapshot of the configuration of a {@link GooglePlaces} client. A client reads its configuration once
+ * at the start of every call, so a call never observes half of a reconfiguration and configurations can be shared
+ * freely between threads.
+ * <pre>
+ * ClientConfig config = ClientConfig.builder().apiKey("yourApiKey").debugModeEnabled(true).build();
+ * GooglePlaces client = new GooglePlaces(config);
+ * </pre>
+ */
+public final class ClientConfig {
+    /**
+     * The default time to wait before a page token is used, as page tokens only become valid a short while after they
+     * are issued.
+     */
+    public static final long DEFAULT_PAGE_TOKEN_DELAY_MILLIS = 3000;
+
+    private final String baseUrl;
+    private final long pageTokenDelayMillis;
+    private final ApiKeyPool apiKeys;
+    private final RequestHandler requestHandler;
+    private final BudgetRequestHandler budget;
+    private final boolean debugModeEnabled;
+    private final Map<String, RequestTemplate> templates = new HashMap<>();
+
+    private ClientConfig(Builder builder) {
+        this.baseUrl = builder.baseUrl;
+        this.pageTokenDelayMillis = builder.pageTokenDelayMillis;
+        this.apiKeys = builder.apiKeys;
+        this.requestHandler = builder.requestHandler;
+        this.budget = findBudget(requestHandler);
+        this.debugModeEnabled = builder.debugModeEnabled;
+
+        String[] methods = {METHOD_NEARBY_SEARCH, METHOD_TEXT_SEARCH, METHOD_RADAR_SEARCH, METHOD_DETAILS, METHOD_ADD,
+                METHOD_DELETE, METHOD_AUTOCOMPLETE, METHOD_QUERY_AUTOCOMPLETE};
+        for (String method : methods)
+            templates.put(method, RequestTemplate.json(baseUrl, method));
+        templates.put(METHOD_PHOTO, RequestTemplate.raw(baseUrl, METHOD_PHOTO));
+    }
+
+    /**
+     * Returns a new, empty builder.
+     *
+     * @return new builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns a new builder initialized with the values of this configuration.
+     *
+     * @return new builder
+     */
+    public Builder toBuilder() {
+        return new Builder().baseUrl(baseUrl).pageTokenDelay(pageTokenDelayMillis).apiKeys(apiKeys)
+                .requestHandler(requestHandler).debugModeEnabled(debugModeEnabled);
+    }
+
+    /**
+     * Returns the URL that API methods are appended to.
+     *
+     * @return base url
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * Returns the time waited before a page token is used to fetch the next page of results.
+     *
+     * @return delay in milliseconds
+     */
+    public long getPageTokenDelay() {
+        return pageTokenDelayMillis;
+    }
+
+    /**
+     * Returns the pool of API keys requests are spread across.
+     *
+     * @return api key pool
+     */
+    public ApiKeyPool getApiKeys() {
+        return apiKeys;
+    }
+
+    /**
+     * Returns the handler of HTTP traffic.
+     *
+     * @return request handler
+     */
+    public RequestHandler getRequestHandler() {
+        return requestHandler;
+    }
+
+    /**
+     * Returns the handler that charges requests to a budget, which searches are checked against before they are sent.
+     * The handler is either the request handler or a handler that a {@link DelegatingRequestHandler} in front of it
+     * sends requests with.
+     *
+     * @return budget handler, or null
+     */
+    BudgetRequestHandler getBudget() {
+        return budget;
+    }
+
+    private static BudgetRequestHandler findBudget(RequestHandler handler) {
+        while (!(handler instanceof BudgetRequestHandler)) {
+            if (!(handler instanceof DelegatingRequestHandler))
+                return null;
+            handler = ((DelegatingRequestHandler) handler).getHandler();
+        }
+        return (BudgetRequestHandler) handler;
+    }
+
+    /**
+     * Returns true if debug messages are printed.
+     *
+     * @return true if in debug mode
+     */
+    public boolean isDebugModeEnabled() {
+        return debugModeEnabled;
+    }
+
+    /**
+     * Returns the precompiled request URL of the specified API method.
+     *
+     * @param method of api
+     * @return request template
+     */
+    RequestTemplate getTemplate(String method) {
+        return templates.get(method);
+    }
+
+    /**
+     * Builds {@link ClientConfig}s. A builder may not be shared between threads.
+     */
+    public static class Builder {
+        private String baseUrl = API_URL;
+        private long pageTokenDelayMillis = DEFAULT_PAGE_TOKEN_DELAY_MILLIS;
+        private ApiKeyPool apiKeys;
+        private RequestHandler requestHandler;
+        private boolean debugModeEnabled;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the URL that API methods are appended to, for example to send requests to a proxy or a local server in
+         * tests. Defaults to {@link GooglePlacesInterface#API_URL}.
+         *
+         * @param baseUrl ending with a slash
+         * @return this
+         */
+        public Builder baseUrl(String baseUrl) {
+            if (!baseUrl.endsWith("/"))
+                throw new IllegalArgumentException("Base URL must end with a slash");
+            this.baseUrl = baseUrl;
+            return this;
+        }
+
+        /**
+         * Sets the time waited before a page token is used to fetch the next page of results. Defaults to
+         * {@link #DEFAULT_PAGE_TOKEN_DELAY_MILLIS}.
+         *
+         * @param delayMillis delay in milliseconds
+         * @return this
+         */
+        public Builder pageTokenDelay(long delayMillis) {
+            this.pageTokenDelayMillis = delayMillis;
+            return this;
+        }
+
+        /**
+         * Sets a single API key that has been registered on the Google Developer Console.
+         *
+         * @param apiKey to use
+         * @return this
+         */
+        public Builder apiKey(String apiKey) {
+            return apiKeys(new ApiKeyPool(apiKey));
+        }
+
+        /**
+         * Sets the pool of API keys requests are spread across.
+         *
+         * @param apiKeys to use
+         * @return this
+         */
+        public Builder apiKeys(ApiKeyPool apiKeys) {
+            this.apiKeys = apiKeys;
+            return this;
+        }
+
+        /**
+         * Sets the handler of HTTP traffic. A {@link DefaultRequestHandler} is created if none is set.
+         *
+         * @param requestHandler to use
+         * @return this
+         */
+        public Builder requestHandler(RequestHandler requestHandler) {
+            this.requestHandler = requestHandler;
+            return this;
+        }
+
+        /**
+         * Sets if debug messages should be printed.
+         *
+         * @param debugModeEnabled true to print debug messages
+         * @return this
+         */
+        public Builder debugModeEnabled(boolean debugModeEnabled) {
+            this.debugModeEnabled = debugModeEnabled;
+            return this;
+        }
+
+        /**
+         * Returns a new configuration of the values of this builder.
+         *
+         * @return new configuration
+         */
+        public ClientConfig build() {
+            if (apiKeys == null)
+                throw new IllegalStateException("Must specify an API key");
+            if (requestHandler == null)
+                requestHandler = new DefaultRequestHandler();
+            return new ClientConfig(this);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package se.walkercrou.places;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The state that the workers of a distributed crawl share: which workers are alive, which worker holds the lease of
+ * each shard, which shards are completed and how much of a quota has been used. Implementations have to apply every
+ * method atomically across all workers.
+ *
+ * @see InMemoryCoordinationBackend
+ * @see FileCoordinationBackend
+ * @see CrawlCoordinator
+ */
+public interface CoordinationBackend {
+    /**
+     * Registers the specified worker as alive, or extends its registration.
+     *
+     * @param worker     id of worker
+     * @param ttlMillis  how long the worker is considered alive without another heartbeat
+     * @throws IOException if the backend could not be reached
+     */
+    void heartbeat(String worker, long ttlMillis) throws IOException;
+
+    /**
+     * Returns the workers whose last heartbeat has not expired.
+     *
+     * @return ids of workers in ascending order
+     * @throws IOException if the backend could not be reached
+     */
+    List<String> getLiveWorkers() throws IOException;
+
+    /**
+     * Acquires or renews the lease of the specified shard. The lease is granted if it is free, has expired or is
+     * already held by the worker.
+     *
+     * @param shard     name of shard
+     * @param worker    id of worker
+     * @param ttlMillis how long the lease is held without being renewed
+     * @return true if the worker holds the lease
+     * @throws IOException if the backend could not be reached
+     */
+    boolean tryAcquireLease(String shard, String worker, long ttlMillis) throws IOException;
+
+    /**
+     * Releases the lease of the specified shard if it is held by the specified worker.
+     *
+     * @param shard  name of shard
+     * @param worker id of worker
+     * @throws IOException if the backend could not be reached
+     */
+    void releaseLease(String shard, String worker) throws IOException;
+
+    /**
+     * Returns the worker holding the lease of the specified shard.
+     *
+     * @param shard name of shard
+     * @return id of worker, or null if the lease is free or has expired
+     * @throws IOException if the backend could not be reached
+     */
+    String getLeaseOwner(String shard) throws IOException;
+
+    /**
+     * Marks the specified shard as completed.
+     *
+     * @param shard name of shard
+     * @throws IOException if the backend could not be reached
+     */
+    void complete(String shard) throws IOException;
+
+    /**
+     * Returns true if the specified shard has been completed.
+     *
+     * @param shard name of shard
+     * @return true if completed
+     * @throws IOException if the backend could not be reached
+     */
+    boolean isCompleted(String shard) throws IOException;
+
+    /**
+     * Adds to the usage of the specified quota.
+     *
+     * @param quota  name of quota
+     * @param amount to add
+     * @return usage of the quota including the amount
+     * @throws IOException if the backend could not be reached
+     */
+    long addUsage(String quota, long amount) throws IOException;
+
+    /**
+     * Returns the usage of the specified quota.
+     *
+     * @param quota name of quota
+     * @return usage
+     * @throws IOException if the backend could not be reached
+     */
+    long getUsage(String quota) throws IOException;
+}
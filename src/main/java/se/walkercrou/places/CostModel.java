@@ -0,0 +1,82 @@
+package se.walkercrou.places;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static se.walkercrou.places.GooglePlacesInterface.*;
+
+/**
+ * The price of a request of every API method, in units of your choice such as millionths of a dollar. Every page of
+ * a search is a request of its own and is billed like the first.
+ * <pre>
+ * CostModel costs = CostModel.standard().setCost(GooglePlaces.METHOD_DETAILS, 25000);
+ * </pre>
+ * Methods without a price cost nothing. This class is safe for use by multiple threads.
+ */
+public class CostModel {
+    private final Map<String, Long> costs = new ConcurrentHashMap<>();
+
+    /**
+     * Returns a new model of the list prices of the API at the time of writing, in millionths of a dollar per
+     * request. Check the current prices of your account before relying on them.
+     *
+     * @return new model
+     */
+    public static CostModel standard() {
+        return new CostModel().setCost(METHOD_DETAILS, 17000).setCost(METHOD_NEARBY_SEARCH, 32000)
+                .setCost(METHOD_TEXT_SEARCH, 32000).setCost(METHOD_RADAR_SEARCH, 32000)
+                .setCost(METHOD_AUTOCOMPLETE, 2830).setCost(METHOD_QUERY_AUTOCOMPLETE, 2830)
+                .setCost(METHOD_PHOTO, 7000);
+    }
+
+    /**
+     * Sets the price of a request of the specified method.
+     *
+     * @param method of api
+     * @param cost   of a request, zero or greater
+     * @return this
+     */
+    public CostModel setCost(String method, long cost) {
+        if (cost < 0)
+            throw new IllegalArgumentException("Cost must not be negative");
+        costs.put(method, cost);
+        return this;
+    }
+
+    /**
+     * Returns the price of a request of the specified method.
+     *
+     * @param method of api
+     * @return cost of a request
+     */
+    public long getCost(String method) {
+        Long cost = costs.get(method);
+        return cost != null ? cost : 0;
+    }
+
+    /**
+     * Returns the price of a search of the specified method that reads the specified amount of pages.
+     *
+     * @param method of api
+     * @param pages  of results
+     * @return cost of search
+     */
+    public long estimate(String method, int pages) {
+        return getCost(method) * pages;
+    }
+
+    /**
+     * Returns the API method the specified request URI is sent to, such as {@link GooglePlaces#METHOD_DETAILS} for
+     * {@code .../place/details/json?placeid=...}.
+     *
+     * @param uri of request
+     * @return api method
+     */
+    public static String methodOf(String uri) {
+        int end = uri.indexOf('?');
+        String path = end == -1 ? uri : uri.substring(0, end);
+        if (path.endsWith("/json"))
+            path = path.substring(0, path.length() - 5);
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+}
@@ -0,0 +1,267 @@
+package se.walkercrou.places;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Splits a crawl into shards and runs the shards that belong to this worker, so that many workers can crawl one area
+ * together. Shards are assigned to the live workers by a {@link ShardRing}, and a worker only crawls a shard while it
+ * holds the lease of the shard in the {@link CoordinationBackend}.
+ * <pre>
+ * CrawlCoordinator coordinator = new CrawlCoordinator(backend, "berlin", workerId, 64, journals);
+ * coordinator.run(new CrawlCoordinator.JobFactory() {
+ *     public CrawlJob create(CrawlJournal journal) {
+ *         return new CrawlJob(client, journal, 52.3, 13.1, 52.7, 13.7, 1000).setListener(listener);
+ *     }
+ * });
+ * </pre>
+ * Every shard has its own {@link CrawlJournal} in the journal directory, which has to be shared by the workers for a
+ * shard to continue where it stopped when it moves to another worker. A worker renews its heartbeat and leases while it
+ * crawls, and once its own shards are completed it takes over shards that their owners have not started yet. When a
+ * worker fails, its heartbeat and leases expire, the ring of the remaining workers assigns its shards to them, and they
+ * continue the shards from their journals. A worker whose lease is taken over stops crawling the shard, and so does a
+ * worker that can not reach the backend to renew its lease before the lease would expire, since another worker may
+ * take the shard over after that.
+ * {@link #run(JobFactory)} returns once every shard has been completed by any worker.
+ * <p>
+ * Place ids for details enrichment are split the same way with {@link #isOwned(String)}.
+ */
+public class CrawlCoordinator {
+    /**
+     * The default time a heartbeat or lease is valid without being renewed.
+     */
+    public static final long DEFAULT_LEASE_MILLIS = 30 * 1000;
+
+    private static final ScheduledExecutorService renewer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "places-lease-renewer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final CoordinationBackend backend;
+    private final String name, worker;
+    private final int shards;
+    private final File journals;
+    private volatile long leaseMillis = DEFAULT_LEASE_MILLIS;
+    private volatile boolean stopped;
+    private volatile CrawlJob current;
+
+    /**
+     * Creates a new coordinator.
+     *
+     * @param backend  shared by the workers
+     * @param name     of crawl, separates crawls that share a backend
+     * @param worker   id of this worker, unique among the workers
+     * @param shards   amount of shards the crawl is split into, the same for every worker
+     * @param journals directory of the journals of the shards
+     */
+    public CrawlCoordinator(CoordinationBackend backend, String name, String worker, int shards, File journals) {
+        if (shards < 1)
+            throw new IllegalArgumentException("Shards must be at least one");
+        this.backend = backend;
+        this.name = name;
+        this.worker = worker;
+        this.shards = shards;
+        this.journals = journals;
+    }
+
+    /**
+     * Sets the time a heartbeat or lease is valid without being renewed. A failed worker's shards are taken over after
+     * this time.
+     *
+     * @param leaseMillis validity of leases
+     * @return this
+     */
+    public CrawlCoordinator setLeaseMillis(long leaseMillis) {
+        this.leaseMillis = leaseMillis;
+        return this;
+    }
+
+    /**
+     * Returns the amount of shards the crawl is split into.
+     *
+     * @return amount of shards
+     */
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * Returns the ring of the workers that are alive.
+     *
+     * @return ring of workers
+     * @throws IOException if the backend could not be reached
+     */
+    public ShardRing getRing() throws IOException {
+        List<String> workers = backend.getLiveWorkers();
+        if (!workers.contains(worker)) {
+            workers = new ArrayList<>(workers);
+            workers.add(worker);
+        }
+        return new ShardRing(workers);
+    }
+
+    /**
+     * Returns true if the shard of the specified key, such as a place id, belongs to this worker.
+     *
+     * @param key to look up
+     * @return true if owned
+     * @throws IOException if the backend could not be reached
+     */
+    public boolean isOwned(String key) throws IOException {
+        return worker.equals(getRing().getOwner(ShardRing.shardOf(key, shards)));
+    }
+
+    /**
+     * Returns the keys of the specified keys whose shards belong to this worker.
+     *
+     * @param keys to filter
+     * @return owned keys
+     * @throws IOException if the backend could not be reached
+     */
+    public List<String> filterOwned(Collection<String> keys) throws IOException {
+        ShardRing ring = getRing();
+        List<String> owned = new ArrayList<>();
+        for (String key : keys) {
+            if (worker.equals(ring.getOwner(ShardRing.shardOf(key, shards))))
+                owned.add(key);
+        }
+        return owned;
+    }
+
+    /**
+     * Stops a running coordinator after the request its job is waiting for.
+     */
+    public void stop() {
+        stopped = true;
+        CrawlJob job = current;
+        if (job != null)
+            job.stop();
+    }
+
+    /**
+     * Crawls the shards of this worker until every shard of the crawl has been completed, or until the coordinator is
+     * stopped. Leases are released when this method returns.
+     *
+     * @param factory that creates the job of a shard
+     * @throws IOException          if the backend or a journal could not be reached
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void run(JobFactory factory) throws IOException, InterruptedException {
+        stopped = false;
+        if (!journals.isDirectory() && !journals.mkdirs())
+            throw new IOException("Could not create directory " + journals);
+        while (!stopped) {
+            backend.heartbeat(worker, leaseMillis);
+            ShardRing ring = getRing();
+            boolean done = true;
+            Integer next = null;
+            long acquiredAt = 0;
+            for (int shard = 0; shard < shards; shard++) {
+                if (backend.isCompleted(shardName(shard)))
+                    continue;
+                done = false;
+                if (next == null && worker.equals(ring.getOwner(shard))) {
+                    long requestedAt = System.currentTimeMillis();
+                    if (backend.tryAcquireLease(shardName(shard), worker, leaseMillis)) {
+                        next = shard;
+                        acquiredAt = requestedAt;
+                    }
+                }
+            }
+            if (done)
+                return;
+            // an idle worker helps with the shards that their owners have not started yet
+            for (int shard = shards - 1; next == null && shard >= 0; shard--) {
+                if (backend.isCompleted(shardName(shard)) || backend.getLeaseOwner(shardName(shard)) != null)
+                    continue;
+                long requestedAt = System.currentTimeMillis();
+                if (backend.tryAcquireLease(shardName(shard), worker, leaseMillis)) {
+                    next = shard;
+                    acquiredAt = requestedAt;
+                }
+            }
+            if (next == null) {
+                // the remaining shards are crawled by other workers, wait in case one of them fails
+                Thread.sleep(Math.max(1, leaseMillis / 3));
+                continue;
+            }
+            crawl(next, acquiredAt, factory);
+        }
+    }
+
+    private String shardName(int shard) {
+        return name + '/' + shard;
+    }
+
+    private void crawl(int shard, long acquiredAt, JobFactory factory) throws IOException, InterruptedException {
+        final String shardName = shardName(shard);
+        final long leaseMillis = this.leaseMillis;
+        try (CrawlJournal journal = CrawlJournal.open(new File(journals, name + '-' + shard + ".journal"))) {
+            final CrawlJob job = factory.create(journal).setPartition(shard, shards);
+            final AtomicBoolean lost = new AtomicBoolean();
+            final AtomicLong renewedAt = new AtomicLong(acquiredAt);
+            current = job;
+            ScheduledFuture<?> renewal = renewer.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    // the lease is counted from before the request, the backend may have granted it any time after
+                    long requestedAt = System.currentTimeMillis();
+                    try {
+                        backend.heartbeat(worker, leaseMillis);
+                        if (backend.tryAcquireLease(shardName, worker, leaseMillis)) {
+                            renewedAt.set(requestedAt);
+                            return;
+                        }
+                    } catch (IOException e) {
+                        // an unreachable backend is retried until the lease is about to expire
+                        if (System.currentTimeMillis() < renewedAt.get() + leaseMillis - leaseMillis / 3)
+                            return;
+                    }
+                    lost.set(true);
+                    job.stop();
+                }
+            }, leaseMillis / 3, leaseMillis / 3, TimeUnit.MILLISECONDS);
+            try {
+                if (stopped)
+                    return;
+                job.run();
+            } finally {
+                renewal.cancel(false);
+                current = null;
+            }
+            if (!lost.get() && job.isCompleted())
+                backend.complete(shardName);
+        } finally {
+            backend.releaseLease(shardName, worker);
+        }
+    }
+
+    /**
+     * Creates the job of a shard.
+     */
+    public interface JobFactory {
+        /**
+         * Returns a new job of the crawl that records its progress in the specified journal. The partition of the job
+         * is set by the coordinator.
+         *
+         * @param journal of shard
+         * @return new job
+         */
+        CrawlJob create(CrawlJournal journal);
+    }
+}
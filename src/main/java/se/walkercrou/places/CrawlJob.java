@@ -0,0 +1,411 @@
+package se.walkercrou.places;
+
+import se.walkercrou.places.exception.GooglePlacesException;
+import se.walkercrou.places.exception.NoResultsFoundException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static se.walkercrou.places.GooglePlacesInterface.*;
+
+/**
+ * Crawls every place within an area by searching a grid of cells, and can be stopped and resumed at any point without
+ * sending the requests it has already completed again.
+ * <pre>
+ * try (CrawlJournal journal = CrawlJournal.open(new File("berlin.journal"))) {
+ *     CrawlJob job = new CrawlJob(client, journal, 52.3, 13.1, 52.7, 13.7, 1000).setFetchDetails(true);
+ *     job.setListener(new CrawlJob.Listener() {
+ *         public void onPlace(Place place) throws IOException {
+ *             log.put(place);
+ *         }
+ *     });
+ *     job.run(); // continues where the last run stopped
+ * }
+ * </pre>
+ * Every request, page, completed cell and fetched place is appended to the {@link CrawlJournal} as it happens. When a
+ * job is run again with the same journal, completed cells are skipped, an incomplete cell continues from the page
+ * token of its last page, and only the details that have not been fetched yet are fetched. A page token that has
+ * expired while the job was stopped is rejected by the API, and the cell is searched again from its first page.
+ * <p>
+ * A place whose details fail with a status that will not change, such as {@code NOT_FOUND} for a place that was
+ * removed after it was found, is recorded as failed and skipped, see {@link CrawlJournal#getFailed()}. Any other
+ * failure, such as {@code OVER_QUERY_LIMIT}, stops the job so that it can be resumed later.
+ * <p>
+ * Places are handed to the listener before their progress is recorded, so a place may be handed over a second time
+ * when a job stops between the two. Requests that were in flight when a job stopped are billed but lost, and are
+ * counted by {@link CrawlJournal#getLostRequests()}.
+ */
+public class CrawlJob {
+    private static final double METERS_PER_DEGREE = 111320;
+
+    private final GooglePlaces client;
+    private final CrawlJournal journal;
+    private final double minLat, minLng, maxLat, maxLng, cellMeters;
+    private final int rows, columns;
+    private final double latStep, lngStep;
+    private Search search = Search.NEARBY;
+    private Param[] extraParams = new Param[0];
+    private boolean fetchDetails;
+    private Listener listener;
+    private int shard, shards = 1;
+    private volatile boolean stopped;
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * Creates a new job.
+     *
+     * @param client     to send requests with
+     * @param journal    to record progress in
+     * @param minLat     southern edge of area
+     * @param minLng     western edge of area
+     * @param maxLat     northern edge of area
+     * @param maxLng     eastern edge of area
+     * @param cellMeters width and height of the cells the area is divided into
+     */
+    public CrawlJob(GooglePlaces client, CrawlJournal journal, double minLat, double minLng, double maxLat,
+                    double maxLng, double cellMeters) {
+        if (minLat >= maxLat || minLng >= maxLng)
+            throw new IllegalArgumentException("Area is empty");
+        if (cellMeters <= 0)
+            throw new IllegalArgumentException("Cell size must be greater than zero");
+        this.client = client;
+        this.journal = journal;
+        this.minLat = minLat;
+        this.minLng = minLng;
+        this.maxLat = maxLat;
+        this.maxLng = maxLng;
+        this.cellMeters = cellMeters;
+        double centerLat = Math.toRadians((minLat + maxLat) / 2);
+        rows = (int) Math.ceil((maxLat - minLat) * METERS_PER_DEGREE / cellMeters);
+        columns = (int) Math.ceil((maxLng - minLng) * METERS_PER_DEGREE * Math.cos(centerLat) / cellMeters);
+        latStep = (maxLat - minLat) / rows;
+        lngStep = (maxLng - minLng) / columns;
+    }
+
+    /**
+     * Sets the search that every cell is crawled with. Must not change between runs of a journal.
+     *
+     * @param search of cells
+     * @return this
+     */
+    public CrawlJob setSearch(Search search) {
+        this.search = search;
+        return this;
+    }
+
+    /**
+     * Sets extra parameters of the searches, such as a type or keyword. Must not change between runs of a journal.
+     *
+     * @param extraParams to append to the url of searches
+     * @return this
+     */
+    public CrawlJob setExtraParams(Param... extraParams) {
+        this.extraParams = extraParams;
+        return this;
+    }
+
+    /**
+     * Restricts the job to the cells of the specified shard, see {@link ShardRing#shardOf(int, int)}. Must not change
+     * between runs of a journal.
+     *
+     * @param shard  to crawl
+     * @param shards total amount of shards
+     * @return this
+     */
+    public CrawlJob setPartition(int shard, int shards) {
+        if (shard < 0 || shard >= shards)
+            throw new IllegalArgumentException("Shard must be between 0 and " + shards);
+        this.shard = shard;
+        this.shards = shards;
+        return this;
+    }
+
+    /**
+     * Sets whether the details of every place that is found are fetched. When they are not, the places of the search
+     * results are handed to the listener.
+     *
+     * @param fetchDetails true to fetch details
+     * @return this
+     */
+    public CrawlJob setFetchDetails(boolean fetchDetails) {
+        this.fetchDetails = fetchDetails;
+        return this;
+    }
+
+    /**
+     * Sets the listener that every place found is handed to once.
+     *
+     * @param listener of places
+     * @return this
+     */
+    public CrawlJob setListener(Listener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Returns the amount of cells the area is divided into.
+     *
+     * @return amount of cells
+     */
+    public int getCellCount() {
+        return rows * columns;
+    }
+
+    /**
+     * Returns the amount of cells of the partition of this job.
+     *
+     * @return amount of cells
+     * @see #setPartition(int, int)
+     */
+    public int getPartitionCellCount() {
+        if (shards == 1)
+            return getCellCount();
+        int count = 0;
+        for (int cell = 0; cell < getCellCount(); cell++) {
+            if (ShardRing.shardOf(cell, shards) == shard)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the amount of cells that have been completed, including those of earlier runs.
+     *
+     * @return amount of cells
+     */
+    public int getCompletedCells() {
+        return journal.getCompletedCells();
+    }
+
+    /**
+     * Returns true if every cell of the partition of this job has been completed.
+     *
+     * @return true if completed
+     */
+    public boolean isCompleted() {
+        return getCompletedCells() == getPartitionCellCount();
+    }
+
+    /**
+     * Returns the amount of requests sent by this job since it was created.
+     *
+     * @return amount of requests
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Returns the radius of the search of every cell, which covers the corners of the cell.
+     *
+     * @return radius in meters
+     */
+    public double getCellRadius() {
+        return Math.ceil(cellMeters * Math.sqrt(2) / 2);
+    }
+
+    /**
+     * Stops a running job after the request it is waiting for. The job can be resumed by running it again.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Crawls every cell that has not been completed yet and waits until all of them are, or until the job is
+     * stopped.
+     *
+     * @throws IOException          if the journal could not be written or the listener failed
+     * @throws InterruptedException if interrupted while waiting for a page token
+     * @throws IllegalStateException if the journal belongs to a different job
+     */
+    public void run() throws IOException, InterruptedException {
+        String description = describe();
+        String job = journal.getJob();
+        if (job == null)
+            journal.setJob(description);
+        else if (!job.equals(description))
+            throw new IllegalStateException("Journal belongs to another job: " + job);
+
+        stopped = false;
+        try {
+            if (fetchDetails)
+                fetch(journal.getUnfetched());
+            for (int cell = 0; cell < getCellCount() && !stopped; cell++) {
+                if (ShardRing.shardOf(cell, shards) == shard && !journal.isCellCompleted(cell))
+                    crawl(cell);
+            }
+        } finally {
+            journal.sync();
+        }
+    }
+
+    private String describe() {
+        StringBuilder description = new StringBuilder(String.format(Locale.ROOT, "%s %f,%f %f,%f %.1f",
+                search, minLat, minLng, maxLat, maxLng, cellMeters));
+        if (shards > 1)
+            description.append(" shard ").append(shard).append('/').append(shards);
+        for (Param param : extraParams)
+            description.append(' ').append(param.name).append('=').append(param.value);
+        return description.toString();
+    }
+
+    private void crawl(int cell) throws IOException, InterruptedException {
+        ClientConfig config = client.getConfig();
+        FieldsParam fields = FieldsParam.find(extraParams);
+        double lat = minLat + (cell / columns + 0.5) * latStep, lng = minLng + (cell % columns + 0.5) * lngStep;
+        String method = search == Search.RADAR ? METHOD_RADAR_SEARCH : METHOD_NEARBY_SEARCH;
+
+        int number = 0;
+        String token = null;
+        long readyAt = 0;
+        CrawlJournal.Page last = journal.getLastPage(cell);
+        if (last != null) {
+            if (last.getNextToken() == null) {
+                journal.cellCompleted(cell);
+                return;
+            }
+            number = last.getNumber() + 1;
+            token = last.getNextToken();
+            readyAt = last.getTime() + config.getPageTokenDelay();
+        }
+        boolean resumed = token != null;
+
+        String apiKey = config.getApiKeys().acquire();
+        while (!stopped) {
+            String uri;
+            if (token == null) {
+                uri = config.getTemplate(method).begin().param("key", apiKey).location("location", lat, lng)
+                        .param("radius", getCellRadius()).params(extraParams).build();
+            } else {
+                RequestTemplate.UrlBuilder url = config.getTemplate(method).begin().param("pagetoken", token)
+                        .param("key", apiKey);
+                uri = (fields != null ? url.params(fields) : url).build();
+                config.getApiKeys().recordUse(apiKey);
+                long delay = readyAt - System.currentTimeMillis();
+                if (delay > 0)
+                    Thread.sleep(delay); // page tokens have a delay before they are available
+            }
+
+            journal.requestSent(cell);
+            requests.incrementAndGet();
+            List<Place> places = new ArrayList<>();
+            String next = null;
+            try {
+                String raw = config.getRequestHandler().get(uri);
+                if (search == Search.RADAR)
+                    GooglePlaces.parseRadar(client, places, raw, MAXIMUM_RADAR_RESULTS, fields);
+                else
+                    next = GooglePlaces.parse(client, places, raw, MAXIMUM_PAGE_RESULTS, fields);
+            } catch (NoResultsFoundException e) {
+                // an empty cell is completed like any other
+            } catch (GooglePlacesException e) {
+                config.getApiKeys().recordStatus(apiKey, e.getStatusCode());
+                if (resumed && Statuses.STATUS_INVALID_REQUEST.equals(e.getStatusCode())) {
+                    // the token of the last run has expired, start the cell over
+                    resumed = false;
+                    token = null;
+                    number = 0;
+                    continue;
+                }
+                throw e;
+            }
+            resumed = false;
+
+            Set<String> placeIds = new LinkedHashSet<>();
+            for (Place place : places) {
+                if (!placeIds.add(place.getPlaceId()) || fetchDetails || journal.isDiscovered(place.getPlaceId()))
+                    continue;
+                deliver(place);
+            }
+            journal.pageReceived(cell, number, next, new ArrayList<>(placeIds));
+            if (fetchDetails)
+                fetch(placeIds);
+
+            if (next == null) {
+                journal.cellCompleted(cell);
+                return;
+            }
+            token = next;
+            number++;
+            readyAt = System.currentTimeMillis() + config.getPageTokenDelay();
+        }
+    }
+
+    private void fetch(Iterable<String> placeIds) throws IOException {
+        for (String placeId : placeIds) {
+            if (stopped)
+                return;
+            if (journal.isFetched(placeId) || journal.isFailed(placeId))
+                continue;
+            requests.incrementAndGet();
+            Place place;
+            try {
+                place = client.getPlaceById(placeId);
+            } catch (GooglePlacesException e) {
+                String statusCode = statusOf(e);
+                if (!isPermanent(statusCode))
+                    throw e;
+                // the place has been removed since it was found, asking again would fail the same way
+                journal.placeFailed(placeId, statusCode);
+                continue;
+            }
+            deliver(place);
+            journal.placeFetched(placeId);
+        }
+    }
+
+    private static String statusOf(GooglePlacesException e) {
+        // the client wraps the exception of the status in one of its own
+        if (e.getStatusCode() == null && e.getCause() instanceof GooglePlacesException)
+            return ((GooglePlacesException) e.getCause()).getStatusCode();
+        return e.getStatusCode();
+    }
+
+    private static boolean isPermanent(String statusCode) {
+        return Statuses.STATUS_NOT_FOUND.equals(statusCode) || Statuses.STATUS_INVALID_REQUEST.equals(statusCode)
+                || Statuses.STATUS_ZERO_RESULTS.equals(statusCode);
+    }
+
+    private void deliver(Place place) throws IOException {
+        Listener listener = this.listener;
+        if (listener != null)
+            listener.onPlace(place);
+    }
+
+    /**
+     * The search that cells are crawled with.
+     */
+    public enum Search {
+        /**
+         * {@link GooglePlacesInterface#getNearbyPlaces(double, double, double, int, Param...)}, up to three pages of
+         * places per cell.
+         */
+        NEARBY,
+
+        /**
+         * {@link GooglePlacesInterface#getPlacesByRadar(double, double, double, int, Param...)}, a single page of up to
+         * 200 places per cell.
+         */
+        RADAR
+    }
+
+    /**
+     * Receives the places found by a job.
+     */
+    public interface Listener {
+        /**
+         * Called for every place that is found, with its details if they are fetched.
+         *
+         * @param place that was found
+         * @throws IOException if the place could not be stored, which stops the job
+         */
+        void onPlace(Place place) throws IOException;
+    }
+}
@@ -0,0 +1,533 @@
+package se.walkercrou.places;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of the progress of a {@link CrawlJob}. Every request that is sent, every page that is received,
+ * every cell that is completed and every place whose details are fetched or can not be fetched is appended as a record, and the state of
+ * the crawl is rebuilt from the records when the journal is opened again.
+ * <p>
+ * Every record carries a checksum. A record that was torn by a crash fails its checksum and is cut off together with
+ * anything after it. Records are written to the operating system as they are appended, call {@link #sync()} to force
+ * them to the disk. This class is safe for use by multiple threads, but a file may only be opened by one journal at
+ * once.
+ */
+public class CrawlJournal implements Closeable {
+    private static final int MAGIC = 0x47504a31; // GPJ1
+    private static final byte KIND_JOB = 1, KIND_REQUEST = 2, KIND_PAGE = 3, KIND_CELL = 4, KIND_FETCHED = 5,
+            KIND_FAILED = 6;
+    // record layout: length of kind and payload, crc of kind and payload, kind, payload
+    private static final int HEADER_SIZE = 4 + 4;
+
+    private final File file;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Integer, Page> pages = new HashMap<>();
+    private final Set<Integer> requested = new HashSet<>();
+    private final Set<Integer> completedCells = new HashSet<>();
+    private final Set<String> discovered = new LinkedHashSet<>();
+    private final Set<String> fetched = new HashSet<>();
+    private final Map<String, String> failed = new HashMap<>();
+    private String job;
+    private int lostRequests;
+    private FileOutputStream out;
+
+    private CrawlJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens the journal in the specified file, creating it if it does not exist.
+     *
+     * @param file of journal
+     * @return opened journal
+     * @throws IOException if the journal could not be read or created
+     */
+    public static CrawlJournal open(File file) throws IOException {
+        CrawlJournal journal = new CrawlJournal(file);
+        journal.recover();
+        return journal;
+    }
+
+    private void recover() throws IOException {
+        long valid = 0;
+        if (file.length() >= 4) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() != MAGIC)
+                    throw new IOException("Not a crawl journal: " + file);
+                valid = 4;
+                CRC32 crc = new CRC32();
+                while (true) {
+                    int length, checksum;
+                    byte[] record;
+                    try {
+                        length = in.readInt();
+                        checksum = in.readInt();
+                        if (length < 1 || length > file.length() - valid)
+                            break;
+                        record = new byte[length];
+                        in.readFully(record);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    crc.reset();
+                    crc.update(record, 0, record.length);
+                    if ((int) crc.getValue() != checksum)
+                        break;
+                    apply(ByteBuffer.wrap(record));
+                    valid += HEADER_SIZE + length;
+                }
+            }
+            for (Integer cell : requested) {
+                if (!completedCells.contains(cell))
+                    lostRequests++;
+            }
+            requested.clear();
+        }
+
+        // cut off a torn record so that new records follow the last intact one
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() != valid)
+                raf.setLength(valid);
+        }
+        out = new FileOutputStream(file, true);
+        if (valid == 0) {
+            out.write(ByteBuffer.allocate(4).putInt(MAGIC).array());
+            out.flush();
+        }
+    }
+
+    private void apply(ByteBuffer record) throws IOException {
+        byte kind = record.get();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.array(), 1, record.limit() - 1));
+        switch (kind) {
+            case KIND_JOB:
+                job = in.readUTF();
+                break;
+            case KIND_REQUEST:
+                requested.add(in.readInt());
+                break;
+            case KIND_PAGE: {
+                int cell = in.readInt(), number = in.readInt();
+                long time = in.readLong();
+                String token = in.readBoolean() ? in.readUTF() : null;
+                int count = in.readInt();
+                for (int i = 0; i < count; i++)
+                    discovered.add(in.readUTF());
+                pages.put(cell, new Page(number, token, time));
+                requested.remove(cell);
+                break;
+            }
+            case KIND_CELL: {
+                int cell = in.readInt();
+                completedCells.add(cell);
+                pages.remove(cell);
+                requested.remove(cell);
+                break;
+            }
+            case KIND_FETCHED:
+                fetched.add(in.readUTF());
+                break;
+            case KIND_FAILED: {
+                String placeId = in.readUTF();
+                failed.put(placeId, in.readUTF());
+                break;
+            }
+            default:
+                throw new IOException("Unknown record kind: " + kind);
+        }
+    }
+
+    private void append(byte kind, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(kind);
+        crc.update(payload, 0, payload.length);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + 1 + payload.length);
+        record.putInt(1 + payload.length).putInt((int) crc.getValue()).put(kind).put(payload);
+        if (out == null)
+            throw new IllegalStateException("Journal is closed");
+        // a single write so that a crash tears at most the last record
+        out.write(record.array());
+    }
+
+    /**
+     * Returns the description of the job that the journal belongs to.
+     *
+     * @return job, or null if none has been recorded
+     */
+    public String getJob() {
+        lock.lock();
+        try {
+            return job;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records the description of the job that the journal belongs to.
+     *
+     * @param job description
+     * @throws IOException if the record could not be written
+     */
+    public void setJob(String job) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeUTF(job);
+        lock.lock();
+        try {
+            append(KIND_JOB, bytes.toByteArray());
+            this.job = job;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records that a request for a page of the specified cell is about to be sent.
+     *
+     * @param cell of request
+     * @throws IOException if the record could not be written
+     */
+    public void requestSent(int cell) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeInt(cell);
+        lock.lock();
+        try {
+            append(KIND_REQUEST, bytes.toByteArray());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a page of the specified cell that has been received.
+     *
+     * @param cell      of page
+     * @param number    of page within the cell, starting at zero
+     * @param nextToken token of the next page, or null if it was the last page
+     * @param placeIds  of the places on the page
+     * @throws IOException if the record could not be written
+     */
+    public void pageReceived(int cell, int number, String nextToken, List<String> placeIds) throws IOException {
+        long time = System.currentTimeMillis();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(bytes);
+        payload.writeInt(cell);
+        payload.writeInt(number);
+        payload.writeLong(time);
+        payload.writeBoolean(nextToken != null);
+        if (nextToken != null)
+            payload.writeUTF(nextToken);
+        payload.writeInt(placeIds.size());
+        for (String placeId : placeIds)
+            payload.writeUTF(placeId);
+        lock.lock();
+        try {
+            append(KIND_PAGE, bytes.toByteArray());
+            pages.put(cell, new Page(number, nextToken, time));
+            discovered.addAll(placeIds);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records that every page of the specified cell has been received.
+     *
+     * @param cell that was completed
+     * @throws IOException if the record could not be written
+     */
+    public void cellCompleted(int cell) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeInt(cell);
+        lock.lock();
+        try {
+            append(KIND_CELL, bytes.toByteArray());
+            completedCells.add(cell);
+            pages.remove(cell);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records that the details of the specified place have been fetched and handed off.
+     *
+     * @param placeId of place
+     * @throws IOException if the record could not be written
+     */
+    public void placeFetched(String placeId) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeUTF(placeId);
+        lock.lock();
+        try {
+            append(KIND_FETCHED, bytes.toByteArray());
+            fetched.add(placeId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records that the details of the specified place can not be fetched, for example because the place has been
+     * removed since it was found. The place is not fetched again.
+     *
+     * @param placeId    of place
+     * @param statusCode that the details request failed with
+     * @throws IOException if the record could not be written
+     */
+    public void placeFailed(String placeId, String statusCode) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(placeId);
+        out.writeUTF(statusCode);
+        lock.lock();
+        try {
+            append(KIND_FAILED, bytes.toByteArray());
+            failed.put(placeId, statusCode);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if every page of the specified cell has been received.
+     *
+     * @param cell to check
+     * @return true if completed
+     */
+    public boolean isCellCompleted(int cell) {
+        lock.lock();
+        try {
+            return completedCells.contains(cell);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the amount of completed cells.
+     *
+     * @return amount of cells
+     */
+    public int getCompletedCells() {
+        lock.lock();
+        try {
+            return completedCells.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the last page that was received of a cell that has not been completed.
+     *
+     * @param cell of page
+     * @return last page, or null if no page has been received
+     */
+    public Page getLastPage(int cell) {
+        lock.lock();
+        try {
+            return pages.get(cell);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if the specified place has been found on any page.
+     *
+     * @param placeId to check
+     * @return true if discovered
+     */
+    public boolean isDiscovered(String placeId) {
+        lock.lock();
+        try {
+            return discovered.contains(placeId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if the details of the specified place have been fetched.
+     *
+     * @param placeId to check
+     * @return true if fetched
+     */
+    public boolean isFetched(String placeId) {
+        lock.lock();
+        try {
+            return fetched.contains(placeId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if the details of the specified place can not be fetched.
+     *
+     * @param placeId to check
+     * @return true if failed
+     * @see #placeFailed(String, String)
+     */
+    public boolean isFailed(String placeId) {
+        lock.lock();
+        try {
+            return failed.containsKey(placeId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the status codes of the places whose details can not be fetched, by place id.
+     *
+     * @return status codes by place id
+     */
+    public Map<String, String> getFailed() {
+        lock.lock();
+        try {
+            return Collections.unmodifiableMap(new HashMap<>(failed));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the ids of the places that have been found but whose details have neither been fetched nor failed, in
+     * the order they were found.
+     *
+     * @return ids of places
+     */
+    public List<String> getUnfetched() {
+        lock.lock();
+        try {
+            List<String> unfetched = new ArrayList<>();
+            for (String placeId : discovered) {
+                if (!fetched.contains(placeId) && !failed.containsKey(placeId))
+                    unfetched.add(placeId);
+            }
+            return unfetched;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the ids of every place that has been found.
+     *
+     * @return ids of places
+     */
+    public Set<String> getDiscovered() {
+        lock.lock();
+        try {
+            return Collections.unmodifiableSet(new LinkedHashSet<>(discovered));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the amount of requests that were sent before the journal was last opened but whose pages were never
+     * recorded, for example because the application stopped while they were in flight. These requests were billed
+     * and have to be sent again.
+     *
+     * @return amount of requests
+     */
+    public int getLostRequests() {
+        return lostRequests;
+    }
+
+    /**
+     * Forces the records that have been appended to the disk.
+     *
+     * @throws IOException if the records could not be synced
+     */
+    public void sync() throws IOException {
+        lock.lock();
+        try {
+            if (out != null)
+                out.getFD().sync();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (out != null) {
+                out.getFD().sync();
+                out.close();
+                out = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A page of a cell that has been received.
+     */
+    public static class Page {
+        private final int number;
+        private final String nextToken;
+        private final long time;
+
+        private Page(int number, String nextToken, long time) {
+            this.number = number;
+            this.nextToken = nextToken;
+            this.time = time;
+        }
+
+        /**
+         * Returns the number of the page within its cell, starting at zero.
+         *
+         * @return page number
+         */
+        public int getNumber() {
+            return number;
+        }
+
+        /**
+         * Returns the token of the next page.
+         *
+         * @return token, or null if it was the last page
+         */
+        public String getNextToken() {
+            return nextToken;
+        }
+
+        /**
+         * Returns the time the page was received.
+         *
+         * @return milliseconds since the epoch
+         */
+        public long getTime() {
+            return time;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package se.walkercrou.places;
+
+/**
+ * Passes a {@link CallContext} to a single call, which limits how long the call may take or lets it be cancelled. The
+ * param is not sent to the server.
+ * <pre>
+ * // whatever nearby places can be found within 800 milliseconds
+ * List&lt;Place&gt; places = client.getNearbyPlaces(lat, lng, radius, GooglePlaces.MAXIMUM_RESULTS,
+ *         DeadlineParam.in(800));
+ * </pre>
+ * Searches, details, predictions and photos accept the param. A search that reaches the deadline after its first page
+ * returns the places of the pages it has read, any other call that reaches the deadline fails.
+ */
+public class DeadlineParam extends Param {
+    private final CallContext context;
+
+    private DeadlineParam(CallContext context) {
+        super("deadline");
+        this.context = context;
+    }
+
+    /**
+     * Returns a new param whose deadline is the specified time from now.
+     *
+     * @param timeoutMillis time until the deadline
+     * @return new param
+     */
+    public static DeadlineParam in(long timeoutMillis) {
+        return new DeadlineParam(CallContext.withTimeout(timeoutMillis));
+    }
+
+    /**
+     * Returns a new param of the specified context, which can be cancelled by another thread.
+     *
+     * @param context of call
+     * @return new param
+     */
+    public static DeadlineParam of(CallContext context) {
+        return new DeadlineParam(context);
+    }
+
+    /**
+     * Returns the first deadline param of the specified params, or null if there is none.
+     *
+     * @param params to search
+     * @return deadline param
+     */
+    public static DeadlineParam find(Param... params) {
+        for (Param param : params) {
+            if (param instanceof DeadlineParam)
+                return (DeadlineParam) param;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the context of the call.
+     *
+     * @return call context
+     */
+    public CallContext getContext() {
+        return context;
+    }
+
+    @Override
+    boolean isSent() {
+        return false;
+    }
+}
@@ -3,10 +3,15 @@ package se.walkercrou.places;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -15,8 +20,29 @@ public class DefaultRequestHandler implements RequestHandler {
      * The default and recommended character encoding.
      */
     public static final String DEFAULT_CHARACTER_ENCODING = "UTF-8";
-    private final HttpClient client = HttpClientBuilder.create().build();
-    private String characterEncoding;
+    /**
+     * The default maximum amount of connections kept open to Google's servers. Every request goes to the same host so
+     * this is also the limit of requests that can be in flight at the same time.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 64;
+    private final HttpClient client;
+    private volatile String characterEncoding;
+
+    /**
+     * Creates a new handler with the specified character encoding and the maximum amount of concurrent connections.
+     *
+     * @param characterEncoding to use
+     * @param maxConnections    to keep open at once
+     */
+    public DefaultRequestHandler(String characterEncoding, int maxConnections) {
+        this.characterEncoding = characterEncoding;
+        // the default connection manager only allows two connections per route, which serializes concurrent callers;
+        // this one opens connections in synchronized blocks, which keeps virtual threads on their carrier before Java 24
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        this.client = HttpClientBuilder.create().setConnectionManager(connectionManager).build();
+    }
 
     /**
      * Creates a new handler with the specified character encoding.
@@ -24,7 +50,7 @@ public class DefaultRequestHandler implements RequestHandler {
      * @param characterEncoding to use
      */
     public DefaultRequestHandler(String characterEncoding) {
-        this.characterEncoding = characterEncoding;
+        this(characterEncoding, DEFAULT_MAX_CONNECTIONS);
     }
 
     /**
@@ -62,15 +88,39 @@ public class DefaultRequestHandler implements RequestHandler {
         return str.trim();
     }
 
+    private HttpResponse execute(HttpRequestBase request) throws IOException {
+        // let the call that this request is made for abort it
+        CallContext context = CallContext.current();
+        if (context != null) {
+            context.check();
+            if (context.hasDeadline()) {
+                // no single connect or read may outlast the deadline, the context aborts the request at the deadline
+                int timeout = (int) Math.max(1, Math.min(Integer.MAX_VALUE, context.getRemainingMillis()));
+                request.setConfig(RequestConfig.custom().setConnectionRequestTimeout(timeout)
+                        .setConnectTimeout(timeout).setSocketTimeout(timeout).build());
+            }
+            context.attach(request);
+        }
+        return client.execute(request);
+    }
+
+    private void release(HttpRequestBase request) {
+        CallContext context = CallContext.current();
+        if (context != null)
+            context.detach(request);
+        request.releaseConnection();
+    }
+
     @Override
     public InputStream getInputStream(String uri) throws IOException {
         HttpGet get = new HttpGet(uri);
         try {
-            return client.execute(get).getEntity().getContent();
+            // read the content before the connection is released, which closes the stream
+            return new ByteArrayInputStream(EntityUtils.toByteArray(execute(get).getEntity()));
         } catch (Exception e) {
             throw new IOException(e);
         } finally {
-            get.releaseConnection();
+            release(get);
         }
     }
 
@@ -78,22 +128,22 @@ public class DefaultRequestHandler implements RequestHandler {
     public String get(String uri) throws IOException {
         HttpGet get = new HttpGet(uri);
         try {
-            return readString(client.execute(get));
+            return readString(execute(get));
         } catch (Exception e) {
             throw new IOException(e);
         } finally {
-            get.releaseConnection();
+            release(get);
         }
     }
 
     @Override
     public String post(HttpPost data) throws IOException {
         try {
-            return readString(client.execute(data));
+            return readString(execute(data));
         } catch (Exception e) {
             throw new IOException(e);
         } finally {
-            data.releaseConnection();
+            release(data);
         }
     }
 }
@@ -0,0 +1,15 @@
+package se.walkercrou.places;
+
+/**
+ * A {@link RequestHandler} that sends requests with another handler, such as a cache or a scheduler in front of it.
+ * Components that look for a particular handler, such as the {@link BudgetRequestHandler} of a {@link ClientConfig},
+ * look through delegating handlers to find it.
+ */
+public interface DelegatingRequestHandler extends RequestHandler {
+    /**
+     * Returns the handler requests are sent with.
+     *
+     * @return request handler
+     */
+    RequestHandler getHandler();
+}
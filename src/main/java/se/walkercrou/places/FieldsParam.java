@@ -0,0 +1,126 @@
+package se.walkercrou.places;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import static se.walkercrou.places.GooglePlacesInterface.STRING_PLACE_ID;
+
+/**
+ * Represents the "fields" parameter, which restricts a request to the specified sections of a {@link Place}. The
+ * sections that are not requested are neither sent by the server nor parsed by the client, so their getters return
+ * null, empty lists or, for the location, {@link Double#NaN}.
+ * <pre>
+ * Place place = client.getPlaceById(placeId, FieldsParam.of(PlaceField.NAME, PlaceField.LOCATION));
+ * </pre>
+ */
+public class FieldsParam extends Param {
+    private volatile Set<PlaceField> fields;
+
+    private FieldsParam(Set<PlaceField> fields) {
+        super("fields");
+        setFields(fields);
+    }
+
+    private void setFields(Set<PlaceField> fields) {
+        StringBuilder value = new StringBuilder(STRING_PLACE_ID);
+        for (PlaceField field : fields) {
+            if (field.getApiName() != null)
+                value.append(',').append(field.getApiName());
+        }
+        this.value = value.toString();
+        this.fields = Collections.unmodifiableSet(fields);
+    }
+
+    /**
+     * Returns a new param that requests the specified fields. The place id is always requested.
+     *
+     * @param fields to request
+     * @return new param
+     */
+    public static FieldsParam of(PlaceField... fields) {
+        EnumSet<PlaceField> set = EnumSet.noneOf(PlaceField.class);
+        set.addAll(Arrays.asList(fields));
+        return new FieldsParam(set);
+    }
+
+    /**
+     * Returns the first fields param of the specified params, or null if there is none.
+     *
+     * @param params to search
+     * @return fields param
+     */
+    public static FieldsParam find(Param... params) {
+        for (Param param : params) {
+            if (param instanceof FieldsParam)
+                return (FieldsParam) param;
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if the specified field should be parsed, either because it is part of the specified param or
+     * because no param was specified.
+     *
+     * @param fields param of request, may be null
+     * @param field  to check
+     * @return true if the field should be parsed
+     */
+    static boolean includes(FieldsParam fields, PlaceField field) {
+        return fields == null || fields.fields.contains(field);
+    }
+
+    /**
+     * Returns the fields requested by this param.
+     *
+     * @return fields
+     */
+    public Set<PlaceField> getFields() {
+        return fields;
+    }
+
+    /**
+     * Adds fields to this param. The value may be a {@link PlaceField}, an array or iterable of them, or a comma
+     * separated list of the names the API uses for the fields, such as "name,geometry". The place id is always
+     * requested and may be part of the list.
+     *
+     * @param value fields to add
+     * @return this param
+     * @throws IllegalArgumentException if the value is none of the above or names an unknown field
+     */
+    @Override
+    public Param value(Object value) {
+        EnumSet<PlaceField> fields = EnumSet.noneOf(PlaceField.class);
+        fields.addAll(this.fields);
+        if (value instanceof PlaceField) {
+            fields.add((PlaceField) value);
+        } else if (value instanceof PlaceField[]) {
+            fields.addAll(Arrays.asList((PlaceField[]) value));
+        } else if (value instanceof Iterable) {
+            for (Object field : (Iterable<?>) value) {
+                if (!(field instanceof PlaceField))
+                    throw new IllegalArgumentException("Not a field: " + field);
+                fields.add((PlaceField) field);
+            }
+        } else if (value instanceof String) {
+            for (String name : ((String) value).split(",")) {
+                name = name.trim();
+                if (!name.isEmpty() && !name.equals(STRING_PLACE_ID))
+                    fields.add(fieldOf(name));
+            }
+        } else {
+            throw new IllegalArgumentException("Fields must be given as fields or their names: " + value);
+        }
+        setFields(fields);
+        return this;
+    }
+
+    private static PlaceField fieldOf(String apiName) {
+        for (PlaceField field : PlaceField.values()) {
+            if (apiName.equals(field.getApiName()))
+                return field;
+        }
+        throw new IllegalArgumentException("Unknown field: " + apiName);
+    }
+}
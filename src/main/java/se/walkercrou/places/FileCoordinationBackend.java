@@ -0,0 +1,178 @@
+package se.walkercrou.places;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link CoordinationBackend} that keeps its state in a properties file, for workers that run on one machine or
+ * share a file system that supports locks. Every method locks the directory, reads the state, and replaces the file
+ * with the changed state.
+ * <p>
+ * This class is safe for use by multiple threads and by multiple processes that open the same directory.
+ */
+public class FileCoordinationBackend implements CoordinationBackend {
+    private static final String STATE_FILE = "coordination.properties", LOCK_FILE = "coordination.lock";
+
+    private final File directory;
+    // file locks are held by the whole JVM, so threads of this process take turns first
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Creates a new backend in the specified directory, creating the directory if it does not exist.
+     *
+     * @param directory of state
+     * @throws IOException if the directory could not be created
+     */
+    public FileCoordinationBackend(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Could not create directory " + directory);
+        this.directory = directory;
+    }
+
+    private <T> T transact(Transaction<T> transaction) throws IOException {
+        lock.lock();
+        try (RandomAccessFile lockFile = new RandomAccessFile(new File(directory, LOCK_FILE), "rw");
+             FileLock ignored = lockFile.getChannel().lock()) {
+            File file = new File(directory, STATE_FILE);
+            InMemoryCoordinationBackend.State state = new InMemoryCoordinationBackend.State();
+            if (file.exists()) {
+                Properties properties = new Properties();
+                try (InputStream in = new FileInputStream(file)) {
+                    properties.load(in);
+                }
+                state.load(properties);
+            }
+
+            T result = transaction.apply(state, System.currentTimeMillis());
+            if (transaction.writes) {
+                Properties properties = new Properties();
+                state.store(properties);
+                File temp = new File(directory, STATE_FILE + ".tmp");
+                try (OutputStream out = new FileOutputStream(temp)) {
+                    properties.store(out, null);
+                }
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void heartbeat(final String worker, final long ttlMillis) throws IOException {
+        transact(new Transaction<Void>(true) {
+            @Override
+            Void apply(InMemoryCoordinationBackend.State state, long now) {
+                state.heartbeat(worker, ttlMillis, now);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public List<String> getLiveWorkers() throws IOException {
+        return transact(new Transaction<List<String>>(false) {
+            @Override
+            List<String> apply(InMemoryCoordinationBackend.State state, long now) {
+                return state.getLiveWorkers(now);
+            }
+        });
+    }
+
+    @Override
+    public boolean tryAcquireLease(final String shard, final String worker, final long ttlMillis)
+            throws IOException {
+        return transact(new Transaction<Boolean>(true) {
+            @Override
+            Boolean apply(InMemoryCoordinationBackend.State state, long now) {
+                return state.tryAcquireLease(shard, worker, ttlMillis, now);
+            }
+        });
+    }
+
+    @Override
+    public void releaseLease(final String shard, final String worker) throws IOException {
+        transact(new Transaction<Void>(true) {
+            @Override
+            Void apply(InMemoryCoordinationBackend.State state, long now) {
+                state.releaseLease(shard, worker);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public String getLeaseOwner(final String shard) throws IOException {
+        return transact(new Transaction<String>(false) {
+            @Override
+            String apply(InMemoryCoordinationBackend.State state, long now) {
+                return state.getLeaseOwner(shard, now);
+            }
+        });
+    }
+
+    @Override
+    public void complete(final String shard) throws IOException {
+        transact(new Transaction<Void>(true) {
+            @Override
+            Void apply(InMemoryCoordinationBackend.State state, long now) {
+                state.completed.add(shard);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public boolean isCompleted(final String shard) throws IOException {
+        return transact(new Transaction<Boolean>(false) {
+            @Override
+            Boolean apply(InMemoryCoordinationBackend.State state, long now) {
+                return state.completed.contains(shard);
+            }
+        });
+    }
+
+    @Override
+    public long addUsage(final String quota, final long amount) throws IOException {
+        return transact(new Transaction<Long>(true) {
+            @Override
+            Long apply(InMemoryCoordinationBackend.State state, long now) {
+                return state.addUsage(quota, amount);
+            }
+        });
+    }
+
+    @Override
+    public long getUsage(final String quota) throws IOException {
+        return transact(new Transaction<Long>(false) {
+            @Override
+            Long apply(InMemoryCoordinationBackend.State state, long now) {
+                Long usage = state.usage.get(quota);
+                return usage != null ? usage : 0;
+            }
+        });
+    }
+
+    private abstract static class Transaction<T> {
+        final boolean writes;
+
+        Transaction(boolean writes) {
+            this.writes = writes;
+        }
+
+        abstract T apply(InMemoryCoordinationBackend.State state, long now);
+    }
+}
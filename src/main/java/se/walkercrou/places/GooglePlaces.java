@@ -1,17 +1,17 @@
 package se.walkercrou.places;
 
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import se.walkercrou.places.exception.GooglePlacesException;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Locale;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Main class of API. Used for all entry web-api operations.
@@ -25,9 +25,36 @@ public class GooglePlaces implements GooglePlacesInterface {
      */
     public static String API_URL_FORMAT_STRING = "%s%s/json?%s";
 
-    private String apiKey;
-    private RequestHandler requestHandler;
-    private boolean debugModeEnabled;
+    private final ReentrantLock configLock = new ReentrantLock();
+    private volatile ClientConfig config;
+
+    /**
+     * Creates a new GooglePlaces object using the specified configuration.
+     *
+     * @param config of client
+     */
+    public GooglePlaces(ClientConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Creates a new GooglePlaces object using the specified pool of API keys and the specified {@link RequestHandler}.
+     *
+     * @param apiKeys        that have been registered on the Google Developer Console
+     * @param requestHandler to handle HTTP traffic
+     */
+    public GooglePlaces(ApiKeyPool apiKeys, RequestHandler requestHandler) {
+        this(ClientConfig.builder().apiKeys(apiKeys).requestHandler(requestHandler).build());
+    }
+
+    /**
+     * Creates a new GooglePlaces object using the specified pool of API keys.
+     *
+     * @param apiKeys that have been registered on the Google Developer Console
+     */
+    public GooglePlaces(ApiKeyPool apiKeys) {
+        this(apiKeys, new DefaultRequestHandler());
+    }
 
     /**
      * Creates a new GooglePlaces object using the specified API key and the specified {@link RequestHandler}.
@@ -36,8 +63,7 @@ public class GooglePlaces implements GooglePlacesInterface {
      * @param requestHandler to handle HTTP traffic
      */
     public GooglePlaces(String apiKey, RequestHandler requestHandler) {
-        this.apiKey = apiKey;
-        this.requestHandler = requestHandler;
+        this(new ApiKeyPool(apiKey), requestHandler);
     }
 
     /**
@@ -60,19 +86,6 @@ public class GooglePlaces implements GooglePlacesInterface {
         this(apiKey, new DefaultRequestHandler(characterEncoding));
     }
 
-    private static String addExtraParams(String base, Param... extraParams) {
-        for (Param param : extraParams)
-            base += "&" + param.name + (param.value != null ? "=" + param.value : "");
-        return base;
-    }
-
-    private static String buildUrl(String method, String params, Param... extraParams) {
-        String url = String.format(Locale.ENGLISH, API_URL_FORMAT_STRING, API_URL, method, params);
-        url = addExtraParams(url, extraParams);
-        url = url.replace(' ', '+');
-        return url;
-    }
-
     protected static void checkStatus(String statusCode, String errorMessage) {
         GooglePlacesException e = GooglePlacesException.parse(statusCode, errorMessage);
         if (e != null)
@@ -88,6 +101,20 @@ public class GooglePlaces implements GooglePlacesInterface {
      * @return Next page token
      */
     public static String parse(GooglePlaces client, List<Place> places, String str, int limit) {
+        return parse(client, places, str, limit, null);
+    }
+
+    /**
+     * Parses the specified raw json String into a list of places, only building the sections of the places that are
+     * included in the specified fields.
+     *
+     * @param places to parse into
+     * @param str    raw json
+     * @param limit  the maximum amount of places to return
+     * @param fields to parse, or null to parse every field
+     * @return Next page token
+     */
+    public static String parse(GooglePlaces client, List<Place> places, String str, int limit, FieldsParam fields) {
         // parse json
         JSONObject json = new JSONObject(str);
 
@@ -98,11 +125,50 @@ public class GooglePlaces implements GooglePlacesInterface {
             return null;
 
         JSONArray results = json.getJSONArray(ARRAY_RESULTS);
-        parseResults(client, places, results, Math.min(limit, MAXIMUM_PAGE_RESULTS));
+        parseResults(client, places, results, Math.min(limit, MAXIMUM_PAGE_RESULTS), fields);
 
         return json.optString(STRING_NEXT_PAGE_TOKEN, null);
     }
     
+    /**
+     * Parses the specified raw json String into a batch of places without creating a {@link Place} for each result.
+     *
+     * @param batch to parse into
+     * @param str   raw json
+     * @param limit the maximum amount of places to add
+     * @return Next page token
+     */
+    public static String parse(PlaceBatch batch, String str, int limit) {
+        JSONObject json = new JSONObject(str);
+
+        String statusCode = json.getString(STRING_STATUS);
+        checkStatus(statusCode, json.optString(STRING_ERROR_MESSAGE));
+        if (statusCode.equals(STATUS_ZERO_RESULTS))
+            return null;
+
+        parseResults(batch, json.getJSONArray(ARRAY_RESULTS), Math.min(limit, MAXIMUM_PAGE_RESULTS));
+        return json.optString(STRING_NEXT_PAGE_TOKEN, null);
+    }
+
+    /**
+     * Parses the specified Radar raw json String into a batch of places without creating a {@link Place} for each
+     * result.
+     *
+     * @param batch to parse into
+     * @param str   Radar raw json
+     * @param limit the maximum amount of places to add
+     */
+    public static void parseRadar(PlaceBatch batch, String str, int limit) {
+        JSONObject json = new JSONObject(str);
+
+        String statusCode = json.getString(STRING_STATUS);
+        checkStatus(statusCode, json.optString(STRING_ERROR_MESSAGE));
+        if (statusCode.equals(STATUS_ZERO_RESULTS))
+            return;
+
+        parseResults(batch, json.getJSONArray(ARRAY_RESULTS), Math.min(limit, MAXIMUM_RADAR_RESULTS));
+    }
+
     /**
      * Parses the specified Radar raw json String into a list of places.
      *
@@ -111,6 +177,19 @@ public class GooglePlaces implements GooglePlacesInterface {
      * @param limit  the maximum amount of places to return
      */
     public static void parseRadar(GooglePlaces client, List<Place> places, String str, int limit) {
+        parseRadar(client, places, str, limit, null);
+    }
+
+    /**
+     * Parses the specified Radar raw json String into a list of places, only building the sections of the places that
+     * are included in the specified fields.
+     *
+     * @param places to parse into
+     * @param str    Radar raw json
+     * @param limit  the maximum amount of places to return
+     * @param fields to parse, or null to parse every field
+     */
+    public static void parseRadar(GooglePlaces client, List<Place> places, String str, int limit, FieldsParam fields) {
       // parse json
       JSONObject json = new JSONObject(str);
       
@@ -121,10 +200,11 @@ public class GooglePlaces implements GooglePlacesInterface {
         return;
       
       JSONArray results = json.getJSONArray(ARRAY_RESULTS);
-      parseResults(client, places, results, Math.min(limit, MAXIMUM_RADAR_RESULTS));
+      parseResults(client, places, results, Math.min(limit, MAXIMUM_RADAR_RESULTS), fields);
     }
 
-    private static void parseResults(GooglePlaces client, List<Place> places, JSONArray results, int limit) {
+    private static void parseResults(GooglePlaces client, List<Place> places, JSONArray results, int limit,
+                                     FieldsParam fields) {
         for (int i = 0; i < limit; i++) {
 
             // reached the end of the page
@@ -133,10 +213,13 @@ public class GooglePlaces implements GooglePlacesInterface {
 
             JSONObject result = results.getJSONObject(i);
 
-            // location
-            JSONObject location = result.getJSONObject(OBJECT_GEOMETRY).getJSONObject(OBJECT_LOCATION);
-            double lat = location.getDouble(DOUBLE_LATITUDE);
-            double lon = location.getDouble(DOUBLE_LONGITUDE);
+            // location, the server leaves out the geometry if it was not requested
+            double lat = Double.NaN, lon = Double.NaN;
+            if (FieldsParam.includes(fields, PlaceField.LOCATION)) {
+                JSONObject location = result.getJSONObject(OBJECT_GEOMETRY).getJSONObject(OBJECT_LOCATION);
+                lat = location.getDouble(DOUBLE_LATITUDE);
+                lon = location.getDouble(DOUBLE_LONGITUDE);
+            }
 
             String placeId = result.getString(STRING_PLACE_ID);
             String iconUrl = result.optString(STRING_ICON, null);
@@ -145,83 +228,165 @@ public class GooglePlaces implements GooglePlacesInterface {
             double rating = result.optDouble(DOUBLE_RATING, -1);
             String vicinity = result.optString(STRING_VICINITY, null);
 
-            // see if the place is open, fail-safe if opening_hours is not present
-            JSONObject hours = result.optJSONObject(OBJECT_HOURS);
-            boolean hoursDefined = hours != null && hours.has(BOOLEAN_OPENED);
-            Status status = Status.NONE;
-            if (hoursDefined) {
-                boolean opened = hours.getBoolean(BOOLEAN_OPENED);
-                status = opened ? Status.OPENED : Status.CLOSED;
-            }
-
-            // get the price level for the place, fail-safe if not defined
-            boolean priceDefined = result.has(INTEGER_PRICE_LEVEL);
-            Price price = Price.NONE;
-            if (priceDefined) {
-                price = Price.values()[result.getInt(INTEGER_PRICE_LEVEL)];
-            }
-
-            // the place "types"
-            List<String> types = new ArrayList<>();
-            JSONArray jsonTypes = result.optJSONArray(ARRAY_TYPES);
-            if (jsonTypes != null) {
-                for (int a = 0; a < jsonTypes.length(); a++) {
-                    types.add(jsonTypes.getString(a));
-                }
-            }
+            Status status = parseStatus(result);
+            Price price = parsePrice(result);
 
             Place place = new Place();
 
-            // build a place object
+            // build a place object, the place "types" are decoded from the json when they are first accessed
             places.add(place.setClient(client).setPlaceId(placeId).setLatitude(lat).setLongitude(lon).setIconUrl(iconUrl).setName(name)
                     .setAddress(addr).setRating(rating).setStatus(status).setPrice(price)
-                    .addTypes(types).setVicinity(vicinity).setJson(result));
+                    .setVicinity(vicinity).setFields(fields).setJson(result));
+        }
+    }
+
+    private static void parseResults(PlaceBatch batch, JSONArray results, int limit) {
+        int n = Math.min(limit, results.length());
+        for (int i = 0; i < n; i++) {
+            JSONObject result = results.getJSONObject(i);
+            JSONObject location = result.getJSONObject(OBJECT_GEOMETRY).getJSONObject(OBJECT_LOCATION);
+            batch.add(result.getString(STRING_PLACE_ID), result.optString(STRING_NAME),
+                    result.optString(STRING_ADDRESS, null), result.optString(STRING_VICINITY, null),
+                    result.optString(STRING_ICON, null), location.getDouble(DOUBLE_LATITUDE),
+                    location.getDouble(DOUBLE_LONGITUDE), result.optDouble(DOUBLE_RATING, -1), parsePrice(result),
+                    parseStatus(result), Place.parseTypes(result.optJSONArray(ARRAY_TYPES)));
+        }
+    }
+
+    private static Status parseStatus(JSONObject result) {
+        // see if the place is open, fail-safe if opening_hours is not present
+        JSONObject hours = result.optJSONObject(OBJECT_HOURS);
+        if (hours == null || !hours.has(BOOLEAN_OPENED))
+            return Status.NONE;
+        return hours.getBoolean(BOOLEAN_OPENED) ? Status.OPENED : Status.CLOSED;
+    }
+
+    private static Price parsePrice(JSONObject result) {
+        // get the price level for the place, fail-safe if not defined
+        if (!result.has(INTEGER_PRICE_LEVEL))
+            return Price.NONE;
+        return Price.values()[result.getInt(INTEGER_PRICE_LEVEL)];
+    }
+
+    /**
+     * Returns the current configuration of this client.
+     *
+     * @return configuration
+     */
+    public ClientConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Replaces the configuration of this client. Calls that are already running finish with the configuration they
+     * started with.
+     *
+     * @param config to use
+     */
+    public void setConfig(ClientConfig config) {
+        configLock.lock();
+        try {
+            this.config = config;
+        } finally {
+            configLock.unlock();
         }
     }
 
     @Override
     public boolean isDebugModeEnabled() {
-        return debugModeEnabled;
+        return config.isDebugModeEnabled();
     }
 
     @Override
     public void setDebugModeEnabled(boolean debugModeEnabled) {
-        this.debugModeEnabled = debugModeEnabled;
+        configLock.lock();
+        try {
+            config = config.toBuilder().debugModeEnabled(debugModeEnabled).build();
+        } finally {
+            configLock.unlock();
+        }
     }
 
-    private void debug(String msg) {
-        if (debugModeEnabled)
+    private static void debug(ClientConfig config, String msg) {
+        if (config.isDebugModeEnabled())
             System.out.println(msg);
     }
 
     @Override
     public String getApiKey() {
-        return apiKey;
+        return config.getApiKeys().getPrimaryKey();
     }
 
     @Override
     public void setApiKey(String apiKey) {
-        this.apiKey = apiKey;
+        setApiKeyPool(new ApiKeyPool(apiKey));
+    }
+
+    /**
+     * Returns the pool of API keys requests are spread across.
+     *
+     * @return api key pool
+     */
+    public ApiKeyPool getApiKeyPool() {
+        return config.getApiKeys();
+    }
+
+    /**
+     * Sets the pool of API keys requests are spread across.
+     *
+     * @param apiKeys to use
+     */
+    public void setApiKeyPool(ApiKeyPool apiKeys) {
+        configLock.lock();
+        try {
+            config = config.toBuilder().apiKeys(apiKeys).build();
+        } finally {
+            configLock.unlock();
+        }
+    }
+
+    private static GooglePlacesException fail(ClientConfig config, String apiKey, Exception e) {
+        if (e instanceof GooglePlacesException)
+            config.getApiKeys().recordStatus(apiKey, ((GooglePlacesException) e).getStatusCode());
+        return new GooglePlacesException(e);
+    }
+
+    private static CallContext enter(Param... params) {
+        CallContext previous = CallContext.current();
+        DeadlineParam deadline = DeadlineParam.find(params);
+        if (deadline != null)
+            CallContext.set(deadline.getContext());
+        return previous;
     }
 
     @Override
     public RequestHandler getRequestHandler() {
-        return requestHandler;
+        return config.getRequestHandler();
     }
 
     @Override
     public void setRequestHandler(RequestHandler requestHandler) {
-        this.requestHandler = requestHandler;
+        configLock.lock();
+        try {
+            config = config.toBuilder().requestHandler(requestHandler).build();
+        } finally {
+            configLock.unlock();
+        }
     }
 
     @Override
     public List<Place> getNearbyPlaces(double lat, double lng, double radius, int limit, Param... extraParams) {
+        ClientConfig config = this.config;
+        String apiKey = config.getApiKeys().acquire();
+        CallContext previous = enter(extraParams);
         try {
-            String uri = buildUrl(METHOD_NEARBY_SEARCH, String.format(Locale.ENGLISH, "key=%s&location=%s,%s&radius=%s",
-                    apiKey, String.valueOf(lat), String.valueOf(lng), String.valueOf(radius)), extraParams);
-            return getPlaces(uri, METHOD_NEARBY_SEARCH, limit);
+            String uri = config.getTemplate(METHOD_NEARBY_SEARCH).begin().param("key", apiKey)
+                    .location("location", lat, lng).param("radius", radius).params(extraParams).build();
+            return getPlaces(config, uri, METHOD_NEARBY_SEARCH, limit, apiKey, FieldsParam.find(extraParams));
         } catch (Exception e) {
-            throw new GooglePlacesException(e);
+            throw fail(config, apiKey, e);
+        } finally {
+            CallContext.set(previous);
         }
     }
 
@@ -232,12 +397,17 @@ public class GooglePlaces implements GooglePlacesInterface {
 
     @Override
     public List<Place> getNearbyPlacesRankedByDistance(double lat, double lng, int limit, Param... params) {
+        ClientConfig config = this.config;
+        String apiKey = config.getApiKeys().acquire();
+        CallContext previous = enter(params);
         try {
-            String uri = buildUrl(METHOD_NEARBY_SEARCH, String.format(Locale.ENGLISH, "key=%s&location=%s,%s&rankby=distance",
-                    apiKey, String.valueOf(lat), String.valueOf(lng)), params);
-            return getPlaces(uri, METHOD_NEARBY_SEARCH, limit);
+            String uri = config.getTemplate(METHOD_NEARBY_SEARCH).begin().param("key", apiKey)
+                    .location("location", lat, lng).param("rankby", "distance").params(params).build();
+            return getPlaces(config, uri, METHOD_NEARBY_SEARCH, limit, apiKey, FieldsParam.find(params));
         } catch (Exception e) {
-            throw new GooglePlacesException(e);
+            throw fail(config, apiKey, e);
+        } finally {
+            CallContext.set(previous);
         }
     }
 
@@ -248,12 +418,17 @@ public class GooglePlaces implements GooglePlacesInterface {
 
     @Override
     public List<Place> getPlacesByQuery(String query, int limit, Param... extraParams) {
+        ClientConfig config = this.config;
+        String apiKey = config.getApiKeys().acquire();
+        CallContext previous = enter(extraParams);
         try {
-            String uri = buildUrl(METHOD_TEXT_SEARCH, String.format("query=%s&key=%s", query, apiKey),
-                    extraParams);
-            return getPlaces(uri, METHOD_TEXT_SEARCH, limit);
+            String uri = config.getTemplate(METHOD_TEXT_SEARCH).begin().param("query", query).param("key", apiKey)
+                    .params(extraParams).build();
+            return getPlaces(config, uri, METHOD_TEXT_SEARCH, limit, apiKey, FieldsParam.find(extraParams));
         } catch (Exception e) {
-            throw new GooglePlacesException(e);
+            throw fail(config, apiKey, e);
+        } finally {
+            CallContext.set(previous);
         }
     }
 
@@ -264,12 +439,17 @@ public class GooglePlaces implements GooglePlacesInterface {
 
     @Override
     public List<Place> getPlacesByRadar(double lat, double lng, double radius, int limit, Param... extraParams) {
+        ClientConfig config = this.config;
+        String apiKey = config.getApiKeys().acquire();
+        CallContext previous = enter(extraParams);
         try {
-            String uri = buildUrl(METHOD_RADAR_SEARCH, String.format(Locale.ENGLISH, "key=%s&location=%f,%f&radius=%f",
-                    apiKey, lat, lng, radius), extraParams);
-            return getRadarPlaces(uri, METHOD_RADAR_SEARCH, limit);
+            String uri = config.getTemplate(METHOD_RADAR_SEARCH).begin().param("key", apiKey)
+                    .location("location", lat, lng).param("radius", radius).params(extraParams).build();
+            return getRadarPlaces(config, uri, METHOD_RADAR_SEARCH, limit, FieldsParam.find(extraParams));
         } catch (Exception e) {
-            throw new GooglePlacesException(e);
+            throw fail(config, apiKey, e);
+        } finally {
+            CallContext.set(previous);
         }
     }
 
@@ -280,56 +460,79 @@ public class GooglePlaces implements GooglePlacesInterface {
 
     @Override
     public Place getPlaceById(String placeId, Param... extraParams) {
+        ClientConfig config = this.config;
+        String apiKey = config.getApiKeys().acquire();
+        CallContext previous = enter(extraParams);
         try {
-            String uri = buildUrl(METHOD_DETAILS, String.format("key=%s&placeid=%s", apiKey, placeId), extraParams);
-            return Place.parseDetails(this, requestHandler.get(uri));
+            String uri = config.getTemplate(METHOD_DETAILS).begin().param("key", apiKey).param("placeid", placeId)
+                    .params(extraParams).build();
+            return Place.parseDetails(this, config.getRequestHandler().get(uri), FieldsParam.find(extraParams));
         } catch (Exception e) {
-            throw new GooglePlacesException(e);
+            throw fail(config, apiKey, e);
+        } finally {
+            CallContext.set(previous);
         }
     }
 
     @Override
     public Place addPlace(PlaceBuilder builder, boolean returnPlace, Param... extraParams) {
+        String placeId = addPlaceForId(builder);
+        return returnPlace ? getPlaceById(placeId) : null;
+    }
+
+    /**
+     * Adds a place without fetching its details.
+     *
+     * @param builder of place
+     * @return id of the added place
+     */
+    String addPlaceForId(PlaceBuilder builder) {
+        ClientConfig config = this.config;
+        String apiKey = config.getApiKeys().acquire();
         try {
-            String uri = buildUrl(METHOD_ADD, String.format("key=%s", apiKey));
-            JSONObject input = builder.toJson();
-            HttpPost post = new HttpPost(uri);
-            post.setEntity(new StringEntity(input.toString()));
-            JSONObject response = new JSONObject(requestHandler.post(post));
-            String status = response.getString(STRING_STATUS);
-            checkStatus(status, response.optString(STRING_ERROR_MESSAGE));
-            return returnPlace ? getPlaceById(response.getString(STRING_PLACE_ID)) : null;
+            String uri = config.getTemplate(METHOD_ADD).begin().param("key", apiKey).build();
+            return post(config, uri, builder.toJson()).getString(STRING_PLACE_ID);
         } catch (Exception e) {
-            throw new GooglePlacesException(e);
+            throw fail(config, apiKey, e);
         }
     }
 
     @Override
     public void deletePlaceById(String placeId, Param... extraParams) {
+        ClientConfig config = this.config;
+        String apiKey = config.getApiKeys().acquire();
         try {
-            String uri = buildUrl(METHOD_DELETE, String.format("key=%s", apiKey), extraParams);
-            JSONObject input = new JSONObject().put(STRING_PLACE_ID, placeId);
-            HttpPost post = new HttpPost(uri);
-            post.setEntity(new StringEntity(input.toString()));
-            JSONObject response = new JSONObject(requestHandler.post(post));
-            String status = response.getString(STRING_STATUS);
-            checkStatus(status, response.optString(STRING_ERROR_MESSAGE));
+            String uri = config.getTemplate(METHOD_DELETE).begin().param("key", apiKey).params(extraParams).build();
+            post(config, uri, new JSONObject().put(STRING_PLACE_ID, placeId));
         } catch (Exception e) {
-            throw new GooglePlacesException(e);
+            throw fail(config, apiKey, e);
         }
     }
 
+    private static JSONObject post(ClientConfig config, String uri, JSONObject input) throws IOException {
+        HttpPost post = new HttpPost(uri);
+        post.setEntity(new JsonEntity(input));
+        JSONObject response = new JSONObject(config.getRequestHandler().post(post));
+        String status = response.getString(STRING_STATUS);
+        checkStatus(status, response.optString(STRING_ERROR_MESSAGE));
+        return response;
+    }
+
     @Override
     public void deletePlace(Place place, Param... extraParams) {
         deletePlaceById(place.getPlaceId(), extraParams);
     }
 
     protected InputStream download(String uri) {
+        return download(config, uri);
+    }
+
+    private static InputStream download(ClientConfig config, String uri) {
         try {
-            InputStream in = requestHandler.getInputStream(uri);
+            InputStream in = config.getRequestHandler().getInputStream(uri);
             if (in == null)
                 throw new GooglePlacesException("Could not attain input stream at " + uri);
-            debug("Successfully attained InputStream at " + uri);
+            debug(config, "Successfully attained InputStream at " + uri);
             return in;
         } catch (Exception e) {
             throw new GooglePlacesException(e);
@@ -337,30 +540,37 @@ public class GooglePlaces implements GooglePlacesInterface {
     }
 
     protected InputStream downloadPhoto(Photo photo, int maxWidth, int maxHeight, Param... extraParams) {
+        ClientConfig config = this.config;
+        String apiKey = config.getApiKeys().acquire();
+        CallContext previous = enter(extraParams);
         try {
-            String uri = String.format("%sphoto?photoreference=%s&key=%s", API_URL, photo.getReference(),
-                    apiKey);
-
-            List<Param> params = new ArrayList<>(Arrays.asList(extraParams));
-            if (maxHeight != -1) params.add(Param.name("maxheight").value(maxHeight));
-            if (maxWidth != -1) params.add(Param.name("maxwidth").value(maxWidth));
-            extraParams = params.toArray(new Param[params.size()]);
-            uri = addExtraParams(uri, extraParams);
+            RequestTemplate.UrlBuilder url = config.getTemplate(METHOD_PHOTO).begin()
+                    .param("photoreference", photo.getReference()).param("key", apiKey).params(extraParams);
+            if (maxHeight != -1) url.param("maxheight", maxHeight);
+            if (maxWidth != -1) url.param("maxwidth", maxWidth);
+            String uri = url.build();
 
-            return download(uri);
+            return download(config, uri);
         } catch (Exception e) {
-            throw new GooglePlacesException(e);
+            throw fail(config, apiKey, e);
+        } finally {
+            CallContext.set(previous);
         }
     }
 
     private List<Prediction> getPredictions(String input, String method, Param... extraParams) {
+        ClientConfig config = this.config;
+        String apiKey = config.getApiKeys().acquire();
+        CallContext previous = enter(extraParams);
         try {
-            String uri = buildUrl(method, String.format("input=%s&key=%s", input, apiKey),
-                    extraParams);
-            String response = requestHandler.get(uri);
+            String uri = config.getTemplate(method).begin().param("input", input).param("key", apiKey)
+                    .params(extraParams).build();
+            String response = config.getRequestHandler().get(uri);
             return Prediction.parse(this, response);
         } catch (Exception e) {
-            throw new GooglePlacesException(e);
+            throw fail(config, apiKey, e);
+        } finally {
+            CallContext.set(previous);
         }
     }
 
@@ -410,23 +620,51 @@ public class GooglePlaces implements GooglePlacesInterface {
         return getQueryPredictions(input, -1, extraParams);
     }
 
-    private List<Place> getPlaces(String uri, String method, int limit) throws IOException {
+    private List<Place> getPlaces(ClientConfig config, String uri, String method, int limit, String apiKey,
+                                  FieldsParam fields) throws IOException {
         limit = Math.min(limit, MAXIMUM_RESULTS); // max of 60 results possible
         int pages = (int) Math.ceil(limit / (double) MAXIMUM_PAGE_RESULTS);
+        BudgetRequestHandler budget = config.getBudget();
+        if (budget != null)
+            pages = budget.preflight(method, pages);
+        CallContext context = CallContext.current();
 
         List<Place> places = new ArrayList<>();
         // new request for each page
         for (int i = 0; i < pages; i++) {
-            debug("Page: " + (i + 1));
-            String raw = requestHandler.get(uri);
-            debug(raw);
-            String nextPage = parse(this, places, raw, limit);
+            debug(config, "Page: " + (i + 1));
+            String raw;
+            try {
+                raw = config.getRequestHandler().get(uri);
+            } catch (BudgetTracker.BudgetExceededException e) {
+                // another call has spent the budget since the check, keep the pages that were read
+                if (i == 0 || budget == null || budget.getPolicy() != BudgetRequestHandler.Policy.FEWER_PAGES)
+                    throw e;
+                break;
+            } catch (IOException e) {
+                // the deadline was reached while the page was read, keep the pages that were read before
+                if (i == 0 || context == null || !context.isExpired())
+                    throw e;
+                break;
+            }
+            debug(config, raw);
+            String nextPage = parse(this, places, raw, limit, fields);
             // reduce the limit, update the uri and wait for token, but only if there are more pages to read
             if (nextPage != null && i < pages - 1) {
                 limit -= MAXIMUM_PAGE_RESULTS;
-                uri = String.format("%s%s/json?pagetoken=%s&key=%s",
-                        API_URL, method, nextPage, apiKey);
-                sleep(3000); // Page tokens have a delay before they are available
+                // page tokens are only valid for the key that they were issued to
+                RequestTemplate.UrlBuilder url = config.getTemplate(method).begin().param("pagetoken", nextPage)
+                        .param("key", apiKey);
+                uri = (fields != null ? url.params(fields) : url).build();
+                config.getApiKeys().recordUse(apiKey);
+                // Page tokens have a delay before they are available
+                if (context == null) {
+                    sleep(config.getPageTokenDelay());
+                } else if (!await(context, config.getPageTokenDelay())) {
+                    if (context.isCancelled())
+                        throw new InterruptedIOException("Call cancelled");
+                    break; // the next page can not be read before the deadline
+                }
             } else {
                 break;
             }
@@ -435,17 +673,27 @@ public class GooglePlaces implements GooglePlacesInterface {
         return places;
     }
 
-    private List<Place> getRadarPlaces(String uri, String method, int limit) throws IOException {
+    private List<Place> getRadarPlaces(ClientConfig config, String uri, String method, int limit, FieldsParam fields)
+            throws IOException {
       limit = Math.min(limit, MAXIMUM_RADAR_RESULTS); // max of 200 results possible
 
       List<Place> places = new ArrayList<>();
-      String raw = requestHandler.get(uri);
-      debug(raw);
-      parseRadar(this, places, raw, limit);
+      String raw = config.getRequestHandler().get(uri);
+      debug(config, raw);
+      parseRadar(this, places, raw, limit, fields);
 
       return places;
     }
 
+    private static boolean await(CallContext context, long millis) throws InterruptedIOException {
+        try {
+            return context.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for page token");
+        }
+    }
+
     private void sleep(long millis) {
         try {
             Thread.sleep(millis);
@@ -49,6 +49,7 @@ public interface GooglePlacesInterface extends Types, Statuses {
     String METHOD_DELETE = "delete";
     String METHOD_AUTOCOMPLETE = "autocomplete";
     String METHOD_QUERY_AUTOCOMPLETE = "queryautocomplete";
+    String METHOD_PHOTO = "photo";
 
     int MAX_PHOTO_SIZE = 1600;
 
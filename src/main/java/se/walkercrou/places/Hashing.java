@@ -0,0 +1,73 @@
+package se.walkercrou.places;
+
+/**
+ * The 64 bit hash functions shared by the classes that hash place ids, URIs and sections of places. Strings are hashed
+ * with FNV-1a over their chars, and hashes whose low bits pick a slot or a point on a ring are finished with the
+ * finalizer of MurmurHash3, which spreads every input bit over every output bit.
+ * <p>
+ * The hashes of {@link ShardRing} decide which worker crawls a shard, so all workers of a crawl must compute them with
+ * the same functions.
+ */
+final class Hashing {
+    static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Hashing() {
+    }
+
+    /**
+     * Returns the FNV-1a hash of the specified string.
+     *
+     * @param str to hash
+     * @return hash
+     */
+    static long fnv(String str) {
+        return fnv(FNV_OFFSET, str, 0, str.length());
+    }
+
+    /**
+     * Continues the specified FNV-1a hash with the chars of the specified range of a string.
+     *
+     * @param hash  so far
+     * @param str   to hash
+     * @param start index of first char
+     * @param end   index after last char
+     * @return hash
+     */
+    static long fnv(long hash, String str, int start, int end) {
+        for (int i = start; i < end; i++) {
+            hash ^= str.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Continues the specified FNV-1a hash with the eight bytes of the specified value, lowest byte first.
+     *
+     * @param hash  so far
+     * @param value to hash
+     * @return hash
+     */
+    static long fnv(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (i * 8)) & 0xFF;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the specified hash with its bits mixed by the 64 bit finalizer of MurmurHash3.
+     *
+     * @param hash to mix
+     * @return mixed hash
+     */
+    static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ hash >>> 33;
+    }
+}
@@ -1,15 +1,28 @@
 package se.walkercrou.places;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
 /**
- * Represents a place's hours of operation.
+ * Represents a place's hours of operation. The periods are compiled on first use into sorted intervals of minutes in
+ * the week, so checking whether the place is opened at some time is a binary search.
  */
 public class Hours {
+    /**
+     * The amount of minutes in a week.
+     */
+    public static final int MINUTES_PER_WEEK = 7 * 24 * 60;
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    // the first day of the epoch was a thursday
+    private static final int EPOCH_MINUTE_OF_WEEK = Day.THURSDAY.ordinal() * MINUTES_PER_DAY;
+
     private final List<Period> periods = new ArrayList<>();
     private boolean alwaysOpened;
+    private volatile int[] intervals;
 
     protected Hours() {
     }
@@ -31,6 +44,7 @@ public class Hours {
      */
     protected Hours setAlwaysOpened(boolean alwaysOpened) {
         this.alwaysOpened = alwaysOpened;
+        intervals = null;
         return this;
     }
 
@@ -42,6 +56,7 @@ public class Hours {
      */
     protected Hours addPeriod(Period period) {
         periods.add(period);
+        intervals = null;
         return this;
     }
 
@@ -54,6 +69,233 @@ public class Hours {
         return Collections.unmodifiableList(periods);
     }
 
+    /**
+     * Returns true if the place is opened at the specified time of the week.
+     *
+     * @param day    of week
+     * @param hour   of day
+     * @param minute of hour
+     * @return true if opened
+     */
+    public boolean isOpenAt(Day day, int hour, int minute) {
+        return isOpenAt(minuteOfWeek(day, hour, minute));
+    }
+
+    /**
+     * Returns true if the place is opened at the specified time.
+     *
+     * @param timeMillis       milliseconds since the epoch
+     * @param utcOffsetMinutes offset of the place's timezone from UTC in minutes
+     * @return true if opened
+     */
+    public boolean isOpenAt(long timeMillis, int utcOffsetMinutes) {
+        return isOpenAt(minuteOfWeek(localMinutes(timeMillis, utcOffsetMinutes)));
+    }
+
+    /**
+     * Returns the amount of minutes from the specified time of the week until the place opens next, not counting a
+     * period the place is already opened in.
+     *
+     * @param day    of week
+     * @param hour   of day
+     * @param minute of hour
+     * @return minutes until opening, or -1 if the place never opens or is always opened
+     */
+    public int minutesUntilOpening(Day day, int hour, int minute) {
+        return minutesUntilOpening(minuteOfWeek(day, hour, minute));
+    }
+
+    /**
+     * Returns the amount of minutes from the specified time of the week until the place closes next. If the place is
+     * closed at that time, this is the closing of the period it opens in next.
+     *
+     * @param day    of week
+     * @param hour   of day
+     * @param minute of hour
+     * @return minutes until closing, or -1 if the place never opens or is always opened
+     */
+    public int minutesUntilClosing(Day day, int hour, int minute) {
+        return minutesUntilClosing(minuteOfWeek(day, hour, minute));
+    }
+
+    /**
+     * Returns the time the place opens next after the specified time.
+     *
+     * @param timeMillis       milliseconds since the epoch
+     * @param utcOffsetMinutes offset of the place's timezone from UTC in minutes
+     * @return milliseconds since the epoch, or -1 if the place never opens or is always opened
+     * @see #minutesUntilOpening(Day, int, int)
+     */
+    public long nextOpening(long timeMillis, int utcOffsetMinutes) {
+        long local = localMinutes(timeMillis, utcOffsetMinutes);
+        int minutes = minutesUntilOpening(minuteOfWeek(local));
+        return minutes < 0 ? -1 : (local + minutes - utcOffsetMinutes) * 60000;
+    }
+
+    /**
+     * Returns the time the place closes next after the specified time.
+     *
+     * @param timeMillis       milliseconds since the epoch
+     * @param utcOffsetMinutes offset of the place's timezone from UTC in minutes
+     * @return milliseconds since the epoch, or -1 if the place never opens or is always opened
+     * @see #minutesUntilClosing(Day, int, int)
+     */
+    public long nextClosing(long timeMillis, int utcOffsetMinutes) {
+        long local = localMinutes(timeMillis, utcOffsetMinutes);
+        int minutes = minutesUntilClosing(minuteOfWeek(local));
+        return minutes < 0 ? -1 : (local + minutes - utcOffsetMinutes) * 60000;
+    }
+
+    /**
+     * Returns the places of the specified collection that are opened at the specified time, in the place's own
+     * timezones. Places without hours of operation are left out.
+     *
+     * @param places     to filter
+     * @param timeMillis milliseconds since the epoch
+     * @return opened places
+     */
+    public static List<Place> filterOpen(Collection<Place> places, long timeMillis) {
+        List<Place> open = new ArrayList<>();
+        for (Place place : places) {
+            if (place.isOpenAt(timeMillis))
+                open.add(place);
+        }
+        return open;
+    }
+
+    private boolean isOpenAt(int minute) {
+        int[] intervals = intervals();
+        return indexOf(intervals, minute) >= 0 || indexOf(intervals, minute + MINUTES_PER_WEEK) >= 0;
+    }
+
+    private int minutesUntilOpening(int minute) {
+        int[] intervals = intervals();
+        if (intervals.length == 0 || isFullWeek(intervals))
+            return -1;
+        for (int i = 0; i < intervals.length; i += 2) {
+            if (intervals[i] > minute)
+                return intervals[i] - minute;
+        }
+        return intervals[0] + MINUTES_PER_WEEK - minute;
+    }
+
+    private int minutesUntilClosing(int minute) {
+        int[] intervals = intervals();
+        if (intervals.length == 0 || isFullWeek(intervals))
+            return -1;
+        int i = indexOf(intervals, minute);
+        if (i >= 0)
+            return intervals[i + 1] - minute;
+        i = indexOf(intervals, minute + MINUTES_PER_WEEK);
+        if (i >= 0)
+            return intervals[i + 1] - minute - MINUTES_PER_WEEK;
+        int opening = minutesUntilOpening(minute);
+        i = indexOf(intervals, (minute + opening) % MINUTES_PER_WEEK);
+        return opening + intervals[i + 1] - intervals[i];
+    }
+
+    /**
+     * Returns the index of the start of the interval containing the specified minute, or -1 if there is none.
+     */
+    private static int indexOf(int[] intervals, int minute) {
+        // find the last interval that starts at or before the minute
+        int lo = 0, hi = intervals.length / 2 - 1, found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (intervals[mid * 2] <= minute) {
+                found = mid * 2;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found >= 0 && minute < intervals[found + 1] ? found : -1;
+    }
+
+    private static boolean isFullWeek(int[] intervals) {
+        return intervals.length == 2 && intervals[1] - intervals[0] >= MINUTES_PER_WEEK;
+    }
+
+    /**
+     * Returns the opened intervals as sorted pairs of start (inclusive) and end (exclusive) minutes since sunday
+     * midnight. An interval that spans the end of the week ends after {@link #MINUTES_PER_WEEK}.
+     */
+    private int[] intervals() {
+        int[] intervals = this.intervals;
+        if (intervals == null)
+            this.intervals = intervals = compile();
+        return intervals;
+    }
+
+    private int[] compile() {
+        if (alwaysOpened)
+            return new int[]{0, MINUTES_PER_WEEK};
+        int[] raw = new int[periods.size() * 2];
+        int n = 0;
+        for (Period period : periods) {
+            if (period.getOpeningDay() == null || period.getOpeningTime() == null || period.getClosingDay() == null
+                    || period.getClosingTime() == null)
+                continue;
+            int start = minuteOfWeek(period.getOpeningDay(), period.getOpeningTime());
+            int end = minuteOfWeek(period.getClosingDay(), period.getClosingTime());
+            if (end <= start)
+                end += MINUTES_PER_WEEK; // overnight from saturday to sunday, or the whole week
+            raw[n++] = start;
+            raw[n++] = end;
+        }
+
+        // sort by start and merge overlapping or adjacent intervals
+        long[] sorted = new long[n / 2];
+        for (int i = 0; i < sorted.length; i++)
+            sorted[i] = (long) raw[i * 2] << 32 | raw[i * 2 + 1];
+        Arrays.sort(sorted);
+        int[] merged = new int[n];
+        int m = 0;
+        for (long interval : sorted) {
+            int start = (int) (interval >>> 32), end = (int) interval;
+            if (m > 0 && start <= merged[m - 1]) {
+                merged[m - 1] = Math.max(merged[m - 1], end);
+            } else {
+                merged[m++] = start;
+                merged[m++] = end;
+            }
+        }
+
+        // an interval that spans the end of the week may cover those at the start of the week
+        while (m > 2 && merged[m - 1] - MINUTES_PER_WEEK >= merged[0]) {
+            merged[m - 1] = Math.max(merged[m - 1], merged[1] + MINUTES_PER_WEEK);
+            System.arraycopy(merged, 2, merged, 0, m - 2);
+            m -= 2;
+        }
+        if (m > 0 && merged[m - 1] - merged[0] >= MINUTES_PER_WEEK)
+            return new int[]{0, MINUTES_PER_WEEK};
+        return Arrays.copyOf(merged, m);
+    }
+
+    private static int minuteOfWeek(Day day, String time) {
+        if (time.length() != 4)
+            throw new IllegalArgumentException("Time must be in hhmm format: " + time);
+        return minuteOfWeek(day, Integer.parseInt(time.substring(0, 2)), Integer.parseInt(time.substring(2)));
+    }
+
+    private static int minuteOfWeek(Day day, int hour, int minute) {
+        if (hour < 0 || hour > 24 || minute < 0 || minute >= 60)
+            throw new IllegalArgumentException("Invalid time: " + hour + ":" + minute);
+        return (day.ordinal() * MINUTES_PER_DAY + hour * 60 + minute) % MINUTES_PER_WEEK;
+    }
+
+    private static long localMinutes(long timeMillis, int utcOffsetMinutes) {
+        long minutes = timeMillis / 60000;
+        if (timeMillis % 60000 < 0)
+            minutes--; // round towards negative infinity
+        return minutes + utcOffsetMinutes;
+    }
+
+    private static int minuteOfWeek(long localMinutes) {
+        int minute = (int) ((localMinutes + EPOCH_MINUTE_OF_WEEK) % MINUTES_PER_WEEK);
+        return minute < 0 ? minute + MINUTES_PER_WEEK : minute;
+    }
+
     @Override
     public String toString() {
         String str = "";
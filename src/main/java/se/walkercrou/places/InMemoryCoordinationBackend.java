@@ -0,0 +1,217 @@
+package se.walkercrou.places;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link CoordinationBackend} that keeps its state in memory, for workers that run in the same JVM and for tests.
+ * This class is safe for use by multiple threads.
+ */
+public class InMemoryCoordinationBackend implements CoordinationBackend {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final State state = new State();
+
+    @Override
+    public void heartbeat(String worker, long ttlMillis) {
+        lock.lock();
+        try {
+            state.heartbeat(worker, ttlMillis, System.currentTimeMillis());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<String> getLiveWorkers() {
+        lock.lock();
+        try {
+            return state.getLiveWorkers(System.currentTimeMillis());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean tryAcquireLease(String shard, String worker, long ttlMillis) {
+        lock.lock();
+        try {
+            return state.tryAcquireLease(shard, worker, ttlMillis, System.currentTimeMillis());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void releaseLease(String shard, String worker) {
+        lock.lock();
+        try {
+            state.releaseLease(shard, worker);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String getLeaseOwner(String shard) {
+        lock.lock();
+        try {
+            return state.getLeaseOwner(shard, System.currentTimeMillis());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void complete(String shard) {
+        lock.lock();
+        try {
+            state.completed.add(shard);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isCompleted(String shard) {
+        lock.lock();
+        try {
+            return state.completed.contains(shard);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long addUsage(String quota, long amount) {
+        lock.lock();
+        try {
+            return state.addUsage(quota, amount);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getUsage(String quota) {
+        lock.lock();
+        try {
+            Long usage = state.usage.get(quota);
+            return usage != null ? usage : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The shared state of a backend. Not safe for use by multiple threads, the backends lock around it.
+     */
+    static class State {
+        private static final String WORKER = "worker.", LEASE = "lease.", COMPLETED = "completed.", USAGE = "usage.";
+
+        final Map<String, Long> workers = new HashMap<>();
+        final Map<String, Lease> leases = new HashMap<>();
+        final Set<String> completed = new HashSet<>();
+        final Map<String, Long> usage = new HashMap<>();
+
+        void heartbeat(String worker, long ttlMillis, long now) {
+            workers.put(worker, now + ttlMillis);
+        }
+
+        List<String> getLiveWorkers(long now) {
+            List<String> live = new ArrayList<>();
+            for (Iterator<Map.Entry<String, Long>> it = workers.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, Long> entry = it.next();
+                if (entry.getValue() > now)
+                    live.add(entry.getKey());
+                else
+                    it.remove();
+            }
+            Collections.sort(live);
+            return live;
+        }
+
+        boolean tryAcquireLease(String shard, String worker, long ttlMillis, long now) {
+            Lease lease = leases.get(shard);
+            if (lease != null && lease.expiresAt > now && !lease.owner.equals(worker))
+                return false;
+            leases.put(shard, new Lease(worker, now + ttlMillis));
+            return true;
+        }
+
+        void releaseLease(String shard, String worker) {
+            Lease lease = leases.get(shard);
+            if (lease != null && lease.owner.equals(worker))
+                leases.remove(shard);
+        }
+
+        String getLeaseOwner(String shard, long now) {
+            Lease lease = leases.get(shard);
+            return lease != null && lease.expiresAt > now ? lease.owner : null;
+        }
+
+        long addUsage(String quota, long amount) {
+            Long current = usage.get(quota);
+            long total = (current != null ? current : 0) + amount;
+            usage.put(quota, total);
+            return total;
+        }
+
+        /**
+         * Writes the state to the specified properties.
+         *
+         * @param properties to write to
+         */
+        void store(Properties properties) {
+            for (Map.Entry<String, Long> entry : workers.entrySet())
+                properties.setProperty(WORKER + entry.getKey(), Long.toString(entry.getValue()));
+            for (Map.Entry<String, Lease> entry : leases.entrySet()) {
+                Lease lease = entry.getValue();
+                properties.setProperty(LEASE + entry.getKey(), lease.expiresAt + " " + lease.owner);
+            }
+            for (String shard : completed)
+                properties.setProperty(COMPLETED + shard, "true");
+            for (Map.Entry<String, Long> entry : usage.entrySet())
+                properties.setProperty(USAGE + entry.getKey(), Long.toString(entry.getValue()));
+        }
+
+        /**
+         * Reads the state from the specified properties.
+         *
+         * @param properties to read from
+         */
+        void load(Properties properties) {
+            for (String name : properties.stringPropertyNames()) {
+                String value = properties.getProperty(name);
+                if (name.startsWith(WORKER)) {
+                    workers.put(name.substring(WORKER.length()), Long.parseLong(value));
+                } else if (name.startsWith(LEASE)) {
+                    int space = value.indexOf(' ');
+                    leases.put(name.substring(LEASE.length()), new Lease(value.substring(space + 1),
+                            Long.parseLong(value.substring(0, space))));
+                } else if (name.startsWith(COMPLETED)) {
+                    completed.add(name.substring(COMPLETED.length()));
+                } else if (name.startsWith(USAGE)) {
+                    usage.put(name.substring(USAGE.length()), Long.parseLong(value));
+                }
+            }
+        }
+    }
+
+    private static class Lease {
+        final String owner;
+        final long expiresAt;
+
+        Lease(String owner, long expiresAt) {
+            this.owner = owner;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
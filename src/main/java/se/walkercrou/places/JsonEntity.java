@@ -0,0 +1,63 @@
+package se.walkercrou.places;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * A request body that writes a {@link JSONObject} straight to the connection instead of building a string of it first.
+ * The body is sent chunked since its length is not known in advance.
+ */
+class JsonEntity extends AbstractHttpEntity {
+    private static final ContentType CONTENT_TYPE = ContentType.APPLICATION_JSON;
+
+    private final JSONObject json;
+
+    /**
+     * Creates a new entity.
+     *
+     * @param json to send
+     */
+    JsonEntity(JSONObject json) {
+        this.json = json;
+        setContentType(CONTENT_TYPE.toString());
+        setChunked(true);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeTo(out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, CONTENT_TYPE.getCharset());
+        json.write(writer);
+        writer.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+}
@@ -0,0 +1,361 @@
+package se.walkercrou.places;
+
+import org.apache.http.client.methods.HttpPost;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static se.walkercrou.places.GooglePlacesInterface.*;
+
+/**
+ * A {@link RequestHandler} that remembers requests that found nothing, such as searches of empty areas, details of
+ * deleted places and autocomplete prefixes without predictions, and answers them again without sending them until
+ * they expire.
+ * <pre>
+ * client.setRequestHandler(new NegativeCacheRequestHandler(client.getRequestHandler(), 100000));
+ * </pre>
+ * Responses with the status {@code ZERO_RESULTS}, {@code NOT_FOUND} or {@code INVALID_REQUEST} are cached, each with
+ * its own time to live, and replayed as a response of the same status. Requests are identified by their URI without
+ * the API key like in a {@link ReplayRequestHandler}, and requests with a page token, photos and posts are never
+ * cached. Put this handler in front of a {@link BudgetRequestHandler} so that answered requests are not charged.
+ * <p>
+ * Only a 64 bit hash of the URI, the expiry and the status of an entry are kept in primitive arrays, 17 bytes per slot
+ * with two to four slots per entry. When the cache is full, a store drops the expired entries of the next few slots of
+ * an incremental sweep, and if that frees nothing, the entry closest to expiring among a few entries after the slot of
+ * the new entry. A store never looks at more than a few dozen slots. This class is safe for use by multiple threads.
+ */
+public class NegativeCacheRequestHandler implements DelegatingRequestHandler {
+    /**
+     * The default time to live of searches and predictions that found nothing.
+     */
+    public static final long DEFAULT_ZERO_RESULTS_TTL_MILLIS = 15 * 60 * 1000;
+
+    /**
+     * The default time to live of details of places that do not exist and of invalid requests.
+     */
+    public static final long DEFAULT_NOT_FOUND_TTL_MILLIS = 60 * 60 * 1000;
+
+    private static final String[] STATUSES = {Statuses.STATUS_ZERO_RESULTS, Statuses.STATUS_NOT_FOUND,
+            Statuses.STATUS_INVALID_REQUEST};
+    // negative responses are short, longer responses are not parsed to find their status
+    private static final int MAX_NEGATIVE_LENGTH = 1024;
+    private static final int SWEEP_SLOTS = 64, EVICTION_CANDIDATES = 8;
+
+    private final RequestHandler handler;
+    private final int maxEntries;
+    private final long[] ttls = {DEFAULT_ZERO_RESULTS_TTL_MILLIS, DEFAULT_NOT_FOUND_TTL_MILLIS,
+            DEFAULT_NOT_FOUND_TTL_MILLIS};
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long[] hashes, expiries;
+    private final byte[] statuses;
+    private final int mask;
+    private int size, sweep;
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), stores = new AtomicLong(),
+            evictions = new AtomicLong(), expirations = new AtomicLong();
+
+    /**
+     * Creates a new cache in front of the specified handler.
+     *
+     * @param handler    to send requests with
+     * @param maxEntries maximum amount of requests remembered
+     */
+    public NegativeCacheRequestHandler(RequestHandler handler, int maxEntries) {
+        if (maxEntries < 1 || maxEntries > 1 << 28)
+            throw new IllegalArgumentException("Maximum entries must be between 1 and 2^28");
+        this.handler = handler;
+        this.maxEntries = maxEntries;
+        // at most half of the slots are used, which keeps probe sequences short
+        int capacity = Integer.highestOneBit(maxEntries) << 2;
+        hashes = new long[capacity];
+        expiries = new long[capacity];
+        statuses = new byte[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Sets how long responses of the specified status are remembered.
+     *
+     * @param status    {@code ZERO_RESULTS}, {@code NOT_FOUND} or {@code INVALID_REQUEST}
+     * @param ttlMillis time to live, zero to not remember the status
+     * @return this
+     */
+    public NegativeCacheRequestHandler setTtl(String status, long ttlMillis) {
+        int index = Arrays.asList(STATUSES).indexOf(status);
+        if (index < 0)
+            throw new IllegalArgumentException("Status " + status + " can not be cached");
+        lock.lock();
+        try {
+            ttls[index] = ttlMillis;
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Returns the handler requests are sent with.
+     *
+     * @return request handler
+     */
+    @Override
+    public RequestHandler getHandler() {
+        return handler;
+    }
+
+    /**
+     * Returns the amount of requests that were answered by the cache.
+     *
+     * @return amount of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the amount of cacheable requests that were sent.
+     *
+     * @return amount of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the amount of responses that were remembered.
+     *
+     * @return amount of stores
+     */
+    public long getStores() {
+        return stores.get();
+    }
+
+    /**
+     * Returns the amount of entries that were dropped to make room before they expired.
+     *
+     * @return amount of evictions
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the amount of entries that were dropped because they expired.
+     *
+     * @return amount of expirations
+     */
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    /**
+     * Returns the amount of entries, including expired entries that have not been dropped yet.
+     *
+     * @return amount of entries
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forgets the response of the specified request, for example after a place has been added to a searched area.
+     *
+     * @param uri of request
+     */
+    public void invalidate(String uri) {
+        long hash = hash(uri);
+        lock.lock();
+        try {
+            int slot = find(hash);
+            if (slot >= 0)
+                remove(slot);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forgets every response.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            Arrays.fill(hashes, 0);
+            size = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+        return handler.getCharacterEncoding();
+    }
+
+    @Override
+    public void setCharacterEncoding(String characterEncoding) {
+        handler.setCharacterEncoding(characterEncoding);
+    }
+
+    @Override
+    public InputStream getInputStream(String uri) throws IOException {
+        return handler.getInputStream(uri);
+    }
+
+    @Override
+    public String get(String uri) throws IOException {
+        if (uri.contains("pagetoken="))
+            return handler.get(uri); // page tokens are only used once
+        long hash = hash(uri);
+        String status = lookup(hash);
+        if (status != null) {
+            hits.incrementAndGet();
+            return new JSONObject().put(STRING_STATUS, status).toString();
+        }
+        misses.incrementAndGet();
+        String response = handler.get(uri);
+        if (response != null && response.length() <= MAX_NEGATIVE_LENGTH)
+            store(hash, response);
+        return response;
+    }
+
+    @Override
+    public String post(HttpPost data) throws IOException {
+        return handler.post(data);
+    }
+
+    private String lookup(long hash) {
+        lock.lock();
+        try {
+            int slot = find(hash);
+            if (slot < 0)
+                return null;
+            if (expiries[slot] <= System.currentTimeMillis()) {
+                remove(slot);
+                expirations.incrementAndGet();
+                return null;
+            }
+            return STATUSES[statuses[slot]];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void store(long hash, String response) {
+        String status;
+        try {
+            status = new JSONObject(response).optString(STRING_STATUS);
+        } catch (JSONException e) {
+            return;
+        }
+        int index = Arrays.asList(STATUSES).indexOf(status);
+        if (index < 0)
+            return;
+        lock.lock();
+        try {
+            long ttl = ttls[index];
+            if (ttl <= 0)
+                return;
+            int slot = find(hash);
+            if (slot < 0) {
+                if (size >= maxEntries)
+                    makeRoom(hash);
+                slot = (int) hash & mask;
+                while (hashes[slot] != 0)
+                    slot = (slot + 1) & mask;
+                hashes[slot] = hash;
+                size++;
+            }
+            expiries[slot] = System.currentTimeMillis() + ttl;
+            statuses[slot] = (byte) index;
+            stores.incrementAndGet();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void makeRoom(long hash) {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < SWEEP_SLOTS && i < hashes.length; i++) {
+            int slot = sweep;
+            // removing shifts a later entry into this slot, which has to be checked again
+            while (hashes[slot] != 0 && expiries[slot] <= now) {
+                remove(slot);
+                expirations.incrementAndGet();
+            }
+            sweep = (slot + 1) & mask;
+        }
+        if (size < maxEntries)
+            return;
+        // slots are picked by hash, so the entries after the slot of the new entry are random ones
+        int slot = (int) hash & mask;
+        while (hashes[slot] == 0)
+            slot = (slot + 1) & mask;
+        int victim = slot;
+        for (int i = 1; i < EVICTION_CANDIDATES; i++) {
+            slot = (slot + 1) & mask;
+            if (hashes[slot] == 0)
+                break;
+            if (expiries[slot] < expiries[victim])
+                victim = slot;
+        }
+        boolean expired = expiries[victim] <= now;
+        remove(victim);
+        (expired ? expirations : evictions).incrementAndGet();
+    }
+
+    private int find(long hash) {
+        int slot = (int) hash & mask;
+        while (hashes[slot] != 0) {
+            if (hashes[slot] == hash)
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void remove(int slot) {
+        // shifts the following entries of the probe sequence back, so that no tombstones are needed
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (hashes[next] == 0)
+                break;
+            int home = (int) hashes[next] & mask;
+            // the entry can move to the free slot if its home is not cyclically between the free slot and itself
+            if (slot <= next ? slot < home && home <= next : slot < home || home <= next)
+                continue;
+            hashes[slot] = hashes[next];
+            expiries[slot] = expiries[next];
+            statuses[slot] = statuses[next];
+            slot = next;
+        }
+        hashes[slot] = 0;
+        size--;
+    }
+
+    private static long hash(String uri) {
+        // the path and every parameter except the api key, then mixed so that the low bits pick a slot evenly
+        int query = uri.indexOf('?');
+        long hash = Hashing.fnv(Hashing.FNV_OFFSET, uri, 0, query < 0 ? uri.length() : query);
+        for (int start = query + 1; query >= 0 && start <= uri.length(); ) {
+            int end = uri.indexOf('&', start);
+            if (end < 0)
+                end = uri.length();
+            if (!uri.startsWith("key=", start))
+                hash = Hashing.fnv(hash, uri, start - 1, end);
+            start = end + 1;
+        }
+        hash = Hashing.mix(hash);
+        return hash == 0 ? 1 : hash;
+    }
+}
@@ -0,0 +1,571 @@
+package se.walkercrou.places;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps places outside of the garbage collected heap. The fields of a place are serialized into direct byte buffers
+ * and indexed by place id in an open addressing hash table that is off the heap as well, so even tens of millions of
+ * places add almost nothing to the work of the garbage collector.
+ * <pre>
+ * OffHeapPlaceStore store = new OffHeapPlaceStore();
+ * store.put(place);
+ * OffHeapPlaceStore.PlaceView view = new OffHeapPlaceStore.PlaceView();
+ * if (store.get(placeId, view))
+ *     System.out.println(view.getName());
+ * </pre>
+ * Places are returned as read-only {@link PlaceView}s that decode a field when it is accessed. A view can be
+ * repositioned to another place, so a scan over many places needs a single view. Only the information of a place that
+ * is not nested is stored: the photos, reviews, address components, hours and JSON of a place are not.
+ * <p>
+ * Putting a place with an id that is already stored replaces it, the space of the replaced place is not reused. The
+ * index is a single buffer, which limits a store to {@link #MAX_PLACES} places. This class is safe for use by multiple
+ * threads.
+ * <p>
+ * Direct memory is returned to the JVM when its buffers are garbage collected. {@link #close()} drops the buffers of the
+ * store so that they can be collected even while the store itself is still referenced; views that are still positioned
+ * keep the segment of their place.
+ */
+public class OffHeapPlaceStore implements Closeable {
+    /**
+     * The default size of a single segment of places in bytes.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Price[] prices = Price.values();
+    private static final Status[] statuses = Status.values();
+
+    // record layout: length, lat, lng, rating, utc offset, price, status, type count, offsets of strings, types, strings
+    private static final int LAT = 4, LNG = 12, RATING = 20, UTC_OFFSET = 28, PRICE = 32, STATUS = 33, TYPES = 34,
+            STRINGS = 36;
+    private static final int PLACE_ID = 0, NAME = 1, ADDRESS = 2, VICINITY = 3, ICON = 4, PHONE = 5,
+            INTERNATIONAL_PHONE = 6, WEBSITE = 7, GOOGLE_URL = 8, STRING_COUNT = 9;
+    private static final int TYPE_IDS = STRINGS + STRING_COUNT * 4;
+
+    // index slot layout: address of record + 1 (0 if empty), hash of place id
+    private static final int SLOT_SIZE = 12;
+    // the most slots whose bytes can be addressed by the int index of a single buffer
+    private static final int MAX_SLOTS = Integer.highestOneBit(Integer.MAX_VALUE / SLOT_SIZE);
+
+    /**
+     * The maximum amount of places a store can hold.
+     */
+    public static final int MAX_PLACES = MAX_SLOTS / 2;
+
+    private final int segmentSize;
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private ByteBuffer index;
+    private int slots, size;
+    private int position;
+    private long garbage;
+    private boolean closed;
+
+    /**
+     * Creates a new store.
+     *
+     * @param segmentSize    size of a single segment of places in bytes, a single place must fit in a segment
+     * @param expectedPlaces amount of places the index is initially sized for, at most {@link #MAX_PLACES}
+     */
+    public OffHeapPlaceStore(int segmentSize, int expectedPlaces) {
+        if (segmentSize < 1024)
+            throw new IllegalArgumentException("Segment size must be at least 1024 bytes");
+        if (expectedPlaces < 0 || expectedPlaces > MAX_PLACES)
+            throw new IllegalArgumentException("Expected places must be between 0 and " + MAX_PLACES);
+        this.segmentSize = segmentSize;
+        this.slots = (int) Math.min(MAX_SLOTS, Long.highestOneBit(Math.max(16, expectedPlaces * 2L - 1)) << 1);
+        this.index = ByteBuffer.allocateDirect(slots * SLOT_SIZE);
+        this.position = segmentSize; // the first put allocates the first segment
+    }
+
+    /**
+     * Creates a new store with the default segment size.
+     */
+    public OffHeapPlaceStore() {
+        this(DEFAULT_SEGMENT_SIZE, 1024);
+    }
+
+    private static int hash(String placeId) {
+        int h = placeId.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Stores the specified place, replacing any place with the same id.
+     *
+     * @param place to store
+     * @return true if no place with the same id was stored
+     * @throws IllegalStateException if the store holds {@link #MAX_PLACES} places already or has been closed
+     */
+    public boolean put(Place place) {
+        String placeId = place.getPlaceId();
+        if (placeId == null)
+            throw new IllegalArgumentException("Place must have an id");
+        byte[][] strings = {bytes(placeId), bytes(place.getName()), bytes(place.getAddress()),
+                bytes(place.getVicinity()), bytes(place.getIconUrl()), bytes(place.getPhoneNumber()),
+                bytes(place.getInternationalPhoneNumber()), bytes(place.getWebsite()), bytes(place.getGoogleUrl())};
+        TypeSet types = place.getTypeSet();
+        byte[][] unknownTypes = new byte[types.size()][];
+        int length = TYPE_IDS + types.size() * 2;
+        for (byte[] string : strings)
+            length += string == null ? 0 : string.length;
+        for (int i = 0; i < types.size(); i++) {
+            if (TypeRegistry.idOf(types.get(i)) < 0) {
+                unknownTypes[i] = bytes(types.get(i));
+                length += unknownTypes[i].length;
+            }
+        }
+        if (length > segmentSize)
+            throw new IllegalArgumentException("Place does not fit in a segment: " + length + " bytes");
+
+        int hash = hash(placeId);
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            int slot = find(placeId, hash);
+            long previous = index.getLong(slot * SLOT_SIZE);
+            if (previous == 0 && size >= MAX_PLACES)
+                throw new IllegalStateException("Store is full: " + size + " places");
+            if ((long) position + length > segmentSize) {
+                segments.add(ByteBuffer.allocateDirect(segmentSize));
+                position = 0;
+            }
+            ByteBuffer segment = segments.get(segments.size() - 1);
+            int offset = position;
+            segment.putInt(offset, length);
+            segment.putDouble(offset + LAT, place.getLatitude());
+            segment.putDouble(offset + LNG, place.getLongitude());
+            segment.putDouble(offset + RATING, place.getRating());
+            segment.putInt(offset + UTC_OFFSET, place.getUtcOffset());
+            segment.put(offset + PRICE, (byte) (place.getPrice() == null ? Price.NONE : place.getPrice()).ordinal());
+            segment.put(offset + STATUS, (byte) (place.getStatus() == null ? Status.NONE : place.getStatus()).ordinal());
+            segment.putShort(offset + TYPES, (short) types.size());
+
+            int p = offset + TYPE_IDS;
+            for (int i = 0; i < types.size(); i++) {
+                if (unknownTypes[i] == null) {
+                    segment.putShort(p, (short) TypeRegistry.idOf(types.get(i)));
+                    p += 2;
+                } else {
+                    segment.putShort(p, (short) (-1 - unknownTypes[i].length));
+                    p = put(segment, p + 2, unknownTypes[i]);
+                }
+            }
+            for (int i = 0; i < STRING_COUNT; i++) {
+                byte[] string = strings[i];
+                segment.putInt(offset + STRINGS + i * 4, string == null ? -1 : p - offset);
+                if (string != null)
+                    p = put(segment, p, string);
+            }
+            // strings are delimited by the offset of the next string or the end of the record
+            position = offset + length;
+
+            long address = (long) (segments.size() - 1) * segmentSize + offset;
+            index.putLong(slot * SLOT_SIZE, address + 1);
+            index.putInt(slot * SLOT_SIZE + 8, hash);
+            if (previous != 0) {
+                garbage += segments.get(segment(previous - 1)).getInt(offset(previous - 1));
+                return false;
+            }
+            if (++size * 2 > slots && slots < MAX_SLOTS)
+                resize();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("Store has been closed");
+    }
+
+    private static byte[] bytes(String s) {
+        return s == null ? null : s.getBytes(UTF_8);
+    }
+
+    private static int put(ByteBuffer segment, int p, byte[] bytes) {
+        ByteBuffer b = segment.duplicate();
+        b.position(p);
+        b.put(bytes);
+        return p + bytes.length;
+    }
+
+    private int segment(long address) {
+        return (int) (address / segmentSize);
+    }
+
+    private int offset(long address) {
+        return (int) (address % segmentSize);
+    }
+
+    // returns the slot of the place id, or the empty slot it would be put in
+    private int find(String placeId, int hash) {
+        int mask = slots - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            long address = index.getLong(slot * SLOT_SIZE);
+            if (address == 0)
+                return slot;
+            if (index.getInt(slot * SLOT_SIZE + 8) == hash && placeId.equals(
+                    readString(segments.get(segment(address - 1)), offset(address - 1), PLACE_ID)))
+                return slot;
+        }
+    }
+
+    private void resize() {
+        ByteBuffer old = index;
+        int oldSlots = slots;
+        slots *= 2;
+        index = ByteBuffer.allocateDirect(slots * SLOT_SIZE);
+        int mask = slots - 1;
+        for (int i = 0; i < oldSlots; i++) {
+            long address = old.getLong(i * SLOT_SIZE);
+            if (address == 0)
+                continue;
+            int hash = old.getInt(i * SLOT_SIZE + 8);
+            int slot = hash & mask;
+            while (index.getLong(slot * SLOT_SIZE) != 0)
+                slot = (slot + 1) & mask;
+            index.putLong(slot * SLOT_SIZE, address);
+            index.putInt(slot * SLOT_SIZE + 8, hash);
+        }
+    }
+
+    /**
+     * Positions the specified view at the place with the specified id.
+     *
+     * @param placeId of place
+     * @param view    to position
+     * @return true if the place is stored, the view is left untouched if not
+     */
+    public boolean get(String placeId, PlaceView view) {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            int slot = find(placeId, hash(placeId));
+            long address = index.getLong(slot * SLOT_SIZE);
+            if (address == 0)
+                return false;
+            view.segment = segments.get(segment(address - 1));
+            view.offset = offset(address - 1);
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a new view of the place with the specified id, or null if it is not stored.
+     *
+     * @param placeId of place
+     * @return view of place
+     */
+    public PlaceView get(String placeId) {
+        PlaceView view = new PlaceView();
+        return get(placeId, view) ? view : null;
+    }
+
+    /**
+     * Returns true if a place with the specified id is stored.
+     *
+     * @param placeId of place
+     * @return true if stored
+     */
+    public boolean contains(String placeId) {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            return index.getLong(find(placeId, hash(placeId)) * SLOT_SIZE) != 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the amount of stored places.
+     *
+     * @return amount of places
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the amount of bytes of direct memory allocated by this store, including the index.
+     *
+     * @return allocated bytes
+     */
+    public long getAllocatedBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) segments.size() * segmentSize + (long) slots * SLOT_SIZE;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the amount of bytes taken up by places that have been replaced.
+     *
+     * @return garbage bytes
+     */
+    public long getGarbageBytes() {
+        lock.readLock().lock();
+        try {
+            return garbage;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Closes the store and drops its buffers, so that their direct memory is released when they are garbage collected.
+     * The store can not be used afterwards.
+     */
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            closed = true;
+            segments.clear();
+            index = null;
+            slots = 0;
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static String readString(ByteBuffer segment, int offset, int field) {
+        int start = segment.getInt(offset + STRINGS + field * 4);
+        if (start < 0)
+            return null;
+        int end = segment.getInt(offset);
+        for (int next = field + 1; next < STRING_COUNT; next++) {
+            int nextStart = segment.getInt(offset + STRINGS + next * 4);
+            if (nextStart >= 0) {
+                end = nextStart;
+                break;
+            }
+        }
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = segment.get(offset + start + i);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * A read-only view of a stored place. A view is positioned by {@link #get(String, PlaceView)} and decodes the
+     * fields of the place as they are accessed. A view may not be shared between threads.
+     */
+    public static class PlaceView {
+        private ByteBuffer segment;
+        private int offset;
+
+        private String string(int field) {
+            if (segment == null)
+                throw new IllegalStateException("View has not been positioned");
+            return readString(segment, offset, field);
+        }
+
+        /**
+         * Returns the unique identifier of the place.
+         *
+         * @return place id
+         */
+        public String getPlaceId() {
+            return string(PLACE_ID);
+        }
+
+        /**
+         * Returns the name of the place.
+         *
+         * @return name
+         */
+        public String getName() {
+            return string(NAME);
+        }
+
+        /**
+         * Returns the address of the place.
+         *
+         * @return address
+         */
+        public String getAddress() {
+            return string(ADDRESS);
+        }
+
+        /**
+         * Returns the vicinity of the place.
+         *
+         * @return vicinity
+         */
+        public String getVicinity() {
+            return string(VICINITY);
+        }
+
+        /**
+         * Returns the url of the icon of the place.
+         *
+         * @return icon url
+         */
+        public String getIconUrl() {
+            return string(ICON);
+        }
+
+        /**
+         * Returns the phone number of the place.
+         *
+         * @return phone number
+         */
+        public String getPhoneNumber() {
+            return string(PHONE);
+        }
+
+        /**
+         * Returns the international phone number of the place.
+         *
+         * @return international phone number
+         */
+        public String getInternationalPhoneNumber() {
+            return string(INTERNATIONAL_PHONE);
+        }
+
+        /**
+         * Returns the website of the place.
+         *
+         * @return website
+         */
+        public String getWebsite() {
+            return string(WEBSITE);
+        }
+
+        /**
+         * Returns the Google Plus page of the place.
+         *
+         * @return google url
+         */
+        public String getGoogleUrl() {
+            return string(GOOGLE_URL);
+        }
+
+        /**
+         * Returns the latitude of the place.
+         *
+         * @return latitude
+         */
+        public double getLatitude() {
+            return segment.getDouble(offset + LAT);
+        }
+
+        /**
+         * Returns the longitude of the place.
+         *
+         * @return longitude
+         */
+        public double getLongitude() {
+            return segment.getDouble(offset + LNG);
+        }
+
+        /**
+         * Returns the rating of the place, or -1 if it has not been rated.
+         *
+         * @return rating
+         */
+        public double getRating() {
+            return segment.getDouble(offset + RATING);
+        }
+
+        /**
+         * Returns the offset of the time zone of the place from UTC in minutes.
+         *
+         * @return utc offset
+         */
+        public int getUtcOffset() {
+            return segment.getInt(offset + UTC_OFFSET);
+        }
+
+        /**
+         * Returns the price of the place.
+         *
+         * @return price
+         */
+        public Price getPrice() {
+            return prices[segment.get(offset + PRICE)];
+        }
+
+        /**
+         * Returns the status of the place.
+         *
+         * @return status
+         */
+        public Status getStatus() {
+            return statuses[segment.get(offset + STATUS)];
+        }
+
+        /**
+         * Returns the types of the place.
+         *
+         * @return types
+         */
+        public TypeSet getTypes() {
+            int count = segment.getShort(offset + TYPES);
+            if (count == 0)
+                return TypeSet.EMPTY;
+            List<String> types = new ArrayList<>(count);
+            int p = offset + TYPE_IDS;
+            for (int i = 0; i < count; i++) {
+                short id = segment.getShort(p);
+                p += 2;
+                if (id >= 0) {
+                    types.add(TypeRegistry.nameOf(id));
+                } else {
+                    byte[] bytes = new byte[-1 - id];
+                    for (int b = 0; b < bytes.length; b++)
+                        bytes[b] = segment.get(p + b);
+                    p += bytes.length;
+                    types.add(new String(bytes, UTF_8));
+                }
+            }
+            return TypeSet.of(types);
+        }
+
+        /**
+         * Returns true if the place has the specified type.
+         *
+         * @param type to check
+         * @return true if the place has the type
+         */
+        public boolean hasType(String type) {
+            return getTypes().contains(type);
+        }
+
+        /**
+         * Returns a new place of the stored information. The place has no client.
+         *
+         * @return new place
+         */
+        public Place toPlace() {
+            return new Place().setPlaceId(getPlaceId()).setName(getName()).setAddress(getAddress())
+                    .setVicinity(getVicinity()).setIconUrl(getIconUrl()).setPhoneNumber(getPhoneNumber())
+                    .setInternationalPhoneNumber(getInternationalPhoneNumber()).setWebsite(getWebsite())
+                    .setGoogleUrl(getGoogleUrl()).setLatitude(getLatitude()).setLongitude(getLongitude())
+                    .setRating(getRating()).setUtcOffset(getUtcOffset()).setPrice(getPrice()).setStatus(getStatus())
+                    .addTypes(getTypes().asList());
+        }
+    }
+}
@@ -31,4 +31,13 @@ public class Param {
         this.value = value.toString();
         return this;
     }
+
+    /**
+     * Returns true if the param is appended to the url of a request.
+     *
+     * @return true if sent
+     */
+    boolean isSent() {
+        return true;
+    }
 }
@@ -1,6 +1,7 @@
 package se.walkercrou.places;
 
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 import se.walkercrou.places.exception.GooglePlacesException;
 
@@ -18,15 +19,17 @@ import static se.walkercrou.places.GooglePlaces.*;
  * Represents a place returned by Google Places API_
  */
 public class Place {
-    private final List<String> types = new ArrayList<>();
-    private final List<Photo> photos = new ArrayList<>();
-    private final List<Review> reviews = new ArrayList<>();
-    private final List<AddressComponent> addressComponents = new ArrayList<>();
-    private final List<AltId> altIds = new ArrayList<>();
+    // decoded from the json on first access, see parseTypes() and the other section parsers, unless set before
+    private volatile TypeSet types;
+    private volatile List<Photo> photos;
+    private volatile List<Review> reviews;
+    private volatile List<AddressComponent> addressComponents;
+    private volatile List<AltId> altIds;
+    private FieldsParam fields;
     private GooglePlaces client;
     private String placeId;
     private Scope scope;
-    private double lat = -1, lng = -1;
+    private double lat = Double.NaN, lng = Double.NaN;
     private JSONObject json;
     private String iconUrl;
     private InputStream icon;
@@ -39,7 +42,7 @@ public class Place {
     private String phone, internationalPhone;
     private String googleUrl, website;
     private Hours hours;
-    private int utcOffset;
+    private int utcOffset = -1;
     private int accuracy;
     private String lang;
 
@@ -54,12 +57,32 @@ public class Place {
      * @return a detailed place
      */
     public static Place parseDetails(GooglePlaces client, String rawJson) {
+        return parseDetails(client, rawJson, null);
+    }
+
+    /**
+     * Parses a detailed Place object, only building the sections of the place that are included in the specified
+     * fields.
+     *
+     * @param client  api client
+     * @param rawJson json to parse
+     * @param fields  to parse, or null to parse every field
+     * @return a detailed place
+     */
+    public static Place parseDetails(GooglePlaces client, String rawJson, FieldsParam fields) {
         JSONObject json = new JSONObject(rawJson);
 
+        // a failed request has no result, statuses without an exception of their own such as NOT_FOUND are thrown as is
+        String statusCode = json.optString(STRING_STATUS, STATUS_OK);
+        if (!statusCode.equals(STATUS_OK)) {
+            checkStatus(statusCode, json.optString(STRING_ERROR_MESSAGE));
+            throw new GooglePlacesException(statusCode, json.optString(STRING_ERROR_MESSAGE, null));
+        }
+
         JSONObject result = json.getJSONObject(OBJECT_RESULT);
 
         // easy stuff
-        String name = result.getString(STRING_NAME);
+        String name = result.optString(STRING_NAME, null);
         String id = result.getString(STRING_PLACE_ID);
         String address = result.optString(STRING_ADDRESS, null);
         String phone = result.optString(STRING_PHONE_NUMBER, null);
@@ -70,7 +93,7 @@ public class Place {
         String vicinity = result.optString(STRING_VICINITY, null);
         String website = result.optString(STRING_WEBSITE, null);
         int utcOffset = result.optInt(INTEGER_UTC_OFFSET, -1);
-        String scopeName = result.optString(STRING_SCOPE);
+        String scopeName = result.optString(STRING_SCOPE, null);
         Scope scope = scopeName == null ? null : Scope.valueOf(scopeName);
 
         // grab the price rank
@@ -78,9 +101,13 @@ public class Place {
         if (result.has(INTEGER_PRICE_LEVEL))
             price = Price.values()[result.getInt(INTEGER_PRICE_LEVEL)];
 
-        // location
-        JSONObject location = result.getJSONObject(OBJECT_GEOMETRY).getJSONObject(OBJECT_LOCATION);
-        double lat = location.getDouble(DOUBLE_LATITUDE), lng = location.getDouble(DOUBLE_LONGITUDE);
+        // location, left as NaN if it was not requested since any other value is a valid coordinate
+        double lat = Double.NaN, lng = Double.NaN;
+        if (FieldsParam.includes(fields, PlaceField.LOCATION)) {
+            JSONObject location = result.getJSONObject(OBJECT_GEOMETRY).getJSONObject(OBJECT_LOCATION);
+            lat = location.getDouble(DOUBLE_LATITUDE);
+            lng = location.getDouble(DOUBLE_LONGITUDE);
+        }
 
         // hours of operation
         JSONObject hours = result.optJSONObject(OBJECT_HOURS);
@@ -91,7 +118,8 @@ public class Place {
             status = statusDefined && hours.getBoolean(BOOLEAN_OPENED) ? Status.OPENED : Status.CLOSED;
 
             // periods of operation
-            JSONArray jsonPeriods = hours.optJSONArray(ARRAY_PERIODS);
+            JSONArray jsonPeriods = FieldsParam.includes(fields, PlaceField.HOURS) ? hours.optJSONArray(ARRAY_PERIODS)
+                    : null;
             if (jsonPeriods != null) {
                 for (int i = 0; i < jsonPeriods.length(); i++) {
                     JSONObject jsonPeriod = jsonPeriods.getJSONObject(i);
@@ -120,108 +148,141 @@ public class Place {
             }
         }
 
-        Place place = new Place();
-
-        // photos
-        JSONArray jsonPhotos = result.optJSONArray(ARRAY_PHOTOS);
-        List<Photo> photos = new ArrayList<>();
-        if (jsonPhotos != null) {
-            for (int i = 0; i < jsonPhotos.length(); i++) {
-                JSONObject jsonPhoto = jsonPhotos.getJSONObject(i);
-                String photoReference = jsonPhoto.getString(STRING_PHOTO_REFERENCE);
-                int width = jsonPhoto.getInt(INTEGER_WIDTH), height = jsonPhoto.getInt(INTEGER_HEIGHT);
-                photos.add(new Photo(place, photoReference, width, height));
-            }
-        }
+        // photos, address components, types, reviews and alt-ids are decoded from the json on first access
+        return new Place().setPlaceId(id).setClient(client).setName(name).setAddress(address).setIconUrl(iconUrl)
+                .setPrice(price).setLatitude(lat).setLongitude(lng).setRating(rating).setStatus(status)
+                .setVicinity(vicinity).setPhoneNumber(phone).setInternationalPhoneNumber(internationalPhone)
+                .setGoogleUrl(url).setWebsite(website).setHours(schedule).setUtcOffset(utcOffset).setScope(scope)
+                .setFields(fields).setJson(result);
+    }
 
+    private JSONArray section(PlaceField field, String key) {
+        JSONObject json = this.json;
+        return json != null && FieldsParam.includes(fields, field) ? json.optJSONArray(key) : null;
+    }
 
-        // address components
-        JSONArray addrComponents = result.optJSONArray(ARRAY_ADDRESS_COMPONENTS);
-        List<AddressComponent> addressComponents = new ArrayList<>();
-        if (addrComponents != null) {
-            for (int i = 0; i < addrComponents.length(); i++) {
-                JSONObject ac = addrComponents.getJSONObject(i);
-                AddressComponent addr = new AddressComponent();
+    private List<Photo> parsePhotos() {
+        JSONArray jsonPhotos = section(PlaceField.PHOTOS, ARRAY_PHOTOS);
+        if (jsonPhotos == null)
+            return Collections.emptyList();
+        List<Photo> photos = new ArrayList<>(jsonPhotos.length());
+        for (int i = 0; i < jsonPhotos.length(); i++) {
+            JSONObject jsonPhoto = jsonPhotos.getJSONObject(i);
+            String photoReference = jsonPhoto.getString(STRING_PHOTO_REFERENCE);
+            int width = jsonPhoto.getInt(INTEGER_WIDTH), height = jsonPhoto.getInt(INTEGER_HEIGHT);
+            photos.add(new Photo(this, photoReference, width, height));
+        }
+        return Collections.unmodifiableList(photos);
+    }
 
-                String longName = ac.optString(STRING_LONG_NAME, null);
-                String shortName = ac.optString(STRING_SHORT_NAME, null);
+    private List<AddressComponent> parseAddressComponents() {
+        JSONArray addrComponents = section(PlaceField.ADDRESS_COMPONENTS, ARRAY_ADDRESS_COMPONENTS);
+        if (addrComponents == null)
+            return Collections.emptyList();
+        List<AddressComponent> addressComponents = new ArrayList<>(addrComponents.length());
+        for (int i = 0; i < addrComponents.length(); i++) {
+            JSONObject ac = addrComponents.getJSONObject(i);
+            AddressComponent addr = new AddressComponent();
 
-                addr.setLongName(longName);
-                addr.setShortName(shortName);
+            String longName = ac.optString(STRING_LONG_NAME, null);
+            String shortName = ac.optString(STRING_SHORT_NAME, null);
 
-                // address components have types too
-                JSONArray types = ac.optJSONArray(ARRAY_TYPES);
-                if (types != null) {
-                    for (int a = 0; a < types.length(); a++) {
-                        addr.addType(types.getString(a));
-                    }
-                }
+            addr.setLongName(longName);
+            addr.setShortName(shortName);
 
-                addressComponents.add(addr);
+            // address components have types too
+            JSONArray jsonTypes = ac.optJSONArray(ARRAY_TYPES);
+            if (jsonTypes != null) {
+                List<String> types = new ArrayList<>(jsonTypes.length());
+                for (int a = 0; a < jsonTypes.length(); a++) {
+                    types.add(jsonTypes.getString(a));
+                }
+                addr.addTypes(types);
             }
-        }
 
-        // types
-        JSONArray jsonTypes = result.optJSONArray(ARRAY_TYPES);
-        List<String> types = new ArrayList<>();
-        if (jsonTypes != null) {
-            for (int i = 0; i < jsonTypes.length(); i++) {
-                types.add(jsonTypes.getString(i));
-            }
+            addressComponents.add(addr);
         }
+        return Collections.unmodifiableList(addressComponents);
+    }
 
-        // reviews
-        JSONArray jsonReviews = result.optJSONArray(ARRAY_REVIEWS);
-        List<Review> reviews = new ArrayList<>();
-        if (jsonReviews != null) {
-            for (int i = 0; i < jsonReviews.length(); i++) {
-                JSONObject jsonReview = jsonReviews.getJSONObject(i);
-
-                String author = jsonReview.optString(STRING_AUTHOR_NAME, null);
-                String authorUrl = jsonReview.optString(STRING_AUTHOR_URL, null);
-                String lang = jsonReview.optString(STRING_LANGUAGE, null);
-                int reviewRating = jsonReview.optInt(INTEGER_RATING, -1);
-                String text = jsonReview.optString(STRING_TEXT, null);
-                long time = jsonReview.optLong(LONG_TIME, -1);
-
-                // aspects of the review
-                JSONArray jsonAspects = jsonReview.optJSONArray(ARRAY_ASPECTS);
-                List<Review.Aspect> aspects = new ArrayList<>();
-                if (jsonAspects != null) {
-                    for (int a = 0; a < jsonAspects.length(); a++) {
-                        JSONObject jsonAspect = jsonAspects.getJSONObject(a);
-                        String aspectType = jsonAspect.getString(STRING_TYPE);
-                        int aspectRating = jsonAspect.getInt(INTEGER_RATING);
-                        aspects.add(new Review.Aspect(aspectRating, aspectType));
-                    }
-                }
+    private TypeSet parseTypes() {
+        return parseTypes(section(PlaceField.TYPES, ARRAY_TYPES));
+    }
 
-                reviews.add(new Review().addAspects(aspects).setAuthor(author).setAuthorUrl(authorUrl).setLanguage(lang)
-                        .setRating(reviewRating).setText(text).setTime(time));
+    static TypeSet parseTypes(JSONArray jsonTypes) {
+        if (jsonTypes == null)
+            return TypeSet.EMPTY;
+        List<String> types = new ArrayList<>(jsonTypes.length());
+        for (int i = 0; i < jsonTypes.length(); i++) {
+            types.add(jsonTypes.getString(i));
+        }
+        return TypeSet.of(types);
+    }
+
+    private List<Review> parseReviews() {
+        JSONArray jsonReviews = section(PlaceField.REVIEWS, ARRAY_REVIEWS);
+        if (jsonReviews == null)
+            return Collections.emptyList();
+        List<Review> reviews = new ArrayList<>(jsonReviews.length());
+        for (int i = 0; i < jsonReviews.length(); i++) {
+            JSONObject jsonReview = jsonReviews.getJSONObject(i);
+
+            String author = jsonReview.optString(STRING_AUTHOR_NAME, null);
+            String authorUrl = jsonReview.optString(STRING_AUTHOR_URL, null);
+            String lang = jsonReview.optString(STRING_LANGUAGE, null);
+            int reviewRating = jsonReview.optInt(INTEGER_RATING, -1);
+            String text = jsonReview.optString(STRING_TEXT, null);
+            long time = jsonReview.optLong(LONG_TIME, -1);
+
+            // aspects of the review
+            JSONArray jsonAspects = jsonReview.optJSONArray(ARRAY_ASPECTS);
+            List<Review.Aspect> aspects = new ArrayList<>();
+            if (jsonAspects != null) {
+                for (int a = 0; a < jsonAspects.length(); a++) {
+                    JSONObject jsonAspect = jsonAspects.getJSONObject(a);
+                    String aspectType = jsonAspect.getString(STRING_TYPE);
+                    int aspectRating = jsonAspect.getInt(INTEGER_RATING);
+                    aspects.add(new Review.Aspect(aspectRating, aspectType));
+                }
             }
+
+            reviews.add(new Review().addAspects(aspects).setAuthor(author).setAuthorUrl(authorUrl).setLanguage(lang)
+                    .setRating(reviewRating).setText(text).setTime(time));
         }
+        return Collections.unmodifiableList(reviews);
+    }
 
-        // alt-ids
-        JSONArray jsonAltIds = result.optJSONArray(ARRAY_ALT_IDS);
-        List<AltId> altIds = new ArrayList<>();
-        if (jsonAltIds != null) {
-            for (int i = 0; i < jsonAltIds.length(); i++) {
-                JSONObject jsonAltId = jsonAltIds.getJSONObject(i);
+    private List<AltId> parseAltIds() {
+        JSONArray jsonAltIds = section(PlaceField.ALT_IDS, ARRAY_ALT_IDS);
+        if (jsonAltIds == null)
+            return Collections.emptyList();
+        List<AltId> altIds = new ArrayList<>(jsonAltIds.length());
+        for (int i = 0; i < jsonAltIds.length(); i++) {
+            JSONObject jsonAltId = jsonAltIds.getJSONObject(i);
 
-                String placeId = jsonAltId.getString(STRING_PLACE_ID);
-                String sn = jsonAltId.getString(STRING_SCOPE);
-                Scope s = sn == null ? null : Scope.valueOf(sn);
+            String placeId = jsonAltId.getString(STRING_PLACE_ID);
+            String sn = jsonAltId.getString(STRING_SCOPE);
+            Scope s = sn == null ? null : Scope.valueOf(sn);
 
-                altIds.add(new AltId(client, placeId, s));
-            }
+            altIds.add(new AltId(client, placeId, s));
         }
+        return Collections.unmodifiableList(altIds);
+    }
 
-        return place.setPlaceId(id).setClient(client).setName(name).setAddress(address).setIconUrl(iconUrl).setPrice(price)
-                .setLatitude(lat).setLongitude(lng).addTypes(types).setRating(rating).setStatus(status)
-                .setVicinity(vicinity).setPhoneNumber(phone).setInternationalPhoneNumber(internationalPhone)
-                .setGoogleUrl(url).setWebsite(website).addPhotos(photos).addAddressComponents(addressComponents)
-                .setHours(schedule).addReviews(reviews).setUtcOffset(utcOffset).setScope(scope).addAltIds(altIds)
-                .setJson(result);
+    private GooglePlacesException malformed(String section, RuntimeException e) {
+        // thrown from a getter long after the response was parsed, so say which place and section it was
+        GooglePlacesException malformed = new GooglePlacesException("Malformed " + section + " of place " + placeId);
+        malformed.initCause(e);
+        return malformed;
+    }
+
+    private static <T> List<T> append(List<T> list, Collection<T> c) {
+        if (c.isEmpty())
+            return list;
+        List<T> appended = new ArrayList<>(list.size() + c.size());
+        appended.addAll(list);
+        appended.addAll(c);
+        return Collections.unmodifiableList(appended);
     }
 
     /**
@@ -265,7 +326,7 @@ public class Place {
     }
 
     /**
-     * Returns the latitude of the place.
+     * Returns the latitude of the place, or {@link Double#NaN} if the location was not requested.
      *
      * @return place latitude
      */
@@ -285,7 +346,7 @@ public class Place {
     }
 
     /**
-     * Returns the longitude of this place.
+     * Returns the longitude of this place, or {@link Double#NaN} if the location was not requested.
      *
      * @return longitude
      */
@@ -305,18 +366,18 @@ public class Place {
     }
 
     /**
-     * Returns the amount of seconds this place is off from the UTC timezone.
+     * Returns the amount of minutes this place is off from the UTC timezone, or -1 if it is unknown.
      *
-     * @return seconds from timezone
+     * @return minutes from timezone
      */
     public int getUtcOffset() {
         return utcOffset;
     }
 
     /**
-     * Sets the amount of seconds this place is off from the UTC timezone.
+     * Sets the amount of minutes this place is off from the UTC timezone.
      *
-     * @param utcOffset in seconds
+     * @param utcOffset in minutes
      * @return this
      */
     protected Place setUtcOffset(int utcOffset) {
@@ -333,6 +394,17 @@ public class Place {
         return hours;
     }
 
+    /**
+     * Returns true if this place is opened at the specified time, according to its hours of operation and
+     * {@link #getUtcOffset() UTC offset}.
+     *
+     * @param timeMillis milliseconds since the epoch
+     * @return true if opened, false if closed or the hours of operation or UTC offset are unknown
+     */
+    public boolean isOpenAt(long timeMillis) {
+        return hours != null && utcOffset != -1 && hours.isOpenAt(timeMillis, utcOffset);
+    }
+
     /**
      * Sets the {@link se.walkercrou.places.Hours} of this place.
      *
@@ -552,7 +624,7 @@ public class Place {
      * @return this
      */
     protected Place addAddressComponents(Collection<AddressComponent> c) {
-        this.addressComponents.addAll(c);
+        this.addressComponents = append(getAddressComponents(), c);
         return this;
     }
 
@@ -560,9 +632,18 @@ public class Place {
      * Returns the address components for this place.
      *
      * @return address components
+     * @throws GooglePlacesException if the address components in the JSON of this place are malformed
      */
     public List<AddressComponent> getAddressComponents() {
-        return Collections.unmodifiableList(addressComponents);
+        List<AddressComponent> addressComponents = this.addressComponents;
+        if (addressComponents == null) {
+            try {
+                this.addressComponents = addressComponents = parseAddressComponents();
+            } catch (JSONException | IllegalArgumentException e) {
+                throw malformed(ARRAY_ADDRESS_COMPONENTS, e);
+            }
+        }
+        return addressComponents;
     }
 
     /**
@@ -572,7 +653,7 @@ public class Place {
      * @return this
      */
     protected Place addPhotos(Collection<Photo> photos) {
-        this.photos.addAll(photos);
+        this.photos = append(getPhotos(), photos);
         return this;
     }
 
@@ -580,9 +661,18 @@ public class Place {
      * Returns the photo references for this place.
      *
      * @return photos
+     * @throws GooglePlacesException if the photos in the JSON of this place are malformed
      */
     public List<Photo> getPhotos() {
-        return Collections.unmodifiableList(photos);
+        List<Photo> photos = this.photos;
+        if (photos == null) {
+            try {
+                this.photos = photos = parsePhotos();
+            } catch (JSONException | IllegalArgumentException e) {
+                throw malformed(ARRAY_PHOTOS, e);
+            }
+        }
+        return photos;
     }
 
     /**
@@ -592,7 +682,7 @@ public class Place {
      * @return this
      */
     protected Place addReviews(Collection<Review> reviews) {
-        this.reviews.addAll(reviews);
+        this.reviews = append(getReviews(), reviews);
         return this;
     }
 
@@ -600,9 +690,18 @@ public class Place {
      * Returns this place's reviews in an unmodifiable list.
      *
      * @return reviews
+     * @throws GooglePlacesException if the reviews in the JSON of this place are malformed
      */
     public List<Review> getReviews() {
-        return Collections.unmodifiableList(reviews);
+        List<Review> reviews = this.reviews;
+        if (reviews == null) {
+            try {
+                this.reviews = reviews = parseReviews();
+            } catch (JSONException | IllegalArgumentException e) {
+                throw malformed(ARRAY_REVIEWS, e);
+            }
+        }
+        return reviews;
     }
 
     /**
@@ -612,7 +711,7 @@ public class Place {
      * @return this
      */
     protected Place addTypes(Collection<String> types) {
-        this.types.addAll(types);
+        this.types = TypeSet.of(append(getTypes(), types));
         return this;
     }
 
@@ -622,7 +721,45 @@ public class Place {
      * @return types
      */
     public List<String> getTypes() {
-        return Collections.unmodifiableList(types);
+        return getTypeSet().asList();
+    }
+
+    /**
+     * Returns this place's types as a {@link TypeSet}.
+     *
+     * @return types
+     * @throws GooglePlacesException if the types in the JSON of this place are malformed
+     */
+    public TypeSet getTypeSet() {
+        TypeSet types = this.types;
+        if (types == null) {
+            try {
+                this.types = types = parseTypes();
+            } catch (JSONException | IllegalArgumentException e) {
+                throw malformed(ARRAY_TYPES, e);
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Returns true if this place has the specified type.
+     *
+     * @param type to check
+     * @return true if this place has the type
+     */
+    public boolean hasType(String type) {
+        return getTypeSet().contains(type);
+    }
+
+    /**
+     * Returns true if this place has at least one of the types of the specified mask.
+     *
+     * @param mask of types
+     * @return true if this place has any of the types
+     */
+    public boolean hasAnyType(TypeSet mask) {
+        return getTypeSet().containsAny(mask);
     }
 
     /**
@@ -632,7 +769,7 @@ public class Place {
      * @return this
      */
     protected Place addAltIds(Collection<AltId> altIds) {
-        this.altIds.addAll(altIds);
+        this.altIds = append(getAltIds(), altIds);
         return this;
     }
 
@@ -640,9 +777,18 @@ public class Place {
      * Returns all of this place's alt-ids in an unmodifiable list.
      *
      * @return alt-ids
+     * @throws GooglePlacesException if the alt-ids in the JSON of this place are malformed
      */
     public List<AltId> getAltIds() {
-        return Collections.unmodifiableList(altIds);
+        List<AltId> altIds = this.altIds;
+        if (altIds == null) {
+            try {
+                this.altIds = altIds = parseAltIds();
+            } catch (JSONException | IllegalArgumentException e) {
+                throw malformed(ARRAY_ALT_IDS, e);
+            }
+        }
+        return altIds;
     }
 
     /**
@@ -705,6 +851,27 @@ public class Place {
         return this;
     }
 
+    /**
+     * Returns the fields this place was requested with, or null if every field was requested.
+     *
+     * @return requested fields
+     */
+    public FieldsParam getFields() {
+        return fields;
+    }
+
+    /**
+     * Sets the fields this place was requested with. Sections of the place that are not part of the fields are not
+     * decoded from its JSON.
+     *
+     * @param fields requested fields, or null for every field
+     * @return this
+     */
+    protected Place setFields(FieldsParam fields) {
+        this.fields = fields;
+        return this;
+    }
+
     /**
      * Returns the JSON representation of this place. This does not build a JSON object, it only returns the JSON
      * that was given in the initial response from the server.
@@ -716,7 +883,8 @@ public class Place {
     }
 
     /**
-     * Sets the JSON representation of this Place.
+     * Sets the JSON representation of this Place. Types, photos, reviews, address components and alt-ids that have not
+     * been read or added yet are decoded from it when they are first read.
      *
      * @param json representation
      * @return this
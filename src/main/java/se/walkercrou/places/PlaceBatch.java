@@ -0,0 +1,555 @@
+package se.walkercrou.places;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A column oriented collection of the search information of many places. Every attribute is stored in its own array,
+ * so scanning, filtering and aggregating a single attribute of millions of places touches nothing but that array.
+ * Icons and types repeat a lot between places and are stored as codes into a dictionary of their distinct values.
+ * <pre>
+ * PlaceBatch batch = new PlaceBatch();
+ * String token = GooglePlaces.parse(batch, json, 20);
+ * int[] rows = batch.filterTypes(null, TypeSet.of(Types.TYPE_CAFE));
+ * rows = batch.filterRating(rows, 4);
+ * int[] prices = batch.priceHistogram(rows);
+ * </pre>
+ * Filters return the matching rows in ascending order and accept the rows of a previous filter, or null to scan every
+ * row. A batch may not be shared between threads while it is being added to.
+ */
+public class PlaceBatch {
+    private static final int DEFAULT_CAPACITY = 64;
+    private static final Price[] prices = Price.values();
+    private static final Status[] statuses = Status.values();
+
+    private int size;
+    private String[] placeIds, names, addresses, vicinities;
+    private double[] lats, lngs, ratings;
+    private byte[] priceCodes, statusCodes;
+    private int[] iconCodes, typeCodes;
+    private final Dictionary<String> icons = new Dictionary<>();
+    private final Dictionary<TypeSet> typeSets = new Dictionary<>();
+
+    /**
+     * Creates a new batch with room for the specified amount of places before it grows.
+     *
+     * @param capacity initial capacity
+     */
+    public PlaceBatch(int capacity) {
+        capacity = Math.max(1, capacity);
+        placeIds = new String[capacity];
+        names = new String[capacity];
+        addresses = new String[capacity];
+        vicinities = new String[capacity];
+        lats = new double[capacity];
+        lngs = new double[capacity];
+        ratings = new double[capacity];
+        priceCodes = new byte[capacity];
+        statusCodes = new byte[capacity];
+        iconCodes = new int[capacity];
+        typeCodes = new int[capacity];
+    }
+
+    /**
+     * Creates a new, empty batch.
+     */
+    public PlaceBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Returns a new batch of the specified places.
+     *
+     * @param places to add
+     * @return new batch
+     */
+    public static PlaceBatch of(Collection<Place> places) {
+        PlaceBatch batch = new PlaceBatch(places.size());
+        for (Place place : places)
+            batch.add(place);
+        return batch;
+    }
+
+    /**
+     * Adds the search information of the specified place to the end of this batch.
+     *
+     * @param place to add
+     * @return row of the place
+     */
+    public int add(Place place) {
+        return add(place.getPlaceId(), place.getName(), place.getAddress(), place.getVicinity(), place.getIconUrl(),
+                place.getLatitude(), place.getLongitude(), place.getRating(), place.getPrice(), place.getStatus(),
+                place.getTypeSet());
+    }
+
+    /**
+     * Adds a place to the end of this batch.
+     *
+     * @return row of the place
+     */
+    int add(String placeId, String name, String address, String vicinity, String iconUrl, double lat, double lng,
+            double rating, Price price, Status status, TypeSet types) {
+        if (size == lats.length)
+            grow();
+        int row = size++;
+        placeIds[row] = placeId;
+        names[row] = name;
+        addresses[row] = address;
+        vicinities[row] = vicinity;
+        iconCodes[row] = icons.encode(iconUrl);
+        lats[row] = lat;
+        lngs[row] = lng;
+        ratings[row] = rating;
+        priceCodes[row] = (byte) (price == null ? Price.NONE : price).ordinal();
+        statusCodes[row] = (byte) (status == null ? Status.NONE : status).ordinal();
+        typeCodes[row] = typeSets.encode(types == null ? TypeSet.EMPTY : types);
+        return row;
+    }
+
+    private void grow() {
+        int capacity = lats.length * 2;
+        placeIds = Arrays.copyOf(placeIds, capacity);
+        names = Arrays.copyOf(names, capacity);
+        addresses = Arrays.copyOf(addresses, capacity);
+        vicinities = Arrays.copyOf(vicinities, capacity);
+        lats = Arrays.copyOf(lats, capacity);
+        lngs = Arrays.copyOf(lngs, capacity);
+        ratings = Arrays.copyOf(ratings, capacity);
+        priceCodes = Arrays.copyOf(priceCodes, capacity);
+        statusCodes = Arrays.copyOf(statusCodes, capacity);
+        iconCodes = Arrays.copyOf(iconCodes, capacity);
+        typeCodes = Arrays.copyOf(typeCodes, capacity);
+    }
+
+    /**
+     * Returns the amount of places in this batch.
+     *
+     * @return amount of places
+     */
+    public int size() {
+        return size;
+    }
+
+    private void check(int row) {
+        if (row < 0 || row >= size)
+            throw new IndexOutOfBoundsException("Row: " + row + ", size: " + size);
+    }
+
+    /**
+     * Returns the place id of the specified row.
+     *
+     * @param row of place
+     * @return place id
+     */
+    public String getPlaceId(int row) {
+        check(row);
+        return placeIds[row];
+    }
+
+    /**
+     * Returns the name of the specified row.
+     *
+     * @param row of place
+     * @return name
+     */
+    public String getName(int row) {
+        check(row);
+        return names[row];
+    }
+
+    /**
+     * Returns the address of the specified row.
+     *
+     * @param row of place
+     * @return address
+     */
+    public String getAddress(int row) {
+        check(row);
+        return addresses[row];
+    }
+
+    /**
+     * Returns the vicinity of the specified row.
+     *
+     * @param row of place
+     * @return vicinity
+     */
+    public String getVicinity(int row) {
+        check(row);
+        return vicinities[row];
+    }
+
+    /**
+     * Returns the icon url of the specified row.
+     *
+     * @param row of place
+     * @return icon url
+     */
+    public String getIconUrl(int row) {
+        check(row);
+        return icons.decode(iconCodes[row]);
+    }
+
+    /**
+     * Returns the latitude of the specified row.
+     *
+     * @param row of place
+     * @return latitude
+     */
+    public double getLatitude(int row) {
+        check(row);
+        return lats[row];
+    }
+
+    /**
+     * Returns the longitude of the specified row.
+     *
+     * @param row of place
+     * @return longitude
+     */
+    public double getLongitude(int row) {
+        check(row);
+        return lngs[row];
+    }
+
+    /**
+     * Returns the rating of the specified row, or -1 if the place has not been rated.
+     *
+     * @param row of place
+     * @return rating
+     */
+    public double getRating(int row) {
+        check(row);
+        return ratings[row];
+    }
+
+    /**
+     * Returns the price of the specified row.
+     *
+     * @param row of place
+     * @return price
+     */
+    public Price getPrice(int row) {
+        check(row);
+        return prices[priceCodes[row]];
+    }
+
+    /**
+     * Returns the status of the specified row.
+     *
+     * @param row of place
+     * @return status
+     */
+    public Status getStatus(int row) {
+        check(row);
+        return statuses[statusCodes[row]];
+    }
+
+    /**
+     * Returns the types of the specified row.
+     *
+     * @param row of place
+     * @return types
+     */
+    public TypeSet getTypes(int row) {
+        check(row);
+        return typeSets.decode(typeCodes[row]);
+    }
+
+    /**
+     * Returns a new place of the specified row. The place has no client and only the information a search returns.
+     *
+     * @param row of place
+     * @return new place
+     */
+    public Place toPlace(int row) {
+        check(row);
+        return new Place().setPlaceId(placeIds[row]).setName(names[row]).setAddress(addresses[row])
+                .setVicinity(vicinities[row]).setIconUrl(icons.decode(iconCodes[row])).setLatitude(lats[row])
+                .setLongitude(lngs[row]).setRating(ratings[row]).setPrice(prices[priceCodes[row]])
+                .setStatus(statuses[statusCodes[row]]).addTypes(typeSets.decode(typeCodes[row]).asList());
+    }
+
+    /**
+     * Returns new places of the specified rows.
+     *
+     * @param rows to convert, or null for every row
+     * @return new places
+     */
+    public List<Place> toPlaces(int[] rows) {
+        int count = count(rows);
+        List<Place> places = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            places.add(toPlace(row(rows, i)));
+        return places;
+    }
+
+    /**
+     * Returns a new batch of the specified rows.
+     *
+     * @param rows to copy
+     * @return new batch
+     */
+    public PlaceBatch select(int[] rows) {
+        PlaceBatch batch = new PlaceBatch(rows.length);
+        for (int row : rows) {
+            check(row);
+            batch.add(placeIds[row], names[row], addresses[row], vicinities[row], icons.decode(iconCodes[row]),
+                    lats[row], lngs[row], ratings[row], prices[priceCodes[row]], statuses[statusCodes[row]],
+                    typeSets.decode(typeCodes[row]));
+        }
+        return batch;
+    }
+
+    /**
+     * Returns the amount of the specified rows, or the size of this batch if the rows are null.
+     */
+    private int count(int[] rows) {
+        if (rows == null)
+            return size;
+        // rows beyond the size would read the unused capacity of the columns
+        for (int row : rows)
+            check(row);
+        return rows.length;
+    }
+
+    /**
+     * Returns the row at the specified index of the specified rows, which are every row if they are null.
+     */
+    private static int row(int[] rows, int i) {
+        return rows == null ? i : rows[i];
+    }
+
+    /**
+     * Returns the rows that lie within the specified bounds.
+     *
+     * @param rows   to filter, or null for every row
+     * @param minLat southern latitude
+     * @param minLng western longitude
+     * @param maxLat northern latitude
+     * @param maxLng eastern longitude
+     * @return matching rows
+     */
+    public int[] filterBounds(int[] rows, double minLat, double minLng, double maxLat, double maxLng) {
+        int count = count(rows);
+        int[] result = new int[count];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int row = row(rows, i);
+            double lat = lats[row], lng = lngs[row];
+            if (lat >= minLat & lat <= maxLat & lng >= minLng & lng <= maxLng)
+                result[n++] = row;
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Returns the rows that are rated at least the specified rating.
+     *
+     * @param rows      to filter, or null for every row
+     * @param minRating minimum rating
+     * @return matching rows
+     */
+    public int[] filterRating(int[] rows, double minRating) {
+        int count = count(rows);
+        int[] result = new int[count];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int row = row(rows, i);
+            if (ratings[row] >= minRating)
+                result[n++] = row;
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Returns the rows that have one of the specified prices.
+     *
+     * @param rows   to filter, or null for every row
+     * @param prices to match
+     * @return matching rows
+     */
+    public int[] filterPrice(int[] rows, Price... prices) {
+        int mask = 0;
+        for (Price price : prices)
+            mask |= 1 << price.ordinal();
+        int count = count(rows);
+        int[] result = new int[count];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int row = row(rows, i);
+            if ((mask & (1 << priceCodes[row])) != 0)
+                result[n++] = row;
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Returns the rows that have at least one of the types of the specified mask. The mask is only compared to each
+     * distinct combination of types once.
+     *
+     * @param rows to filter, or null for every row
+     * @param mask of types
+     * @return matching rows
+     */
+    public int[] filterTypes(int[] rows, TypeSet mask) {
+        boolean[] matches = new boolean[typeSets.size()];
+        for (int code = 0; code < matches.length; code++)
+            matches[code] = typeSets.decode(code).containsAny(mask);
+        int count = count(rows);
+        int[] result = new int[count];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int row = row(rows, i);
+            if (matches[typeCodes[row]])
+                result[n++] = row;
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Returns the average rating of the rated places of the specified rows, or -1 if none of them are rated.
+     *
+     * @param rows to aggregate, or null for every row
+     * @return average rating
+     */
+    public double averageRating(int[] rows) {
+        int count = count(rows);
+        double sum = 0;
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            double rating = ratings[row(rows, i)];
+            if (rating >= 0) {
+                sum += rating;
+                n++;
+            }
+        }
+        return n == 0 ? -1 : sum / n;
+    }
+
+    /**
+     * Returns the amount of places of the specified rows at each half star of rating. Index 0 counts ratings below
+     * 0.5, index 10 counts ratings of 5. Places that are not rated are not counted.
+     *
+     * @param rows to aggregate, or null for every row
+     * @return rating histogram
+     */
+    public int[] ratingHistogram(int[] rows) {
+        int[] histogram = new int[11];
+        int count = count(rows);
+        for (int i = 0; i < count; i++) {
+            double rating = ratings[row(rows, i)];
+            if (rating >= 0)
+                histogram[Math.min(10, (int) (rating * 2))]++;
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns the amount of places of the specified rows of each price, indexed by {@link Price#ordinal()}.
+     *
+     * @param rows to aggregate, or null for every row
+     * @return price histogram
+     */
+    public int[] priceHistogram(int[] rows) {
+        int[] histogram = new int[prices.length];
+        int count = count(rows);
+        for (int i = 0; i < count; i++)
+            histogram[priceCodes[row(rows, i)]]++;
+        return histogram;
+    }
+
+    /**
+     * Returns the amount of places of the specified rows of each type declared in {@link Types}, indexed by
+     * {@link TypeRegistry#idOf(String)}.
+     *
+     * @param rows to aggregate, or null for every row
+     * @return type counts
+     */
+    public int[] typeCounts(int[] rows) {
+        int[] perCode = new int[typeSets.size()];
+        int count = count(rows);
+        for (int i = 0; i < count; i++)
+            perCode[typeCodes[row(rows, i)]]++;
+        int[] counts = new int[TypeRegistry.size()];
+        for (int code = 0; code < perCode.length; code++) {
+            if (perCode[code] == 0)
+                continue;
+            TypeSet types = typeSets.decode(code);
+            for (int i = 0; i < types.size(); i++) {
+                int id = TypeRegistry.idOf(types.get(i));
+                if (id >= 0)
+                    counts[id] += perCode[code];
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the bounds of the specified rows as {minLat, minLng, maxLat, maxLng}, or null if there are no rows.
+     *
+     * @param rows to aggregate, or null for every row
+     * @return bounds
+     */
+    public double[] bounds(int[] rows) {
+        int count = count(rows);
+        if (count == 0)
+            return null;
+        double minLat = Double.MAX_VALUE, minLng = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE, maxLng = -Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            int row = row(rows, i);
+            minLat = Math.min(minLat, lats[row]);
+            maxLat = Math.max(maxLat, lats[row]);
+            minLng = Math.min(minLng, lngs[row]);
+            maxLng = Math.max(maxLng, lngs[row]);
+        }
+        return new double[]{minLat, minLng, maxLat, maxLng};
+    }
+
+    /**
+     * Returns the mean location of the specified rows as {lat, lng}, or null if there are no rows.
+     *
+     * @param rows to aggregate, or null for every row
+     * @return centroid
+     */
+    public double[] centroid(int[] rows) {
+        int count = count(rows);
+        if (count == 0)
+            return null;
+        double lat = 0, lng = 0;
+        for (int i = 0; i < count; i++) {
+            int row = row(rows, i);
+            lat += lats[row];
+            lng += lngs[row];
+        }
+        return new double[]{lat / count, lng / count};
+    }
+
+    private static class Dictionary<T> {
+        private final Map<T, Integer> codes = new HashMap<>();
+        private final List<T> values = new ArrayList<>();
+
+        private int encode(T value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        private T decode(int code) {
+            return values.get(code);
+        }
+
+        private int size() {
+            return values.size();
+        }
+    }
+}
@@ -0,0 +1,592 @@
+package se.walkercrou.places;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact, versioned binary format for {@link Place}s and {@link Prediction}s. Places are encoded with their hours,
+ * photo references, reviews, address components and alternative ids, but without their JSON. Integers are written as
+ * variable length integers, coordinates and ratings as scaled integers when that loses nothing, and types as their
+ * {@link TypeRegistry} ids.
+ * <pre>
+ * try (PlaceCodec.Writer writer = new PlaceCodec.Writer(out)) {
+ *     for (Place place : places)
+ *         writer.write(place);
+ * }
+ * try (PlaceCodec.Reader reader = new PlaceCodec.Reader(in, client)) {
+ *     Place place;
+ *     while ((place = reader.readPlace()) != null)
+ *         ...
+ * }
+ * </pre>
+ * A stream starts with a header that holds the version of the format, followed by records that each hold their length.
+ * Readers reject streams of a later version than {@link #VERSION}. Strings that repeat within a stream, such as icon
+ * urls, opening times and languages, are written once and referred to afterwards. Type ids never change between
+ * versions of this library, see {@link TypeRegistry}.
+ */
+public final class PlaceCodec {
+    /**
+     * The version of the format written by this class.
+     */
+    public static final int VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] MAGIC = {'G', 'P', 'C'};
+    private static final int RECORD_PLACE = 1, RECORD_PREDICTION = 2;
+    private static final int MAX_SHARED_STRINGS = 4096;
+    private static final double COORDINATE_SCALE = 1e7, RATING_SCALE = 10;
+
+    private PlaceCodec() {
+    }
+
+    /**
+     * Returns the encoded form of the specified place as a complete stream.
+     *
+     * @param place to encode
+     * @return encoded place
+     */
+    public static byte[] encode(Place place) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (Writer writer = new Writer(out)) {
+            writer.write(place);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // writing to memory does not fail
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the encoded form of the specified prediction as a complete stream.
+     *
+     * @param prediction to encode
+     * @return encoded prediction
+     */
+    public static byte[] encode(Prediction prediction) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (Writer writer = new Writer(out)) {
+            writer.write(prediction);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the place of the specified encoded stream.
+     *
+     * @param bytes  encoded by {@link #encode(Place)}
+     * @param client to give the place
+     * @return decoded place
+     * @throws IOException if the bytes are not a valid stream
+     */
+    public static Place decodePlace(byte[] bytes, GooglePlaces client) throws IOException {
+        try (Reader reader = new Reader(new ByteArrayInputStream(bytes), client)) {
+            return reader.readPlace();
+        }
+    }
+
+    /**
+     * Returns the prediction of the specified encoded stream.
+     *
+     * @param bytes  encoded by {@link #encode(Prediction)}
+     * @param client to give the prediction
+     * @return decoded prediction
+     * @throws IOException if the bytes are not a valid stream
+     */
+    public static Prediction decodePrediction(byte[] bytes, GooglePlaces client) throws IOException {
+        try (Reader reader = new Reader(new ByteArrayInputStream(bytes), client)) {
+            return reader.readPrediction();
+        }
+    }
+
+    /**
+     * Writes places and predictions to a stream. A writer may not be shared between threads.
+     */
+    public static class Writer implements Closeable, Flushable {
+        private final OutputStream out;
+        private final Map<String, Integer> shared = new HashMap<>();
+        private final Buffer record = new Buffer(), header = new Buffer();
+
+        /**
+         * Creates a new writer and writes the header of the stream.
+         *
+         * @param out to write to
+         * @throws IOException if the header can not be written
+         */
+        public Writer(OutputStream out) throws IOException {
+            this.out = out;
+            out.write(MAGIC);
+            out.write(VERSION);
+        }
+
+        /**
+         * Writes the specified place.
+         *
+         * @param place to write
+         * @throws IOException if the place can not be written
+         */
+        public void write(Place place) throws IOException {
+            Buffer b = record;
+            b.reset();
+            b.writeString(place.getPlaceId());
+            b.writeEnum(place.getScope());
+            writeDecimal(b, place.getLatitude(), COORDINATE_SCALE);
+            writeDecimal(b, place.getLongitude(), COORDINATE_SCALE);
+            writeShared(b, place.getIconUrl());
+            b.writeString(place.getName());
+            b.writeString(place.getAddress());
+            b.writeString(place.getVicinity());
+            writeDecimal(b, place.getRating(), RATING_SCALE);
+            b.writeEnum(place.getStatus());
+            b.writeEnum(place.getPrice());
+            b.writeString(place.getPhoneNumber());
+            b.writeString(place.getInternationalPhoneNumber());
+            b.writeString(place.getGoogleUrl());
+            b.writeString(place.getWebsite());
+            b.writeSignedVarint(place.getUtcOffset());
+            b.writeSignedVarint(place.getAccuracy());
+            writeShared(b, place.getLanguage());
+            writeTypes(b, place.getTypeSet());
+
+            Hours hours = place.getHours();
+            if (hours == null) {
+                b.writeVarint(0);
+            } else {
+                List<Hours.Period> periods = hours.getPeriods();
+                b.writeVarint(1 + (hours.isAlwaysOpened() ? 1 : 0));
+                b.writeVarint(periods.size());
+                for (Hours.Period period : periods) {
+                    b.writeEnum(period.getOpeningDay());
+                    writeShared(b, period.getOpeningTime());
+                    b.writeEnum(period.getClosingDay());
+                    writeShared(b, period.getClosingTime());
+                }
+            }
+
+            List<Photo> photos = place.getPhotos();
+            b.writeVarint(photos.size());
+            for (Photo photo : photos) {
+                b.writeString(photo.getReference());
+                b.writeVarint(photo.getWidth());
+                b.writeVarint(photo.getHeight());
+            }
+
+            List<AddressComponent> components = place.getAddressComponents();
+            b.writeVarint(components.size());
+            for (AddressComponent component : components) {
+                b.writeString(component.getLongName());
+                b.writeString(component.getShortName());
+                writeTypes(b, component.getTypeSet());
+            }
+
+            List<Review> reviews = place.getReviews();
+            b.writeVarint(reviews.size());
+            for (Review review : reviews) {
+                b.writeString(review.getAuthor());
+                b.writeString(review.getAuthorUrl());
+                writeShared(b, review.getLanguage());
+                b.writeString(review.getText());
+                b.writeSignedVarint(review.getRating());
+                b.writeSignedVarint(review.getTime());
+                List<Review.Aspect> aspects = review.getAspects();
+                b.writeVarint(aspects.size());
+                for (Review.Aspect aspect : aspects) {
+                    b.writeSignedVarint(aspect.getRating());
+                    writeShared(b, aspect.getType());
+                }
+            }
+
+            List<AltId> altIds = place.getAltIds();
+            b.writeVarint(altIds.size());
+            for (AltId altId : altIds) {
+                b.writeString(altId.getPlaceId());
+                b.writeEnum(altId.getScope());
+            }
+            writeRecord(RECORD_PLACE);
+        }
+
+        /**
+         * Writes the specified prediction.
+         *
+         * @param prediction to write
+         * @throws IOException if the prediction can not be written
+         */
+        public void write(Prediction prediction) throws IOException {
+            Buffer b = record;
+            b.reset();
+            b.writeString(prediction.getPlaceId());
+            b.writeString(prediction.getDescription());
+            List<Prediction.DescriptionTerm> terms = prediction.getTerms();
+            b.writeVarint(terms.size());
+            for (Prediction.DescriptionTerm term : terms) {
+                b.writeString(term.getValue());
+                b.writeSignedVarint(term.getOffset());
+            }
+            writeTypes(b, prediction.getTypeSet());
+            b.writeSignedVarint(prediction.getSubstringOffset());
+            b.writeSignedVarint(prediction.getSubstringLength());
+            writeRecord(RECORD_PREDICTION);
+        }
+
+        private void writeRecord(int type) throws IOException {
+            header.reset();
+            header.writeVarint(type);
+            header.writeVarint(record.size);
+            out.write(header.bytes, 0, header.size);
+            out.write(record.bytes, 0, record.size);
+        }
+
+        private void writeShared(Buffer b, String s) {
+            // 0 is null, 1 is a new string, anything else refers to an earlier string
+            if (s == null) {
+                b.writeVarint(0);
+                return;
+            }
+            Integer index = shared.get(s);
+            if (index != null) {
+                b.writeVarint(index + 2);
+                return;
+            }
+            b.writeVarint(1);
+            b.writeString(s);
+            if (shared.size() < MAX_SHARED_STRINGS)
+                shared.put(s, shared.size());
+        }
+
+        private void writeTypes(Buffer b, TypeSet types) {
+            // declared types are written as their id + 1, anything else as 0 and a shared string
+            b.writeVarint(types.size());
+            for (int i = 0; i < types.size(); i++) {
+                String type = types.get(i);
+                int id = TypeRegistry.idOf(type);
+                b.writeVarint(id + 1);
+                if (id < 0)
+                    writeShared(b, type);
+            }
+        }
+
+        private static void writeDecimal(Buffer b, double value, double scale) {
+            // scaled values are even, anything that does not survive scaling is odd and followed by its raw bits
+            long scaled = Math.round(value * scale);
+            if (scaled / scale == value && Math.abs(scaled) < (1L << 61)) {
+                b.writeSignedVarint(scaled << 1);
+            } else {
+                b.writeSignedVarint(1);
+                b.writeLong(Double.doubleToLongBits(value));
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads places and predictions from a stream. A reader may not be shared between threads.
+     */
+    public static class Reader implements Closeable {
+        private final InputStream in;
+        private final GooglePlaces client;
+        private final List<String> shared = new ArrayList<>();
+        private final int version;
+        private byte[] bytes = new byte[256];
+        private int pos, limit;
+
+        /**
+         * Creates a new reader and reads the header of the stream.
+         *
+         * @param in     to read from
+         * @param client to give the decoded places and predictions
+         * @throws IOException if the stream does not start with a valid header
+         */
+        public Reader(InputStream in, GooglePlaces client) throws IOException {
+            this.in = in;
+            this.client = client;
+            for (byte b : MAGIC) {
+                if (in.read() != b)
+                    throw new IOException("Not a place stream");
+            }
+            version = in.read();
+            if (version < 1 || version > VERSION)
+                throw new IOException("Unsupported version: " + version);
+        }
+
+        /**
+         * Returns the version of the format of the stream.
+         *
+         * @return version
+         */
+        public int getVersion() {
+            return version;
+        }
+
+        /**
+         * Reads the next place.
+         *
+         * @return place, or null at the end of the stream
+         * @throws IOException if the next record is not a place or can not be read
+         */
+        public Place readPlace() throws IOException {
+            if (!nextRecord(RECORD_PLACE))
+                return null;
+            Place place = new Place().setClient(client);
+            place.setPlaceId(readString()).setScope(readEnum(Scope.values()))
+                    .setLatitude(readDecimal(COORDINATE_SCALE)).setLongitude(readDecimal(COORDINATE_SCALE))
+                    .setIconUrl(readShared()).setName(readString()).setAddress(readString())
+                    .setVicinity(readString()).setRating(readDecimal(RATING_SCALE))
+                    .setStatus(readEnum(Status.values())).setPrice(readEnum(Price.values()))
+                    .setPhoneNumber(readString()).setInternationalPhoneNumber(readString())
+                    .setGoogleUrl(readString()).setWebsite(readString()).setUtcOffset((int) readSignedVarint())
+                    .setAccuracy((int) readSignedVarint()).setLanguage(readShared()).addTypes(readTypes());
+
+            int hoursFlag = readVarint();
+            if (hoursFlag != 0) {
+                Hours hours = new Hours().setAlwaysOpened(hoursFlag == 2);
+                for (int i = readVarint(); i > 0; i--) {
+                    hours.addPeriod(new Hours.Period().setOpeningDay(readEnum(Day.values()))
+                            .setOpeningTime(readShared()).setClosingDay(readEnum(Day.values()))
+                            .setClosingTime(readShared()));
+                }
+                place.setHours(hours);
+            }
+
+            List<Photo> photos = new ArrayList<>();
+            for (int i = readVarint(); i > 0; i--)
+                photos.add(new Photo(place, readString(), readVarint(), readVarint()));
+            place.addPhotos(photos);
+
+            List<AddressComponent> components = new ArrayList<>();
+            for (int i = readVarint(); i > 0; i--) {
+                AddressComponent component = new AddressComponent().setLongName(readString())
+                        .setShortName(readString());
+                components.add(component.addTypes(readTypes()));
+            }
+            place.addAddressComponents(components);
+
+            List<Review> reviews = new ArrayList<>();
+            for (int i = readVarint(); i > 0; i--) {
+                Review review = new Review().setAuthor(readString()).setAuthorUrl(readString())
+                        .setLanguage(readShared()).setText(readString()).setRating((int) readSignedVarint())
+                        .setTime(readSignedVarint());
+                List<Review.Aspect> aspects = new ArrayList<>();
+                for (int a = readVarint(); a > 0; a--)
+                    aspects.add(new Review.Aspect((int) readSignedVarint(), readShared()));
+                reviews.add(review.addAspects(aspects));
+            }
+            place.addReviews(reviews);
+
+            List<AltId> altIds = new ArrayList<>();
+            for (int i = readVarint(); i > 0; i--)
+                altIds.add(new AltId(client, readString(), readEnum(Scope.values())));
+            return place.addAltIds(altIds);
+        }
+
+        /**
+         * Reads the next prediction.
+         *
+         * @return prediction, or null at the end of the stream
+         * @throws IOException if the next record is not a prediction or can not be read
+         */
+        public Prediction readPrediction() throws IOException {
+            if (!nextRecord(RECORD_PREDICTION))
+                return null;
+            Prediction prediction = new Prediction().setClient(client).setPlaceId(readString())
+                    .setDescription(readString());
+            List<Prediction.DescriptionTerm> terms = new ArrayList<>();
+            for (int i = readVarint(); i > 0; i--)
+                terms.add(new Prediction.DescriptionTerm(readString(), (int) readSignedVarint()));
+            return prediction.addTerms(terms).addTypes(readTypes()).setSubstringOffset((int) readSignedVarint())
+                    .setSubstringLength((int) readSignedVarint());
+        }
+
+        private boolean nextRecord(int expected) throws IOException {
+            int first = in.read();
+            if (first < 0)
+                return false;
+            int type = (int) readStreamVarint(first);
+            int length = (int) readStreamVarint(in.read());
+            if (type != expected)
+                throw new IOException("Expected record " + expected + " but found " + type);
+            if (bytes.length < length)
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            for (int n = 0; n < length; ) {
+                int read = in.read(bytes, n, length - n);
+                if (read < 0)
+                    throw new EOFException("Truncated record");
+                n += read;
+            }
+            pos = 0;
+            limit = length;
+            return true;
+        }
+
+        private long readStreamVarint(int b) throws IOException {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (b < 0)
+                    throw new EOFException("Truncated record header");
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+                b = in.read();
+            }
+        }
+
+        private int readByte() throws IOException {
+            if (pos >= limit)
+                throw new EOFException("Truncated record");
+            return bytes[pos++] & 0xFF;
+        }
+
+        private long readLongVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        private int readVarint() throws IOException {
+            return (int) readLongVarint();
+        }
+
+        private long readSignedVarint() throws IOException {
+            long value = readLongVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private String readString() throws IOException {
+            int length = readVarint() - 1;
+            if (length < 0)
+                return null;
+            if (length > limit - pos)
+                throw new EOFException("Truncated record");
+            String s = new String(bytes, pos, length, UTF_8);
+            pos += length;
+            return s;
+        }
+
+        private String readShared() throws IOException {
+            int index = readVarint();
+            if (index == 0)
+                return null;
+            if (index == 1) {
+                String s = readString();
+                if (shared.size() < MAX_SHARED_STRINGS)
+                    shared.add(s);
+                return s;
+            }
+            if (index - 2 >= shared.size())
+                throw new IOException("Unknown shared string: " + (index - 2));
+            return shared.get(index - 2);
+        }
+
+        private List<String> readTypes() throws IOException {
+            int count = readVarint();
+            List<String> types = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int id = readVarint() - 1;
+                types.add(id < 0 ? readShared() : TypeRegistry.nameOf(id));
+            }
+            return types;
+        }
+
+        private <E extends Enum<E>> E readEnum(E[] values) throws IOException {
+            int ordinal = readVarint() - 1;
+            if (ordinal >= values.length)
+                throw new IOException("Unknown constant: " + ordinal);
+            return ordinal < 0 ? null : values[ordinal];
+        }
+
+        private double readDecimal(double scale) throws IOException {
+            long value = readSignedVarint();
+            if ((value & 1) == 0)
+                return (value >> 1) / scale;
+            long bits = 0;
+            for (int i = 0; i < 8; i++)
+                bits = (bits << 8) | readByte();
+            return Double.longBitsToDouble(bits);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * A growable buffer of a record that is being written.
+     */
+    private static class Buffer {
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        private void reset() {
+            size = 0;
+        }
+
+        private void ensure(int n) {
+            if (size + n > bytes.length) {
+                byte[] grown = new byte[Math.max(size + n, bytes.length * 2)];
+                System.arraycopy(bytes, 0, grown, 0, size);
+                bytes = grown;
+            }
+        }
+
+        private void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        private void writeSignedVarint(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        private void writeLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8)
+                bytes[size++] = (byte) (value >>> shift);
+        }
+
+        private void writeEnum(Enum<?> value) {
+            writeVarint(value == null ? 0 : value.ordinal() + 1);
+        }
+
+        private void writeString(String s) {
+            // the length is written + 1 so that 0 is null
+            if (s == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] utf8 = s.getBytes(UTF_8);
+            writeVarint(utf8.length + 1);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+    }
+}
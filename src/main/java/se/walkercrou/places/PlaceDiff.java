@@ -0,0 +1,560 @@
+package se.walkercrou.places;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The differences between two versions of a place. Each section of a place is summarized by a hash in a
+ * {@link Fingerprint}; sections with equal hashes are skipped and only the sections that differ are compared in
+ * detail.
+ * <pre>
+ * PlaceDiff diff = PlaceDiff.compare(previous, current);
+ * for (PlaceDiff.Change change : diff.getChanges()) {
+ *     if (change instanceof PlaceDiff.LocationChange)
+ *         ...
+ * }
+ * </pre>
+ * Fingerprints are small and can be kept instead of whole places to find out which sections changed with
+ * {@link Fingerprint#changedSections(Fingerprint)}. A caller that compares every new version of a place to the one
+ * before can keep the fingerprint of the last version, see {@link #getCurrentFingerprint()}, and pass it to
+ * {@link #compare(Fingerprint, Place, Place, double)} so that only the new version is hashed and only the sections that
+ * changed are read from the previous version.
+ * <p>
+ * A place that was requested with a {@link FieldsParam} only has the sections it asked for. Sections that are missing
+ * from either version are not compared, so a refresh that requests fewer fields than the place was first fetched with
+ * only reports changes of the fields it requested.
+ */
+public final class PlaceDiff {
+    /**
+     * A section of a place that is compared as a whole.
+     */
+    public enum Section {
+        NAME(PlaceField.NAME),
+        ADDRESS(PlaceField.ADDRESS, PlaceField.VICINITY),
+        LOCATION(PlaceField.LOCATION),
+        RATING(PlaceField.RATING),
+        PRICE(PlaceField.PRICE),
+        // the status is part of the opening hours
+        STATUS(PlaceField.HOURS),
+        HOURS(PlaceField.HOURS),
+        PHONE(PlaceField.PHONE_NUMBER, PlaceField.INTERNATIONAL_PHONE_NUMBER),
+        WEBSITE(PlaceField.WEBSITE),
+        TYPES(PlaceField.TYPES),
+        PHOTOS(PlaceField.PHOTOS),
+        REVIEWS(PlaceField.REVIEWS);
+
+        private final PlaceField[] fields;
+
+        Section(PlaceField... fields) {
+            this.fields = fields;
+        }
+
+        /**
+         * Returns true if this section is part of a place that was requested with the specified fields.
+         *
+         * @param fields param of request, may be null
+         * @return true if the section is present
+         */
+        boolean isIncludedIn(FieldsParam fields) {
+            for (PlaceField field : this.fields) {
+                if (FieldsParam.includes(fields, field))
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    private static final Section[] sections = Section.values();
+    private static final double EARTH_RADIUS_METERS = 6371008.8;
+
+    private final Place previous, current;
+    private final Fingerprint currentFingerprint;
+    private final List<Change> changes;
+
+    private PlaceDiff(Place previous, Place current, Fingerprint currentFingerprint, List<Change> changes) {
+        this.previous = previous;
+        this.current = current;
+        this.currentFingerprint = currentFingerprint;
+        this.changes = Collections.unmodifiableList(changes);
+    }
+
+    /**
+     * Returns the differences between two versions of a place.
+     *
+     * @param previous version of place
+     * @param current  version of place
+     * @return differences
+     */
+    public static PlaceDiff compare(Place previous, Place current) {
+        return compare(previous, current, 0);
+    }
+
+    /**
+     * Returns the differences between two versions of a place, ignoring movements of the location that are smaller
+     * than the specified distance.
+     *
+     * @param previous       version of place
+     * @param current        version of place
+     * @param minDriftMeters smallest movement of the location that is a change
+     * @return differences
+     */
+    public static PlaceDiff compare(Place previous, Place current, double minDriftMeters) {
+        return compare(fingerprint(previous), previous, current, minDriftMeters);
+    }
+
+    /**
+     * Returns the differences between two versions of a place, of which the fingerprint of the previous version is
+     * already known. Only the current version is hashed, and only the sections that differ are read from the previous
+     * version.
+     *
+     * @param previousFingerprint fingerprint of the previous version
+     * @param previous            version of place
+     * @param current             version of place
+     * @param minDriftMeters      smallest movement of the location that is a change
+     * @return differences
+     */
+    public static PlaceDiff compare(Fingerprint previousFingerprint, Place previous, Place current,
+                                    double minDriftMeters) {
+        Fingerprint currentFingerprint = fingerprint(current);
+        Set<Section> changed = previousFingerprint.changedSections(currentFingerprint);
+        List<Change> changes = new ArrayList<>(changed.size());
+        for (Section section : changed) {
+            switch (section) {
+                case NAME:
+                    changes.add(new Change(section, previous.getName(), current.getName()));
+                    break;
+                case ADDRESS:
+                    changes.add(new Change(section, previous.getAddress(), current.getAddress()));
+                    break;
+                case LOCATION:
+                    double drift = distanceMeters(previous.getLatitude(), previous.getLongitude(),
+                            current.getLatitude(), current.getLongitude());
+                    if (drift >= minDriftMeters)
+                        changes.add(new LocationChange(previous, current, drift));
+                    break;
+                case RATING:
+                    changes.add(new Change(section, previous.getRating(), current.getRating()));
+                    break;
+                case PRICE:
+                    changes.add(new Change(section, previous.getPrice(), current.getPrice()));
+                    break;
+                case STATUS:
+                    changes.add(new Change(section, previous.getStatus(), current.getStatus()));
+                    break;
+                case HOURS:
+                    changes.add(new CollectionChange<>(section, periods(previous), periods(current)));
+                    break;
+                case PHONE:
+                    changes.add(new Change(section, previous.getPhoneNumber(), current.getPhoneNumber()));
+                    break;
+                case WEBSITE:
+                    changes.add(new Change(section, previous.getWebsite(), current.getWebsite()));
+                    break;
+                case TYPES:
+                    changes.add(new CollectionChange<>(section, previous.getTypes(), current.getTypes()));
+                    break;
+                case PHOTOS:
+                    changes.add(new CollectionChange<>(section, photoReferences(previous), photoReferences(current)));
+                    break;
+                case REVIEWS:
+                    changes.add(reviewChange(previous, current));
+                    break;
+            }
+        }
+        return new PlaceDiff(previous, current, currentFingerprint, changes);
+    }
+
+    private static List<String> periods(Place place) {
+        List<String> periods = new ArrayList<>();
+        Hours hours = place.getHours();
+        if (hours == null)
+            return periods;
+        if (hours.isAlwaysOpened())
+            periods.add("always opened");
+        for (Hours.Period period : hours.getPeriods())
+            periods.add(period.toString());
+        return periods;
+    }
+
+    private static List<String> photoReferences(Place place) {
+        List<String> references = new ArrayList<>();
+        for (Photo photo : place.getPhotos())
+            references.add(photo.getReference());
+        return references;
+    }
+
+    private static String reviewKey(Review review) {
+        return review.getAuthor() + '\u0000' + review.getTime() + '\u0000' + review.getText();
+    }
+
+    private static CollectionChange<Review> reviewChange(Place previous, Place current) {
+        Map<String, Review> before = new LinkedHashMap<>(), after = new LinkedHashMap<>();
+        for (Review review : previous.getReviews())
+            before.put(reviewKey(review), review);
+        for (Review review : current.getReviews())
+            after.put(reviewKey(review), review);
+        List<Review> added = new ArrayList<>(), removed = new ArrayList<>();
+        for (Map.Entry<String, Review> entry : after.entrySet()) {
+            if (!before.containsKey(entry.getKey()))
+                added.add(entry.getValue());
+        }
+        for (Map.Entry<String, Review> entry : before.entrySet()) {
+            if (!after.containsKey(entry.getKey()))
+                removed.add(entry.getValue());
+        }
+        return new CollectionChange<>(Section.REVIEWS, previous.getReviews(), current.getReviews(), added, removed);
+    }
+
+    /**
+     * Returns the distance between two locations in meters.
+     *
+     * @param lat1 latitude of first location
+     * @param lng1 longitude of first location
+     * @param lat2 latitude of second location
+     * @param lng2 longitude of second location
+     * @return distance in meters
+     */
+    public static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1), dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) + Math.cos(Math.toRadians(lat1))
+                * Math.cos(Math.toRadians(lat2)) * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Returns the hashes of the sections of the specified place.
+     *
+     * @param place to fingerprint
+     * @return fingerprint
+     */
+    public static Fingerprint fingerprint(Place place) {
+        long[] hashes = new long[sections.length];
+        int present = 0;
+        for (Section section : sections) {
+            if (section.isIncludedIn(place.getFields())) {
+                hashes[section.ordinal()] = hash(place, section);
+                present |= 1 << section.ordinal();
+            }
+        }
+        return new Fingerprint(hashes, present);
+    }
+
+    private static long hash(Place place, Section section) {
+        long h = Hashing.FNV_OFFSET;
+        switch (section) {
+            case NAME:
+                return hash(h, place.getName());
+            case ADDRESS:
+                return hash(hash(h, place.getAddress()), place.getVicinity());
+            case LOCATION:
+                return hash(hash(h, Double.doubleToLongBits(place.getLatitude())),
+                        Double.doubleToLongBits(place.getLongitude()));
+            case RATING:
+                return hash(h, Double.doubleToLongBits(place.getRating()));
+            case PRICE:
+                return hash(h, place.getPrice() == null ? -1 : place.getPrice().ordinal());
+            case STATUS:
+                return hash(h, place.getStatus() == null ? -1 : place.getStatus().ordinal());
+            case HOURS:
+                Hours hours = place.getHours();
+                if (hours != null) {
+                    h = hash(h, hours.isAlwaysOpened() ? 1 : 0);
+                    for (Hours.Period period : hours.getPeriods()) {
+                        h = hash(h, period.getOpeningDay() == null ? -1 : period.getOpeningDay().ordinal());
+                        h = hash(h, period.getOpeningTime());
+                        h = hash(h, period.getClosingDay() == null ? -1 : period.getClosingDay().ordinal());
+                        h = hash(h, period.getClosingTime());
+                    }
+                }
+                return h;
+            case PHONE:
+                return hash(hash(h, place.getPhoneNumber()), place.getInternationalPhoneNumber());
+            case WEBSITE:
+                return hash(h, place.getWebsite());
+            case TYPES:
+                TypeSet types = place.getTypeSet();
+                for (int i = 0; i < types.size(); i++)
+                    h = hash(h, types.get(i));
+                return h;
+            case PHOTOS:
+                for (Photo photo : place.getPhotos())
+                    h = hash(h, photo.getReference());
+                return h;
+            case REVIEWS:
+                for (Review review : place.getReviews())
+                    h = hash(hash(hash(h, review.getAuthor()), review.getTime()), review.getText());
+                return h;
+            default:
+                throw new AssertionError(section);
+        }
+    }
+
+    private static long hash(long h, long value) {
+        return Hashing.fnv(h, value);
+    }
+
+    private static long hash(long h, String value) {
+        if (value == null)
+            return hash(h, 0x9e3779b97f4a7c15L);
+        // terminate, so that "ab" + "c" and "a" + "bc" differ
+        return hash(Hashing.fnv(h, value, 0, value.length()), value.length());
+    }
+
+    /**
+     * Returns the previous version of the place.
+     *
+     * @return previous place
+     */
+    public Place getPrevious() {
+        return previous;
+    }
+
+    /**
+     * Returns the current version of the place.
+     *
+     * @return current place
+     */
+    public Place getCurrent() {
+        return current;
+    }
+
+    /**
+     * Returns the fingerprint of the current version of the place.
+     *
+     * @return fingerprint of current place
+     */
+    public Fingerprint getCurrentFingerprint() {
+        return currentFingerprint;
+    }
+
+    /**
+     * Returns the changes between the versions, in the order of their sections.
+     *
+     * @return changes
+     */
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    /**
+     * Returns true if the versions do not differ.
+     *
+     * @return true if unchanged
+     */
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * Returns true if the specified section differs between the versions.
+     *
+     * @param section to check
+     * @return true if changed
+     */
+    public boolean hasChanged(Section section) {
+        for (Change change : changes) {
+            if (change.getSection() == section)
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return changes.toString();
+    }
+
+    /**
+     * The hashes of the sections of a place. Sections that the place was not requested with have no hash.
+     */
+    public static final class Fingerprint {
+        private final long[] hashes;
+        private final int present;
+
+        private Fingerprint(long[] hashes, int present) {
+            this.hashes = hashes;
+            this.present = present;
+        }
+
+        /**
+         * Returns true if the place has the specified section.
+         *
+         * @param section to check
+         * @return true if the section is present
+         */
+        public boolean hasSection(Section section) {
+            return (present & 1 << section.ordinal()) != 0;
+        }
+
+        /**
+         * Returns the hash of the specified section, or 0 if the place does not have it.
+         *
+         * @param section to get hash of
+         * @return hash
+         */
+        public long getHash(Section section) {
+            return hashes[section.ordinal()];
+        }
+
+        /**
+         * Returns the sections whose hashes differ from the hashes of the specified fingerprint. Only sections that both
+         * places have are compared.
+         *
+         * @param other fingerprint
+         * @return changed sections
+         */
+        public Set<Section> changedSections(Fingerprint other) {
+            Set<Section> changed = EnumSet.noneOf(Section.class);
+            int common = present & other.present;
+            for (int i = 0; i < hashes.length; i++) {
+                if ((common & 1 << i) != 0 && hashes[i] != other.hashes[i])
+                    changed.add(sections[i]);
+            }
+            return changed;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Fingerprint && present == ((Fingerprint) obj).present
+                    && Arrays.equals(hashes, ((Fingerprint) obj).hashes);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(hashes) + present;
+        }
+    }
+
+    /**
+     * A change of a single section of a place.
+     */
+    public static class Change {
+        private final Section section;
+        private final Object previous, current;
+
+        protected Change(Section section, Object previous, Object current) {
+            this.section = section;
+            this.previous = previous;
+            this.current = current;
+        }
+
+        /**
+         * Returns the section that changed.
+         *
+         * @return section
+         */
+        public Section getSection() {
+            return section;
+        }
+
+        /**
+         * Returns the previous value of the section.
+         *
+         * @return previous value
+         */
+        public Object getPrevious() {
+            return previous;
+        }
+
+        /**
+         * Returns the current value of the section.
+         *
+         * @return current value
+         */
+        public Object getCurrent() {
+            return current;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s -> %s", section, previous, current);
+        }
+    }
+
+    /**
+     * A movement of the location of a place.
+     */
+    public static class LocationChange extends Change {
+        private final double driftMeters;
+
+        private LocationChange(Place previous, Place current, double driftMeters) {
+            super(Section.LOCATION, new double[]{previous.getLatitude(), previous.getLongitude()},
+                    new double[]{current.getLatitude(), current.getLongitude()});
+            this.driftMeters = driftMeters;
+        }
+
+        /**
+         * Returns the distance the place moved in meters.
+         *
+         * @return drift in meters
+         */
+        public double getDriftMeters() {
+            return driftMeters;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: moved %.1f m", getSection(), driftMeters);
+        }
+    }
+
+    /**
+     * A change of a section that consists of many elements, such as the types or reviews of a place.
+     *
+     * @param <T> type of element
+     */
+    public static class CollectionChange<T> extends Change {
+        private final List<T> added, removed;
+
+        private CollectionChange(Section section, List<T> previous, List<T> current) {
+            this(section, previous, current, difference(current, previous), difference(previous, current));
+        }
+
+        private CollectionChange(Section section, List<T> previous, List<T> current, List<T> added,
+                                 List<T> removed) {
+            super(section, previous, current);
+            this.added = Collections.unmodifiableList(added);
+            this.removed = Collections.unmodifiableList(removed);
+        }
+
+        private static <T> List<T> difference(List<T> a, List<T> b) {
+            Set<T> exclude = new LinkedHashSet<>(b);
+            List<T> difference = new ArrayList<>();
+            for (T element : a) {
+                if (!exclude.contains(element))
+                    difference.add(element);
+            }
+            return difference;
+        }
+
+        /**
+         * Returns the elements of the current version that are not part of the previous version.
+         *
+         * @return added elements
+         */
+        public List<T> getAdded() {
+            return added;
+        }
+
+        /**
+         * Returns the elements of the previous version that are not part of the current version.
+         *
+         * @return removed elements
+         */
+        public List<T> getRemoved() {
+            return removed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: +%s -%s", getSection(), added, removed);
+        }
+    }
+}
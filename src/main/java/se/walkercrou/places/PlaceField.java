@@ -0,0 +1,43 @@
+package se.walkercrou.places;
+
+/**
+ * Represents a section of a {@link Place} that can be requested with a {@link FieldsParam}.
+ */
+public enum PlaceField {
+    NAME("name"),
+    LOCATION("geometry"),
+    ADDRESS("formatted_address"),
+    VICINITY("vicinity"),
+    ICON("icon"),
+    PHONE_NUMBER("formatted_phone_number"),
+    INTERNATIONAL_PHONE_NUMBER("international_phone_number"),
+    WEBSITE("website"),
+    GOOGLE_URL("url"),
+    RATING("rating"),
+    PRICE("price_level"),
+    UTC_OFFSET("utc_offset"),
+    HOURS("opening_hours"),
+    TYPES("type"),
+    PHOTOS("photo"),
+    ADDRESS_COMPONENTS("address_component"),
+    REVIEWS("review"),
+    /**
+     * Alt-ids can not be requested by name, they are only parsed if they are present in the response.
+     */
+    ALT_IDS(null);
+
+    private final String apiName;
+
+    PlaceField(String apiName) {
+        this.apiName = apiName;
+    }
+
+    /**
+     * Returns the name of this field in the "fields" parameter of a request, or null if it can not be requested.
+     *
+     * @return name of field
+     */
+    public String getApiName() {
+        return apiName;
+    }
+}
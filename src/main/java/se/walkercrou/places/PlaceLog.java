@@ -0,0 +1,577 @@
+package se.walkercrou.places;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A durable store of places on the local disk. Places are appended to memory-mapped segment files in the format of
+ * {@link PlaceCodec}, so a store survives restarts of the application and places that have already been fetched do not
+ * have to be requested again.
+ * <pre>
+ * try (PlaceLog log = PlaceLog.open(new File("places"))) {
+ *     Place place = log.get(placeId);
+ *     if (place == null)
+ *         log.put(place = client.getPlaceById(placeId));
+ * }
+ * </pre>
+ * Every record carries a checksum. When a store is opened, the index of the last checkpoint is read from its own file
+ * and only the records appended after the checkpoint are scanned, so opening a large store is fast. Records that were
+ * torn by a crash fail their checksum and are discarded. If the index is missing or damaged, it is rebuilt from the
+ * segments.
+ * <p>
+ * Places that are replaced or removed keep taking up space until {@link #compact()} copies the live places into new
+ * segments. Records are written to the operating system as they are appended, call {@link #sync()} to force them to
+ * the disk. This class is safe for use by multiple threads, but a directory may only be opened by one store at once.
+ */
+public class PlaceLog implements Closeable {
+    /**
+     * The default size of a single segment file in bytes.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String SEGMENT_SUFFIX = ".log", INDEX_FILE = "places.idx";
+    private static final int INDEX_MAGIC = 0x47504c49, INDEX_VERSION = 1;
+    private static final byte KIND_PUT = 1, KIND_REMOVE = 2;
+    // record layout: length, crc of the rest of the record, kind, length of id, id, encoded place
+    private static final int HEADER_SIZE = 4 + 4 + 1 + 2;
+
+    private final File directory;
+    private final int segmentSize;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    // address of the latest record of each place: segment number << 32 | offset
+    private final Map<String, Long> index = new HashMap<>();
+    private long liveBytes;
+    private boolean closed;
+
+    private PlaceLog(File directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Opens the store in the specified directory, creating it if it does not exist.
+     *
+     * @param directory   of store
+     * @param segmentSize size of a single segment file in bytes, a single place must fit in a segment
+     * @return opened store
+     * @throws IOException if the store can not be opened
+     */
+    public static PlaceLog open(File directory, int segmentSize) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Could not create directory " + directory);
+        PlaceLog log = new PlaceLog(directory, segmentSize);
+        log.recover();
+        return log;
+    }
+
+    /**
+     * Opens the store in the specified directory with the default segment size.
+     *
+     * @param directory of store
+     * @return opened store
+     * @throws IOException if the store can not be opened
+     */
+    public static PlaceLog open(File directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    private static long address(int segment, int offset) {
+        return (long) segment << 32 | offset;
+    }
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles();
+        List<Integer> numbers = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        numbers.add(Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            }
+        }
+        for (int number : numbers)
+            segments.put(number, new Segment(number, segmentSize));
+
+        // replay everything after the checkpoint, or everything if there is no usable checkpoint
+        int fromSegment = Integer.MIN_VALUE, fromOffset = 0;
+        Set<Integer> checkpointed = new HashSet<>();
+        int[] checkpoint = readIndex(checkpointed);
+        if (checkpoint != null) {
+            fromSegment = checkpoint[0];
+            fromOffset = checkpoint[1];
+            // segments that were compacted away, but not yet deleted when the application stopped
+            for (Segment segment : new ArrayList<>(segments.headMap(fromSegment).values())) {
+                if (!checkpointed.contains(segment.number)) {
+                    segments.remove(segment.number);
+                    segment.delete();
+                }
+            }
+        } else {
+            index.clear();
+        }
+        for (Segment segment : segments.values()) {
+            if (segment.number < fromSegment)
+                continue;
+            scan(segment, segment.number == fromSegment ? fromOffset : 0);
+        }
+        liveBytes = 0;
+        for (long address : index.values())
+            liveBytes += recordLength(address);
+        if (segments.isEmpty())
+            addSegment(0);
+    }
+
+    // returns the segment and offset the checkpoint covers, or null if the index can not be used
+    private int[] readIndex(Set<Integer> checkpointed) throws IOException {
+        File file = new File(directory, INDEX_FILE);
+        if (!file.isFile())
+            return null;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            if (channel.size() < 28 || channel.size() > Integer.MAX_VALUE)
+                return null;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int end = buffer.limit() - 4;
+            if (crc(buffer, 0, end) != buffer.getInt(end) || buffer.getInt(0) != INDEX_MAGIC
+                    || buffer.getInt(4) != INDEX_VERSION)
+                return null;
+            int segmentNumber = buffer.getInt(8), offset = buffer.getInt(12);
+            int sealedCount = buffer.getInt(16);
+            int p = 20;
+            for (int i = 0; i < sealedCount; i++) {
+                Segment segment = segments.get(buffer.getInt(p));
+                if (segment == null)
+                    return null;
+                segment.used = buffer.getInt(p + 4);
+                checkpointed.add(segment.number);
+                p += 8;
+            }
+            Segment last = segments.get(segmentNumber);
+            if (last == null)
+                return null;
+            last.used = offset;
+
+            int count = buffer.getInt(p);
+            p += 4;
+            byte[] id = new byte[256];
+            for (int i = 0; i < count; i++) {
+                int length = buffer.getShort(p) & 0xFFFF;
+                if (id.length < length)
+                    id = new byte[length];
+                for (int b = 0; b < length; b++)
+                    id[b] = buffer.get(p + 2 + b);
+                p += 2 + length;
+                index.put(new String(id, 0, length, UTF_8), buffer.getLong(p));
+                p += 8;
+            }
+            return new int[]{segmentNumber, offset};
+        }
+    }
+
+    private void scan(Segment segment, int offset) throws IOException {
+        ByteBuffer buffer = segment.buffer;
+        while (offset + HEADER_SIZE <= segmentSize) {
+            int length = buffer.getInt(offset);
+            if (length == 0)
+                break;
+            if (length < HEADER_SIZE || offset + length > segmentSize
+                    || crc(buffer, offset + 8, offset + length) != buffer.getInt(offset + 4)) {
+                // a record that was torn by a crash, nothing after it can be trusted
+                for (int i = offset; i < segmentSize; i++)
+                    buffer.put(i, (byte) 0);
+                break;
+            }
+            String placeId = readId(buffer, offset);
+            if (buffer.get(offset + 8) == KIND_PUT)
+                index.put(placeId, address(segment.number, offset));
+            else
+                index.remove(placeId);
+            offset += length;
+        }
+        segment.used = offset;
+    }
+
+    private static int crc(ByteBuffer buffer, int from, int to) {
+        CRC32 crc = new CRC32();
+        ByteBuffer source = buffer.duplicate();
+        source.position(from);
+        byte[] chunk = new byte[Math.min(8192, Math.max(0, to - from))];
+        for (int p = from; p < to; p += chunk.length) {
+            int n = Math.min(chunk.length, to - p);
+            source.get(chunk, 0, n);
+            crc.update(chunk, 0, n);
+        }
+        return (int) crc.getValue();
+    }
+
+    private static String readId(ByteBuffer buffer, int offset) {
+        byte[] id = new byte[buffer.getShort(offset + 9) & 0xFFFF];
+        for (int i = 0; i < id.length; i++)
+            id[i] = buffer.get(offset + HEADER_SIZE + i);
+        return new String(id, UTF_8);
+    }
+
+    private int recordLength(long address) {
+        return segments.get((int) (address >>> 32)).buffer.getInt((int) address);
+    }
+
+    private Segment addSegment(int number) throws IOException {
+        Segment segment = new Segment(number, segmentSize);
+        segments.put(number, segment);
+        return segment;
+    }
+
+    private File segmentFile(int number) {
+        return new File(directory, String.format("%08d%s", number, SEGMENT_SUFFIX));
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("Log has been closed");
+    }
+
+    /**
+     * Stores the specified place, replacing any place with the same id.
+     *
+     * @param place to store
+     * @throws IOException if the place can not be written
+     */
+    public void put(Place place) throws IOException {
+        if (place.getPlaceId() == null)
+            throw new IllegalArgumentException("Place must have an id");
+        byte[] payload = PlaceCodec.encode(place);
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            append(KIND_PUT, place.getPlaceId(), payload);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the place with the specified id.
+     *
+     * @param placeId of place
+     * @return true if the place was stored
+     * @throws IOException if the removal can not be written
+     */
+    public boolean remove(String placeId) throws IOException {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            if (!index.containsKey(placeId))
+                return false;
+            append(KIND_REMOVE, placeId, new byte[0]);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void append(byte kind, String placeId, byte[] payload) throws IOException {
+        byte[] id = placeId.getBytes(UTF_8);
+        if (id.length > 0xFFFF)
+            throw new IllegalArgumentException("Place id is too long");
+        int length = HEADER_SIZE + id.length + payload.length;
+        if (length > segmentSize)
+            throw new IllegalArgumentException("Place does not fit in a segment: " + length + " bytes");
+
+        Segment segment = segments.lastEntry().getValue();
+        if (segment.used + length > segmentSize)
+            segment = addSegment(segment.number + 1);
+        int offset = segment.used;
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(offset + 8);
+        buffer.put(kind);
+        buffer.putShort((short) id.length);
+        buffer.put(id);
+        buffer.put(payload);
+        segment.buffer.putInt(offset + 4, crc(segment.buffer, offset + 8, offset + length));
+        // the length is written last, so a record is not visible before it is complete
+        segment.buffer.putInt(offset, length);
+        segment.used = offset + length;
+
+        Long previous = kind == KIND_PUT ? index.put(placeId, address(segment.number, offset))
+                : index.remove(placeId);
+        if (previous != null)
+            liveBytes -= recordLength(previous);
+        if (kind == KIND_PUT)
+            liveBytes += length;
+    }
+
+    /**
+     * Returns the place with the specified id, or null if it is not stored.
+     *
+     * @param placeId of place
+     * @param client  to give the place
+     * @return place
+     * @throws IOException if the place can not be read
+     */
+    public Place get(String placeId, GooglePlaces client) throws IOException {
+        byte[] payload;
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            Long address = index.get(placeId);
+            if (address == null)
+                return null;
+            Segment segment = segments.get((int) (address >>> 32));
+            int offset = (int) (long) address;
+            int start = offset + HEADER_SIZE + (segment.buffer.getShort(offset + 9) & 0xFFFF);
+            payload = new byte[offset + segment.buffer.getInt(offset) - start];
+            ByteBuffer buffer = segment.buffer.duplicate();
+            buffer.position(start);
+            buffer.get(payload);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return PlaceCodec.decodePlace(payload, client);
+    }
+
+    /**
+     * Returns the place with the specified id without a client, or null if it is not stored.
+     *
+     * @param placeId of place
+     * @return place
+     * @throws IOException if the place can not be read
+     */
+    public Place get(String placeId) throws IOException {
+        return get(placeId, null);
+    }
+
+    /**
+     * Returns true if a place with the specified id is stored.
+     *
+     * @param placeId of place
+     * @return true if stored
+     */
+    public boolean contains(String placeId) {
+        lock.readLock().lock();
+        try {
+            return index.containsKey(placeId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the amount of stored places.
+     *
+     * @return amount of places
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the amount of bytes in the segments that belong to places that have been replaced or removed.
+     *
+     * @return garbage bytes
+     */
+    public long getGarbageBytes() {
+        lock.readLock().lock();
+        try {
+            long used = 0;
+            for (Segment segment : segments.values())
+                used += segment.used;
+            return used - liveBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Forces the appended records to the disk.
+     *
+     * @throws IOException if the records can not be forced
+     */
+    public void sync() throws IOException {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            for (Segment segment : segments.values())
+                segment.buffer.force();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Forces the appended records to the disk and writes the index, so that the next time the store is opened only the
+     * records appended after this checkpoint have to be scanned.
+     *
+     * @throws IOException if the checkpoint can not be written
+     */
+    public void checkpoint() throws IOException {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            writeIndex();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        for (Segment segment : segments.values())
+            segment.buffer.force();
+        Segment last = segments.lastEntry().getValue();
+        File tmp = new File(directory, INDEX_FILE + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileOutputStream file = new FileOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(file), crc));
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(last.number);
+            out.writeInt(last.used);
+            out.writeInt(segments.size() - 1);
+            for (Segment segment : segments.headMap(last.number).values()) {
+                out.writeInt(segment.number);
+                out.writeInt(segment.used);
+            }
+            out.writeInt(index.size());
+            for (Map.Entry<String, Long> entry : index.entrySet()) {
+                byte[] id = entry.getKey().getBytes(UTF_8);
+                out.writeShort(id.length);
+                out.write(id);
+                out.writeLong(entry.getValue());
+            }
+            out.flush();
+            new DataOutputStream(file).writeInt((int) crc.getValue());
+            file.getFD().sync();
+        }
+        Files.move(tmp.toPath(), new File(directory, INDEX_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Copies the live places into new segments and deletes the old segments, reclaiming the space of places that have
+     * been replaced or removed. If the application stops during compaction, the store is recovered from the old
+     * segments the next time it is opened.
+     *
+     * @throws IOException if the store can not be compacted
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            List<Segment> old = new ArrayList<>(segments.values());
+            Map<String, Long> live = new HashMap<>(index);
+            addSegment(segments.lastKey() + 1);
+
+            // copy the records in the order they were written, so that a replay of the new segments is the same
+            Long[] addresses = live.values().toArray(new Long[live.size()]);
+            Arrays.sort(addresses);
+            for (Long address : addresses) {
+                Segment from = segments.get((int) (address >>> 32));
+                int offset = (int) (long) address;
+                byte[] record = new byte[from.buffer.getInt(offset)];
+                ByteBuffer source = from.buffer.duplicate();
+                source.position(offset);
+                source.get(record);
+
+                Segment to = segments.lastEntry().getValue();
+                if (to.used + record.length > segmentSize)
+                    to = addSegment(to.number + 1);
+                ByteBuffer target = to.buffer.duplicate();
+                target.position(to.used + 4);
+                target.put(record, 4, record.length - 4);
+                to.buffer.putInt(to.used, record.length);
+                index.put(readId(to.buffer, to.used), address(to.number, to.used));
+                to.used += record.length;
+            }
+
+            // the old segments are only deleted once a checkpoint no longer refers to them
+            for (Segment segment : old)
+                segments.remove(segment.number);
+            writeIndex();
+            for (Segment segment : old)
+                segment.delete();
+            liveBytes = 0;
+            for (long address : index.values())
+                liveBytes += recordLength(address);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes a checkpoint and closes the store.
+     *
+     * @throws IOException if the checkpoint can not be written
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (closed)
+                return;
+            writeIndex();
+            closed = true;
+            for (Segment segment : segments.values())
+                segment.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private class Segment {
+        private final int number;
+        private final RandomAccessFile file;
+        private final MappedByteBuffer buffer;
+        private int used;
+
+        private Segment(int number, int size) throws IOException {
+            this.number = number;
+            this.file = new RandomAccessFile(segmentFile(number), "rw");
+            if (file.length() < size)
+                file.setLength(size);
+            this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        private void close() throws IOException {
+            buffer.force();
+            file.close();
+        }
+
+        private void delete() throws IOException {
+            file.close();
+            // the mapping stays valid until it is collected, which on some platforms prevents the deletion
+            if (!segmentFile(number).delete())
+                segmentFile(number).deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package se.walkercrou.places;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Merges the places of overlapping searches and their details into one place per place id. Places whose id is an
+ * {@link AltId} of another place are merged into that place.
+ * <pre>
+ * PlaceMerger merger = new PlaceMerger(100000000, 0.01);
+ * for (Place place : client.getNearbyPlaces(lat, lng, radius, GooglePlaces.MAXIMUM_RESULTS)) {
+ *     boolean seen = merger.mightHaveSeen(place.getPlaceId());
+ *     merger.merge(place);
+ *     if (!seen)
+ *         merger.merge(place.getDetails());
+ * }
+ * store(merger.drain());
+ * </pre>
+ * Merging keeps the richest value of every field: a value that is present is never replaced by one that is missing,
+ * values that are present in both places are taken from the later one, and photos, reviews, types and alt-ids are
+ * combined.
+ * <p>
+ * Every id that is merged is also remembered by a Bloom filter that outlives {@link #drain()}, so a sweep can tell
+ * the places it has already handed off apart from new ones with a fixed amount of memory, about 10 bits per id at a
+ * false positive rate of 1%. Only the places that have not been drained are held in full.
+ * <p>
+ * This class is safe for use by multiple threads.
+ */
+public class PlaceMerger {
+    /**
+     * The amount of ids the default filter is sized for.
+     */
+    public static final long DEFAULT_EXPECTED_IDS = 1000000;
+
+    /**
+     * The false positive rate the default filter is sized for.
+     */
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    private final ConcurrentMap<String, Entry> places = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> aliases = new ConcurrentHashMap<>();
+    private final SeenIds seen;
+    private final AtomicLong duplicates = new AtomicLong();
+
+    /**
+     * Creates a new merger with a filter sized for the specified amount of ids.
+     *
+     * @param expectedIds       amount of distinct ids that will be merged
+     * @param falsePositiveRate the rate of new ids that {@link #mightHaveSeen(String)} may report as seen once the
+     *                          expected amount of ids has been merged
+     */
+    public PlaceMerger(long expectedIds, double falsePositiveRate) {
+        if (expectedIds <= 0)
+            throw new IllegalArgumentException("Expected ids must be greater than zero");
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1)
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+        seen = new SeenIds(expectedIds, falsePositiveRate);
+    }
+
+    /**
+     * Creates a new merger with a filter sized for {@link #DEFAULT_EXPECTED_IDS} ids.
+     */
+    public PlaceMerger() {
+        this(DEFAULT_EXPECTED_IDS, DEFAULT_FALSE_POSITIVE_RATE);
+    }
+
+    /**
+     * Merges the specified place with the place of the same id, or the place it is an alt-id of.
+     *
+     * @param place to merge
+     * @return the merged place
+     */
+    public Place merge(Place place) {
+        if (place.getPlaceId() == null)
+            throw new IllegalArgumentException("Place has no id");
+        if (!seen.put(place.getPlaceId()))
+            duplicates.incrementAndGet();
+        return insert(place);
+    }
+
+    private Place insert(Place place) {
+        String id = resolve(place.getPlaceId());
+        // the alt-ids are registered before the place is inserted, so a concurrent merge of an alt-id either goes to
+        // this place or is inserted under the alt-id in time to be folded in below
+        for (AltId altId : place.getAltIds()) {
+            String alt = altId.getPlaceId();
+            if (alt == null || alt.equals(id))
+                continue;
+            seen.put(alt);
+            aliases.put(alt, id);
+        }
+
+        Place merged;
+        while (true) {
+            Entry current = places.get(id);
+            if (current == null) {
+                // a place that arrives under its alt-id before the place it belongs to takes on the id of that place
+                Place first = place.getPlaceId().equals(id) ? place
+                        : combine(new Place().setPlaceId(id), place).setFields(place.getFields());
+                if (places.putIfAbsent(id, new Entry(first)) == null) {
+                    merged = first;
+                    break;
+                }
+            } else {
+                merged = combine(current.place, place);
+                if (places.replace(id, current, new Entry(merged)))
+                    break;
+            }
+        }
+
+        for (AltId altId : place.getAltIds()) {
+            String alt = altId.getPlaceId();
+            if (alt == null || alt.equals(id))
+                continue;
+            // the alt-id may have arrived as a place of its own before it was known to be one
+            Entry orphan = places.remove(alt);
+            if (orphan != null)
+                merged = insert(orphan.place);
+        }
+
+        // the id may have become an alt-id of another place while this place was inserted
+        if (!resolve(place.getPlaceId()).equals(id)) {
+            Entry moved = places.remove(id);
+            if (moved != null)
+                merged = insert(moved.place);
+        }
+        return merged;
+    }
+
+    /**
+     * Merges each of the specified places.
+     *
+     * @param places to merge
+     */
+    public void mergeAll(Collection<Place> places) {
+        for (Place place : places)
+            merge(place);
+    }
+
+    /**
+     * Returns false if the specified id has never been merged, neither as a place id nor as an alt-id. A return value
+     * of true means that the id has probably been merged before, even if its place has been drained since.
+     *
+     * @param placeId to check
+     * @return false if the id is new
+     */
+    public boolean mightHaveSeen(String placeId) {
+        return seen.mightContain(placeId);
+    }
+
+    /**
+     * Returns the id that places of the specified id are merged into.
+     *
+     * @param placeId place id or alt-id
+     * @return the id of the merged place
+     */
+    public String resolve(String placeId) {
+        String id = aliases.get(placeId);
+        return id != null ? id : placeId;
+    }
+
+    /**
+     * Returns the merged place of the specified id.
+     *
+     * @param placeId place id or alt-id
+     * @return merged place, or null if none is held
+     */
+    public Place get(String placeId) {
+        Entry entry = places.get(resolve(placeId));
+        return entry != null ? entry.place : null;
+    }
+
+    /**
+     * Removes the merged place of the specified id. The id is still reported by {@link #mightHaveSeen(String)}.
+     *
+     * @param placeId place id or alt-id
+     * @return removed place, or null if none was held
+     */
+    public Place remove(String placeId) {
+        String id = resolve(placeId);
+        Entry entry = places.remove(id);
+        if (entry == null)
+            return null;
+        forget(id, entry.place);
+        return entry.place;
+    }
+
+    /**
+     * Removes and returns every merged place. The ids of the places are still reported by
+     * {@link #mightHaveSeen(String)}.
+     *
+     * @return removed places
+     */
+    public List<Place> drain() {
+        List<Place> drained = new ArrayList<>(places.size());
+        for (String id : places.keySet()) {
+            Entry entry = places.remove(id);
+            if (entry != null) {
+                forget(id, entry.place);
+                drained.add(entry.place);
+            }
+        }
+        return drained;
+    }
+
+    private void forget(String id, Place place) {
+        for (AltId altId : place.getAltIds())
+            aliases.remove(altId.getPlaceId(), id);
+    }
+
+    /**
+     * Returns the amount of merged places that are held.
+     *
+     * @return amount of places
+     */
+    public int size() {
+        return places.size();
+    }
+
+    /**
+     * Returns the amount of merged places whose id had probably been merged before.
+     *
+     * @return amount of duplicates
+     */
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    /**
+     * Returns a new place with the richest fields of both specified places. Values that are present in both places are
+     * taken from the current place.
+     *
+     * @param previous place
+     * @param current  place of the same id, or of one of its alt-ids
+     * @return merged place
+     */
+    public static Place combine(Place previous, Place current) {
+        Place merged = new Place()
+                .setPlaceId(previous.getPlaceId())
+                .setClient(pick(previous.getClient(), current.getClient()))
+                .setName(pick(previous.getName(), current.getName()))
+                .setAddress(pick(previous.getAddress(), current.getAddress()))
+                .setVicinity(pick(previous.getVicinity(), current.getVicinity()))
+                .setIconUrl(pick(previous.getIconUrl(), current.getIconUrl()))
+                .setPhoneNumber(pick(previous.getPhoneNumber(), current.getPhoneNumber()))
+                .setInternationalPhoneNumber(pick(previous.getInternationalPhoneNumber(),
+                        current.getInternationalPhoneNumber()))
+                .setGoogleUrl(pick(previous.getGoogleUrl(), current.getGoogleUrl()))
+                .setWebsite(pick(previous.getWebsite(), current.getWebsite()))
+                .setScope(pick(previous.getScope(), current.getScope()))
+                .setLanguage(pick(previous.getLanguage(), current.getLanguage()))
+                .setRating(current.getRating() != -1 ? current.getRating() : previous.getRating())
+                .setStatus(current.getStatus() != null && current.getStatus() != Status.NONE ? current.getStatus()
+                        : previous.getStatus())
+                .setPrice(current.getPrice() != null && current.getPrice() != Price.NONE ? current.getPrice()
+                        : previous.getPrice())
+                .setUtcOffset(current.getUtcOffset() != -1 ? current.getUtcOffset() : previous.getUtcOffset())
+                .setAccuracy(current.getAccuracy() != 0 ? current.getAccuracy() : previous.getAccuracy());
+
+        if (!Double.isNaN(current.getLatitude()) && !Double.isNaN(current.getLongitude()))
+            merged.setLatitude(current.getLatitude()).setLongitude(current.getLongitude());
+        else
+            merged.setLatitude(previous.getLatitude()).setLongitude(previous.getLongitude());
+
+        Hours hours = current.getHours(), previousHours = previous.getHours();
+        if (hours == null || previousHours != null && !hours.isAlwaysOpened()
+                && previousHours.getPeriods().size() > hours.getPeriods().size())
+            hours = previousHours;
+        merged.setHours(hours);
+
+        List<AddressComponent> components = current.getAddressComponents();
+        if (previous.getAddressComponents().size() > components.size())
+            components = previous.getAddressComponents();
+        merged.addAddressComponents(components);
+
+        Set<String> types = new LinkedHashSet<>(previous.getTypes());
+        types.addAll(current.getTypes());
+        merged.addTypes(types);
+
+        Map<String, Photo> photos = new LinkedHashMap<>();
+        for (Photo photo : previous.getPhotos())
+            photos.put(photo.getReference(), photo);
+        for (Photo photo : current.getPhotos())
+            photos.put(photo.getReference(), photo);
+        merged.addPhotos(photos.values());
+
+        Map<String, Review> reviews = new LinkedHashMap<>();
+        for (Review review : previous.getReviews())
+            reviews.put(review.getAuthor() + '\n' + review.getTime(), review);
+        for (Review review : current.getReviews())
+            reviews.put(review.getAuthor() + '\n' + review.getTime(), review);
+        merged.addReviews(reviews.values());
+
+        Map<String, AltId> altIds = new LinkedHashMap<>();
+        for (AltId altId : previous.getAltIds())
+            altIds.put(altId.getPlaceId(), altId);
+        for (AltId altId : current.getAltIds())
+            altIds.put(altId.getPlaceId(), altId);
+        // the id of a place that was merged as an alt-id is an alt-id of the merged place
+        if (!current.getPlaceId().equals(previous.getPlaceId()) && !altIds.containsKey(current.getPlaceId()))
+            altIds.put(current.getPlaceId(), new AltId(current.getClient(), current.getPlaceId(), current.getScope()));
+        altIds.remove(previous.getPlaceId());
+        merged.addAltIds(altIds.values());
+
+        // set last, the collections above are decoded from the json when they are missing
+        return merged.setFields(combine(previous.getFields(), current.getFields()))
+                .setJson(pick(previous.getJson(), current.getJson()));
+    }
+
+    private static FieldsParam combine(FieldsParam previous, FieldsParam current) {
+        if (previous == null || current == null)
+            return null;
+        Set<PlaceField> fields = new HashSet<>(previous.getFields());
+        fields.addAll(current.getFields());
+        return FieldsParam.of(fields.toArray(new PlaceField[fields.size()]));
+    }
+
+    private static <T> T pick(T previous, T current) {
+        return current != null ? current : previous;
+    }
+
+    private static class Entry {
+        // compared by identity so that a concurrent merge of the same place is never lost
+        final Place place;
+
+        Entry(Place place) {
+            this.place = place;
+        }
+    }
+
+    /**
+     * A Bloom filter of ids that can be added to concurrently.
+     */
+    private static class SeenIds {
+        private final AtomicLongArray bits;
+        private final long size;
+        private final int hashes;
+
+        SeenIds(long expected, double falsePositiveRate) {
+            long size = (long) Math.ceil(-expected * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            size = Math.max(64, (size + 63) & ~63L);
+            if (size / 64 > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Too many expected ids");
+            this.bits = new AtomicLongArray((int) (size / 64));
+            this.size = size;
+            this.hashes = Math.max(1, (int) Math.round((double) size / expected * Math.log(2)));
+        }
+
+        /**
+         * Adds an id.
+         *
+         * @param id to add
+         * @return true if the id was definitely not added before
+         */
+        boolean put(String id) {
+            long h1 = Hashing.fnv(id), h2 = Hashing.mix(h1) | 1;
+            boolean changed = false;
+            for (int i = 0; i < hashes; i++) {
+                long bit = ((h1 + i * h2) & Long.MAX_VALUE) % size;
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long current;
+                while (((current = bits.get(word)) & mask) == 0) {
+                    if (bits.compareAndSet(word, current, current | mask)) {
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+            return changed;
+        }
+
+        boolean mightContain(String id) {
+            long h1 = Hashing.fnv(id), h2 = Hashing.mix(h1) | 1;
+            for (int i = 0; i < hashes; i++) {
+                long bit = ((h1 + i * h2) & Long.MAX_VALUE) % size;
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+                    return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package se.walkercrou.places;
+
+import se.walkercrou.places.exception.GooglePlacesException;
+import se.walkercrou.places.exception.NoResultsFoundException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static se.walkercrou.places.GooglePlacesInterface.*;
+
+/**
+ * Publishes the places of a search as its pages arrive, following the Reactive Streams contract: nothing is fetched
+ * before a subscriber requests places, and the next page is only fetched once the places of the previous page have
+ * been requested.
+ * <pre>
+ * async.publishNearbyPlaces(lat, lng, radius, 60).subscribe(new PlacePublisher.Subscriber() {
+ *     public void onSubscribe(PlacePublisher.Subscription subscription) {
+ *         subscription.request(20);
+ *     }
+ *     ...
+ * });
+ * </pre>
+ * Pages are fetched on an executor. The delay before a page token becomes valid is waited on a shared timer instead of
+ * a sleeping thread. Cancelling a subscription aborts the request that is in flight. Every subscription runs its own
+ * search, and a search that finds no places completes without an error.
+ * <p>
+ * The interfaces mirror those of Reactive Streams, so adapting a publisher to a reactive library only takes a
+ * forwarding class.
+ */
+public final class PlacePublisher {
+    private final GooglePlaces client;
+    private final Executor executor;
+    private final String method;
+    private final int limit;
+    private final FieldsParam fields;
+    private final Query query;
+
+    private PlacePublisher(GooglePlaces client, Executor executor, String method, int limit, FieldsParam fields,
+                           Query query) {
+        this.client = client;
+        this.executor = executor;
+        this.method = method;
+        this.limit = limit;
+        this.fields = fields;
+        this.query = query;
+    }
+
+    /**
+     * Returns a publisher of the places near the specified location.
+     *
+     * @param client      to search with
+     * @param executor    to fetch pages on
+     * @param lat         latitude
+     * @param lng         longitude
+     * @param radius      radius
+     * @param limit       the maximum amount of places to publish
+     * @param extraParams to append to the url
+     * @return new publisher
+     * @see GooglePlacesInterface#getNearbyPlaces(double, double, double, int, Param...)
+     */
+    public static PlacePublisher nearby(GooglePlaces client, Executor executor, final double lat, final double lng,
+                                        final double radius, int limit, final Param... extraParams) {
+        return new PlacePublisher(client, executor, METHOD_NEARBY_SEARCH, Math.min(limit, MAXIMUM_RESULTS),
+                FieldsParam.find(extraParams), new Query() {
+            @Override
+            RequestTemplate.UrlBuilder build(RequestTemplate.UrlBuilder url) {
+                return url.location("location", lat, lng).param("radius", radius).params(extraParams);
+            }
+        });
+    }
+
+    /**
+     * Returns a publisher of the places that match the specified text query.
+     *
+     * @param client      to search with
+     * @param executor    to fetch pages on
+     * @param query       to search for
+     * @param limit       the maximum amount of places to publish
+     * @param extraParams to append to the url
+     * @return new publisher
+     * @see GooglePlacesInterface#getPlacesByQuery(String, int, Param...)
+     */
+    public static PlacePublisher byQuery(GooglePlaces client, Executor executor, final String query, int limit,
+                                         final Param... extraParams) {
+        return new PlacePublisher(client, executor, METHOD_TEXT_SEARCH, Math.min(limit, MAXIMUM_RESULTS),
+                FieldsParam.find(extraParams), new Query() {
+            @Override
+            RequestTemplate.UrlBuilder build(RequestTemplate.UrlBuilder url) {
+                return url.param("query", query).params(extraParams);
+            }
+        });
+    }
+
+    /**
+     * Returns a publisher of the places found by a radar search. Radar searches have a single page.
+     *
+     * @param client      to search with
+     * @param executor    to fetch the page on
+     * @param lat         latitude
+     * @param lng         longitude
+     * @param radius      radius
+     * @param limit       the maximum amount of places to publish
+     * @param extraParams to append to the url
+     * @return new publisher
+     * @see GooglePlacesInterface#getPlacesByRadar(double, double, double, int, Param...)
+     */
+    public static PlacePublisher byRadar(GooglePlaces client, Executor executor, final double lat, final double lng,
+                                         final double radius, int limit, final Param... extraParams) {
+        return new PlacePublisher(client, executor, METHOD_RADAR_SEARCH, Math.min(limit, MAXIMUM_RADAR_RESULTS),
+                FieldsParam.find(extraParams), new Query() {
+            @Override
+            RequestTemplate.UrlBuilder build(RequestTemplate.UrlBuilder url) {
+                return url.location("location", lat, lng).param("radius", radius).params(extraParams);
+            }
+        });
+    }
+
+    /**
+     * Starts a new search for the specified subscriber. {@link Subscriber#onSubscribe(Subscription)} is called before
+     * this method returns.
+     *
+     * @param subscriber to publish places to
+     */
+    public void subscribe(Subscriber subscriber) {
+        if (subscriber == null)
+            throw new NullPointerException("Subscriber must not be null");
+        PageSubscription subscription = new PageSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * Receives the places of a {@link PlacePublisher}. The methods of a subscriber are never called concurrently.
+     */
+    public interface Subscriber {
+        /**
+         * Called once before any other method with the subscription that places are requested from.
+         *
+         * @param subscription of subscriber
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Called for each place, never more often than places have been requested.
+         *
+         * @param place that was found
+         */
+        void onNext(Place place);
+
+        /**
+         * Called once if the search failed. No other method is called afterwards.
+         *
+         * @param t cause of failure
+         */
+        void onError(Throwable t);
+
+        /**
+         * Called once when every place has been published. No other method is called afterwards.
+         */
+        void onComplete();
+    }
+
+    /**
+     * The link between a publisher and one of its subscribers.
+     */
+    public interface Subscription {
+        /**
+         * Requests the specified amount of additional places.
+         *
+         * @param n amount of places, greater than zero
+         */
+        void request(long n);
+
+        /**
+         * Stops publishing places and aborts the request that is in flight.
+         */
+        void cancel();
+    }
+
+    private abstract static class Query {
+        abstract RequestTemplate.UrlBuilder build(RequestTemplate.UrlBuilder url);
+    }
+
+    private static class Timer {
+        // only hands fetches over to their executors, so one thread serves every publisher
+        private static final ScheduledExecutorService instance = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "places-page-timer");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    private class PageSubscription implements Subscription, Runnable {
+        private final Subscriber subscriber;
+        private final ClientConfig config = client.getConfig();
+        private final RequestTag tag = RequestTag.current();
+        private final CallContext context = new CallContext();
+        private final Queue<Place> buffer = new ConcurrentLinkedQueue<>();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled, fetching, done;
+        private volatile Throwable error;
+        private volatile ScheduledFuture<?> timer;
+        // only accessed by the fetching thread, which the executor hands over from fetch to fetch
+        private String apiKey, pageToken;
+        private int remaining = limit;
+        private long readyAt;
+        // only accessed while draining
+        private boolean terminated;
+
+        private PageSubscription(Subscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Amount of places requested must be greater than zero");
+                cancel();
+                drain();
+                return;
+            }
+            long current, next;
+            do {
+                current = requested.get();
+                next = current + n < 0 ? Long.MAX_VALUE : current + n;
+            } while (!requested.compareAndSet(current, next));
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            context.cancel();
+            ScheduledFuture<?> timer = this.timer;
+            if (timer != null)
+                timer.cancel(false);
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0)
+                return;
+            int missed = 1;
+            do {
+                if (!terminated)
+                    emit();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            while (!cancelled && requested.get() > 0) {
+                Place place = buffer.poll();
+                if (place == null)
+                    break;
+                if (requested.get() != Long.MAX_VALUE)
+                    requested.decrementAndGet();
+                subscriber.onNext(place);
+            }
+            if (!buffer.isEmpty() && !cancelled)
+                return;
+
+            Throwable error = this.error;
+            if (error != null) {
+                terminated = true;
+                buffer.clear();
+                subscriber.onError(error);
+            } else if (cancelled) {
+                terminated = true;
+                buffer.clear();
+            } else if (done) {
+                terminated = true;
+                subscriber.onComplete();
+            } else if (!fetching && requested.get() > 0) {
+                fetching = true;
+                long delay = readyAt - System.currentTimeMillis();
+                if (delay > 0) {
+                    timer = Timer.instance.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            submit();
+                        }
+                    }, delay, TimeUnit.MILLISECONDS);
+                } else {
+                    submit();
+                }
+            }
+        }
+
+        private void submit() {
+            try {
+                executor.execute(this);
+            } catch (RuntimeException e) {
+                error = e;
+                fetching = false;
+                drain();
+            }
+        }
+
+        /**
+         * Fetches the next page.
+         */
+        @Override
+        public void run() {
+            RequestTag previousTag = RequestTag.set(tag);
+            CallContext previousContext = CallContext.set(context);
+            try {
+                if (apiKey == null)
+                    apiKey = config.getApiKeys().acquire();
+                String uri;
+                if (pageToken == null) {
+                    uri = query.build(config.getTemplate(method).begin().param("key", apiKey)).build();
+                } else {
+                    // page tokens are only valid for the key that they were issued to
+                    RequestTemplate.UrlBuilder url = config.getTemplate(method).begin()
+                            .param("pagetoken", pageToken).param("key", apiKey);
+                    uri = (fields != null ? url.params(fields) : url).build();
+                    config.getApiKeys().recordUse(apiKey);
+                }
+
+                String raw = config.getRequestHandler().get(uri);
+                List<Place> places = new ArrayList<>();
+                String next = null;
+                if (method.equals(METHOD_RADAR_SEARCH))
+                    GooglePlaces.parseRadar(client, places, raw, remaining, fields);
+                else
+                    next = GooglePlaces.parse(client, places, raw, Math.min(remaining, MAXIMUM_PAGE_RESULTS), fields);
+                remaining -= places.size();
+                buffer.addAll(places);
+                if (next != null && remaining > 0) {
+                    pageToken = next;
+                    readyAt = System.currentTimeMillis() + config.getPageTokenDelay();
+                } else {
+                    done = true;
+                }
+            } catch (NoResultsFoundException e) {
+                done = true;
+            } catch (Exception e) {
+                if (e instanceof GooglePlacesException)
+                    config.getApiKeys().recordStatus(apiKey, ((GooglePlacesException) e).getStatusCode());
+                if (!cancelled)
+                    error = e instanceof GooglePlacesException ? e : new GooglePlacesException(e);
+            } finally {
+                CallContext.set(previousContext);
+                RequestTag.set(previousTag);
+                fetching = false;
+            }
+            drain();
+        }
+    }
+}
@@ -15,7 +15,7 @@ import static se.walkercrou.places.GooglePlaces.*;
  */
 public class Prediction {
     private final List<DescriptionTerm> terms = new ArrayList<>();
-    private final List<String> types = new ArrayList<>();
+    private TypeSet types = TypeSet.EMPTY;
     private GooglePlaces client;
     private String placeId;
     private String description;
@@ -102,7 +102,9 @@ public class Prediction {
      * @return this
      */
     protected Prediction addTypes(Collection<String> types) {
-        this.types.addAll(types);
+        List<String> merged = new ArrayList<>(this.types.asList());
+        merged.addAll(types);
+        this.types = TypeSet.of(merged);
         return this;
     }
 
@@ -112,7 +114,36 @@ public class Prediction {
      * @return types
      */
     public List<String> getTypes() {
-        return Collections.unmodifiableList(types);
+        return types.asList();
+    }
+
+    /**
+     * Returns this prediction's types as a {@link TypeSet}.
+     *
+     * @return types
+     */
+    public TypeSet getTypeSet() {
+        return types;
+    }
+
+    /**
+     * Returns true if the predicted place has the specified type.
+     *
+     * @param type to check
+     * @return true if the place has the type
+     */
+    public boolean hasType(String type) {
+        return types.contains(type);
+    }
+
+    /**
+     * Returns true if the predicted place has at least one of the types of the specified mask.
+     *
+     * @param mask of types
+     * @return true if the place has any of the types
+     */
+    public boolean hasAnyType(TypeSet mask) {
+        return types.containsAny(mask);
     }
 
     protected Prediction addTerms(Collection<DescriptionTerm> terms) {
@@ -0,0 +1,376 @@
+package se.walkercrou.places;
+
+import org.apache.http.client.methods.HttpPost;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link RequestHandler} that limits how many requests are sent at once and decides which waiting request is sent
+ * next by the {@link RequestTag} of the thread that made it.
+ * <p>
+ * Waiting requests are ordered by weighted fair queuing: every tenant of every priority is a separate flow and receives
+ * a share of the requests proportional to the weight of its priority, so one tenant can not starve the other tenants of
+ * the same priority and {@link RequestPriority#INTERACTIVE} requests overtake queued {@link RequestPriority#BATCH}
+ * requests. Each priority can additionally be limited to a number of requests in flight, which by default keeps a part
+ * of the connections free for interactive requests.
+ * <p>
+ * A request of a call with a {@link CallContext} stops waiting when the deadline of the call is reached or, within a
+ * few dozen milliseconds, when the call is cancelled, and fails like a request that was aborted.
+ * <p>
+ * This class is safe for use by multiple threads.
+ */
+public class PriorityRequestHandler implements DelegatingRequestHandler {
+    private static final long CANCEL_POLL_MILLIS = 50;
+
+    private final RequestHandler handler;
+    private final int maxConcurrency;
+    private final Map<RequestPriority, Integer> weights = new EnumMap<>(RequestPriority.class);
+    private final Map<RequestPriority, Integer> limits = new EnumMap<>(RequestPriority.class);
+    private final Map<RequestPriority, Integer> inFlight = new EnumMap<>(RequestPriority.class);
+    private final Map<RequestPriority, QueueStats> stats = new EnumMap<>(RequestPriority.class);
+    private final Map<RequestTag, Double> lastFinish = new HashMap<>();
+    private final TreeSet<Ticket> queue = new TreeSet<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private int totalInFlight;
+    private double virtualTime;
+    private long sequence;
+
+    /**
+     * Creates a new scheduler in front of the specified handler.
+     *
+     * @param handler        to send requests with
+     * @param maxConcurrency maximum amount of requests in flight
+     */
+    public PriorityRequestHandler(RequestHandler handler, int maxConcurrency) {
+        this.handler = handler;
+        this.maxConcurrency = maxConcurrency;
+        for (RequestPriority priority : RequestPriority.values()) {
+            inFlight.put(priority, 0);
+            limits.put(priority, maxConcurrency);
+            stats.put(priority, new QueueStats());
+        }
+        weights.put(RequestPriority.INTERACTIVE, 16);
+        weights.put(RequestPriority.NORMAL, 4);
+        weights.put(RequestPriority.BATCH, 1);
+        limits.put(RequestPriority.BATCH, Math.max(1, maxConcurrency * 3 / 4));
+    }
+
+    /**
+     * Creates a new scheduler in front of a {@link DefaultRequestHandler}.
+     */
+    public PriorityRequestHandler() {
+        this(new DefaultRequestHandler(), DefaultRequestHandler.DEFAULT_MAX_CONNECTIONS);
+    }
+
+    /**
+     * Returns the handler requests are sent with.
+     *
+     * @return request handler
+     */
+    @Override
+    public RequestHandler getHandler() {
+        return handler;
+    }
+
+    /**
+     * Sets the relative share of requests of the specified priority. The default weights are 16 for interactive, 4 for
+     * normal and 1 for batch requests.
+     *
+     * @param priority to set weight of
+     * @param weight   greater than zero
+     * @return this
+     */
+    public PriorityRequestHandler setWeight(RequestPriority priority, int weight) {
+        if (weight <= 0)
+            throw new IllegalArgumentException("Weight must be greater than zero");
+        lock.lock();
+        try {
+            weights.put(priority, weight);
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Sets the maximum amount of requests of the specified priority that may be in flight at once. By default batch
+     * requests may use three quarters of the connections.
+     *
+     * @param priority to set limit of
+     * @param limit    greater than zero
+     * @return this
+     */
+    public PriorityRequestHandler setConcurrencyLimit(RequestPriority priority, int limit) {
+        if (limit <= 0)
+            throw new IllegalArgumentException("Limit must be greater than zero");
+        lock.lock();
+        try {
+            limits.put(priority, Math.min(limit, maxConcurrency));
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Returns the queue statistics of the specified priority.
+     *
+     * @param priority to get statistics of
+     * @return queue statistics
+     */
+    public QueueStats getStats(RequestPriority priority) {
+        return stats.get(priority);
+    }
+
+    /**
+     * Returns the amount of requests waiting to be sent.
+     *
+     * @return queue length
+     */
+    public int getQueueLength() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+        return handler.getCharacterEncoding();
+    }
+
+    @Override
+    public void setCharacterEncoding(String characterEncoding) {
+        handler.setCharacterEncoding(characterEncoding);
+    }
+
+    @Override
+    public InputStream getInputStream(String uri) throws IOException {
+        Ticket ticket = acquire();
+        try {
+            return handler.getInputStream(uri);
+        } finally {
+            release(ticket);
+        }
+    }
+
+    @Override
+    public String get(String uri) throws IOException {
+        Ticket ticket = acquire();
+        try {
+            return handler.get(uri);
+        } finally {
+            release(ticket);
+        }
+    }
+
+    @Override
+    public String post(HttpPost data) throws IOException {
+        Ticket ticket = acquire();
+        try {
+            return handler.post(data);
+        } finally {
+            release(ticket);
+        }
+    }
+
+    private Ticket acquire() throws IOException {
+        RequestTag tag = RequestTag.current();
+        CallContext context = CallContext.current();
+        if (context != null)
+            context.check();
+        long queuedAt = System.nanoTime();
+        Ticket ticket;
+        lock.lock();
+        try {
+            // the virtual finish time of a flow advances by the inverse of its weight for each request
+            Double finish = lastFinish.get(tag);
+            double start = Math.max(virtualTime, finish == null ? 0 : finish);
+            ticket = new Ticket(tag, start, start + 1.0 / weights.get(tag.getPriority()), sequence++,
+                    lock.newCondition());
+            lastFinish.put(tag, ticket.finish);
+            queue.add(ticket);
+            dispatch();
+
+            while (!ticket.granted) {
+                try {
+                    if (context == null) {
+                        ticket.condition.await();
+                    } else if (context.isCancelled() || context.isExpired()) {
+                        queue.remove(ticket);
+                        forget(ticket);
+                        dispatch();
+                        context.check();
+                    } else {
+                        // cancelling the call does not signal the ticket, so it is polled for
+                        long millis = Math.max(1, Math.min(context.getRemainingMillis(), CANCEL_POLL_MILLIS));
+                        ticket.condition.await(millis, TimeUnit.MILLISECONDS);
+                    }
+                } catch (InterruptedException e) {
+                    if (ticket.granted) {
+                        release(ticket);
+                    } else {
+                        queue.remove(ticket);
+                        forget(ticket);
+                        dispatch();
+                    }
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting to send request");
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        stats.get(tag.getPriority()).record(System.nanoTime() - queuedAt);
+        return ticket;
+    }
+
+    private void release(Ticket ticket) {
+        RequestPriority priority = ticket.tag.getPriority();
+        lock.lock();
+        try {
+            inFlight.put(priority, inFlight.get(priority) - 1);
+            totalInFlight--;
+            forget(ticket);
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void forget(Ticket ticket) {
+        // Once the last request of a flow is done, the flow is only remembered while it is ahead of the virtual clock,
+        // which is by at most the one request that was just sent. Forgetting it then costs at most that one request of
+        // fairness and keeps one entry per flow with requests waiting or in flight, however many tenants come and go.
+        Double finish = lastFinish.get(ticket.tag);
+        if (finish != null && finish == ticket.finish)
+            lastFinish.remove(ticket.tag);
+    }
+
+    private void dispatch() {
+        while (totalInFlight < maxConcurrency && !queue.isEmpty()) {
+            Ticket next = null;
+            for (Ticket ticket : queue) {
+                RequestPriority priority = ticket.tag.getPriority();
+                if (inFlight.get(priority) < limits.get(priority)) {
+                    next = ticket;
+                    break;
+                }
+            }
+            if (next == null)
+                return;
+
+            queue.remove(next);
+            RequestPriority priority = next.tag.getPriority();
+            inFlight.put(priority, inFlight.get(priority) + 1);
+            totalInFlight++;
+            virtualTime = Math.max(virtualTime, next.start);
+            next.granted = true;
+            next.condition.signal();
+        }
+        if (queue.isEmpty() && totalInFlight == 0)
+            virtualTime = 0; // idle, every flow has been forgotten
+    }
+
+    /**
+     * Returns the amount of flows whose virtual finish time is remembered.
+     *
+     * @return amount of flows
+     */
+    int getFlowCount() {
+        lock.lock();
+        try {
+            return lastFinish.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class Ticket implements Comparable<Ticket> {
+        private final RequestTag tag;
+        private final double start, finish;
+        private final long sequence;
+        private final Condition condition;
+        private boolean granted;
+
+        private Ticket(RequestTag tag, double start, double finish, long sequence, Condition condition) {
+            this.tag = tag;
+            this.start = start;
+            this.finish = finish;
+            this.sequence = sequence;
+            this.condition = condition;
+        }
+
+        @Override
+        public int compareTo(Ticket other) {
+            int c = Double.compare(finish, other.finish);
+            return c != 0 ? c : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * Statistics of the time requests of a single priority spent waiting to be sent.
+     */
+    public static class QueueStats {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private void record(long nanos) {
+            requests.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos))
+                max = maxNanos.get();
+        }
+
+        /**
+         * Returns the amount of requests that have been sent.
+         *
+         * @return amount of requests
+         */
+        public long getRequests() {
+            return requests.get();
+        }
+
+        /**
+         * Returns the average time requests waited before being sent.
+         *
+         * @param unit of time
+         * @return average queue time
+         */
+        public long getAverageQueueTime(TimeUnit unit) {
+            long n = requests.get();
+            return n == 0 ? 0 : unit.convert(totalNanos.get() / n, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Returns the longest time a request waited before being sent.
+         *
+         * @param unit of time
+         * @return maximum queue time
+         */
+        public long getMaxQueueTime(TimeUnit unit) {
+            return unit.convert(maxNanos.get(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("QueueStats{requests=%d, averageMillis=%d, maxMillis=%d}", getRequests(),
+                    getAverageQueueTime(TimeUnit.MILLISECONDS), getMaxQueueTime(TimeUnit.MILLISECONDS));
+        }
+    }
+}
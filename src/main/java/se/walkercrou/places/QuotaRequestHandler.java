@@ -0,0 +1,143 @@
+package se.walkercrou.places;
+
+import org.apache.http.client.methods.HttpPost;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link RequestHandler} that charges every request to a quota shared by all workers through a
+ * {@link CoordinationBackend}, and refuses requests once the quota is used up.
+ * <pre>
+ * String quota = "daily-" + today;
+ * client.setRequestHandler(new QuotaRequestHandler(client.getRequestHandler(), backend, quota, 100000, 50));
+ * </pre>
+ * Requests are reserved from the backend in blocks, so the backend is only asked once per block. A worker that stops
+ * may leave up to one block unused, and the quota is never exceeded. The name of the quota decides its period, a
+ * name per day gives a daily quota. Once a handler has seen its quota used up, it refuses requests without asking the
+ * backend again, since the usage of a quota never goes down. This class is safe for use by multiple threads.
+ */
+public class QuotaRequestHandler implements DelegatingRequestHandler {
+    private final RequestHandler handler;
+    private final CoordinationBackend backend;
+    private final String quota;
+    private final long limit;
+    private final int blockSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long reserved;
+    private boolean exhausted;
+
+    /**
+     * Creates a new handler in front of the specified handler.
+     *
+     * @param handler   to send requests with
+     * @param backend   that keeps the usage of the quota
+     * @param quota     name of quota
+     * @param limit     maximum amount of requests of all workers
+     * @param blockSize amount of requests reserved from the backend at once
+     */
+    public QuotaRequestHandler(RequestHandler handler, CoordinationBackend backend, String quota, long limit,
+                               int blockSize) {
+        if (blockSize < 1)
+            throw new IllegalArgumentException("Block size must be at least one");
+        this.handler = handler;
+        this.backend = backend;
+        this.quota = quota;
+        this.limit = limit;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Returns the handler requests are sent with.
+     *
+     * @return request handler
+     */
+    @Override
+    public RequestHandler getHandler() {
+        return handler;
+    }
+
+    /**
+     * Returns the amount of requests that this handler has reserved but not sent yet.
+     *
+     * @return amount of requests
+     */
+    public long getReserved() {
+        lock.lock();
+        try {
+            return reserved;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void charge() throws IOException {
+        lock.lock();
+        try {
+            if (reserved == 0) {
+                if (exhausted)
+                    throw new QuotaExhaustedException(quota, limit);
+                long total = backend.addUsage(quota, blockSize);
+                long before = total - blockSize;
+                // a block that reaches the limit is the last one any worker gets
+                exhausted = total >= limit;
+                if (before >= limit)
+                    throw new QuotaExhaustedException(quota, limit);
+                reserved = Math.min(blockSize, limit - before);
+            }
+            reserved--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+        return handler.getCharacterEncoding();
+    }
+
+    @Override
+    public void setCharacterEncoding(String characterEncoding) {
+        handler.setCharacterEncoding(characterEncoding);
+    }
+
+    @Override
+    public InputStream getInputStream(String uri) throws IOException {
+        charge();
+        return handler.getInputStream(uri);
+    }
+
+    @Override
+    public String get(String uri) throws IOException {
+        charge();
+        return handler.get(uri);
+    }
+
+    @Override
+    public String post(HttpPost data) throws IOException {
+        charge();
+        return handler.post(data);
+    }
+
+    /**
+     * Thrown when a request is refused because the quota is used up.
+     */
+    public static class QuotaExhaustedException extends IOException {
+        private final String quota;
+
+        private QuotaExhaustedException(String quota, long limit) {
+            super("Quota " + quota + " of " + limit + " requests is used up");
+            this.quota = quota;
+        }
+
+        /**
+         * Returns the name of the quota that is used up.
+         *
+         * @return name of quota
+         */
+        public String getQuota() {
+            return quota;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package se.walkercrou.places;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A token bucket that hands out permits at a fixed rate. Up to a burst of permits can be taken at once after the
+ * limiter has been idle.
+ * <pre>
+ * RateLimiter limiter = new RateLimiter(50, 10);
+ * limiter.acquire(); // waits until a permit is available
+ * </pre>
+ * Permits are reserved in the order they are asked for, so a caller never waits behind one that asked later. This
+ * class is safe for use by multiple threads.
+ */
+public class RateLimiter {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final double permitsPerSecond;
+    private final int burst;
+    private double available;
+    private long refilledAt = System.nanoTime();
+
+    /**
+     * Creates a new limiter that starts with a full bucket.
+     *
+     * @param permitsPerSecond rate at which permits become available
+     * @param burst            maximum amount of permits that can be saved up
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0)
+            throw new IllegalArgumentException("Rate must be greater than zero");
+        if (burst < 1)
+            throw new IllegalArgumentException("Burst must be at least one");
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.available = burst;
+    }
+
+    /**
+     * Returns the rate at which permits become available.
+     *
+     * @return permits per second
+     */
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    /**
+     * Returns the maximum amount of permits that can be saved up.
+     *
+     * @return burst
+     */
+    public int getBurst() {
+        return burst;
+    }
+
+    /**
+     * Takes a permit, waiting until one is available.
+     *
+     * @throws InterruptedException if interrupted while waiting, the permit is then given back
+     */
+    public void acquire() throws InterruptedException {
+        long wait = reserve();
+        if (wait <= 0)
+            return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            refund();
+            throw e;
+        }
+    }
+
+    /**
+     * Takes a permit if one is available right away.
+     *
+     * @return true if a permit was taken
+     */
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            refill(System.nanoTime());
+            if (available < 1)
+                return false;
+            available--;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reserves a permit and returns how long the caller has to wait for it.
+     *
+     * @return nanoseconds to wait
+     */
+    private long reserve() {
+        lock.lock();
+        try {
+            refill(System.nanoTime());
+            // the bucket may go negative, later callers wait for the permits reserved before them
+            available--;
+            return available >= 0 ? 0 : (long) (-available / permitsPerSecond * 1e9);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives back a permit that was reserved but not used, so the callers after it do not wait for it.
+     */
+    private void refund() {
+        lock.lock();
+        try {
+            refill(System.nanoTime());
+            available = Math.min(burst, available + 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refill(long now) {
+        available = Math.min(burst, available + (now - refilledAt) / 1e9 * permitsPerSecond);
+        refilledAt = now;
+    }
+}
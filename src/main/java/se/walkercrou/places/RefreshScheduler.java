@@ -0,0 +1,509 @@
+package se.walkercrou.places;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps a set of places fresh by refetching their details in the background within a budget of requests. Every period,
+ * the places that are most in need of a refresh are refetched with {@link GooglePlacesInterface#getPlaceById(String,
+ * Param...)}. A place is more in need of a refresh the longer ago it was fetched, the more often it is accessed and the
+ * more often it has changed when it was refreshed before. Accesses count for less as they age, and are halved every
+ * {@link #setAccessHalfLife(long, TimeUnit) half-life}. A place whose refresh failed is not tried again until a delay
+ * that doubles with every consecutive failure has passed.
+ * <pre>
+ * RefreshScheduler scheduler = new RefreshScheduler(client, 100, 1, TimeUnit.MINUTES);
+ * scheduler.addListener(new RefreshScheduler.Listener() {
+ *     public void onChange(PlaceDiff diff) {
+ *         index.update(diff.getCurrent());
+ *     }
+ * });
+ * scheduler.track(place);
+ * scheduler.start();
+ * </pre>
+ * Refreshes are sent with a {@link RequestPriority#BATCH} {@link RequestTag}, so a {@link PriorityRequestHandler}
+ * lets interactive requests overtake them. This class is safe for use by multiple threads.
+ */
+public class RefreshScheduler {
+    /**
+     * The default minimum age of a place before it is refreshed.
+     */
+    public static final long DEFAULT_MIN_AGE_MILLIS = 60 * 60 * 1000;
+    /**
+     * The default time after which the accesses of a place count half as much.
+     */
+    public static final long DEFAULT_ACCESS_HALF_LIFE_MILLIS = 24 * 60 * 60 * 1000;
+    private static final int MAX_BACKOFF_SHIFT = 10;
+
+    private final GooglePlacesInterface client;
+    private final int budget;
+    private final long period;
+    private final TimeUnit unit;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private final AtomicLong refreshes = new AtomicLong(), changes = new AtomicLong(), failures = new AtomicLong();
+    private volatile long minAgeMillis = DEFAULT_MIN_AGE_MILLIS;
+    private volatile long accessHalfLifeMillis = DEFAULT_ACCESS_HALF_LIFE_MILLIS;
+    private long decayedAt = System.currentTimeMillis(); // guarded by refreshLock
+    private volatile Param[] extraParams = new Param[0];
+    private volatile double minDriftMeters;
+    private ScheduledExecutorService executor;
+    private boolean ownsExecutor;
+    private ScheduledFuture<?> task;
+
+    /**
+     * Creates a new scheduler.
+     *
+     * @param client to refetch places with
+     * @param budget maximum amount of places to refresh each period
+     * @param period between refreshes
+     * @param unit   of period
+     */
+    public RefreshScheduler(GooglePlacesInterface client, int budget, long period, TimeUnit unit) {
+        if (budget <= 0)
+            throw new IllegalArgumentException("Budget must be greater than zero");
+        this.client = client;
+        this.budget = budget;
+        this.period = period;
+        this.unit = unit;
+    }
+
+    /**
+     * Sets the minimum time since a place was fetched before it is refreshed.
+     *
+     * @param minAge minimum age
+     * @param unit   of minimum age
+     * @return this
+     */
+    public RefreshScheduler setMinAge(long minAge, TimeUnit unit) {
+        this.minAgeMillis = unit.toMillis(minAge);
+        return this;
+    }
+
+    /**
+     * Sets the time after which the accesses of a place count half as much towards its popularity.
+     *
+     * @param halfLife of accesses
+     * @param unit     of half-life
+     * @return this
+     */
+    public RefreshScheduler setAccessHalfLife(long halfLife, TimeUnit unit) {
+        if (halfLife <= 0)
+            throw new IllegalArgumentException("Half-life must be greater than zero");
+        this.accessHalfLifeMillis = unit.toMillis(halfLife);
+        return this;
+    }
+
+    /**
+     * Sets the smallest movement of the location of a place that counts as a change.
+     *
+     * @param minDriftMeters smallest movement in meters
+     * @return this
+     */
+    public RefreshScheduler setMinDrift(double minDriftMeters) {
+        this.minDriftMeters = minDriftMeters;
+        return this;
+    }
+
+    /**
+     * Sets extra parameters to include in refresh requests, such as a {@link FieldsParam}. With a fields param, only the
+     * requested sections are compared, and the place that is kept afterwards only has those sections.
+     *
+     * @param extraParams to include
+     * @return this
+     */
+    public RefreshScheduler setExtraParams(Param... extraParams) {
+        this.extraParams = extraParams.clone();
+        return this;
+    }
+
+    /**
+     * Adds a listener that is notified of places that changed when they were refreshed.
+     *
+     * @param listener to add
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener to remove
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Starts refreshing places every period on a new single thread executor.
+     */
+    public void start() {
+        start(Executors.newSingleThreadScheduledExecutor(), true);
+    }
+
+    /**
+     * Starts refreshing places every period on the specified executor.
+     *
+     * @param executor to refresh places on
+     */
+    public void start(ScheduledExecutorService executor) {
+        start(executor, false);
+    }
+
+    private void start(ScheduledExecutorService executor, boolean ownsExecutor) {
+        refreshLock.lock();
+        try {
+            if (task != null)
+                throw new IllegalStateException("Scheduler has already been started");
+            this.executor = executor;
+            this.ownsExecutor = ownsExecutor;
+            task = executor.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        refreshNow();
+                    } catch (RuntimeException e) {
+                        // an exception would cancel every later refresh
+                        failures.incrementAndGet();
+                    }
+                }
+            }, period, period, unit);
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Stops refreshing places. A refresh that is already running is completed.
+     */
+    public void stop() {
+        ScheduledFuture<?> task;
+        ScheduledExecutorService executor;
+        boolean ownsExecutor;
+        refreshLock.lock();
+        try {
+            task = this.task;
+            executor = this.executor;
+            ownsExecutor = this.ownsExecutor;
+            this.task = null;
+            this.executor = null;
+        } finally {
+            refreshLock.unlock();
+        }
+        if (task != null)
+            task.cancel(false);
+        if (executor != null && ownsExecutor)
+            executor.shutdown();
+    }
+
+    /**
+     * Starts tracking the specified place, which was fetched just now.
+     *
+     * @param place to track
+     */
+    public void track(Place place) {
+        Entry entry = new Entry(place.getPlaceId());
+        entry.place = place;
+        entry.fetchedAt = System.currentTimeMillis();
+        Entry existing = entries.putIfAbsent(entry.placeId, entry);
+        if (existing != null) {
+            existing.fingerprint = null;
+            existing.place = place;
+            existing.fetchedAt = entry.fetchedAt;
+        }
+    }
+
+    /**
+     * Starts tracking the place with the specified id. The place is fetched by the next refresh that has budget left.
+     *
+     * @param placeId of place
+     */
+    public void track(String placeId) {
+        entries.putIfAbsent(placeId, new Entry(placeId));
+    }
+
+    /**
+     * Stops tracking the place with the specified id.
+     *
+     * @param placeId of place
+     */
+    public void untrack(String placeId) {
+        entries.remove(placeId);
+    }
+
+    /**
+     * Returns the latest version of the place with the specified id and counts the access towards its popularity.
+     *
+     * @param placeId of place
+     * @return place, or null if the place is not tracked or has not been fetched yet
+     */
+    public Place get(String placeId) {
+        Entry entry = entries.get(placeId);
+        if (entry == null)
+            return null;
+        entry.accesses.incrementAndGet();
+        return entry.place;
+    }
+
+    /**
+     * Counts an access of the place with the specified id towards its popularity.
+     *
+     * @param placeId of place
+     */
+    public void recordAccess(String placeId) {
+        Entry entry = entries.get(placeId);
+        if (entry != null)
+            entry.accesses.incrementAndGet();
+    }
+
+    /**
+     * Returns the amount of tracked places.
+     *
+     * @return amount of places
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the amount of places that have been refreshed, including those that did not change.
+     *
+     * @return amount of refreshes
+     */
+    public long getRefreshCount() {
+        return refreshes.get();
+    }
+
+    /**
+     * Returns the amount of refreshes that found a change.
+     *
+     * @return amount of changes
+     */
+    public long getChangeCount() {
+        return changes.get();
+    }
+
+    /**
+     * Returns the amount of refreshes that failed, including those whose place could not be compared to its previous
+     * version.
+     *
+     * @return amount of failures
+     */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * Returns how much the place with the specified id is in need of a refresh at the specified time, or 0 if it was
+     * fetched less than the minimum age ago or its last refresh failed too recently. Places that have never been
+     * fetched have an infinite score until a fetch of them fails.
+     *
+     * @param placeId of place
+     * @param now     current time in milliseconds
+     * @return score
+     */
+    public double getScore(String placeId, long now) {
+        Entry entry = entries.get(placeId);
+        return entry == null ? 0 : score(entry, now);
+    }
+
+    private double score(Entry entry, long now) {
+        int failed = entry.failed;
+        if (failed > 0 && now - entry.failedAt < backoff(failed))
+            return 0;
+        long age;
+        if (entry.place == null) {
+            if (failed == 0)
+                return Double.POSITIVE_INFINITY;
+            age = now - entry.failedAt;
+        } else {
+            age = now - entry.fetchedAt;
+            if (age < minAgeMillis)
+                return 0;
+        }
+        double hours = Math.max(age, 1) / 3600000.0;
+        double popularity = 1 + Math.log1p(entry.accesses.get());
+        // the share of earlier refreshes that found a change, smoothed so new places start at one half
+        double volatility = (entry.changes + 1.0) / (entry.refreshes + 2.0);
+        return hours * popularity * (1 + volatility) / (1 + failed);
+    }
+
+    private long backoff(int failed) {
+        long base = Math.max(minAgeMillis, unit.toMillis(period));
+        return base << Math.min(failed - 1, MAX_BACKOFF_SHIFT);
+    }
+
+    /**
+     * Refreshes the places that are most in need of a refresh, up to the budget, on the current thread.
+     *
+     * @return amount of places that were refetched
+     */
+    public int refreshNow() {
+        if (!refreshLock.tryLock())
+            return 0; // the previous refresh is still running
+        try {
+            long now = System.currentTimeMillis();
+            decayAccesses(now);
+            List<Entry> due = selectDue(now);
+            RequestTag previous = RequestTag.set(RequestTag.of(RequestPriority.BATCH,
+                    RequestTag.current().getTenant()));
+            try {
+                for (Entry entry : due)
+                    refresh(entry);
+            } finally {
+                RequestTag.set(previous);
+            }
+            return due.size();
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private void decayAccesses(long now) {
+        long halfLife = accessHalfLifeMillis;
+        long halvings = (now - decayedAt) / halfLife;
+        if (halvings <= 0)
+            return;
+        decayedAt += halvings * halfLife;
+        int shift = (int) Math.min(halvings, 63);
+        for (Entry entry : entries.values()) {
+            long accesses = entry.accesses.get();
+            // subtract rather than set so that accesses counted in the meantime are kept
+            if (accesses > 0)
+                entry.accesses.addAndGet((accesses >>> shift) - accesses);
+        }
+    }
+
+    private List<Entry> selectDue(long now) {
+        // keep the entries with the highest scores in a min-heap of the size of the budget
+        PriorityQueue<Candidate> heap = new PriorityQueue<>(budget);
+        for (Entry entry : entries.values()) {
+            double score = score(entry, now);
+            if (score <= 0)
+                continue;
+            if (heap.size() < budget) {
+                heap.add(new Candidate(entry, score));
+            } else if (score > heap.peek().score) {
+                heap.poll();
+                heap.add(new Candidate(entry, score));
+            }
+        }
+        Candidate[] sorted = heap.toArray(new Candidate[heap.size()]);
+        Arrays.sort(sorted, Collections.reverseOrder());
+        List<Entry> due = new ArrayList<>(sorted.length);
+        for (Candidate candidate : sorted)
+            due.add(candidate.entry);
+        return due;
+    }
+
+    private void refresh(Entry entry) {
+        Place current;
+        try {
+            current = client.getPlaceById(entry.placeId, extraParams);
+        } catch (RuntimeException e) {
+            failed(entry);
+            return;
+        }
+        if (entries.get(entry.placeId) != entry)
+            return; // untracked while it was being fetched
+        Place previous = entry.place;
+        PlaceDiff.Fingerprint fingerprint = entry.fingerprint;
+        entry.place = current;
+        entry.fingerprint = null;
+        entry.fetchedAt = System.currentTimeMillis();
+        entry.failed = 0;
+        if (previous == null)
+            return;
+
+        entry.refreshes++;
+        refreshes.incrementAndGet();
+        PlaceDiff diff;
+        try {
+            // the previous version is only hashed the first time, after that its fingerprint is kept from the last diff
+            if (fingerprint == null)
+                fingerprint = PlaceDiff.fingerprint(previous);
+            diff = PlaceDiff.compare(fingerprint, previous, current, minDriftMeters);
+        } catch (RuntimeException e) {
+            // a section of one of the versions could not be decoded, the current version is kept nonetheless
+            failures.incrementAndGet();
+            return;
+        }
+        entry.fingerprint = diff.getCurrentFingerprint();
+        if (!diff.isEmpty()) {
+            entry.changes++;
+            changes.incrementAndGet();
+            for (Listener listener : listeners) {
+                try {
+                    listener.onChange(diff);
+                } catch (RuntimeException e) {
+                    // one listener must not keep the others or later refreshes from running
+                }
+            }
+        }
+    }
+
+    private void failed(Entry entry) {
+        failures.incrementAndGet();
+        // try again after a delay rather than at the top of the next refresh
+        entry.failedAt = System.currentTimeMillis();
+        if (entry.failed < Integer.MAX_VALUE)
+            entry.failed++;
+    }
+
+    /**
+     * Notified of places that changed when they were refreshed.
+     */
+    public interface Listener {
+        /**
+         * Called on the refreshing thread when a refreshed place differs from its previous version. Exceptions thrown
+         * by a listener are ignored.
+         *
+         * @param diff between the previous and current version of the place
+         */
+        void onChange(PlaceDiff diff);
+    }
+
+    private static class Candidate implements Comparable<Candidate> {
+        private final Entry entry;
+        private final double score;
+
+        private Candidate(Entry entry, double score) {
+            this.entry = entry;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return Double.compare(score, other.score);
+        }
+    }
+
+    private static class Entry {
+        private final String placeId;
+        private final AtomicLong accesses = new AtomicLong();
+        private volatile Place place;
+        // of place, once it has been compared to the version before it
+        private volatile PlaceDiff.Fingerprint fingerprint;
+        private volatile long fetchedAt, failedAt;
+        // consecutive failed refreshes
+        private volatile int failed;
+        // only updated by the refreshing thread
+        private volatile int refreshes, changes;
+
+        private Entry(String placeId) {
+            this.placeId = placeId;
+        }
+    }
+}
@@ -0,0 +1,482 @@
+package se.walkercrou.places;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpPost;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link RequestHandler} that records responses to an archive file and serves them again without a network
+ * connection, so the whole client can be exercised offline.
+ * <pre>
+ * // once, with a real key
+ * try (ReplayRequestHandler recorder = ReplayRequestHandler.record(new DefaultRequestHandler(), archive)) {
+ *     new GooglePlaces(apiKey, recorder).getNearbyPlaces(lat, lng, radius);
+ * }
+ *
+ * // then as often as needed
+ * ReplayRequestHandler replay = ReplayRequestHandler.replay(archive)
+ *         .setLatency(ReplayRequestHandler.Latency.logNormal(80, 0.5)).setErrorRate(0.01);
+ * GooglePlaces client = new GooglePlaces("any key", replay);
+ * </pre>
+ * Requests are identified by their method and URI, and for posts their body. The API key and any other
+ * {@link #addScrubbedParameter(String) scrubbed parameters} are removed from the URI before it is written, so archives
+ * can be shared and replayed with any key. If the same request is recorded twice, the later response is replayed.
+ * <p>
+ * A replayed archive is memory-mapped and only its index of requests is kept on the heap. Synthetic latency and errors
+ * can be injected into replayed responses to test how the rest of the stack behaves under load. This class is safe for
+ * use by multiple threads.
+ */
+public class ReplayRequestHandler implements RequestHandler, Closeable {
+    private static final byte[] MAGIC = {'G', 'P', 'R'};
+    private static final int VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final RequestHandler handler;
+    private final DataOutputStream out;
+    private final ByteBuffer archive;
+    private final Map<String, Long> index;
+    private final Set<String> scrubbed = Collections.synchronizedSet(new LinkedHashSet<String>());
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), errors = new AtomicLong();
+    private volatile String characterEncoding = DefaultRequestHandler.DEFAULT_CHARACTER_ENCODING;
+    private volatile Latency latency = Latency.none();
+    private volatile double errorRate, statusErrorRate;
+    private volatile String errorStatus = Statuses.STATUS_OVER_QUERY_LIMIT;
+    private volatile Random random;
+
+    private ReplayRequestHandler(RequestHandler handler, DataOutputStream out, ByteBuffer archive,
+                                 Map<String, Long> index) {
+        this.handler = handler;
+        this.out = out;
+        this.archive = archive;
+        this.index = index;
+        scrubbed.add("key");
+    }
+
+    /**
+     * Returns a handler that sends requests with the specified handler and appends the responses to the specified
+     * archive.
+     *
+     * @param handler to send requests with
+     * @param archive to append responses to
+     * @return recording handler
+     * @throws IOException if the archive can not be opened or is not an archive
+     */
+    public static ReplayRequestHandler record(RequestHandler handler, File archive) throws IOException {
+        boolean exists = archive.length() > 0;
+        if (exists) {
+            try (RandomAccessFile file = new RandomAccessFile(archive, "r")) {
+                readHeader(file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, Math.min(file.length(), 4)));
+            }
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(archive, true)));
+        if (!exists) {
+            out.write(MAGIC);
+            out.write(VERSION);
+            out.flush();
+        }
+        ReplayRequestHandler recorder = new ReplayRequestHandler(handler, out, null, null);
+        recorder.setCharacterEncoding(handler.getCharacterEncoding());
+        return recorder;
+    }
+
+    /**
+     * Returns a handler that serves the responses of the specified archive.
+     *
+     * @param archive to replay
+     * @return replaying handler
+     * @throws IOException if the archive can not be read or is corrupt
+     */
+    public static ReplayRequestHandler replay(File archive) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile file = new RandomAccessFile(archive, "r")) {
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+        readHeader(buffer);
+        Map<String, Long> index = new HashMap<>();
+        while (buffer.hasRemaining()) {
+            if (buffer.remaining() < 4)
+                throw new IOException("Truncated archive at " + buffer.position());
+            int keyLength = buffer.getInt();
+            if (keyLength < 0 || buffer.remaining() < keyLength + 4)
+                throw new IOException("Truncated archive at " + buffer.position());
+            byte[] key = new byte[keyLength];
+            buffer.get(key);
+            int position = buffer.position();
+            int length = buffer.getInt();
+            if (length > buffer.remaining())
+                throw new IOException("Truncated archive at " + position);
+            buffer.position(buffer.position() + Math.max(length, 0));
+            // the position of the response length and the length itself
+            index.put(new String(key, UTF_8), (long) position << 32 | (length & 0xFFFFFFFFL));
+        }
+        return new ReplayRequestHandler(null, null, buffer, index);
+    }
+
+    private static void readHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < MAGIC.length + 1)
+            throw new IOException("Not a replay archive");
+        for (byte b : MAGIC) {
+            if (buffer.get() != b)
+                throw new IOException("Not a replay archive");
+        }
+        int version = buffer.get();
+        if (version != VERSION)
+            throw new IOException("Unsupported archive version " + version);
+    }
+
+    /**
+     * Returns true if this handler records responses, false if it replays them.
+     *
+     * @return true if recording
+     */
+    public boolean isRecording() {
+        return handler != null;
+    }
+
+    /**
+     * Adds a query parameter that is removed from URIs before they are recorded or looked up, such as a session
+     * token. The "key" parameter is always removed.
+     *
+     * @param name of parameter
+     * @return this
+     */
+    public ReplayRequestHandler addScrubbedParameter(String name) {
+        scrubbed.add(name);
+        return this;
+    }
+
+    /**
+     * Sets the latency added to every replayed response.
+     *
+     * @param latency distribution of latency
+     * @return this
+     */
+    public ReplayRequestHandler setLatency(Latency latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Sets the share of replayed requests that fail with an {@link IOException}, as if the connection was lost.
+     *
+     * @param errorRate between 0 and 1
+     * @return this
+     */
+    public ReplayRequestHandler setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Sets the share of replayed requests that are answered with an error status instead of their response.
+     *
+     * @param statusErrorRate between 0 and 1
+     * @param status          to answer with, such as {@link Statuses#STATUS_OVER_QUERY_LIMIT}
+     * @return this
+     */
+    public ReplayRequestHandler setStatusErrorRate(double statusErrorRate, String status) {
+        this.statusErrorRate = statusErrorRate;
+        this.errorStatus = status;
+        return this;
+    }
+
+    /**
+     * Sets the seed of the random numbers that decide latency and errors, so runs can be repeated. By default every
+     * thread uses its own unseeded generator.
+     *
+     * @param seed of random numbers
+     * @return this
+     */
+    public ReplayRequestHandler setSeed(long seed) {
+        this.random = new Random(seed);
+        return this;
+    }
+
+    /**
+     * Returns the amount of requests that were answered from the archive.
+     *
+     * @return amount of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the amount of requests that were not found in the archive.
+     *
+     * @return amount of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the amount of injected errors.
+     *
+     * @return amount of errors
+     */
+    public long getInjectedErrors() {
+        return errors.get();
+    }
+
+    /**
+     * Returns the amount of distinct requests in the archive that is replayed.
+     *
+     * @return amount of requests, or 0 when recording
+     */
+    public int size() {
+        return index == null ? 0 : index.size();
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+        return characterEncoding;
+    }
+
+    @Override
+    public void setCharacterEncoding(String characterEncoding) {
+        this.characterEncoding = characterEncoding;
+        if (handler != null)
+            handler.setCharacterEncoding(characterEncoding);
+    }
+
+    @Override
+    public InputStream getInputStream(String uri) throws IOException {
+        String key = "GET " + scrub(uri);
+        byte[] response;
+        if (handler != null) {
+            try (InputStream in = handler.getInputStream(uri)) {
+                response = in == null ? null : IOUtils.toByteArray(in);
+            }
+            write(key, response);
+        } else {
+            response = read(key);
+        }
+        return response == null ? null : new ByteArrayInputStream(response);
+    }
+
+    @Override
+    public String get(String uri) throws IOException {
+        String key = "GET " + scrub(uri);
+        if (handler != null) {
+            String response = handler.get(uri);
+            write(key, response == null ? null : response.getBytes(characterEncoding));
+            return response;
+        }
+        byte[] response = read(key);
+        return response == null ? null : new String(response, characterEncoding);
+    }
+
+    @Override
+    public String post(HttpPost data) throws IOException {
+        HttpEntity entity = data.getEntity();
+        String body = entity == null ? "" : IOUtils.toString(entity.getContent(), characterEncoding);
+        String key = "POST " + scrub(data.getURI().toString()) + '\n' + body;
+        if (handler != null) {
+            String response = handler.post(data);
+            write(key, response == null ? null : response.getBytes(characterEncoding));
+            return response;
+        }
+        byte[] response = read(key);
+        return response == null ? null : new String(response, characterEncoding);
+    }
+
+    /**
+     * Returns the specified URI without the values of scrubbed parameters.
+     *
+     * @param uri to scrub
+     * @return scrubbed uri
+     */
+    public String scrub(String uri) {
+        int query = uri.indexOf('?');
+        if (query < 0)
+            return uri;
+        StringBuilder result = new StringBuilder(uri.length()).append(uri, 0, query);
+        char separator = '?';
+        for (String param : uri.substring(query + 1).split("&")) {
+            int eq = param.indexOf('=');
+            if (param.isEmpty() || scrubbed.contains(eq < 0 ? param : param.substring(0, eq)))
+                continue;
+            result.append(separator).append(param);
+            separator = '&';
+        }
+        return result.toString();
+    }
+
+    private void write(String key, byte[] response) throws IOException {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        writeLock.lock();
+        try {
+            out.writeInt(keyBytes.length);
+            out.write(keyBytes);
+            if (response == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(response.length);
+                out.write(response);
+            }
+            out.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private byte[] read(String key) throws IOException {
+        Long entry = index.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            throw new IOException("No recorded response for " + key);
+        }
+        hits.incrementAndGet();
+
+        Random random = this.random;
+        if (random == null)
+            random = ThreadLocalRandom.current();
+        long delay = latency.nextMillis(random);
+        if (delay > 0) {
+            // a slow replayed response is cut short by the deadline of the call like a real one
+            CallContext context = CallContext.current();
+            try {
+                if (context != null)
+                    context.pause(delay);
+                else
+                    Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while replaying " + key);
+            }
+        }
+        double r = random.nextDouble();
+        if (r < errorRate) {
+            errors.incrementAndGet();
+            throw new IOException("Injected error for " + key);
+        }
+        if (r < errorRate + statusErrorRate) {
+            errors.incrementAndGet();
+            return ("{\"status\":\"" + errorStatus + "\"}").getBytes(characterEncoding);
+        }
+
+        int length = (int) (long) entry;
+        if (length < 0)
+            return null;
+        ByteBuffer buffer = archive.duplicate();
+        buffer.position((int) (entry >>> 32) + 4);
+        byte[] response = new byte[length];
+        buffer.get(response);
+        return response;
+    }
+
+    /**
+     * Flushes and closes the archive when recording. Replayed archives are unmapped when this handler is garbage
+     * collected.
+     *
+     * @throws IOException if the archive could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (out == null)
+            return;
+        writeLock.lock();
+        try {
+            out.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * A distribution of synthetic latency.
+     */
+    public abstract static class Latency {
+        /**
+         * Returns the next latency in milliseconds.
+         *
+         * @param random to draw from
+         * @return latency in milliseconds
+         */
+        public abstract long nextMillis(Random random);
+
+        /**
+         * Returns a distribution without latency.
+         *
+         * @return latency
+         */
+        public static Latency none() {
+            return fixed(0);
+        }
+
+        /**
+         * Returns a distribution that always has the specified latency.
+         *
+         * @param millis latency in milliseconds
+         * @return latency
+         */
+        public static Latency fixed(final long millis) {
+            return new Latency() {
+                @Override
+                public long nextMillis(Random random) {
+                    return millis;
+                }
+            };
+        }
+
+        /**
+         * Returns a distribution with latency spread evenly between the specified bounds.
+         *
+         * @param minMillis least latency in milliseconds
+         * @param maxMillis greatest latency in milliseconds
+         * @return latency
+         */
+        public static Latency uniform(final long minMillis, final long maxMillis) {
+            if (maxMillis < minMillis)
+                throw new IllegalArgumentException("Maximum must not be less than minimum");
+            return new Latency() {
+                @Override
+                public long nextMillis(Random random) {
+                    return minMillis + (long) (random.nextDouble() * (maxMillis - minMillis + 1));
+                }
+            };
+        }
+
+        /**
+         * Returns a log-normal distribution of latency, which has the long tail of real network latency.
+         *
+         * @param medianMillis median latency in milliseconds
+         * @param sigma        spread of the tail, 0.5 puts the 99th percentile at about three times the median
+         * @return latency
+         */
+        public static Latency logNormal(final double medianMillis, final double sigma) {
+            return new Latency() {
+                @Override
+                public long nextMillis(Random random) {
+                    return Math.round(medianMillis * Math.exp(sigma * random.nextGaussian()));
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package se.walkercrou.places;
+
+/**
+ * Represents how urgently a request should be sent when requests are scheduled by a {@link PriorityRequestHandler}.
+ */
+public enum RequestPriority {
+    /**
+     * Requests that a user is waiting on, such as autocompletion.
+     */
+    INTERACTIVE,
+    /**
+     * Requests that have no particular priority.
+     */
+    NORMAL,
+    /**
+     * Background work such as crawls and bulk imports.
+     */
+    BATCH
+}
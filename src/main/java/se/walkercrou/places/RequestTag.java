@@ -0,0 +1,137 @@
+package se.walkercrou.places;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Describes who a request is made for and how urgent it is. The tag of the current thread is picked up by components
+ * such as {@link PriorityRequestHandler} whenever a request is sent.
+ * <pre>
+ * RequestTag previous = RequestTag.set(RequestTag.of(RequestPriority.BATCH, "crawler"));
+ * try {
+ *     client.getNearbyPlaces(lat, lng, radius);
+ * } finally {
+ *     RequestTag.set(previous);
+ * }
+ * </pre>
+ */
+public final class RequestTag {
+    /**
+     * The tag of threads that have not been tagged.
+     */
+    public static final RequestTag DEFAULT = new RequestTag(RequestPriority.NORMAL, null);
+
+    private static final ThreadLocal<RequestTag> current = new ThreadLocal<>();
+
+    private final RequestPriority priority;
+    private final String tenant;
+
+    private RequestTag(RequestPriority priority, String tenant) {
+        this.priority = priority;
+        this.tenant = tenant;
+    }
+
+    /**
+     * Returns a new tag with the specified priority and tenant.
+     *
+     * @param priority of requests
+     * @param tenant   that requests are made for, may be null
+     * @return new tag
+     */
+    public static RequestTag of(RequestPriority priority, String tenant) {
+        if (priority == null)
+            throw new IllegalArgumentException("Priority must not be null");
+        return new RequestTag(priority, tenant);
+    }
+
+    /**
+     * Returns a new tag with the specified priority and no tenant.
+     *
+     * @param priority of requests
+     * @return new tag
+     */
+    public static RequestTag of(RequestPriority priority) {
+        return of(priority, null);
+    }
+
+    /**
+     * Returns the tag of the current thread.
+     *
+     * @return current tag
+     */
+    public static RequestTag current() {
+        RequestTag tag = current.get();
+        return tag == null ? DEFAULT : tag;
+    }
+
+    /**
+     * Sets the tag of the current thread.
+     *
+     * @param tag to set, or null to reset to {@link #DEFAULT}
+     * @return the previous tag of the current thread
+     */
+    public static RequestTag set(RequestTag tag) {
+        RequestTag previous = current();
+        if (tag == null || tag == DEFAULT)
+            current.remove();
+        else
+            current.set(tag);
+        return previous;
+    }
+
+    /**
+     * Returns a callable that runs the specified callable with this tag set on whichever thread it is called from.
+     *
+     * @param callable to wrap
+     * @param <T>      type of result
+     * @return wrapped callable
+     */
+    public <T> Callable<T> wrap(final Callable<T> callable) {
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                RequestTag previous = set(RequestTag.this);
+                try {
+                    return callable.call();
+                } finally {
+                    set(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the priority of requests with this tag.
+     *
+     * @return priority
+     */
+    public RequestPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Returns the tenant requests with this tag are made for, or null.
+     *
+     * @return tenant
+     */
+    public String getTenant() {
+        return tenant;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof RequestTag))
+            return false;
+        RequestTag other = (RequestTag) obj;
+        return priority == other.priority && (tenant == null ? other.tenant == null : tenant.equals(other.tenant));
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * priority.hashCode() + (tenant == null ? 0 : tenant.hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RequestTag{priority=%s, tenant=%s}", priority, tenant);
+    }
+}
@@ -0,0 +1,224 @@
+package se.walkercrou.places;
+
+import java.math.BigDecimal;
+
+/**
+ * A precompiled request URL for a single API method. URLs are built by appending encoded parameters to the fixed part
+ * of the URL in a buffer that is reused by every URL built on the same thread.
+ * <pre>
+ * String uri = template.begin().param("key", apiKey).location("location", lat, lng).params(extraParams).build();
+ * </pre>
+ * A URL must be finished with {@link UrlBuilder#build()} before another URL is begun on the same thread. A thread that
+ * runs a single call, such as a virtual thread of {@link AsyncGooglePlaces#newDefaultExecutor()}, allocates a buffer of
+ * its own and gains nothing from the reuse.
+ */
+final class RequestTemplate {
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final int MAX_POOLED_CAPACITY = 8192;
+    private static final ThreadLocal<StringBuilder> buffers = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    private final String prefix;
+
+    private RequestTemplate(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * Returns a template for a method that responds with JSON, for example {@link GooglePlaces#METHOD_NEARBY_SEARCH}.
+     *
+     * @param baseUrl of api
+     * @param method  of api
+     * @return new template
+     */
+    static RequestTemplate json(String baseUrl, String method) {
+        return new RequestTemplate(baseUrl + method + "/json?");
+    }
+
+    /**
+     * Returns a template for a method that does not respond with JSON, such as photos.
+     *
+     * @param baseUrl of api
+     * @param method  of api
+     * @return new template
+     */
+    static RequestTemplate raw(String baseUrl, String method) {
+        return new RequestTemplate(baseUrl + method + "?");
+    }
+
+    /**
+     * Begins a new URL of this template on the current thread.
+     *
+     * @return url builder
+     */
+    UrlBuilder begin() {
+        StringBuilder buffer = buffers.get();
+        if (buffer.capacity() > MAX_POOLED_CAPACITY) {
+            buffer = new StringBuilder(256);
+            buffers.set(buffer);
+        }
+        buffer.setLength(0);
+        buffer.append(prefix);
+        return new UrlBuilder(buffer, prefix.length());
+    }
+
+    /**
+     * Appends the specified string to a URL query. Characters that are not safe within a query parameter are
+     * percent-encoded as UTF-8 and spaces become '+'. The string is taken literally: '+' and '%' are encoded as well, so
+     * "a+b" and "100%" reach the server as they were given. Values must not be encoded beforehand.
+     *
+     * @param out   to append to
+     * @param value to encode
+     */
+    static void encode(StringBuilder out, String value) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (isSafe(c)) {
+                out.append(c);
+            } else if (c == ' ') {
+                out.append('+');
+            } else if (c < 0x80) {
+                appendEscaped(out, c);
+            } else {
+                int codePoint = value.codePointAt(i);
+                if (Character.isSupplementaryCodePoint(codePoint))
+                    i++;
+                appendUtf8(out, codePoint);
+            }
+        }
+    }
+
+    /**
+     * Appends the specified number to a URL without using scientific notation.
+     *
+     * @param out   to append to
+     * @param value to append
+     */
+    static void appendDecimal(StringBuilder out, double value) {
+        double abs = Math.abs(value);
+        if (abs != 0 && (abs < 1e-3 || abs >= 1e7) && !Double.isInfinite(value) && !Double.isNaN(value))
+            out.append(BigDecimal.valueOf(value).stripTrailingZeros().toPlainString());
+        else
+            out.append(value);
+    }
+
+    private static boolean isSafe(char c) {
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9'))
+            return true;
+        switch (c) {
+            case '-': case '_': case '.': case '~': case ',': case ':': case '/': case '!': case '*': case '\'':
+            case '(': case ')': case '@': case '$': case ';':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void appendEscaped(StringBuilder out, int b) {
+        out.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+    }
+
+    private static void appendUtf8(StringBuilder out, int codePoint) {
+        if (codePoint < 0x800) {
+            appendEscaped(out, 0xC0 | (codePoint >> 6));
+        } else if (codePoint < 0x10000) {
+            appendEscaped(out, 0xE0 | (codePoint >> 12));
+            appendEscaped(out, 0x80 | ((codePoint >> 6) & 0x3F));
+        } else {
+            appendEscaped(out, 0xF0 | (codePoint >> 18));
+            appendEscaped(out, 0x80 | ((codePoint >> 12) & 0x3F));
+            appendEscaped(out, 0x80 | ((codePoint >> 6) & 0x3F));
+        }
+        appendEscaped(out, 0x80 | (codePoint & 0x3F));
+    }
+
+    /**
+     * Appends the parameters of a single URL.
+     */
+    static final class UrlBuilder {
+        private final StringBuilder buffer;
+        private final int queryStart;
+
+        private UrlBuilder(StringBuilder buffer, int queryStart) {
+            this.buffer = buffer;
+            this.queryStart = queryStart;
+        }
+
+        private StringBuilder name(String name) {
+            if (buffer.length() > queryStart)
+                buffer.append('&');
+            encode(buffer, name);
+            return buffer;
+        }
+
+        /**
+         * Appends a parameter.
+         *
+         * @param name  of parameter
+         * @param value of parameter, or null for a parameter without a value
+         * @return this
+         */
+        UrlBuilder param(String name, String value) {
+            name(name);
+            if (value != null) {
+                buffer.append('=');
+                encode(buffer, value);
+            }
+            return this;
+        }
+
+        /**
+         * Appends a numeric parameter.
+         *
+         * @param name  of parameter
+         * @param value of parameter
+         * @return this
+         */
+        UrlBuilder param(String name, double value) {
+            appendDecimal(name(name).append('='), value);
+            return this;
+        }
+
+        /**
+         * Appends a parameter of a latitude and longitude pair.
+         *
+         * @param name of parameter
+         * @param lat  latitude
+         * @param lng  longitude
+         * @return this
+         */
+        UrlBuilder location(String name, double lat, double lng) {
+            appendDecimal(name(name).append('='), lat);
+            appendDecimal(buffer.append(','), lng);
+            return this;
+        }
+
+        /**
+         * Appends all of the specified parameters.
+         *
+         * @param params to append
+         * @return this
+         */
+        UrlBuilder params(Param... params) {
+            for (Param param : params) {
+                if (param.isSent())
+                    param(param.name, param.value);
+            }
+            return this;
+        }
+
+        /**
+         * Returns the finished URL.
+         *
+         * @return url
+         */
+        String build() {
+            return buffer.toString();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package se.walkercrou.places;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Assigns shards of work to workers by consistent hashing. Every worker is placed on a ring at many points, and a shard
+ * belongs to the worker at the first point after the hash of the shard. When a worker joins or leaves, only the shards
+ * next to its points move, about one in every amount of workers.
+ * <p>
+ * Work is split into a fixed amount of shards with {@link #shardOf(String, int)} and {@link #shardOf(int, int)}, so the
+ * shard of a cell or place id never changes, only the owner of the shard does. Every worker that builds a ring of the
+ * same workers assigns every shard to the same worker. Instances are immutable.
+ */
+public class ShardRing {
+    /**
+     * The default amount of points of every worker on the ring.
+     */
+    public static final int DEFAULT_POINTS = 128;
+
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+    private final List<String> workers;
+
+    /**
+     * Creates a new ring of the specified workers.
+     *
+     * @param workers ids of workers
+     * @param points  amount of points of every worker on the ring, more points spread the shards more evenly
+     */
+    public ShardRing(Collection<String> workers, int points) {
+        if (points < 1)
+            throw new IllegalArgumentException("Points must be at least one");
+        List<String> sorted = new ArrayList<>(workers);
+        Collections.sort(sorted);
+        this.workers = Collections.unmodifiableList(sorted);
+        for (String worker : sorted) {
+            for (int i = 0; i < points; i++)
+                ring.put(hash(worker + '#' + i), worker);
+        }
+    }
+
+    /**
+     * Creates a new ring of the specified workers with {@link #DEFAULT_POINTS} points each.
+     *
+     * @param workers ids of workers
+     */
+    public ShardRing(Collection<String> workers) {
+        this(workers, DEFAULT_POINTS);
+    }
+
+    /**
+     * Returns the workers of the ring in order.
+     *
+     * @return ids of workers
+     */
+    public List<String> getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Returns the worker that owns the specified shard.
+     *
+     * @param shard to look up
+     * @return id of worker, or null if the ring has no workers
+     */
+    public String getOwner(int shard) {
+        if (ring.isEmpty())
+            return null;
+        Map.Entry<Long, String> entry = ring.ceilingEntry(Hashing.mix(shard * 0x9e3779b97f4a7c15L));
+        return (entry != null ? entry : ring.firstEntry()).getValue();
+    }
+
+    /**
+     * Returns the shards of the specified amount of shards that the specified worker owns.
+     *
+     * @param worker to look up
+     * @param shards total amount of shards
+     * @return shards of worker in ascending order
+     */
+    public List<Integer> getShards(String worker, int shards) {
+        List<Integer> owned = new ArrayList<>();
+        for (int shard = 0; shard < shards; shard++) {
+            if (worker.equals(getOwner(shard)))
+                owned.add(shard);
+        }
+        return owned;
+    }
+
+    /**
+     * Returns the shard of the specified key, such as a place id.
+     *
+     * @param key    to look up
+     * @param shards total amount of shards
+     * @return shard between zero and the amount of shards
+     */
+    public static int shardOf(String key, int shards) {
+        return (int) ((hash(key) & Long.MAX_VALUE) % shards);
+    }
+
+    /**
+     * Returns the shard of the specified cell of a {@link CrawlJob}.
+     *
+     * @param cell   to look up
+     * @param shards total amount of shards
+     * @return shard between zero and the amount of shards
+     */
+    public static int shardOf(int cell, int shards) {
+        return (int) ((Hashing.mix(cell) & Long.MAX_VALUE) % shards);
+    }
+
+    private static long hash(String key) {
+        return Hashing.mix(Hashing.fnv(key));
+    }
+}
@@ -32,7 +32,7 @@ public class TypeParam extends Param {
         for (int i = 0; i < values.size(); i++) {
             valuesSb.append(values.get(i));
             if (i != (values.size() - 1)) {
-                valuesSb.append("%7C"); // it represents a pipeline character |
+                valuesSb.append('|');
             }
         }
         this.value = valuesSb.toString();
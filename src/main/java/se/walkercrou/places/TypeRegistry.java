@@ -0,0 +1,117 @@
+package se.walkercrou.places;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static se.walkercrou.places.Types.*;
+
+/**
+ * Maps the place types declared in {@link Types} to small integer ids and interns type strings, so that the types of
+ * thousands of places share a handful of string instances. Ids are assigned by a fixed table that only ever grows, so
+ * an id refers to the same type in every version of this library and can be persisted. Types that are not in the
+ * table have no id.
+ */
+public final class TypeRegistry {
+    /**
+     * The maximum amount of undeclared types that are interned. Undeclared types beyond this amount are used as they
+     * are.
+     */
+    public static final int MAX_INTERNED_UNKNOWN_TYPES = 1024;
+
+    /*
+     * The ids of the types are their index in this array and are written to disk by PlaceCodec and PlaceLog, so a type
+     * may never be moved or removed. New types are appended at the end.
+     */
+    private static final String[] names = {
+            TYPE_ACCOUNTING, TYPE_AIRPORT, TYPE_AMUSEMENT_PARK, TYPE_AQUARIUM, TYPE_ART_GALLERY, TYPE_ATM, TYPE_BAKERY,
+            TYPE_BANK, TYPE_BAR, TYPE_BEAUTY_SALON, TYPE_BICYCLE_STORE, TYPE_BOOK_STORE, TYPE_BOWLING_ALLEY,
+            TYPE_BUS_STATION, TYPE_CAFE, TYPE_CAMPGROUND, TYPE_CAR_DEALER, TYPE_CAR_RENTAL, TYPE_CAR_REPAIR,
+            TYPE_CAR_WASH, TYPE_CASINO, TYPE_CEMETERY, TYPE_CHURCH, TYPE_CITY_HALL, TYPE_CLOTHING_STORE,
+            TYPE_CONVENIENCE_STORE, TYPE_COURTHOUSE, TYPE_DENTIST, TYPE_DEPARTMENT_STORE, TYPE_DOCTOR,
+            TYPE_ELECTRICIAN, TYPE_ELECTRONICS_STORE, TYPE_EMBASSY, TYPE_ESTABLISHMENT, TYPE_FINANCE,
+            TYPE_FIRE_STATION, TYPE_FLORIST, TYPE_FOOD, TYPE_FUNERAL_HOME, TYPE_FURNITURE_STORE, TYPE_GAS_STATION,
+            TYPE_GENERAL_CONTRACTOR, TYPE_GROCERY_OR_SUPERMARKET, TYPE_GYM, TYPE_HAIR_CARE, TYPE_HARDWARE_STORE,
+            TYPE_HEALTH, TYPE_HINDU_TEMPLE, TYPE_HOME_GOODS_STORE, TYPE_HOSPITAL, TYPE_INSURANCE_AGENCY,
+            TYPE_JEWELRY_STORE, TYPE_LAUNDRY, TYPE_LAWYER, TYPE_LIBRARY, TYPE_LIQUOR_STORE,
+            TYPE_LOCAL_GOVERNMENT_OFFICE, TYPE_LOCKSMITH, TYPE_LODGING, TYPE_MEAL_DELIVERY, TYPE_MEAL_TAKEAWAY,
+            TYPE_MOSQUE, TYPE_MOVIE_RENTAL, TYPE_MOVIE_THEATER, TYPE_MOVING_COMPANY, TYPE_MUSEUM, TYPE_NIGHT_CLUB,
+            TYPE_PAINTER, TYPE_PARK, TYPE_PARKING, TYPE_PET_STORE, TYPE_PHARMACY, TYPE_PHYSIOTHERAPIST,
+            TYPE_PLACE_OF_WORSHIP, TYPE_PLUMBER, TYPE_POLICE, TYPE_POST_OFFICE, TYPE_REAL_ESTATE_AGENCY,
+            TYPE_RESTAURANT, TYPE_ROOFING_CONTRACTOR, TYPE_RV_PARK, TYPE_SCHOOL, TYPE_SHOE_STORE, TYPE_SHOPPING_MALL,
+            TYPE_SPA, TYPE_STADIUM, TYPE_STORAGE, TYPE_STORE, TYPE_SUBWAY_STATION, TYPE_SYNAGOGUE, TYPE_TAXI_STAND,
+            TYPE_TRAIN_STATION, TYPE_TRAVEL_AGENCY, TYPE_UNIVERSITY, TYPE_VETERINARY_CARE, TYPE_ZOO,
+            TYPE_ADMINISTRATIVE_AREA_LEVEL_1, TYPE_ADMINISTRATIVE_AREA_LEVEL_2, TYPE_ADMINISTRATIVE_AREA_LEVEL_3,
+            TYPE_ADMINISTRATIVE_AREA_LEVEL_4, TYPE_ADMINISTRATIVE_AREA_LEVEL_5, TYPE_COLLOQUIAL_AREA, TYPE_COUNTRY,
+            TYPE_FLOOR, TYPE_GEOCODE, TYPE_INTERSECTION, TYPE_LOCALITY, TYPE_NATURAL_FEATURE, TYPE_NEIGHBORHOOD,
+            TYPE_POLITICAL, TYPE_POINT_OF_INTEREST, TYPE_POST_BOX, TYPE_POSTAL_CODE, TYPE_POSTAL_CODE_PREFIX,
+            TYPE_POSTAL_CODE_SUFFIX, TYPE_POSTAL_TOWN, TYPE_PREMISE, TYPE_ROOM, TYPE_ROUTE, TYPE_STREET_ADDRESS,
+            TYPE_STREET_NUMBER, TYPE_SUBLOCALITY, TYPE_SUBLOCALITY_LEVEL_1, TYPE_SUBLOCALITY_LEVEL_2,
+            TYPE_SUBLOCALITY_LEVEL_3, TYPE_SUBLOCALITY_LEVEL_4, TYPE_SUBLOCALITY_LEVEL_5, TYPE_SUBPREMISE
+    };
+    private static final Map<String, Integer> ids = new HashMap<>();
+    private static final ConcurrentHashMap<String, String> unknown = new ConcurrentHashMap<>();
+
+    static {
+        for (int i = 0; i < names.length; i++)
+            ids.put(names[i], i);
+    }
+
+    private TypeRegistry() {
+    }
+
+    /**
+     * Returns the amount of types that have an id.
+     *
+     * @return amount of known types
+     */
+    public static int size() {
+        return names.length;
+    }
+
+    /**
+     * Returns the id of the specified type, or -1 if the type is not declared in {@link Types}.
+     *
+     * @param type to get id of
+     * @return id of type
+     */
+    public static int idOf(String type) {
+        Integer id = ids.get(type);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the type with the specified id.
+     *
+     * @param id of type
+     * @return type
+     * @throws IndexOutOfBoundsException if no type has the specified id
+     */
+    public static String nameOf(int id) {
+        if (id < 0 || id >= names.length)
+            throw new IndexOutOfBoundsException("Unknown type id: " + id);
+        return names[id];
+    }
+
+    /**
+     * Returns the canonical instance of the specified type. Equal types that have been interned are the same
+     * instance.
+     *
+     * @param type to intern
+     * @return canonical type
+     */
+    public static String intern(String type) {
+        if (type == null)
+            return null;
+        Integer id = ids.get(type);
+        if (id != null)
+            return names[id];
+        String interned = unknown.get(type);
+        if (interned != null)
+            return interned;
+        if (unknown.size() >= MAX_INTERNED_UNKNOWN_TYPES)
+            return type;
+        interned = unknown.putIfAbsent(type, type);
+        return interned == null ? type : interned;
+    }
+}
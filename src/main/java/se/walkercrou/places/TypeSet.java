@@ -0,0 +1,229 @@
+package se.walkercrou.places;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable, ordered set of place types. Types declared in {@link Types} are stored as bits indexed by their
+ * {@link TypeRegistry} id, any other types are kept in a small overflow array. Checking whether a set contains any of
+ * the types of a mask is a handful of bitwise operations.
+ * <pre>
+ * TypeSet mask = TypeSet.of(Types.TYPE_CAFE, Types.TYPE_BAKERY);
+ * for (Place place : places) {
+ *     if (place.hasAnyType(mask))
+ *         ...
+ * }
+ * </pre>
+ * The most common combinations of types are shared between all of the places that have them. Two type sets are equal
+ * if they contain the same types in the same order.
+ */
+public final class TypeSet {
+    /**
+     * The maximum amount of distinct sets that are shared.
+     */
+    public static final int MAX_SHARED_SETS = 4096;
+
+    private static final int WORDS = (TypeRegistry.size() + 63) >>> 6;
+    private static final String[] NO_OVERFLOW = new String[0];
+    private static final ConcurrentHashMap<TypeSet, TypeSet> shared = new ConcurrentHashMap<>();
+
+    /**
+     * The set without any types.
+     */
+    public static final TypeSet EMPTY = new TypeSet(new long[WORDS], NO_OVERFLOW, new char[0]);
+
+    private final long[] bits;
+    private final String[] overflow;
+    // ids in the order the types were added, undeclared types are numbered after the declared ones
+    private final char[] order;
+    private final int hash;
+
+    private TypeSet(long[] bits, String[] overflow, char[] order) {
+        this.bits = bits;
+        this.overflow = overflow;
+        this.order = order;
+        int hash = 1;
+        for (int i = 0; i < order.length; i++)
+            hash = 31 * hash + get(i).hashCode();
+        this.hash = hash;
+    }
+
+    /**
+     * Returns the set of the specified types. Duplicate types are ignored.
+     *
+     * @param types of set
+     * @return type set
+     */
+    public static TypeSet of(String... types) {
+        return of(Arrays.asList(types));
+    }
+
+    /**
+     * Returns the set of the specified types in the order of the collection. Duplicate types are ignored.
+     *
+     * @param types of set
+     * @return type set
+     */
+    public static TypeSet of(Collection<String> types) {
+        if (types.isEmpty())
+            return EMPTY;
+        long[] bits = new long[WORDS];
+        String[] overflow = NO_OVERFLOW;
+        char[] order = new char[types.size()];
+        int size = 0;
+        for (String type : types) {
+            int id = TypeRegistry.idOf(type);
+            if (id >= 0) {
+                if ((bits[id >>> 6] & (1L << id)) != 0)
+                    continue;
+                bits[id >>> 6] |= 1L << id;
+            } else {
+                if (indexOf(overflow, type) >= 0)
+                    continue;
+                overflow = Arrays.copyOf(overflow, overflow.length + 1);
+                overflow[overflow.length - 1] = TypeRegistry.intern(type);
+                id = TypeRegistry.size() + overflow.length - 1;
+            }
+            order[size++] = (char) id;
+        }
+        if (size < order.length)
+            order = Arrays.copyOf(order, size);
+        return share(new TypeSet(bits, overflow, order));
+    }
+
+    private static TypeSet share(TypeSet set) {
+        TypeSet existing = shared.get(set);
+        if (existing != null)
+            return existing;
+        if (shared.size() >= MAX_SHARED_SETS)
+            return set;
+        existing = shared.putIfAbsent(set, set);
+        return existing == null ? set : existing;
+    }
+
+    private static int indexOf(String[] array, String value) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i].equals(value))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the amount of types in this set.
+     *
+     * @return amount of types
+     */
+    public int size() {
+        return order.length;
+    }
+
+    /**
+     * Returns true if this set contains no types.
+     *
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return order.length == 0;
+    }
+
+    /**
+     * Returns the type at the specified position of this set.
+     *
+     * @param index of type
+     * @return type
+     */
+    public String get(int index) {
+        int id = order[index];
+        return id < TypeRegistry.size() ? TypeRegistry.nameOf(id) : overflow[id - TypeRegistry.size()];
+    }
+
+    /**
+     * Returns true if this set contains the specified type.
+     *
+     * @param type to check
+     * @return true if contained
+     */
+    public boolean contains(String type) {
+        int id = TypeRegistry.idOf(type);
+        return id >= 0 ? (bits[id >>> 6] & (1L << id)) != 0 : indexOf(overflow, type) >= 0;
+    }
+
+    /**
+     * Returns true if this set contains at least one of the types of the specified mask.
+     *
+     * @param mask of types
+     * @return true if any type is contained
+     */
+    public boolean containsAny(TypeSet mask) {
+        for (int i = 0; i < WORDS; i++) {
+            if ((bits[i] & mask.bits[i]) != 0)
+                return true;
+        }
+        for (String type : mask.overflow) {
+            if (indexOf(overflow, type) >= 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if this set contains all of the types of the specified mask.
+     *
+     * @param mask of types
+     * @return true if every type is contained
+     */
+    public boolean containsAll(TypeSet mask) {
+        for (int i = 0; i < WORDS; i++) {
+            if ((bits[i] & mask.bits[i]) != mask.bits[i])
+                return false;
+        }
+        for (String type : mask.overflow) {
+            if (indexOf(overflow, type) < 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns an unmodifiable list view of the types of this set in order.
+     *
+     * @return types
+     */
+    public List<String> asList() {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return TypeSet.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return order.length;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof TypeSet))
+            return false;
+        TypeSet other = (TypeSet) obj;
+        return hash == other.hash && Arrays.equals(order, other.order) && Arrays.equals(overflow, other.overflow);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return asList().toString();
+    }
+}
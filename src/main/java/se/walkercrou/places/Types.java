@@ -100,4 +100,38 @@ public interface Types {
     String TYPE_UNIVERSITY = "university";
     String TYPE_VETERINARY_CARE = "veterinary_care";
     String TYPE_ZOO = "zoo";
+
+    // returned in results and address components, but not accepted as a search filter
+    String TYPE_ADMINISTRATIVE_AREA_LEVEL_1 = "administrative_area_level_1";
+    String TYPE_ADMINISTRATIVE_AREA_LEVEL_2 = "administrative_area_level_2";
+    String TYPE_ADMINISTRATIVE_AREA_LEVEL_3 = "administrative_area_level_3";
+    String TYPE_ADMINISTRATIVE_AREA_LEVEL_4 = "administrative_area_level_4";
+    String TYPE_ADMINISTRATIVE_AREA_LEVEL_5 = "administrative_area_level_5";
+    String TYPE_COLLOQUIAL_AREA = "colloquial_area";
+    String TYPE_COUNTRY = "country";
+    String TYPE_FLOOR = "floor";
+    String TYPE_GEOCODE = "geocode";
+    String TYPE_INTERSECTION = "intersection";
+    String TYPE_LOCALITY = "locality";
+    String TYPE_NATURAL_FEATURE = "natural_feature";
+    String TYPE_NEIGHBORHOOD = "neighborhood";
+    String TYPE_POLITICAL = "political";
+    String TYPE_POINT_OF_INTEREST = "point_of_interest";
+    String TYPE_POST_BOX = "post_box";
+    String TYPE_POSTAL_CODE = "postal_code";
+    String TYPE_POSTAL_CODE_PREFIX = "postal_code_prefix";
+    String TYPE_POSTAL_CODE_SUFFIX = "postal_code_suffix";
+    String TYPE_POSTAL_TOWN = "postal_town";
+    String TYPE_PREMISE = "premise";
+    String TYPE_ROOM = "room";
+    String TYPE_ROUTE = "route";
+    String TYPE_STREET_ADDRESS = "street_address";
+    String TYPE_STREET_NUMBER = "street_number";
+    String TYPE_SUBLOCALITY = "sublocality";
+    String TYPE_SUBLOCALITY_LEVEL_1 = "sublocality_level_1";
+    String TYPE_SUBLOCALITY_LEVEL_2 = "sublocality_level_2";
+    String TYPE_SUBLOCALITY_LEVEL_3 = "sublocality_level_3";
+    String TYPE_SUBLOCALITY_LEVEL_4 = "sublocality_level_4";
+    String TYPE_SUBLOCALITY_LEVEL_5 = "sublocality_level_5";
+    String TYPE_SUBPREMISE = "subpremise";
 }
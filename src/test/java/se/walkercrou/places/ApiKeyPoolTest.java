@@ -0,0 +1,51 @@
+package se.walkercrou.places;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static se.walkercrou.places.GooglePlaces.*;
+
+public class ApiKeyPoolTest {
+
+    @Test
+    public void testRoundRobin() {
+        ApiKeyPool pool = new ApiKeyPool("a", "b", "c");
+        assertEquals("a", pool.acquire());
+        assertEquals("b", pool.acquire());
+        assertEquals("c", pool.acquire());
+        assertEquals("a", pool.acquire());
+        assertEquals(2, pool.getStats("a").getRequests());
+    }
+
+    @Test
+    public void testLeastUsed() {
+        ApiKeyPool pool = new ApiKeyPool(ApiKeyPool.Strategy.LEAST_USED, ApiKeyPool.DEFAULT_QUARANTINE_MILLIS, "a", "b");
+        pool.recordUse("a");
+        pool.recordUse("a");
+        assertEquals("b", pool.acquire());
+        assertEquals("b", pool.acquire());
+    }
+
+    @Test
+    public void testQuarantine() {
+        ApiKeyPool pool = new ApiKeyPool("a", "b");
+        pool.recordStatus("a", STATUS_OVER_QUERY_LIMIT);
+        for (int i = 0; i < 4; i++)
+            assertEquals("b", pool.acquire());
+        assertEquals(1, pool.getStats("a").getOverQueryLimitCount());
+
+        // every key exhausted, fall back to the one that recovers first
+        pool.recordStatus("b", STATUS_REQUEST_DENIED);
+        assertEquals("a", pool.acquire());
+    }
+
+    @Test
+    public void testQuota() {
+        ApiKeyPool pool = new ApiKeyPool(ApiKeyPool.Strategy.QUOTA_AWARE, 0, "a", "b");
+        pool.setQuota("a", 10).setQuota("b", 2);
+        pool.acquire();
+        pool.acquire();
+        assertEquals("a", pool.acquire());
+        assertTrue(pool.getStats("a").getUsedQuota() <= 0.2);
+    }
+}
@@ -0,0 +1,116 @@
+package se.walkercrou.places;
+
+import org.apache.http.client.methods.HttpPost;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import se.walkercrou.places.exception.GooglePlacesException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static se.walkercrou.places.GooglePlacesInterface.*;
+
+public class AsyncGooglePlacesTest {
+    private StubPlacesServer server;
+    private AsyncGooglePlaces async;
+    private final List<RequestTag> tags = new CopyOnWriteArrayList<>();
+    private final List<String> threads = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubPlacesServer(1, 2000, 52.3, 13.1, 52.7, 13.7).setPageTokenDelay(20).start();
+        final RequestHandler handler = new DefaultRequestHandler();
+        GooglePlaces client = new GooglePlaces(server.configure(ClientConfig.builder()).requestHandler(
+                new RequestHandler() {
+                    @Override
+                    public String getCharacterEncoding() {
+                        return handler.getCharacterEncoding();
+                    }
+
+                    @Override
+                    public void setCharacterEncoding(String characterEncoding) {
+                        handler.setCharacterEncoding(characterEncoding);
+                    }
+
+                    @Override
+                    public InputStream getInputStream(String uri) throws IOException {
+                        return handler.getInputStream(uri);
+                    }
+
+                    @Override
+                    public String get(String uri) throws IOException {
+                        tags.add(RequestTag.current());
+                        threads.add(Thread.currentThread().getName());
+                        return handler.get(uri);
+                    }
+
+                    @Override
+                    public String post(HttpPost data) throws IOException {
+                        return handler.post(data);
+                    }
+                }).build());
+        async = new AsyncGooglePlaces(client, Executors.newFixedThreadPool(4));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        async.shutdown();
+        assertTrue(async.getExecutor().awaitTermination(5, TimeUnit.SECONDS));
+        server.stop();
+    }
+
+    @Test
+    public void testDelegates() throws Exception {
+        Future<Place> place = async.getPlaceById("stub-1");
+        Future<List<Place>> nearby = async.getNearbyPlaces(52.5, 13.4, 5000, MAXIMUM_RESULTS);
+        Future<List<Place>> query = async.getPlacesByQuery("a", MAXIMUM_PAGE_RESULTS);
+
+        assertEquals("stub-1", place.get().getPlaceId());
+        assertEquals(MAXIMUM_RESULTS, nearby.get().size());
+        assertEquals(MAXIMUM_PAGE_RESULTS, query.get().size());
+        assertEquals(1, server.getRequestCount(METHOD_DETAILS));
+        assertEquals(3, server.getRequestCount(METHOD_NEARBY_SEARCH));
+        assertEquals(1, server.getRequestCount(METHOD_TEXT_SEARCH));
+        for (String thread : threads)
+            assertNotEquals(Thread.currentThread().getName(), thread);
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        Future<Place> missing = async.getPlaceById("missing");
+        try {
+            missing.get();
+            fail();
+        } catch (ExecutionException e) {
+            // the exception thrown by the client, with the status on its cause like for blocking calls
+            GooglePlacesException cause = (GooglePlacesException) e.getCause();
+            assertEquals(Statuses.STATUS_NOT_FOUND, ((GooglePlacesException) cause.getCause()).getStatusCode());
+        }
+        // a failed call does not affect the calls after it
+        assertEquals("stub-2", async.getPlaceById("stub-2").get().getPlaceId());
+    }
+
+    @Test
+    public void testRequestTag() throws Exception {
+        RequestTag tag = RequestTag.of(RequestPriority.BATCH, "crawler");
+        RequestTag previous = RequestTag.set(tag);
+        Future<Place> place;
+        try {
+            place = async.getPlaceById("stub-1");
+        } finally {
+            RequestTag.set(previous);
+        }
+        place.get();
+        async.getPlaceById("stub-2").get();
+        assertEquals(tag, tags.get(0));
+        assertEquals(RequestTag.DEFAULT, tags.get(1));
+    }
+}
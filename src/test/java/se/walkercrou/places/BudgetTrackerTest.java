@@ -0,0 +1,157 @@
+package se.walkercrou.places;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import se.walkercrou.places.exception.GooglePlacesException;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.*;
+import static se.walkercrou.places.GooglePlacesInterface.*;
+
+public class BudgetTrackerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StubPlacesServer server;
+    private BudgetTracker budget;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubPlacesServer(1, 2000, 52.3, 13.1, 52.7, 13.7).setPageTokenDelay(20).start();
+        budget = new BudgetTracker(new CostModel().setCost(METHOD_DETAILS, 17).setCost(METHOD_NEARBY_SEARCH, 32));
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    private GooglePlaces client(RequestHandler handler) {
+        return new GooglePlaces(server.configure(ClientConfig.builder()).requestHandler(handler).build());
+    }
+
+    private static <T> T as(String tenant, Callable<T> call) throws Exception {
+        return RequestTag.of(RequestPriority.NORMAL, tenant).wrap(call).call();
+    }
+
+    @Test
+    public void testCostModel() {
+        assertEquals(METHOD_NEARBY_SEARCH, CostModel.methodOf(API_URL + "nearbysearch/json?key=a&pagetoken=b"));
+        assertEquals(METHOD_PHOTO, CostModel.methodOf(API_URL + "photo?photoreference=a&maxwidth=100"));
+        assertEquals(METHOD_DETAILS, CostModel.methodOf(API_URL + "details/json"));
+        CostModel costs = CostModel.standard();
+        assertEquals(17000, costs.getCost(METHOD_DETAILS));
+        assertEquals(96000, costs.estimate(METHOD_TEXT_SEARCH, 3));
+        assertEquals(0, costs.getCost(METHOD_ADD));
+    }
+
+    @Test
+    public void testLimits() throws Exception {
+        budget.setGlobalLimit(100).setTenantLimit("a", 40);
+        final GooglePlaces client = client(new BudgetRequestHandler(new DefaultRequestHandler(), budget));
+        Callable<Place> details = new Callable<Place>() {
+            @Override
+            public Place call() {
+                return client.getPlaceById("stub-1");
+            }
+        };
+        as("a", details);
+        as("a", details);
+        try {
+            as("a", details);
+            fail();
+        } catch (GooglePlacesException e) {
+            BudgetTracker.BudgetExceededException cause = (BudgetTracker.BudgetExceededException) e.getCause();
+            assertEquals("a", cause.getTenant());
+            assertEquals(METHOD_DETAILS, cause.getMethod());
+        }
+        assertEquals(34, budget.getSpent("a"));
+        assertEquals(6, budget.getRemaining("a"));
+
+        as("b", details);
+        as("b", details);
+        as("b", details);
+        try {
+            as("b", details);
+            fail();
+        } catch (GooglePlacesException e) {
+            assertTrue(e.getCause() instanceof BudgetTracker.BudgetExceededException);
+        }
+        assertEquals(85, budget.getSpent());
+        assertEquals(5, server.getRequestCount(METHOD_DETAILS));
+
+        BudgetTracker.Report report = budget.getReport();
+        assertEquals(85, report.getSpent());
+        assertEquals(2, report.getRejected());
+        assertEquals(Long.valueOf(51), report.getTenantSpent().get("b"));
+        assertEquals(Long.valueOf(40), report.getTenantLimits().get("a"));
+        assertEquals(Long.valueOf(5), report.getMethodRequests().get(METHOD_DETAILS));
+        assertTrue(report.toString().contains("tenant a 34 of 40"));
+
+        budget.reset();
+        assertEquals(0, budget.getSpent());
+        as("a", details);
+    }
+
+    @Test
+    public void testPages() throws Exception {
+        budget.setGlobalLimit(64);
+        BudgetRequestHandler handler = new BudgetRequestHandler(new DefaultRequestHandler(), budget);
+        GooglePlaces client = client(handler);
+        try {
+            client.getNearbyPlaces(52.5, 13.4, 5000, MAXIMUM_RESULTS);
+            fail();
+        } catch (GooglePlacesException e) {
+            assertTrue(e.getCause() instanceof BudgetTracker.BudgetExceededException);
+        }
+        assertEquals(0, server.getRequestCount(METHOD_NEARBY_SEARCH));
+
+        handler.setPolicy(BudgetRequestHandler.Policy.FEWER_PAGES);
+        List<Place> places = client.getNearbyPlaces(52.5, 13.4, 5000, MAXIMUM_RESULTS);
+        assertEquals(2 * MAXIMUM_PAGE_RESULTS, places.size());
+        assertEquals(2, server.getRequestCount(METHOD_NEARBY_SEARCH));
+        assertEquals(64, budget.getSpent());
+    }
+
+    @Test
+    public void testPagesThroughWrappers() throws Exception {
+        budget.setGlobalLimit(64);
+        BudgetRequestHandler handler = new BudgetRequestHandler(new DefaultRequestHandler(), budget);
+        // the budget is found behind the handlers in front of it
+        GooglePlaces client = client(new PriorityRequestHandler(new NegativeCacheRequestHandler(handler, 64), 4));
+        try {
+            client.getNearbyPlaces(52.5, 13.4, 5000, MAXIMUM_RESULTS);
+            fail();
+        } catch (GooglePlacesException e) {
+            assertTrue(e.getCause() instanceof BudgetTracker.BudgetExceededException);
+        }
+        assertEquals(0, server.getRequestCount(METHOD_NEARBY_SEARCH));
+
+        handler.setPolicy(BudgetRequestHandler.Policy.FEWER_PAGES);
+        assertEquals(2 * MAXIMUM_PAGE_RESULTS, client.getNearbyPlaces(52.5, 13.4, 5000, MAXIMUM_RESULTS).size());
+        assertEquals(64, budget.getSpent());
+        assertNull(client(new NegativeCacheRequestHandler(new DefaultRequestHandler(), 64)).getConfig().getBudget());
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        File archive = folder.newFile();
+        try (ReplayRequestHandler recorder = ReplayRequestHandler.record(new DefaultRequestHandler(), archive)) {
+            client(recorder).getPlaceById("stub-7");
+        }
+        budget.setGlobalLimit(0);
+        try (ReplayRequestHandler cache = ReplayRequestHandler.replay(archive)) {
+            GooglePlaces client = client(new BudgetRequestHandler(new DefaultRequestHandler(), budget).setCache(cache));
+            assertEquals("stub-7", client.getPlaceById("stub-7").getPlaceId());
+            assertEquals(1, cache.getHits());
+        }
+        assertEquals(1, server.getRequestCount(METHOD_DETAILS));
+        assertEquals(0, budget.getSpent());
+    }
+}
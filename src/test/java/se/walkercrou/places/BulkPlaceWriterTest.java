@@ -0,0 +1,133 @@
+package se.walkercrou.places;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import se.walkercrou.places.exception.GooglePlacesException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BulkPlaceWriterTest {
+    private StubPlacesServer server;
+    private ExecutorService executor;
+    private GooglePlaces client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubPlacesServer(1, 100, 52.3, 13.1, 52.7, 13.7).start();
+        executor = Executors.newFixedThreadPool(8);
+        client = new GooglePlaces(server.configure(ClientConfig.builder()).build());
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        server.stop();
+    }
+
+    private static List<PlaceBuilder> builders(int count) {
+        List<PlaceBuilder> builders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            builders.add(new PlaceBuilder("Bulk " + i, 52.5, 13.4, Types.TYPE_CAFE).address("Main St " + i));
+        return builders;
+    }
+
+    @Test
+    public void testAddAndDelete() throws Exception {
+        final AtomicInteger notified = new AtomicInteger();
+        BulkPlaceWriter writer = new BulkPlaceWriter(client, executor).setConcurrency(8)
+                .setListener(new BulkPlaceWriter.Listener() {
+                    @Override
+                    public void onResult(BulkPlaceWriter.Result result) {
+                        notified.incrementAndGet();
+                    }
+                });
+        BulkPlaceWriter.Summary summary = writer.addAll(builders(200));
+        assertEquals(200, summary.getSucceeded());
+        assertEquals(0, summary.getFailed());
+        assertEquals(200, notified.get());
+        assertEquals(300, server.size());
+        assertEquals(0, server.getRequestCount(GooglePlaces.METHOD_DETAILS));
+
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            BulkPlaceWriter.Result result = summary.getResults().get(i);
+            assertEquals(i, result.getIndex());
+            assertNotNull(result.getPlaceId());
+            assertNull(result.getPlace());
+            ids.add(result.getPlaceId());
+        }
+        summary = writer.deleteAll(ids);
+        assertEquals(200, summary.getSucceeded());
+        assertEquals(100, server.size());
+
+        server.setQueriesPerSecond(0);
+        summary = writer.addAll(builders(3));
+        assertEquals(3, summary.getFailures().size());
+        assertEquals(Statuses.STATUS_OVER_QUERY_LIMIT,
+                ((GooglePlacesException) summary.getFailures().get(0).getError().getCause()).getStatusCode());
+    }
+
+    @Test
+    public void testFetchPlaces() throws Exception {
+        final String[] names = new String[10];
+        BulkPlaceWriter.Summary summary = new BulkPlaceWriter(client, executor).setFetchPlaces(true)
+                .setListener(new BulkPlaceWriter.Listener() {
+                    @Override
+                    public void onResult(BulkPlaceWriter.Result result) {
+                        names[result.getIndex()] = result.getBuilder().toJson().getString("name");
+                    }
+                }).addAll(builders(10).iterator());
+        assertEquals(10, summary.getSucceeded());
+        assertEquals(10, server.getRequestCount(GooglePlaces.METHOD_DETAILS));
+        for (BulkPlaceWriter.Result result : summary.getResults()) {
+            assertEquals(names[result.getIndex()], result.getPlace().getName());
+            assertEquals(result.getPlaceId(), result.getPlace().getPlaceId());
+        }
+    }
+
+    @Test
+    public void testReleaseBuilders() throws Exception {
+        final AtomicInteger withBuilder = new AtomicInteger();
+        BulkPlaceWriter writer = new BulkPlaceWriter(client, executor).setListener(new BulkPlaceWriter.Listener() {
+            @Override
+            public void onResult(BulkPlaceWriter.Result result) {
+                if (result.getBuilder() != null)
+                    withBuilder.incrementAndGet();
+            }
+        });
+        BulkPlaceWriter.Summary summary = writer.addAll(builders(20));
+        assertEquals(20, withBuilder.get());
+        for (BulkPlaceWriter.Result result : summary.getResults())
+            assertNull(result.getBuilder());
+
+        // failed items keep their builder so they can be retried
+        server.setQueriesPerSecond(0);
+        List<PlaceBuilder> builders = builders(3);
+        summary = writer.addAll(builders);
+        assertEquals(23, withBuilder.get());
+        for (BulkPlaceWriter.Result result : summary.getFailures())
+            assertSame(builders.get(result.getIndex()), result.getBuilder());
+        assertEquals(3, summary.getFailed());
+    }
+
+    @Test
+    public void testRate() throws Exception {
+        RateLimiter rate = new RateLimiter(100, 1);
+        long start = System.nanoTime();
+        BulkPlaceWriter.Summary summary = new BulkPlaceWriter(client, executor).setRate(rate)
+                .deleteAll(Arrays.asList("stub-1", "stub-2", "stub-3", "stub-4", "stub-5", "stub-6", "stub-7",
+                        "stub-8", "stub-9", "stub-10", "stub-11"));
+        assertEquals(11, summary.getSucceeded());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+        assertFalse(rate.tryAcquire() && rate.tryAcquire());
+    }
+}
@@ -0,0 +1,160 @@
+package se.walkercrou.places;
+
+import org.apache.http.client.methods.HttpPost;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import se.walkercrou.places.exception.GooglePlacesException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static se.walkercrou.places.GooglePlacesInterface.*;
+
+public class CallContextTest {
+    // long enough that the timing of a request on a slow machine does not decide how many pages fit in a deadline
+    private static final long PAGE_TOKEN_DELAY = 1000;
+
+    private StubPlacesServer server;
+    private GooglePlaces client;
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private volatile Runnable afterGet;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubPlacesServer(1, 2000, 52.3, 13.1, 52.7, 13.7).setPageTokenDelay(PAGE_TOKEN_DELAY).start();
+        final RequestHandler handler = new DefaultRequestHandler();
+        client = new GooglePlaces(server.configure(ClientConfig.builder()).requestHandler(new RequestHandler() {
+            @Override
+            public String getCharacterEncoding() {
+                return handler.getCharacterEncoding();
+            }
+
+            @Override
+            public void setCharacterEncoding(String characterEncoding) {
+                handler.setCharacterEncoding(characterEncoding);
+            }
+
+            @Override
+            public InputStream getInputStream(String uri) throws IOException {
+                sent.add(uri);
+                return handler.getInputStream(uri);
+            }
+
+            @Override
+            public String get(String uri) throws IOException {
+                sent.add(uri);
+                String response = handler.get(uri);
+                Runnable r = afterGet;
+                if (r != null)
+                    r.run();
+                return response;
+            }
+
+            @Override
+            public String post(HttpPost data) throws IOException {
+                return handler.post(data);
+            }
+        }).build());
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void testPartialPages() {
+        assertEquals(MAXIMUM_RESULTS, client.getNearbyPlaces(52.5, 13.4, 5000, MAXIMUM_RESULTS).size());
+        sent.clear();
+
+        // time for one wait, but not for two
+        long start = System.nanoTime();
+        List<Place> places = client.getNearbyPlaces(52.5, 13.4, 5000, MAXIMUM_RESULTS,
+                DeadlineParam.in(PAGE_TOKEN_DELAY * 3 / 2));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(2 * PAGE_TOKEN_DELAY));
+        assertEquals(2 * MAXIMUM_PAGE_RESULTS, places.size());
+        assertEquals(2, sent.size());
+        for (String uri : sent)
+            assertFalse(uri.contains("deadline"));
+
+        // no time to wait for a page token
+        start = System.nanoTime();
+        places = client.getPlacesByQuery("a", MAXIMUM_RESULTS, DeadlineParam.in(PAGE_TOKEN_DELAY / 2));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(PAGE_TOKEN_DELAY));
+        assertEquals(MAXIMUM_PAGE_RESULTS, places.size());
+    }
+
+    @Test
+    public void testExpired() throws Exception {
+        DeadlineParam deadline = DeadlineParam.in(0);
+        Thread.sleep(1);
+        assertTrue(deadline.getContext().isExpired());
+        assertEquals(0, deadline.getContext().getRemainingMillis());
+        try {
+            client.getPlaceById("stub-1", deadline);
+            fail();
+        } catch (GooglePlacesException e) {
+            assertTrue(e.getCause().getCause() instanceof InterruptedIOException);
+        }
+        assertEquals(0, server.getRequestCount(METHOD_DETAILS));
+        assertEquals(Long.MAX_VALUE, new CallContext().getRemainingMillis());
+    }
+
+    @Test
+    public void testCancelPageWait() {
+        final CallContext context = new CallContext();
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        // cancel while the call waits for the page token, not while the first page is read
+        afterGet = new Runnable() {
+            @Override
+            public void run() {
+                afterGet = null;
+                executor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        context.cancel();
+                    }
+                }, 100, TimeUnit.MILLISECONDS);
+            }
+        };
+        long start = System.nanoTime();
+        try {
+            client.getNearbyPlaces(52.5, 13.4, 5000, MAXIMUM_RESULTS, DeadlineParam.of(context));
+            fail();
+        } catch (GooglePlacesException e) {
+            assertTrue(e.getCause() instanceof InterruptedIOException);
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(PAGE_TOKEN_DELAY));
+        assertEquals(1, server.getRequestCount(METHOD_NEARBY_SEARCH));
+        assertNull(CallContext.current());
+    }
+
+    @Test
+    public void testReadTimeout() throws Exception {
+        // accepts connections but never responds
+        try (ServerSocket silent = new ServerSocket(0)) {
+            CallContext previous = CallContext.set(CallContext.withTimeout(200));
+            long start = System.nanoTime();
+            try {
+                new DefaultRequestHandler().get("http://localhost:" + silent.getLocalPort() + "/");
+                fail();
+            } catch (IOException e) {
+                assertTrue(CallContext.current().isExpired());
+            } finally {
+                CallContext.set(previous);
+            }
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package se.walkercrou.places;
+
+import org.apache.http.client.methods.HttpPost;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static se.walkercrou.places.GooglePlacesInterface.*;
+
+public class ClientConfigTest {
+    private StubPlacesServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubPlacesServer(1, 2000, 52.3, 13.1, 52.7, 13.7).setPageTokenDelay(20).start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void testToBuilder() {
+        ApiKeyPool keys = new ApiKeyPool("a", "b");
+        RequestHandler handler = new DefaultRequestHandler();
+        ClientConfig config = ClientConfig.builder().baseUrl("http://localhost/api/").pageTokenDelay(42).apiKeys(keys)
+                .requestHandler(handler).debugModeEnabled(true).build();
+
+        ClientConfig copy = config.toBuilder().build();
+        assertNotSame(config, copy);
+        assertEquals("http://localhost/api/", copy.getBaseUrl());
+        assertEquals(42, copy.getPageTokenDelay());
+        assertSame(keys, copy.getApiKeys());
+        assertSame(handler, copy.getRequestHandler());
+        assertTrue(copy.isDebugModeEnabled());
+
+        // changing a builder does not change the configuration it was made from
+        ClientConfig changed = config.toBuilder().pageTokenDelay(7).debugModeEnabled(false).build();
+        assertEquals(7, changed.getPageTokenDelay());
+        assertFalse(changed.isDebugModeEnabled());
+        assertEquals(42, config.getPageTokenDelay());
+        assertTrue(config.isDebugModeEnabled());
+    }
+
+    @Test
+    public void testDefaults() {
+        ClientConfig config = ClientConfig.builder().apiKey("a").build();
+        assertEquals(API_URL, config.getBaseUrl());
+        assertEquals(ClientConfig.DEFAULT_PAGE_TOKEN_DELAY_MILLIS, config.getPageTokenDelay());
+        assertEquals("a", config.getApiKeys().getPrimaryKey());
+        assertTrue(config.getRequestHandler() instanceof DefaultRequestHandler);
+        assertFalse(config.isDebugModeEnabled());
+        assertNull(config.getBudget());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMissingKey() {
+        ClientConfig.builder().build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBaseUrlWithoutSlash() {
+        ClientConfig.builder().baseUrl("http://localhost/api");
+    }
+
+    @Test
+    public void testTemplates() {
+        ClientConfig config = ClientConfig.builder().baseUrl("http://a/").apiKey("k").build();
+        ClientConfig moved = config.toBuilder().baseUrl("http://b/").build();
+        assertEquals("http://a/details/json?placeid=x",
+                config.getTemplate(METHOD_DETAILS).begin().param("placeid", "x").build());
+        assertEquals("http://b/details/json?placeid=x",
+                moved.getTemplate(METHOD_DETAILS).begin().param("placeid", "x").build());
+        assertEquals("http://a/photo?photoreference=r",
+                config.getTemplate(METHOD_PHOTO).begin().param("photoreference", "r").build());
+        String[] methods = {METHOD_NEARBY_SEARCH, METHOD_TEXT_SEARCH, METHOD_RADAR_SEARCH, METHOD_DETAILS, METHOD_ADD,
+                METHOD_DELETE, METHOD_AUTOCOMPLETE, METHOD_QUERY_AUTOCOMPLETE};
+        for (String method : methods)
+            assertEquals("http://b/" + method + "/json?", moved.getTemplate(method).begin().build());
+    }
+
+    @Test
+    public void testSwapWhileCallRuns() throws Exception {
+        RecordingHandler before = new RecordingHandler(true), after = new RecordingHandler(false);
+        final GooglePlaces client = new GooglePlaces(server.configure(ClientConfig.builder()).requestHandler(before)
+                .build());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<Place>> running = executor.submit(new Callable<List<Place>>() {
+                @Override
+                public List<Place> call() {
+                    return client.getNearbyPlaces(52.5, 13.4, 5000, MAXIMUM_RESULTS);
+                }
+            });
+            assertTrue(before.started.await(5, TimeUnit.SECONDS));
+
+            // reconfigure while the first page is being read
+            client.setRequestHandler(after);
+            client.setApiKey("other");
+            client.setDebugModeEnabled(false);
+            before.release.countDown();
+
+            // the running call reads every page with the configuration it started with
+            assertEquals(MAXIMUM_RESULTS, running.get(5, TimeUnit.SECONDS).size());
+            assertEquals(3, before.uris.size());
+            for (String uri : before.uris)
+                assertTrue(uri, uri.contains("key=stub"));
+            assertTrue(after.uris.isEmpty());
+
+            client.getPlaceById("stub-1");
+            assertEquals(1, after.uris.size());
+            assertTrue(after.uris.get(0).contains("key=other"));
+            assertEquals(3, before.uris.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConcurrentSetters() throws Exception {
+        final GooglePlaces client = new GooglePlaces(server.configure(ClientConfig.builder()).build());
+        final RequestHandler handler = new RecordingHandler(false);
+        for (int run = 0; run < 100; run++) {
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread keys = new Thread() {
+                @Override
+                public void run() {
+                    await(start);
+                    client.setApiKey("key");
+                }
+            };
+            Thread handlers = new Thread() {
+                @Override
+                public void run() {
+                    await(start);
+                    client.setRequestHandler(handler);
+                }
+            };
+            keys.start();
+            handlers.start();
+            start.countDown();
+            keys.join();
+            handlers.join();
+
+            // neither setter overwrote the change of the other
+            assertEquals("key", client.getApiKey());
+            assertSame(handler, client.getRequestHandler());
+            client.setConfig(server.configure(ClientConfig.builder()).build());
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Records the requests it sends, optionally holding the first one until released.
+     */
+    private static class RecordingHandler implements RequestHandler {
+        private final RequestHandler handler = new DefaultRequestHandler();
+        private final List<String> uris = new CopyOnWriteArrayList<>();
+        private final CountDownLatch started = new CountDownLatch(1), release;
+
+        private RecordingHandler(boolean hold) {
+            release = new CountDownLatch(hold ? 1 : 0);
+        }
+
+        @Override
+        public String getCharacterEncoding() {
+            return handler.getCharacterEncoding();
+        }
+
+        @Override
+        public void setCharacterEncoding(String characterEncoding) {
+            handler.setCharacterEncoding(characterEncoding);
+        }
+
+        @Override
+        public InputStream getInputStream(String uri) throws IOException {
+            uris.add(uri);
+            return handler.getInputStream(uri);
+        }
+
+        @Override
+        public String get(String uri) throws IOException {
+            uris.add(uri);
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            return handler.get(uri);
+        }
+
+        @Override
+        public String post(HttpPost data) throws IOException {
+            return handler.post(data);
+        }
+    }
+}
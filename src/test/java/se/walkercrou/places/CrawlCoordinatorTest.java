@@ -0,0 +1,270 @@
+package se.walkercrou.places;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class CrawlCoordinatorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StubPlacesServer server;
+    private GooglePlaces client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubPlacesServer(1, 2000, 52.3, 13.1, 52.7, 13.7).setPageTokenDelay(20).start();
+        client = new GooglePlaces(server.configure(ClientConfig.builder()).build());
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    private CrawlJob job(CrawlJournal journal, final Set<String> found) {
+        return new CrawlJob(client, journal, 52.45, 13.35, 52.55, 13.45, 3000).setListener(new CrawlJob.Listener() {
+            @Override
+            public void onPlace(Place place) {
+                found.add(place.getPlaceId());
+            }
+        });
+    }
+
+    private CrawlCoordinator.JobFactory factory(final Set<String> found) {
+        return new CrawlCoordinator.JobFactory() {
+            @Override
+            public CrawlJob create(CrawlJournal journal) {
+                return job(journal, found);
+            }
+        };
+    }
+
+    private Set<String> crawl() throws Exception {
+        Set<String> expected = new HashSet<>();
+        try (CrawlJournal journal = CrawlJournal.open(folder.newFile())) {
+            job(journal, expected).run();
+        }
+        return expected;
+    }
+
+    @Test
+    public void testRing() {
+        ShardRing three = new ShardRing(Arrays.asList("c", "a", "b"));
+        ShardRing four = new ShardRing(Arrays.asList("a", "b", "c", "d"));
+        assertEquals(Arrays.asList("a", "b", "c"), three.getWorkers());
+        int moved = 0;
+        for (int shard = 0; shard < 1000; shard++) {
+            assertEquals(three.getOwner(shard), new ShardRing(Arrays.asList("b", "c", "a")).getOwner(shard));
+            if (!three.getOwner(shard).equals(four.getOwner(shard))) {
+                assertEquals("d", four.getOwner(shard));
+                moved++;
+            }
+        }
+        assertTrue(moved > 150 && moved < 350);
+        for (String worker : three.getWorkers())
+            assertTrue(three.getShards(worker, 1000).size() > 250);
+        assertNull(new ShardRing(Collections.<String>emptyList()).getOwner(0));
+    }
+
+    @Test
+    public void testWorkers() throws Exception {
+        Set<String> expected = crawl();
+        final File journals = folder.newFolder();
+        final CoordinationBackend backend = new InMemoryCoordinationBackend();
+        final Set<String> found = Collections.synchronizedSet(new HashSet<String>());
+        final List<Exception> errors = Collections.synchronizedList(new ArrayList<Exception>());
+        Thread[] workers = new Thread[3];
+        for (int i = 0; i < workers.length; i++) {
+            final String worker = "worker-" + i;
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        new CrawlCoordinator(backend, "test", worker, 8, journals).setLeaseMillis(1000)
+                                .run(factory(found));
+                    } catch (Exception e) {
+                        errors.add(e);
+                    }
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread worker : workers)
+            worker.join();
+        assertEquals(Collections.emptyList(), errors);
+        assertEquals(expected, found);
+        for (int shard = 0; shard < 8; shard++)
+            assertTrue(backend.isCompleted("test/" + shard));
+    }
+
+    @Test
+    public void testFailover() throws Exception {
+        Set<String> expected = crawl();
+        CoordinationBackend backend = new FileCoordinationBackend(folder.newFolder());
+        backend.heartbeat("dead", 200);
+        for (int shard = 0; shard < 4; shard++)
+            assertTrue(backend.tryAcquireLease("test/" + shard, "dead", 200));
+        assertFalse(backend.tryAcquireLease("test/0", "live", 200));
+        assertEquals("dead", backend.getLeaseOwner("test/0"));
+
+        Set<String> found = new HashSet<>();
+        CrawlCoordinator coordinator = new CrawlCoordinator(backend, "test", "live", 4, folder.newFolder())
+                .setLeaseMillis(300);
+        coordinator.run(factory(found));
+        assertEquals(expected, found);
+        assertEquals(Collections.singletonList("live"), backend.getLiveWorkers());
+        assertNull(backend.getLeaseOwner("test/0"));
+        assertTrue(coordinator.isOwned("anything"));
+    }
+
+    @Test
+    public void testUnreachableBackend() throws Exception {
+        final UnreachableBackend backend = new UnreachableBackend();
+        final AtomicLong unreachableAt = new AtomicLong(), lastPlaceAt = new AtomicLong();
+        CrawlCoordinator coordinator = new CrawlCoordinator(backend, "test", "worker", 1, folder.newFolder())
+                .setLeaseMillis(1500);
+        try {
+            coordinator.run(new CrawlCoordinator.JobFactory() {
+                @Override
+                public CrawlJob create(CrawlJournal journal) {
+                    return new CrawlJob(client, journal, 52.45, 13.35, 52.55, 13.45, 3000)
+                            .setListener(new CrawlJob.Listener() {
+                                @Override
+                                public void onPlace(Place place) throws IOException {
+                                    // the backend becomes unreachable while the shard is being crawled
+                                    if (backend.unreachable.compareAndSet(false, true))
+                                        unreachableAt.set(System.currentTimeMillis());
+                                    lastPlaceAt.set(System.currentTimeMillis());
+                                    try {
+                                        Thread.sleep(50);
+                                    } catch (InterruptedException e) {
+                                        throw new IOException(e);
+                                    }
+                                }
+                            });
+                }
+            });
+            fail("Lease released while the backend was unreachable");
+        } catch (IOException e) {
+            assertEquals("unreachable", e.getMessage());
+        }
+
+        // the worker stopped crawling before another worker could have taken the lease over
+        assertTrue(lastPlaceAt.get() - unreachableAt.get() < 1500);
+        backend.unreachable.set(false);
+        assertFalse(backend.isCompleted("test/0"));
+        Thread.sleep(1500);
+        assertTrue(backend.tryAcquireLease("test/0", "other", 1500));
+    }
+
+    @Test
+    public void testQuota() throws Exception {
+        CoordinationBackend backend = new InMemoryCoordinationBackend();
+        RequestHandler handler = client.getRequestHandler();
+        QuotaRequestHandler first = new QuotaRequestHandler(handler, backend, "day", 25, 10);
+        QuotaRequestHandler second = new QuotaRequestHandler(handler, backend, "day", 25, 10);
+        String uri = server.getBaseUrl() + "details/json?placeid=stub-1&key=key";
+        int sent = 0;
+        for (int i = 0; i < 20; i++) {
+            for (QuotaRequestHandler quota : Arrays.asList(first, second)) {
+                try {
+                    quota.get(uri);
+                    sent++;
+                } catch (QuotaRequestHandler.QuotaExhaustedException e) {
+                    assertEquals("day", e.getQuota());
+                }
+            }
+        }
+        assertEquals(25, sent);
+        assertEquals(25, server.getRequestCount(GooglePlaces.METHOD_DETAILS));
+        assertEquals(0, first.getReserved() + second.getReserved());
+
+        // the handler that reserved the last block never asked again, the other one asked once more and was refused
+        long usage = backend.getUsage("day");
+        assertEquals(40, usage);
+        for (int i = 0; i < 20; i++) {
+            for (QuotaRequestHandler quota : Arrays.asList(first, second)) {
+                try {
+                    quota.get(uri);
+                    fail();
+                } catch (QuotaRequestHandler.QuotaExhaustedException e) {
+                    assertEquals("day", e.getQuota());
+                }
+            }
+        }
+        // refused requests are not charged to the backend
+        assertEquals(usage, backend.getUsage("day"));
+    }
+
+    private static class UnreachableBackend implements CoordinationBackend {
+        private final CoordinationBackend backend = new InMemoryCoordinationBackend();
+        private final AtomicBoolean unreachable = new AtomicBoolean();
+
+        private CoordinationBackend reach() throws IOException {
+            if (unreachable.get())
+                throw new IOException("unreachable");
+            return backend;
+        }
+
+        @Override
+        public void heartbeat(String worker, long ttlMillis) throws IOException {
+            reach().heartbeat(worker, ttlMillis);
+        }
+
+        @Override
+        public List<String> getLiveWorkers() throws IOException {
+            return reach().getLiveWorkers();
+        }
+
+        @Override
+        public boolean tryAcquireLease(String shard, String worker, long ttlMillis) throws IOException {
+            return reach().tryAcquireLease(shard, worker, ttlMillis);
+        }
+
+        @Override
+        public void releaseLease(String shard, String worker) throws IOException {
+            reach().releaseLease(shard, worker);
+        }
+
+        @Override
+        public String getLeaseOwner(String shard) throws IOException {
+            return reach().getLeaseOwner(shard);
+        }
+
+        @Override
+        public void complete(String shard) throws IOException {
+            reach().complete(shard);
+        }
+
+        @Override
+        public boolean isCompleted(String shard) throws IOException {
+            return reach().isCompleted(shard);
+        }
+
+        @Override
+        public long addUsage(String quota, long amount) throws IOException {
+            return reach().addUsage(quota, amount);
+        }
+
+        @Override
+        public long getUsage(String quota) throws IOException {
+            return reach().getUsage(quota);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package se.walkercrou.places;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CrawlJobTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StubPlacesServer server;
+    private GooglePlaces client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubPlacesServer(1, 2000, 52.3, 13.1, 52.7, 13.7).setPageTokenDelay(20).start();
+        client = new GooglePlaces(server.configure(ClientConfig.builder()).build());
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    private CrawlJob job(CrawlJournal journal) {
+        return new CrawlJob(client, journal, 52.45, 13.35, 52.55, 13.45, 3000);
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        final List<String> expected = new ArrayList<>();
+        CrawlJob full;
+        try (CrawlJournal journal = CrawlJournal.open(folder.newFile())) {
+            full = job(journal).setListener(new CrawlJob.Listener() {
+                @Override
+                public void onPlace(Place place) {
+                    expected.add(place.getPlaceId());
+                }
+            });
+            full.run();
+            assertEquals(full.getCellCount(), full.getCompletedCells());
+        }
+        assertEquals(expected.size(), new HashSet<>(expected).size());
+
+        File file = folder.newFile();
+        final List<String> found = new ArrayList<>();
+        long requests = 0;
+        for (int run = 0; run < 100; run++) {
+            try (CrawlJournal journal = CrawlJournal.open(file)) {
+                final CrawlJob job = job(journal);
+                if (job.getCompletedCells() == job.getCellCount())
+                    break;
+                job.setListener(new CrawlJob.Listener() {
+                    @Override
+                    public void onPlace(Place place) {
+                        found.add(place.getPlaceId());
+                        if (found.size() % 25 == 0)
+                            job.stop();
+                    }
+                });
+                job.run();
+                requests += job.getRequests();
+                assertEquals(0, journal.getLostRequests());
+            }
+        }
+        assertEquals(expected, found);
+        assertEquals(full.getRequests(), requests);
+    }
+
+    @Test
+    public void testDetails() throws Exception {
+        File file = folder.newFile();
+        final List<Place> places = new ArrayList<>();
+        try (CrawlJournal journal = CrawlJournal.open(file)) {
+            final CrawlJob job = job(journal).setSearch(CrawlJob.Search.RADAR).setFetchDetails(true);
+            job.setListener(new CrawlJob.Listener() {
+                @Override
+                public void onPlace(Place place) {
+                    places.add(place);
+                    if (places.size() == 10)
+                        job.stop();
+                }
+            });
+            job.run();
+            assertEquals(10, places.size());
+            assertEquals(10, server.getRequestCount(GooglePlaces.METHOD_DETAILS));
+            assertEquals(7, places.get(0).getHours().getPeriods().size());
+        }
+
+        // a torn record at the end is cut off
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[]{0, 0, 0, 40, 1, 2});
+        }
+        try (CrawlJournal journal = CrawlJournal.open(file)) {
+            CrawlJob job = job(journal).setSearch(CrawlJob.Search.RADAR).setFetchDetails(true);
+            job.run();
+            assertEquals(job.getCellCount(), job.getCompletedCells());
+            assertTrue(journal.getUnfetched().isEmpty());
+            assertEquals(journal.getDiscovered().size(), server.getRequestCount(GooglePlaces.METHOD_DETAILS));
+        }
+    }
+
+    @Test
+    public void testResumeWithRemovedPlace() throws Exception {
+        File file = folder.newFile();
+        final List<String> delivered = new ArrayList<>();
+        String removed;
+        try (CrawlJournal journal = CrawlJournal.open(file)) {
+            final CrawlJob job = job(journal).setSearch(CrawlJob.Search.RADAR).setFetchDetails(true);
+            job.setListener(new CrawlJob.Listener() {
+                @Override
+                public void onPlace(Place place) {
+                    delivered.add(place.getPlaceId());
+                    if (delivered.size() == 5)
+                        job.stop();
+                }
+            });
+            job.run();
+            removed = journal.getUnfetched().get(0);
+        }
+
+        // the place is removed between the search that found it and the request for its details
+        client.deletePlaceById(removed);
+        for (int run = 0; run < 2; run++) {
+            try (CrawlJournal journal = CrawlJournal.open(file)) {
+                CrawlJob job = job(journal).setSearch(CrawlJob.Search.RADAR).setFetchDetails(true);
+                job.run();
+                assertEquals(job.getCellCount(), job.getCompletedCells());
+                assertTrue(journal.getUnfetched().isEmpty());
+                assertTrue(journal.isFailed(removed));
+                assertEquals(Statuses.STATUS_NOT_FOUND, journal.getFailed().get(removed));
+                assertFalse(journal.isFetched(removed));
+            }
+        }
+        // the removed place was asked for once
+        assertEquals(countFetched(file) + 1, server.getRequestCount(GooglePlaces.METHOD_DETAILS));
+    }
+
+    private static int countFetched(File file) throws IOException {
+        try (CrawlJournal journal = CrawlJournal.open(file)) {
+            return journal.getDiscovered().size() - journal.getFailed().size();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testOtherJob() throws Exception {
+        File file = folder.newFile();
+        try (CrawlJournal journal = CrawlJournal.open(file)) {
+            job(journal).setSearch(CrawlJob.Search.RADAR).setListener(new CrawlJob.Listener() {
+                @Override
+                public void onPlace(Place place) throws IOException {
+                    throw new IOException("full");
+                }
+            }).run();
+        } catch (IOException e) {
+            assertEquals("full", e.getMessage());
+        }
+        try (CrawlJournal journal = CrawlJournal.open(file)) {
+            job(journal).run();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package se.walkercrou.places;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FieldsParamTest {
+    private static final String RESULT = "{\"place_id\":\"id\",\"name\":\"Cafe\",\"rating\":4.5,"
+            + "\"geometry\":{\"location\":{\"lat\":-1,\"lng\":-1}},\"types\":[\"cafe\"],"
+            + "\"photos\":[{\"photo_reference\":\"ref\",\"width\":10,\"height\":20}]}";
+
+    @Test
+    public void testValue() {
+        FieldsParam fields = FieldsParam.of(PlaceField.NAME, PlaceField.LOCATION, PlaceField.ALT_IDS);
+        assertEquals("fields", fields.name);
+        assertEquals("place_id,name,geometry", fields.value);
+        assertEquals(EnumSet.of(PlaceField.NAME, PlaceField.LOCATION, PlaceField.ALT_IDS), fields.getFields());
+        assertSame(fields, FieldsParam.find(Param.name("a").value("b"), fields));
+        assertNull(FieldsParam.find(Param.name("a").value("b")));
+        assertTrue(FieldsParam.includes(null, PlaceField.PHOTOS));
+        assertFalse(FieldsParam.includes(fields, PlaceField.PHOTOS));
+    }
+
+    @Test
+    public void testAddValue() {
+        FieldsParam fields = FieldsParam.of(PlaceField.NAME);
+        assertSame(fields, fields.value("place_id, geometry,rating"));
+        assertEquals("place_id,name,geometry,rating", fields.value);
+        fields.value(PlaceField.TYPES).value(new PlaceField[]{PlaceField.PHOTOS})
+                .value(Arrays.asList(PlaceField.NAME, PlaceField.REVIEWS));
+        assertEquals(EnumSet.of(PlaceField.NAME, PlaceField.LOCATION, PlaceField.RATING, PlaceField.TYPES,
+                PlaceField.PHOTOS, PlaceField.REVIEWS), fields.getFields());
+        assertEquals("place_id,name,geometry,rating,type,photo,review", fields.value);
+    }
+
+    @Test
+    public void testInvalidValue() {
+        FieldsParam fields = FieldsParam.of(PlaceField.NAME);
+        for (Object value : new Object[]{"name,colour", 42, Arrays.asList("name")}) {
+            try {
+                fields.value(value);
+                fail(value.toString());
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        // a value that is refused leaves the param as it was
+        assertEquals(EnumSet.of(PlaceField.NAME), fields.getFields());
+        assertEquals("place_id,name", fields.value);
+    }
+
+    @Test
+    public void testDetails() {
+        String json = "{\"status\":\"OK\",\"result\":" + RESULT + "}";
+        Place all = Place.parseDetails(null, json);
+        assertEquals(-1, all.getLatitude(), 0);
+        assertEquals(-1, all.getLongitude(), 0);
+        assertEquals(1, all.getPhotos().size());
+        assertEquals(1, all.getTypes().size());
+
+        Place projected = Place.parseDetails(null, json, FieldsParam.of(PlaceField.NAME));
+        assertEquals("Cafe", projected.getName());
+        assertTrue(Double.isNaN(projected.getLatitude()));
+        assertTrue(Double.isNaN(projected.getLongitude()));
+        assertTrue(projected.getPhotos().isEmpty());
+        assertTrue(projected.getTypes().isEmpty());
+    }
+
+    @Test
+    public void testSearchWithoutLocation() {
+        // the server leaves out the geometry when it is not requested
+        String json = "{\"status\":\"OK\",\"results\":[" + RESULT.replace(
+                "\"geometry\":{\"location\":{\"lat\":-1,\"lng\":-1}},", "") + "]}";
+        List<Place> places = new ArrayList<>();
+        GooglePlaces.parse(null, places, json, 20, FieldsParam.of(PlaceField.NAME, PlaceField.PHOTOS));
+        assertEquals(1, places.size());
+        Place place = places.get(0);
+        assertEquals("id", place.getPlaceId());
+        assertEquals("Cafe", place.getName());
+        assertTrue(Double.isNaN(place.getLatitude()));
+        assertEquals(1, place.getPhotos().size());
+        assertTrue(place.getTypes().isEmpty());
+    }
+
+    @Test
+    public void testSearchWithLocation() {
+        String json = "{\"status\":\"OK\",\"results\":[" + RESULT + "]}";
+        List<Place> places = new ArrayList<>();
+        GooglePlaces.parse(null, places, json, 20, FieldsParam.of(PlaceField.LOCATION));
+        assertEquals(-1, places.get(0).getLatitude(), 0);
+        assertEquals(-1, places.get(0).getLongitude(), 0);
+    }
+}
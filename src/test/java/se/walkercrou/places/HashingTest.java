@@ -0,0 +1,37 @@
+package se.walkercrou.places;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class HashingTest {
+    @Test
+    public void testFnv() {
+        // reference values of 64 bit FNV-1a, the chars of ascii strings are their bytes
+        assertEquals(0xcbf29ce484222325L, Hashing.fnv(""));
+        assertEquals(0xaf63dc4c8601ec8cL, Hashing.fnv("a"));
+        assertEquals(0x85944171f73967e8L, Hashing.fnv("foobar"));
+
+        // hashing a range continues where the previous range stopped
+        long foo = Hashing.fnv(Hashing.FNV_OFFSET, "xfoo", 1, 4);
+        assertEquals(Hashing.fnv("foobar"), Hashing.fnv(foo, "barx", 0, 3));
+
+        // a long is hashed as its bytes, lowest first
+        assertEquals(Hashing.fnv("ab\0\0\0\0\0\0"), Hashing.fnv(Hashing.FNV_OFFSET, 'a' | 'b' << 8));
+    }
+
+    @Test
+    public void testMix() {
+        assertEquals(0, Hashing.mix(0));
+        assertEquals(0xb456bcfc34c2cb2cL, Hashing.mix(1));
+
+        // consecutive inputs are spread over the low bits that pick a slot
+        Set<Long> slots = new HashSet<>();
+        for (long i = 0; i < 1024; i++)
+            slots.add(Hashing.mix(i) & 4095);
+        assertTrue(slots.size() > 800);
+    }
+}
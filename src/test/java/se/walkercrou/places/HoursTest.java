@@ -0,0 +1,84 @@
+package se.walkercrou.places;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class HoursTest {
+    private static final long HOUR = 60 * 60 * 1000, DAY = 24 * HOUR;
+
+    private static Hours.Period period(Day openingDay, String openingTime, Day closingDay, String closingTime) {
+        return new Hours.Period().setOpeningDay(openingDay).setOpeningTime(openingTime).setClosingDay(closingDay)
+                .setClosingTime(closingTime);
+    }
+
+    private final Hours hours = new Hours()
+            .addPeriod(period(Day.SATURDAY, "2200", Day.SUNDAY, "0200"))
+            .addPeriod(period(Day.MONDAY, "0900", Day.MONDAY, "1700"))
+            .addPeriod(period(Day.FRIDAY, "2200", Day.SATURDAY, "0200"));
+
+    @Test
+    public void testIsOpenAt() {
+        assertTrue(hours.isOpenAt(Day.MONDAY, 9, 0));
+        assertTrue(hours.isOpenAt(Day.MONDAY, 16, 59));
+        assertFalse(hours.isOpenAt(Day.MONDAY, 17, 0));
+        assertFalse(hours.isOpenAt(Day.TUESDAY, 12, 0));
+        assertTrue(hours.isOpenAt(Day.SATURDAY, 1, 59));
+        assertTrue(hours.isOpenAt(Day.SATURDAY, 23, 0));
+        assertTrue(hours.isOpenAt(Day.SUNDAY, 1, 0));
+        assertFalse(hours.isOpenAt(Day.SUNDAY, 2, 0));
+    }
+
+    @Test
+    public void testNextOpeningAndClosing() {
+        assertEquals(60, hours.minutesUntilOpening(Day.MONDAY, 8, 0));
+        assertEquals((4 * 24 + 4) * 60, hours.minutesUntilOpening(Day.MONDAY, 18, 0));
+        assertEquals(60, hours.minutesUntilClosing(Day.SUNDAY, 1, 0));
+        assertEquals(180, hours.minutesUntilClosing(Day.SATURDAY, 23, 0));
+        assertEquals((30 + 8) * 60, hours.minutesUntilClosing(Day.SUNDAY, 3, 0));
+
+        Hours always = new Hours().setAlwaysOpened(true);
+        assertTrue(always.isOpenAt(Day.WEDNESDAY, 3, 0));
+        assertEquals(-1, always.minutesUntilOpening(Day.WEDNESDAY, 3, 0));
+        assertEquals(-1, always.minutesUntilClosing(Day.WEDNESDAY, 3, 0));
+        assertFalse(new Hours().isOpenAt(Day.WEDNESDAY, 3, 0));
+    }
+
+    @Test
+    public void testMergeAcrossWeek() {
+        Hours overlapping = new Hours()
+                .addPeriod(period(Day.SUNDAY, "0000", Day.SUNDAY, "0300"))
+                .addPeriod(period(Day.SATURDAY, "1200", Day.SUNDAY, "0100"));
+        assertEquals(240, overlapping.minutesUntilClosing(Day.SATURDAY, 23, 0));
+        assertEquals((6 * 24 + 9) * 60, overlapping.minutesUntilOpening(Day.SUNDAY, 3, 0));
+
+        Hours allDays = new Hours().addPeriod(period(Day.SUNDAY, "0000", Day.SUNDAY, "0000"));
+        assertTrue(allDays.isOpenAt(Day.TUESDAY, 12, 0));
+        assertEquals(-1, allDays.minutesUntilClosing(Day.TUESDAY, 12, 0));
+    }
+
+    @Test
+    public void testEpochTime() {
+        // the epoch began on a thursday at midnight UTC
+        Hours thursday = new Hours().addPeriod(period(Day.THURSDAY, "0900", Day.THURSDAY, "1700"));
+        long noon = 12 * HOUR;
+        assertTrue(thursday.isOpenAt(noon, 0));
+        assertFalse(thursday.isOpenAt(noon, 6 * 60));
+        assertEquals(17 * HOUR, thursday.nextClosing(noon, 0));
+        assertEquals(7 * DAY + 3 * HOUR, thursday.nextOpening(noon, 6 * 60));
+
+        Place open = new Place().setPlaceId("open").setHours(thursday).setUtcOffset(0);
+        Place closed = new Place().setPlaceId("closed").setHours(thursday).setUtcOffset(6 * 60);
+        assertTrue(open.isOpenAt(noon));
+        Place unknown = new Place().setPlaceId("unknown");
+        assertEquals(Collections.singletonList(open), Hours.filterOpen(Arrays.asList(open, closed, unknown), noon));
+
+        // without an offset the local time is unknown, even though 11:59 at UTC-00:01 is within the hours
+        Place noOffset = new Place().setPlaceId("noOffset").setHours(thursday);
+        assertTrue(thursday.isOpenAt(noon, -1));
+        assertFalse(noOffset.isOpenAt(noon));
+    }
+}
@@ -0,0 +1,226 @@
+package se.walkercrou.places;
+
+import se.walkercrou.places.exception.GooglePlacesException;
+import se.walkercrou.places.exception.NoResultsFoundException;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a client from many threads for a fixed time and reports throughput and latency percentiles.
+ * <pre>
+ * LoadHarness.Report report = new LoadHarness(client, 16).run(workload, 30, TimeUnit.SECONDS);
+ * System.out.println(report);
+ * </pre>
+ * Run {@link #main(String[])} to load test a {@link StubPlacesServer} with a mix of searches, details and
+ * autocomplete requests.
+ */
+public class LoadHarness {
+    private final GooglePlacesInterface client;
+    private final int threads;
+
+    /**
+     * Creates a new harness.
+     *
+     * @param client  to drive
+     * @param threads amount of concurrent callers
+     */
+    public LoadHarness(GooglePlacesInterface client, int threads) {
+        this.client = client;
+        this.threads = threads;
+    }
+
+    /**
+     * Calls the specified workload from every thread until the specified time has passed.
+     *
+     * @param workload to call
+     * @param duration of run
+     * @param unit     of duration
+     * @return report of the run
+     * @throws InterruptedException if interrupted while waiting for the run to finish
+     */
+    public Report run(final Workload workload, long duration, TimeUnit unit) throws InterruptedException {
+        final long end = System.nanoTime() + unit.toNanos(duration);
+        final long[][] latencies = new long[threads][];
+        final int[] counts = new int[threads];
+        final AtomicLong errors = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(thread);
+                    long[] own = new long[1024];
+                    int n = 0;
+                    try {
+                        while (System.nanoTime() < end) {
+                            long begin = System.nanoTime();
+                            try {
+                                workload.call(client, random);
+                            } catch (RuntimeException e) {
+                                errors.incrementAndGet();
+                                continue;
+                            }
+                            if (n == own.length)
+                                own = Arrays.copyOf(own, n * 2);
+                            own[n++] = System.nanoTime() - begin;
+                        }
+                    } finally {
+                        latencies[thread] = own;
+                        counts[thread] = n;
+                        done.countDown();
+                    }
+                }
+            }, "load-" + t);
+            worker.setDaemon(true);
+            worker.start();
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+
+        int total = 0;
+        for (int count : counts)
+            total += count;
+        long[] all = new long[total];
+        int offset = 0;
+        for (int t = 0; t < threads; t++) {
+            System.arraycopy(latencies[t], 0, all, offset, counts[t]);
+            offset += counts[t];
+        }
+        Arrays.sort(all);
+        return new Report(all, errors.get(), elapsed);
+    }
+
+    /**
+     * Starts a {@link StubPlacesServer} and load tests it. The arguments are the amount of threads and the duration
+     * in seconds, which default to 16 and 10.
+     *
+     * @param args threads and seconds
+     * @throws Exception if the server could not be started
+     */
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        StubPlacesServer server = new StubPlacesServer(1, 20000, 52.3, 13.1, 52.7, 13.7).setPageTokenDelay(100)
+                .start();
+        try {
+            GooglePlaces client = new GooglePlaces(server.configure(ClientConfig.builder())
+                    .requestHandler(new DefaultRequestHandler("UTF-8", threads)).build());
+            System.out.println(new LoadHarness(client, threads).run(mixedWorkload(server.size()), seconds,
+                    TimeUnit.SECONDS));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Returns a workload of nearby searches, details and autocomplete requests within the area of
+     * {@link #main(String[])}.
+     *
+     * @param places amount of places generated by the server
+     * @return workload
+     */
+    public static Workload mixedWorkload(final int places) {
+        return new Workload() {
+            @Override
+            public void call(GooglePlacesInterface client, Random random) {
+                double lat = 52.3 + random.nextDouble() * 0.4, lng = 13.1 + random.nextDouble() * 0.6;
+                int kind = random.nextInt(10);
+                try {
+                    if (kind < 5) {
+                        client.getNearbyPlaces(lat, lng, 2000);
+                    } else if (kind < 8) {
+                        client.getPlaceById("stub-" + random.nextInt(places));
+                    } else {
+                        client.getPlacePredictions(random.nextBoolean() ? "Gol" : "Red");
+                    }
+                } catch (GooglePlacesException e) {
+                    // an empty area is an answer like any other
+                    if (!(e.getCause() instanceof NoResultsFoundException))
+                        throw e;
+                }
+            }
+        };
+    }
+
+    /**
+     * A unit of work that is timed as a whole.
+     */
+    public interface Workload {
+        /**
+         * Makes one or more requests with the specified client.
+         *
+         * @param client to make requests with
+         * @param random source of random numbers of the calling thread
+         */
+        void call(GooglePlacesInterface client, Random random);
+    }
+
+    /**
+     * The result of a run.
+     */
+    public static class Report {
+        private final long[] latencies;
+        private final long errors, elapsedNanos;
+
+        private Report(long[] latencies, long errors, long elapsedNanos) {
+            this.latencies = latencies;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Returns the amount of calls that succeeded.
+         *
+         * @return amount of calls
+         */
+        public int getCalls() {
+            return latencies.length;
+        }
+
+        /**
+         * Returns the amount of calls that failed.
+         *
+         * @return amount of errors
+         */
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * Returns the amount of successful calls per second.
+         *
+         * @return throughput
+         */
+        public double getThroughput() {
+            return latencies.length / (elapsedNanos / 1e9);
+        }
+
+        /**
+         * Returns the latency that the specified share of successful calls did not exceed.
+         *
+         * @param percentile between 0 and 100
+         * @param unit       of latency
+         * @return latency
+         */
+        public long getLatency(double percentile, TimeUnit unit) {
+            if (latencies.length == 0)
+                return 0;
+            int i = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return unit.convert(latencies[Math.max(0, Math.min(i, latencies.length - 1))], TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d calls, %d errors, %.1f calls/s, latency p50 %d us, p90 %d us, p99 %d us, "
+                    + "max %d us", getCalls(), errors, getThroughput(), getLatency(50, TimeUnit.MICROSECONDS),
+                    getLatency(90, TimeUnit.MICROSECONDS), getLatency(99, TimeUnit.MICROSECONDS),
+                    getLatency(100, TimeUnit.MICROSECONDS));
+        }
+    }
+}
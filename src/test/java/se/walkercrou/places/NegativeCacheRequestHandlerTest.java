@@ -0,0 +1,121 @@
+package se.walkercrou.places;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import se.walkercrou.places.exception.GooglePlacesException;
+import se.walkercrou.places.exception.NoResultsFoundException;
+
+import static org.junit.Assert.*;
+import static se.walkercrou.places.GooglePlacesInterface.*;
+
+public class NegativeCacheRequestHandlerTest {
+    private StubPlacesServer server;
+    private NegativeCacheRequestHandler cache;
+    private GooglePlaces client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubPlacesServer(1, 500, 52.3, 13.1, 52.7, 13.7).start();
+        cache = new NegativeCacheRequestHandler(new DefaultRequestHandler(), 64);
+        client = new GooglePlaces(server.configure(ClientConfig.builder()).requestHandler(cache).build());
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    private String details(String placeId, String key) {
+        return server.getBaseUrl() + "details/json?placeid=" + placeId + "&key=" + key;
+    }
+
+    @Test
+    public void testNegativeResponses() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            try {
+                client.getNearbyPlaces(0, 0, 1000);
+                fail();
+            } catch (GooglePlacesException e) {
+                assertTrue(e.getCause() instanceof NoResultsFoundException);
+            }
+            try {
+                client.getPlacePredictions("qqqzzz");
+            } catch (GooglePlacesException e) {
+                assertTrue(e.getCause() instanceof NoResultsFoundException);
+            }
+        }
+        assertEquals(1, server.getRequestCount(METHOD_NEARBY_SEARCH));
+        assertEquals(1, server.getRequestCount(METHOD_AUTOCOMPLETE));
+
+        String response = cache.get(details("missing", "a"));
+        assertEquals(response, cache.get(details("missing", "b")));
+        assertEquals(1, server.getRequestCount(METHOD_DETAILS));
+
+        client.getPlaceById("stub-1");
+        client.getPlaceById("stub-1");
+        assertEquals(3, server.getRequestCount(METHOD_DETAILS));
+        assertEquals(3, cache.size());
+        assertEquals(3, cache.getStores());
+        assertEquals(5, cache.getHits());
+        assertEquals(5, cache.getMisses());
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        cache.setTtl(Statuses.STATUS_NOT_FOUND, 50);
+        cache.get(details("missing", "a"));
+        cache.get(details("missing", "a"));
+        Thread.sleep(100);
+        cache.get(details("missing", "a"));
+        assertEquals(2, server.getRequestCount(METHOD_DETAILS));
+        assertEquals(1, cache.getExpirations());
+
+        cache.setTtl(Statuses.STATUS_NOT_FOUND, 0);
+        cache.get(details("other", "a"));
+        cache.get(details("other", "a"));
+        assertEquals(4, server.getRequestCount(METHOD_DETAILS));
+    }
+
+    @Test
+    public void testEvictionAndInvalidation() throws Exception {
+        for (int i = 0; i < 200; i++)
+            cache.get(details("missing-" + i, "a"));
+        assertEquals(64, cache.size());
+        assertEquals(136, cache.getEvictions());
+
+        cache.clear();
+        for (int i = 0; i < 60; i++)
+            cache.get(details("missing-" + i, "a"));
+        for (int i = 0; i < 60; i += 2)
+            cache.invalidate(details("missing-" + i, "b"));
+        assertEquals(30, cache.size());
+        long sent = server.getRequestCount(METHOD_DETAILS);
+        for (int i = 1; i < 60; i += 2)
+            cache.get(details("missing-" + i, "a"));
+        assertEquals(sent, server.getRequestCount(METHOD_DETAILS));
+        for (int i = 0; i < 60; i += 2)
+            cache.get(details("missing-" + i, "a"));
+        assertEquals(sent + 30, server.getRequestCount(METHOD_DETAILS));
+    }
+
+    @Test
+    public void testFullOfExpiredEntries() throws Exception {
+        cache.setTtl(Statuses.STATUS_NOT_FOUND, 50);
+        for (int i = 0; i < 64; i++)
+            cache.get(details("old-" + i, "a"));
+        Thread.sleep(100);
+
+        // expired entries make room before any live entry is evicted
+        cache.setTtl(Statuses.STATUS_NOT_FOUND, 60000);
+        for (int i = 0; i < 64; i++)
+            cache.get(details("new-" + i, "a"));
+        assertEquals(0, cache.getEvictions());
+        assertEquals(64, cache.getExpirations());
+        assertEquals(64, cache.size());
+        long sent = server.getRequestCount(METHOD_DETAILS);
+        for (int i = 0; i < 64; i++)
+            cache.get(details("new-" + i, "a"));
+        assertEquals(sent, server.getRequestCount(METHOD_DETAILS));
+    }
+}
@@ -0,0 +1,86 @@
+package se.walkercrou.places;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static se.walkercrou.places.GooglePlaces.*;
+
+public class OffHeapPlaceStoreTest {
+    private static Place place(int i) {
+        return new Place().setPlaceId("id" + i).setName("Caf\u00e9 " + i).setLatitude(i).setLongitude(-i)
+                .setRating(i % 5).setPrice(Price.MODERATE).setStatus(Status.OPENED)
+                .addTypes(Arrays.asList(TYPE_CAFE, "point_of_interest"));
+    }
+
+    @Test
+    public void testPutAndGet() {
+        OffHeapPlaceStore store = new OffHeapPlaceStore(4096, 4);
+        for (int i = 0; i < 1000; i++)
+            assertTrue(store.put(place(i)));
+        assertEquals(1000, store.size());
+
+        OffHeapPlaceStore.PlaceView view = new OffHeapPlaceStore.PlaceView();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(store.get("id" + i, view));
+            assertEquals("id" + i, view.getPlaceId());
+            assertEquals("Caf\u00e9 " + i, view.getName());
+            assertNull(view.getAddress());
+            assertEquals(i, view.getLatitude(), 0);
+            assertEquals(i % 5, view.getRating(), 0);
+            assertEquals(Price.MODERATE, view.getPrice());
+            assertEquals(Arrays.asList(TYPE_CAFE, "point_of_interest"), view.getTypes().asList());
+        }
+        assertFalse(store.contains("id1000"));
+        assertNull(store.get("id1000"));
+    }
+
+    @Test
+    public void testReplace() {
+        OffHeapPlaceStore store = new OffHeapPlaceStore();
+        store.put(place(1));
+        assertFalse(store.put(place(1).setName("Renamed")));
+        assertEquals(1, store.size());
+        assertEquals("Renamed", store.get("id1").toPlace().getName());
+        assertTrue(store.getGarbageBytes() > 0);
+    }
+
+    @Test
+    public void testCapacity() {
+        // an index for more places would need more bytes than a single buffer can address
+        for (int expected : new int[]{-1, OffHeapPlaceStore.MAX_PLACES + 1, Integer.MAX_VALUE / 2 + 1}) {
+            try {
+                new OffHeapPlaceStore(4096, expected);
+                fail(Integer.toString(expected));
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage().contains(Integer.toString(OffHeapPlaceStore.MAX_PLACES)));
+            }
+        }
+    }
+
+    @Test
+    public void testClose() {
+        OffHeapPlaceStore store = new OffHeapPlaceStore(4096, 4);
+        store.put(place(1));
+        OffHeapPlaceStore.PlaceView view = store.get("id1");
+        store.close();
+        assertEquals(0, store.getAllocatedBytes());
+        assertEquals(0, store.size());
+        try {
+            store.put(place(2));
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            store.contains("id1");
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        // a view that was positioned before keeps its place
+        assertEquals("Caf\u00e9 1", view.getName());
+        store.close();
+    }
+}
@@ -0,0 +1,92 @@
+package se.walkercrou.places;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static se.walkercrou.places.GooglePlaces.*;
+
+public class PlaceBatchTest {
+    private static final String RESULTS = "{\"status\":\"OK\",\"next_page_token\":\"next\",\"results\":["
+            + result("a", "Cafe", 44.1, -73.1, "4.3", 1, true, TYPE_CAFE, TYPE_FOOD, "point_of_interest") + ","
+            + result("b", "Bar", 44.2, -73.2, "3.5", 2, false, TYPE_BAR, "point_of_interest") + ","
+            + result("c", "Zoo", 45.0, -72.0, null, -1, null, TYPE_ZOO) + "]}";
+
+    private static String result(String id, String name, double lat, double lng, String rating, int price,
+                                 Boolean open, String... types) {
+        StringBuilder json = new StringBuilder("{\"place_id\":\"" + id + "\",\"name\":\"" + name + "\","
+                + "\"icon\":\"http://icon\",\"geometry\":{\"location\":{\"lat\":" + lat + ",\"lng\":" + lng + "}}");
+        if (rating != null)
+            json.append(",\"rating\":").append(rating);
+        if (price >= 0)
+            json.append(",\"price_level\":").append(price);
+        if (open != null)
+            json.append(",\"opening_hours\":{\"open_now\":").append(open).append('}');
+        json.append(",\"types\":[");
+        for (int i = 0; i < types.length; i++)
+            json.append(i == 0 ? "" : ",").append('"').append(types[i]).append('"');
+        return json.append("]}").toString();
+    }
+
+    @Test
+    public void testParseAndFilter() {
+        PlaceBatch batch = new PlaceBatch(1);
+        assertEquals("next", GooglePlaces.parse(batch, RESULTS, 20));
+        assertEquals(3, batch.size());
+        assertEquals(4.3, batch.getRating(0), 0);
+        assertEquals(Price.MODERATE, batch.getPrice(1));
+        assertEquals(Status.CLOSED, batch.getStatus(1));
+        assertEquals(Status.NONE, batch.getStatus(2));
+
+        int[] rows = batch.filterTypes(null, TypeSet.of("point_of_interest"));
+        assertArrayEquals(new int[]{0, 1}, rows);
+        assertArrayEquals(new int[]{0}, batch.filterRating(rows, 4));
+        assertArrayEquals(new int[]{2}, batch.filterBounds(null, 44.5, -72.5, 45.5, -71.5));
+        assertEquals(3.9, batch.averageRating(rows), 1e-6);
+        assertEquals(1, batch.priceHistogram(null)[Price.NONE.ordinal()]);
+        assertEquals(1, batch.typeCounts(rows)[TypeRegistry.idOf(TYPE_CAFE)]);
+        assertEquals(0, batch.typeCounts(rows)[TypeRegistry.idOf(TYPE_ZOO)]);
+    }
+
+    @Test
+    public void testFilterFractionalRating() {
+        // ratings such as 4.1 are not exactly representable and are kept as the double they were parsed as
+        PlaceBatch batch = new PlaceBatch(2);
+        GooglePlaces.parse(batch, "{\"status\":\"OK\",\"results\":["
+                + result("a", "Cafe", 44.1, -73.1, "4.1", 1, true, TYPE_CAFE) + ","
+                + result("b", "Bar", 44.2, -73.2, "3.5", 2, false, TYPE_BAR) + "]}", 20);
+        assertArrayEquals(new int[]{0}, batch.filterRating(null, 4.1));
+        assertArrayEquals(new int[0], batch.filterRating(null, 4.11));
+        assertArrayEquals(new int[]{0, 1}, batch.filterRating(null, 3.5));
+        assertEquals(4.1, batch.getRating(0), 0);
+        assertEquals(4.1, batch.toPlaces(null).get(0).getRating(), 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testFilterBeyondSize() {
+        // the batch has room for more rows than it holds
+        PlaceBatch batch = new PlaceBatch(16);
+        GooglePlaces.parse(batch, RESULTS, 20);
+        batch.filterRating(new int[]{0, 3}, 0);
+    }
+
+    @Test
+    public void testPlaceConversion() {
+        List<Place> places = new ArrayList<>();
+        GooglePlaces.parse(null, places, RESULTS, 20);
+        PlaceBatch batch = PlaceBatch.of(places);
+        List<Place> copies = batch.toPlaces(null);
+        for (int i = 0; i < places.size(); i++) {
+            Place place = places.get(i), copy = copies.get(i);
+            assertEquals(place.getPlaceId(), copy.getPlaceId());
+            assertEquals(place.getRating(), copy.getRating(), 0);
+            assertEquals(place.getTypes(), copy.getTypes());
+            assertEquals(place.getIconUrl(), copy.getIconUrl());
+        }
+        PlaceBatch selected = batch.select(new int[]{1, 2});
+        assertEquals(Arrays.asList("b", "c"), Arrays.asList(selected.getPlaceId(0), selected.getPlaceId(1)));
+    }
+}
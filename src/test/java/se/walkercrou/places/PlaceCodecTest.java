@@ -0,0 +1,79 @@
+package se.walkercrou.places;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PlaceCodecTest {
+    private static final String DETAILS = "{\"status\":\"OK\",\"result\":{\"place_id\":\"abc\",\"scope\":\"GOOGLE\","
+            + "\"name\":\"Caf\\u00e9\",\"geometry\":{\"location\":{\"lat\":44.478025,\"lng\":-73.196475}},"
+            + "\"rating\":4.3,\"price_level\":1,\"utc_offset\":-240,\"types\":[\"cafe\",\"point_of_interest\"],"
+            + "\"opening_hours\":{\"open_now\":true,\"periods\":[{\"open\":{\"day\":1,\"time\":\"0900\"},"
+            + "\"close\":{\"day\":1,\"time\":\"1700\"}}]},"
+            + "\"photos\":[{\"photo_reference\":\"ref\",\"width\":640,\"height\":480}],"
+            + "\"address_components\":[{\"long_name\":\"Burlington\",\"short_name\":\"BTV\",\"types\":[\"locality\"]}],"
+            + "\"reviews\":[{\"author_name\":\"Ann\",\"rating\":5,\"text\":\"Good\",\"time\":1400000000,"
+            + "\"aspects\":[{\"type\":\"overall\",\"rating\":3}]}],"
+            + "\"alt_ids\":[{\"place_id\":\"def\",\"scope\":\"APP\"}]}}";
+
+    @Test
+    public void testPlaceRoundTrip() throws Exception {
+        Place place = Place.parseDetails(null, DETAILS);
+        Place copy = PlaceCodec.decodePlace(PlaceCodec.encode(place), null);
+
+        assertEquals(place.getPlaceId(), copy.getPlaceId());
+        assertEquals(place.getScope(), copy.getScope());
+        assertEquals(place.getName(), copy.getName());
+        assertEquals(place.getLatitude(), copy.getLatitude(), 0);
+        assertEquals(place.getLongitude(), copy.getLongitude(), 0);
+        assertEquals(place.getRating(), copy.getRating(), 0);
+        assertEquals(place.getPrice(), copy.getPrice());
+        assertEquals(place.getStatus(), copy.getStatus());
+        assertEquals(place.getUtcOffset(), copy.getUtcOffset());
+        assertEquals(place.getTypes(), copy.getTypes());
+        assertEquals(place.getHours().toString(), copy.getHours().toString());
+        assertEquals("ref", copy.getPhotos().get(0).getReference());
+        assertEquals(480, copy.getPhotos().get(0).getHeight());
+        assertEquals("BTV", copy.getAddressComponents().get(0).getShortName());
+        assertEquals(Arrays.asList("locality"), copy.getAddressComponents().get(0).getTypes());
+        Review review = copy.getReviews().get(0);
+        assertEquals("Good", review.getText());
+        assertEquals(1400000000L, review.getTime());
+        assertEquals("overall", review.getAspects().get(0).getType());
+        assertEquals(Scope.APP, copy.getAltIds().get(0).getScope());
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        List<Prediction> predictions = Prediction.parse(null, "{\"status\":\"OK\",\"predictions\":[{\"place_id\":\"a\","
+                + "\"description\":\"Paris, France\",\"terms\":[{\"value\":\"Paris\",\"offset\":0},"
+                + "{\"value\":\"France\",\"offset\":7}],\"types\":[\"locality\",\"geocode\"],"
+                + "\"matched_substrings\":[{\"offset\":0,\"length\":3}]}]}");
+        Place place = Place.parseDetails(null, DETAILS);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PlaceCodec.Writer writer = new PlaceCodec.Writer(out)) {
+            writer.write(place);
+            writer.write(place);
+            writer.write(predictions.get(0));
+        }
+        byte[] bytes = out.toByteArray();
+        assertTrue(bytes.length < 2 * place.getJson().toString().getBytes("UTF-8").length);
+
+        try (PlaceCodec.Reader reader = new PlaceCodec.Reader(new ByteArrayInputStream(bytes), null)) {
+            assertEquals("abc", reader.readPlace().getPlaceId());
+            assertEquals("0900", reader.readPlace().getHours().getPeriods().get(0).getOpeningTime());
+            Prediction prediction = reader.readPrediction();
+            assertEquals("Paris, France", prediction.getDescription());
+            assertEquals(7, prediction.getTerms().get(1).getOffset());
+            assertEquals(Arrays.asList("locality", "geocode"), prediction.getTypes());
+            assertEquals(3, prediction.getSubstringLength());
+            assertNull(reader.readPlace());
+        }
+    }
+}
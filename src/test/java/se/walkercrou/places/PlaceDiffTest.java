@@ -0,0 +1,118 @@
+package se.walkercrou.places;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PlaceDiffTest {
+    private static Place place() {
+        Hours hours = new Hours().addPeriod(new Hours.Period().setOpeningDay(Day.MONDAY).setOpeningTime("0900")
+                .setClosingDay(Day.MONDAY).setClosingTime("1700"));
+        Review review = new Review().setAuthor("Jane").setTime(1000).setText("Good");
+        return new Place().setPlaceId("id").setName("Cafe").setAddress("Main St").setLatitude(52.5)
+                .setLongitude(13.4).setRating(4.5).setPrice(Price.MODERATE).setHours(hours)
+                .addTypes(Arrays.asList(Types.TYPE_CAFE, Types.TYPE_FOOD))
+                .addReviews(Collections.singletonList(review));
+    }
+
+    @Test
+    public void testUnchanged() {
+        PlaceDiff diff = PlaceDiff.compare(place(), place());
+        assertTrue(diff.isEmpty());
+        assertEquals(PlaceDiff.fingerprint(place()), PlaceDiff.fingerprint(place()));
+    }
+
+    @Test
+    public void testChanges() {
+        Place current = place().setName("Coffee").setRating(4.6).setLatitude(52.5001)
+                .addTypes(Collections.singletonList(Types.TYPE_BAKERY))
+                .addReviews(Collections.singletonList(new Review().setAuthor("Joe").setTime(2000).setText("Bad")));
+        PlaceDiff diff = PlaceDiff.compare(place(), current);
+        assertEquals(EnumSet.of(PlaceDiff.Section.NAME, PlaceDiff.Section.LOCATION, PlaceDiff.Section.RATING,
+                PlaceDiff.Section.TYPES, PlaceDiff.Section.REVIEWS),
+                PlaceDiff.fingerprint(place()).changedSections(PlaceDiff.fingerprint(current)));
+        assertEquals(5, diff.getChanges().size());
+        assertFalse(diff.hasChanged(PlaceDiff.Section.HOURS));
+
+        PlaceDiff.Change name = diff.getChanges().get(0);
+        assertEquals("Cafe", name.getPrevious());
+        assertEquals("Coffee", name.getCurrent());
+
+        PlaceDiff.LocationChange location = (PlaceDiff.LocationChange) diff.getChanges().get(1);
+        assertEquals(11.1, location.getDriftMeters(), 0.1);
+
+        PlaceDiff.CollectionChange<?> types = (PlaceDiff.CollectionChange<?>) diff.getChanges().get(3);
+        assertEquals(Collections.singletonList(Types.TYPE_BAKERY), types.getAdded());
+        assertTrue(types.getRemoved().isEmpty());
+
+        PlaceDiff.CollectionChange<?> reviews = (PlaceDiff.CollectionChange<?>) diff.getChanges().get(4);
+        assertEquals("Joe", ((Review) reviews.getAdded().get(0)).getAuthor());
+        assertTrue(reviews.getRemoved().isEmpty());
+    }
+
+    @Test
+    public void testMinDrift() {
+        Place current = place().setLongitude(13.40001);
+        assertTrue(PlaceDiff.compare(place(), current, 5).isEmpty());
+        assertTrue(PlaceDiff.compare(place(), current).hasChanged(PlaceDiff.Section.LOCATION));
+    }
+
+    @Test
+    public void testHours() {
+        Place current = place();
+        current.getHours().addPeriod(new Hours.Period().setOpeningDay(Day.TUESDAY).setOpeningTime("0900")
+                .setClosingDay(Day.TUESDAY).setClosingTime("1700"));
+        PlaceDiff diff = PlaceDiff.compare(place(), current);
+        PlaceDiff.CollectionChange<?> hours = (PlaceDiff.CollectionChange<?>) diff.getChanges().get(0);
+        assertEquals(PlaceDiff.Section.HOURS, hours.getSection());
+        assertEquals(1, hours.getAdded().size());
+        assertTrue(hours.getRemoved().isEmpty());
+    }
+
+    @Test
+    public void testKeptFingerprint() {
+        final int[] reads = new int[1];
+        Place previous = new Place() {
+            @Override
+            public List<Review> getReviews() {
+                reads[0]++;
+                return super.getReviews();
+            }
+        }.setPlaceId("id").setName("Cafe").addReviews(place().getReviews());
+        PlaceDiff.Fingerprint fingerprint = PlaceDiff.fingerprint(previous);
+        reads[0] = 0;
+
+        // only the current version is hashed, and the previous one is only read for the sections that changed
+        Place current = place();
+        PlaceDiff diff = PlaceDiff.compare(fingerprint, previous, current, 0);
+        assertEquals(0, reads[0]);
+        assertFalse(diff.hasChanged(PlaceDiff.Section.REVIEWS));
+        assertTrue(diff.hasChanged(PlaceDiff.Section.ADDRESS));
+        assertEquals(PlaceDiff.fingerprint(current), diff.getCurrentFingerprint());
+        assertTrue(PlaceDiff.compare(diff.getCurrentFingerprint(), current, place(), 0).isEmpty());
+    }
+
+    @Test
+    public void testProjection() {
+        Place projected = new Place().setPlaceId("id").setName("Coffee").setRating(4.5)
+                .setFields(FieldsParam.of(PlaceField.NAME, PlaceField.RATING));
+        PlaceDiff.Fingerprint fingerprint = PlaceDiff.fingerprint(projected);
+        assertTrue(fingerprint.hasSection(PlaceDiff.Section.NAME));
+        assertFalse(fingerprint.hasSection(PlaceDiff.Section.REVIEWS));
+
+        // only the sections that both versions have are compared, in either direction
+        PlaceDiff diff = PlaceDiff.compare(place(), projected);
+        assertEquals(1, diff.getChanges().size());
+        assertTrue(diff.hasChanged(PlaceDiff.Section.NAME));
+        diff = PlaceDiff.compare(projected, place());
+        assertEquals(1, diff.getChanges().size());
+        assertTrue(diff.hasChanged(PlaceDiff.Section.NAME));
+        assertTrue(PlaceDiff.compare(place(), projected.setName("Cafe")).isEmpty());
+        assertNotEquals(PlaceDiff.fingerprint(place()), PlaceDiff.fingerprint(projected));
+    }
+}
@@ -0,0 +1,88 @@
+package se.walkercrou.places;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class PlaceLogTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Place place(int i, String name) {
+        return new Place().setPlaceId("id" + i).setName(name).setLatitude(i).setLongitude(-i);
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        File dir = folder.newFolder();
+        try (PlaceLog log = PlaceLog.open(dir, 4096)) {
+            for (int i = 0; i < 200; i++)
+                log.put(place(i, "first"));
+            log.put(place(7, "second"));
+            assertTrue(log.remove("id8"));
+            assertFalse(log.remove("id8"));
+        }
+        try (PlaceLog log = PlaceLog.open(dir, 4096)) {
+            assertEquals(199, log.size());
+            assertEquals("second", log.get("id7").getName());
+            assertNull(log.get("id8"));
+            log.put(place(9, "third"));
+        }
+
+        // without an index every segment is scanned
+        assertTrue(new File(dir, "places.idx").delete());
+        try (PlaceLog log = PlaceLog.open(dir, 4096)) {
+            assertEquals(199, log.size());
+            assertEquals("third", log.get("id9").getName());
+            assertEquals(9, log.get("id9").getLatitude(), 0);
+        }
+    }
+
+    @Test
+    public void testTornRecord() throws Exception {
+        File dir = folder.newFolder();
+        try (PlaceLog log = PlaceLog.open(dir, 4096)) {
+            log.put(place(1, "kept"));
+        }
+        assertTrue(new File(dir, "places.idx").delete());
+        try (RandomAccessFile file = new RandomAccessFile(new File(dir, "00000000.log"), "rw")) {
+            // a second record whose length was written but whose contents were not
+            int length = file.readInt();
+            file.seek(length);
+            file.writeInt(100);
+        }
+        try (PlaceLog log = PlaceLog.open(dir, 4096)) {
+            assertEquals(1, log.size());
+            assertEquals("kept", log.get("id1").getName());
+            log.put(place(2, "appended"));
+        }
+        try (PlaceLog log = PlaceLog.open(dir, 4096)) {
+            assertEquals("appended", log.get("id2").getName());
+        }
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        File dir = folder.newFolder();
+        try (PlaceLog log = PlaceLog.open(dir, 4096)) {
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < 50; i++)
+                    log.put(place(i, "round" + round));
+            }
+            assertTrue(log.getGarbageBytes() > 0);
+            log.compact();
+            assertEquals(0, log.getGarbageBytes());
+            assertEquals(50, log.size());
+            assertEquals("round4", log.get("id3").getName());
+        }
+        try (PlaceLog log = PlaceLog.open(dir, 4096)) {
+            assertEquals(50, log.size());
+            assertEquals("round4", log.get("id49").getName());
+        }
+    }
+}
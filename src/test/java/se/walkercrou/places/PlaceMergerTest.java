@@ -0,0 +1,174 @@
+package se.walkercrou.places;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+
+import static org.junit.Assert.*;
+
+public class PlaceMergerTest {
+    private static Place searchResult(String id) {
+        return new Place().setPlaceId(id).setName("Cafe").setVicinity("Main St").setLatitude(52.5).setLongitude(13.4)
+                .setRating(4.5).addTypes(Collections.singletonList(Types.TYPE_CAFE));
+    }
+
+    private static Place details(String id) {
+        Review review = new Review().setAuthor("Jane").setTime(1000).setText("Good");
+        return new Place().setPlaceId(id).setName("Cafe").setAddress("Main St 1, Berlin").setPhoneNumber("123")
+                .setWebsite("http://cafe.example").setLatitude(52.5).setLongitude(13.4)
+                .addTypes(Arrays.asList(Types.TYPE_CAFE, Types.TYPE_FOOD))
+                .addReviews(Collections.singletonList(review));
+    }
+
+    @Test
+    public void testMerge() {
+        PlaceMerger merger = new PlaceMerger();
+        merger.merge(searchResult("a"));
+        merger.merge(searchResult("b"));
+        merger.merge(details("a"));
+        merger.merge(searchResult("a"));
+
+        assertEquals(2, merger.size());
+        assertEquals(2, merger.getDuplicates());
+        Place merged = merger.get("a");
+        assertEquals("Main St", merged.getVicinity());
+        assertEquals("Main St 1, Berlin", merged.getAddress());
+        assertEquals("123", merged.getPhoneNumber());
+        assertEquals(4.5, merged.getRating(), 0);
+        assertEquals(Arrays.asList(Types.TYPE_CAFE, Types.TYPE_FOOD), merged.getTypes());
+        assertEquals(1, merged.getReviews().size());
+    }
+
+    @Test
+    public void testUtcOffset() {
+        // search results have no offset, and an offset of 0 is a real one
+        Place utc = details("a").setUtcOffset(0);
+        assertEquals(0, PlaceMerger.combine(utc, searchResult("a")).getUtcOffset());
+        assertEquals(0, PlaceMerger.combine(searchResult("a"), utc).getUtcOffset());
+        assertEquals(-240, PlaceMerger.combine(details("a").setUtcOffset(-240), searchResult("a")).getUtcOffset());
+        assertEquals(60, PlaceMerger.combine(utc, details("a").setUtcOffset(60)).getUtcOffset());
+        assertEquals(-1, PlaceMerger.combine(searchResult("a"), searchResult("a")).getUtcOffset());
+    }
+
+    @Test
+    public void testAltIds() {
+        PlaceMerger merger = new PlaceMerger();
+        merger.merge(searchResult("app"));
+        merger.merge(details("google").addAltIds(Collections.singletonList(new AltId(null, "app", Scope.APP))));
+        assertEquals(1, merger.size());
+        assertEquals("google", merger.resolve("app"));
+        assertSame(merger.get("google"), merger.get("app"));
+        assertEquals(4.5, merger.get("app").getRating(), 0);
+
+        merger.merge(searchResult("app").setName("Renamed"));
+        assertEquals(1, merger.size());
+        assertEquals("Renamed", merger.get("google").getName());
+        assertEquals("google", merger.get("google").getPlaceId());
+        assertEquals(1, merger.get("google").getAltIds().size());
+    }
+
+    @Test
+    public void testSeenAfterDrain() {
+        PlaceMerger merger = new PlaceMerger(10000, 0.01);
+        for (int i = 0; i < 10000; i++)
+            merger.merge(searchResult("seen-" + i));
+        assertEquals(10000, merger.drain().size());
+        assertEquals(0, merger.size());
+
+        for (int i = 0; i < 10000; i++)
+            assertTrue(merger.mightHaveSeen("seen-" + i));
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (merger.mightHaveSeen("new-" + i))
+                falsePositives++;
+        }
+        assertTrue(falsePositives < 300);
+    }
+
+    @Test
+    public void testConcurrentMerges() throws Exception {
+        final PlaceMerger merger = new PlaceMerger();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 1000; i++) {
+                        String id = "id-" + i;
+                        merger.merge(thread % 2 == 0 ? searchResult(id) : details(id));
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals(1000, merger.size());
+        for (int i = 0; i < 1000; i++) {
+            Place place = merger.get("id-" + i);
+            assertEquals("123", place.getPhoneNumber());
+            assertEquals(4.5, place.getRating(), 0);
+        }
+    }
+
+    @Test
+    public void testConcurrentAltIds() throws Exception {
+        final PlaceMerger merger = new PlaceMerger();
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        final int places = 5000;
+        Thread google = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < places; i++) {
+                    await(barrier);
+                    merger.merge(details("google-" + i).addAltIds(Collections.singletonList(
+                            new AltId(null, "app-" + i, Scope.APP))));
+                }
+            }
+        });
+        Thread app = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < places; i++) {
+                    await(barrier);
+                    merger.merge(searchResult("app-" + i));
+                }
+            }
+        });
+        google.start();
+        app.start();
+        google.join();
+        app.join();
+
+        // a place merged under its alt-id is never left behind as a place of its own
+        assertEquals(places, merger.size());
+        for (int i = 0; i < places; i++) {
+            Place place = merger.get("app-" + i);
+            assertSame(merger.get("google-" + i), place);
+            assertEquals("google-" + i, place.getPlaceId());
+            assertEquals("123", place.getPhoneNumber());
+            assertEquals(4.5, place.getRating(), 0);
+        }
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (InterruptedException | BrokenBarrierException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
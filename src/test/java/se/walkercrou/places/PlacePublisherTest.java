@@ -0,0 +1,131 @@
+package se.walkercrou.places;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PlacePublisherTest {
+    private StubPlacesServer server;
+    private ExecutorService executor;
+    private AsyncGooglePlaces async;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubPlacesServer(1, 2000, 52.3, 13.1, 52.7, 13.7).setPageTokenDelay(100).start();
+        executor = Executors.newFixedThreadPool(2);
+        async = new AsyncGooglePlaces(new GooglePlaces(server.configure(ClientConfig.builder()).build()), executor);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        server.stop();
+    }
+
+    @Test
+    public void testDemand() throws Exception {
+        Collector collector = new Collector(20);
+        async.publishNearbyPlaces(52.5, 13.4, 5000, 60).subscribe(collector);
+        assertTrue(collector.received.await(5, TimeUnit.SECONDS));
+        Thread.sleep(300); // would be enough for the second page if it was fetched
+        assertEquals(20, collector.places.size());
+        assertEquals(1, server.getRequestCount(GooglePlaces.METHOD_NEARBY_SEARCH));
+
+        collector = new Collector(Long.MAX_VALUE);
+        async.publishNearbyPlaces(52.5, 13.4, 5000, 50).subscribe(collector);
+        assertTrue(collector.terminated.await(5, TimeUnit.SECONDS));
+        assertNull(collector.error);
+        assertEquals(50, collector.places.size());
+        assertEquals(4, server.getRequestCount(GooglePlaces.METHOD_NEARBY_SEARCH));
+    }
+
+    @Test
+    public void testQueryAndRadar() throws Exception {
+        Collector collector = new Collector(Long.MAX_VALUE);
+        async.publishPlacesByQuery("golden cafe", 60).subscribe(collector);
+        assertTrue(collector.terminated.await(5, TimeUnit.SECONDS));
+        assertNull(collector.error);
+        for (Place place : collector.places)
+            assertEquals("Golden Cafe", place.getName());
+
+        collector = new Collector(Long.MAX_VALUE);
+        async.publishPlacesByRadar(52.5, 13.4, 50000, 200).subscribe(collector);
+        assertTrue(collector.terminated.await(5, TimeUnit.SECONDS));
+        assertEquals(200, collector.places.size());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        Collector collector = new Collector(20) {
+            @Override
+            public void onNext(Place place) {
+                super.onNext(place);
+                if (places.size() == 5)
+                    subscription.cancel();
+            }
+        };
+        async.publishNearbyPlaces(52.5, 13.4, 5000, 60).subscribe(collector);
+        Thread.sleep(300);
+        collector.subscription.request(40);
+        Thread.sleep(300);
+        assertEquals(5, collector.places.size());
+        assertEquals(1, collector.terminated.getCount());
+        assertEquals(1, server.getRequestCount(GooglePlaces.METHOD_NEARBY_SEARCH));
+    }
+
+    @Test
+    public void testIllegalRequest() throws Exception {
+        Collector collector = new Collector(0);
+        async.publishNearbyPlaces(52.5, 13.4, 5000, 60).subscribe(collector);
+        collector.subscription.request(0);
+        assertTrue(collector.terminated.await(5, TimeUnit.SECONDS));
+        assertTrue(collector.error instanceof IllegalArgumentException);
+        assertEquals(0, server.getRequestCount(GooglePlaces.METHOD_NEARBY_SEARCH));
+    }
+
+    private static class Collector implements PlacePublisher.Subscriber {
+        final List<Place> places = new CopyOnWriteArrayList<>();
+        final CountDownLatch received, terminated = new CountDownLatch(1);
+        final long initial;
+        volatile PlacePublisher.Subscription subscription;
+        volatile Throwable error;
+
+        Collector(long initial) {
+            this.initial = initial;
+            received = new CountDownLatch((int) Math.min(initial, 20));
+        }
+
+        @Override
+        public void onSubscribe(PlacePublisher.Subscription subscription) {
+            this.subscription = subscription;
+            if (initial > 0)
+                subscription.request(initial);
+        }
+
+        @Override
+        public void onNext(Place place) {
+            places.add(place);
+            received.countDown();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            terminated.countDown();
+        }
+    }
+}
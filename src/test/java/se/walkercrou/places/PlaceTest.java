@@ -0,0 +1,122 @@
+package se.walkercrou.places;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import se.walkercrou.places.exception.GooglePlacesException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class PlaceTest {
+    private static final String RESULT = "{\"place_id\":\"id\",\"name\":\"Cafe\","
+            + "\"geometry\":{\"location\":{\"lat\":1,\"lng\":2}},\"types\":[\"cafe\",\"food\"],"
+            + "\"photos\":[{\"photo_reference\":\"ref\",\"width\":10,\"height\":20}],"
+            + "\"reviews\":[{\"author_name\":\"a\",\"rating\":4},{\"author_name\":\"b\",\"rating\":2}],"
+            + "\"alt_ids\":[{\"place_id\":\"alt\",\"scope\":\"APP\"}]}";
+
+    private static Place parse(String result) {
+        return Place.parseDetails(null, "{\"status\":\"OK\",\"result\":" + result + "}");
+    }
+
+    @Test
+    public void testLazyDecoding() {
+        Place place = parse(RESULT);
+        // the sections are read from the retained json when they are first accessed
+        place.getJson().put("types", new JSONArray(Arrays.asList("bar")));
+        assertEquals(Collections.singletonList("bar"), place.getTypes());
+        place.getJson().put("types", new JSONArray(Arrays.asList("cafe")));
+        assertEquals(Collections.singletonList("bar"), place.getTypes());
+        assertSame(place.getTypeSet(), place.getTypeSet());
+
+        assertEquals("ref", place.getPhotos().get(0).getReference());
+        assertEquals(2, place.getReviews().size());
+        assertEquals(Scope.APP, place.getAltIds().get(0).getScope());
+        assertTrue(place.getAddressComponents().isEmpty());
+        assertSame(place.getPhotos(), place.getPhotos());
+    }
+
+    @Test
+    public void testMalformedSection() {
+        Place place = parse(RESULT.replace("\"photo_reference\":\"ref\",", "")
+                .replace("\"scope\":\"APP\"", "\"scope\":\"NOWHERE\""));
+        assertEquals("Cafe", place.getName());
+        try {
+            place.getPhotos();
+            fail();
+        } catch (GooglePlacesException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("photos of place id"));
+            assertTrue(e.getCause() instanceof JSONException);
+        }
+        try {
+            place.getAltIds();
+            fail();
+        } catch (GooglePlacesException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("alt_ids of place id"));
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        // the other sections are not affected
+        assertEquals(Arrays.asList("cafe", "food"), place.getTypes());
+        assertEquals(2, place.getReviews().size());
+    }
+
+    @Test
+    public void testConcurrentFirstAccess() throws Exception {
+        for (int run = 0; run < 20; run++) {
+            final Place place = parse(RESULT);
+            int threads = 8;
+            final CyclicBarrier barrier = new CyclicBarrier(threads);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<List<Review>>> futures = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    futures.add(executor.submit(new Callable<List<Review>>() {
+                        @Override
+                        public List<Review> call() throws Exception {
+                            barrier.await();
+                            return place.getReviews();
+                        }
+                    }));
+                }
+                for (Future<List<Review>> future : futures) {
+                    List<Review> reviews = future.get();
+                    assertEquals(2, reviews.size());
+                    assertEquals("a", reviews.get(0).getAuthor());
+                    assertEquals("b", reviews.get(1).getAuthor());
+                }
+            } finally {
+                executor.shutdown();
+            }
+            // whichever decoding won is kept from then on
+            assertSame(place.getReviews(), place.getReviews());
+        }
+    }
+
+    @Test
+    public void testAddedSectionsOverrideJson() {
+        JSONObject json = new JSONObject(RESULT);
+        Place place = new Place().setPlaceId("id").addTypes(Collections.singletonList("bar"))
+                .addPhotos(Collections.<Photo>emptyList()).setJson(json);
+        assertEquals(Collections.singletonList("bar"), place.getTypes());
+        assertTrue(place.getPhotos().isEmpty());
+        // sections that were not set are still decoded from the json
+        assertEquals(2, place.getReviews().size());
+
+        // sections added to a parsed place are appended to the decoded ones
+        Place parsed = parse(RESULT);
+        List<String> types = parsed.getTypes();
+        parsed.addTypes(Collections.singletonList("bar"));
+        assertEquals(Arrays.asList("cafe", "food", "bar"), parsed.getTypes());
+        assertEquals(Arrays.asList("cafe", "food"), types);
+    }
+}
@@ -0,0 +1,272 @@
+package se.walkercrou.places;
+
+import org.apache.http.client.methods.HttpPost;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PriorityRequestHandlerTest {
+    private final GateHandler gate = new GateHandler();
+    private final List<Thread> threads = new ArrayList<>();
+    private final List<Throwable> failures = new CopyOnWriteArrayList<>();
+
+    @After
+    public void tearDown() throws Exception {
+        gate.open();
+        for (Thread thread : threads)
+            thread.join(5000);
+    }
+
+    /**
+     * Sends a request from a new thread with the specified tag.
+     */
+    private Thread send(PriorityRequestHandler handler, RequestTag tag, String uri) {
+        return send(handler, tag, null, uri);
+    }
+
+    /**
+     * Sends a request from a new thread with the specified tag as part of a call with the specified context.
+     */
+    private Thread send(final PriorityRequestHandler handler, final RequestTag tag, final CallContext context,
+                        final String uri) {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                RequestTag.set(tag);
+                CallContext.set(context);
+                try {
+                    handler.get(uri);
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }
+        };
+        threads.add(thread);
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitQueueLength(PriorityRequestHandler handler, int length) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (handler.getQueueLength() != length) {
+            assertTrue("queue length " + handler.getQueueLength() + " != " + length, System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private void awaitSent(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (gate.sent.size() < count) {
+            assertTrue("sent " + gate.sent, System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private void joinAll() throws InterruptedException {
+        for (Thread thread : threads)
+            thread.join(5000);
+        assertEquals(new ArrayList<Throwable>(), failures);
+    }
+
+    @Test
+    public void testPriorityOrder() throws Exception {
+        PriorityRequestHandler handler = new PriorityRequestHandler(gate, 1);
+        send(handler, RequestTag.DEFAULT, "holder");
+        awaitSent(1);
+
+        send(handler, RequestTag.of(RequestPriority.BATCH), "batch");
+        awaitQueueLength(handler, 1);
+        send(handler, RequestTag.DEFAULT, "normal");
+        awaitQueueLength(handler, 2);
+        send(handler, RequestTag.of(RequestPriority.INTERACTIVE), "interactive");
+        awaitQueueLength(handler, 3);
+
+        gate.open();
+        joinAll();
+        assertEquals(Arrays.asList("holder", "interactive", "normal", "batch"), gate.sent);
+        assertEquals(0, handler.getQueueLength());
+        assertEquals(2, handler.getStats(RequestPriority.NORMAL).getRequests());
+        assertEquals(1, handler.getStats(RequestPriority.BATCH).getRequests());
+        assertEquals(1, handler.getStats(RequestPriority.INTERACTIVE).getRequests());
+    }
+
+    @Test
+    public void testTenantFairness() throws Exception {
+        PriorityRequestHandler handler = new PriorityRequestHandler(gate, 1);
+        send(handler, RequestTag.DEFAULT, "holder");
+        awaitSent(1);
+
+        // one tenant queues many requests before another tenant of the same priority queues a few
+        RequestTag big = RequestTag.of(RequestPriority.BATCH, "big");
+        RequestTag small = RequestTag.of(RequestPriority.BATCH, "small");
+        for (int i = 0; i < 10; i++) {
+            send(handler, big, "big-" + i);
+            awaitQueueLength(handler, i + 1);
+        }
+        send(handler, small, "small-0");
+        awaitQueueLength(handler, 11);
+        send(handler, small, "small-1");
+        awaitQueueLength(handler, 12);
+
+        gate.open();
+        joinAll();
+        assertEquals(Arrays.asList("holder", "big-0", "small-0", "big-1", "small-1"), gate.sent.subList(0, 5));
+        assertEquals(13, gate.sent.size());
+    }
+
+    @Test
+    public void testConcurrencyLimit() throws Exception {
+        PriorityRequestHandler handler = new PriorityRequestHandler(gate, 4);
+        RequestTag batch = RequestTag.of(RequestPriority.BATCH);
+        for (int i = 0; i < 4; i++)
+            send(handler, batch, "batch-" + i);
+        awaitSent(3);
+        awaitQueueLength(handler, 1);
+
+        // the connection kept free is used by an interactive request while the batch request waits
+        send(handler, RequestTag.of(RequestPriority.INTERACTIVE), "interactive");
+        awaitSent(4);
+        assertEquals("interactive", gate.sent.get(3));
+        assertEquals(1, handler.getQueueLength());
+
+        gate.open();
+        joinAll();
+        assertEquals(5, gate.sent.size());
+    }
+
+    @Test
+    public void testInterruptedWaiter() throws Exception {
+        PriorityRequestHandler handler = new PriorityRequestHandler(gate, 1);
+        send(handler, RequestTag.DEFAULT, "holder");
+        awaitSent(1);
+
+        Thread waiter = send(handler, RequestTag.of(RequestPriority.INTERACTIVE), "interrupted");
+        awaitQueueLength(handler, 1);
+        waiter.interrupt();
+        waiter.join(5000);
+        assertEquals(0, handler.getQueueLength());
+        assertEquals(1, failures.size());
+        assertTrue(failures.get(0) instanceof InterruptedIOException);
+        failures.clear();
+
+        // the waiter gave up its place and did not take the permit with it
+        gate.open();
+        joinAll();
+        send(handler, RequestTag.DEFAULT, "after");
+        joinAll();
+        assertEquals(Arrays.asList("holder", "after"), gate.sent);
+        assertEquals(0, handler.getStats(RequestPriority.INTERACTIVE).getRequests());
+    }
+
+    @Test
+    public void testDeadlineAndCancelWhileQueued() throws Exception {
+        PriorityRequestHandler handler = new PriorityRequestHandler(gate, 1);
+        send(handler, RequestTag.DEFAULT, "holder");
+        awaitSent(1);
+
+        Thread expiring = send(handler, RequestTag.of(RequestPriority.INTERACTIVE), CallContext.withTimeout(500),
+                "expiring");
+        CallContext context = new CallContext();
+        Thread cancelled = send(handler, RequestTag.of(RequestPriority.INTERACTIVE), context, "cancelled");
+        awaitQueueLength(handler, 2);
+        expiring.join(5000);
+        assertFalse(expiring.isAlive());
+        assertEquals(1, handler.getQueueLength());
+
+        context.cancel();
+        cancelled.join(5000);
+        assertFalse(cancelled.isAlive());
+        assertEquals(0, handler.getQueueLength());
+        assertEquals(2, failures.size());
+        for (Throwable failure : failures)
+            assertTrue(failure instanceof InterruptedIOException);
+        failures.clear();
+
+        // neither call took the permit with it
+        gate.open();
+        joinAll();
+        send(handler, RequestTag.DEFAULT, "after");
+        joinAll();
+        assertEquals(Arrays.asList("holder", "after"), gate.sent);
+    }
+
+    @Test
+    public void testFlowsAreForgotten() throws Exception {
+        PriorityRequestHandler handler = new PriorityRequestHandler(gate, 2);
+        send(handler, RequestTag.DEFAULT, "holder");
+        awaitSent(1);
+
+        // the handler never goes idle while tenants that send a single request come and go
+        RequestTag previous = RequestTag.current();
+        try {
+            for (int i = 0; i < 500; i++) {
+                RequestTag.set(RequestTag.of(RequestPriority.BATCH, "call-" + i));
+                handler.get("free-" + i);
+            }
+        } finally {
+            RequestTag.set(previous);
+        }
+        assertEquals(501, gate.sent.size());
+        assertEquals(1, handler.getFlowCount());
+
+        gate.open();
+        joinAll();
+        assertEquals(0, handler.getFlowCount());
+    }
+
+    /**
+     * Records the requests it is asked to send and blocks them until opened, except for requests of URIs that start
+     * with "free".
+     */
+    private static class GateHandler implements RequestHandler {
+        private final List<String> sent = new CopyOnWriteArrayList<>();
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        private void open() {
+            latch.countDown();
+        }
+
+        @Override
+        public String getCharacterEncoding() {
+            return "UTF-8";
+        }
+
+        @Override
+        public void setCharacterEncoding(String characterEncoding) {
+        }
+
+        @Override
+        public InputStream getInputStream(String uri) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String get(String uri) throws IOException {
+            sent.add(uri);
+            if (uri.startsWith("free"))
+                return uri;
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            return uri;
+        }
+
+        @Override
+        public String post(HttpPost data) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
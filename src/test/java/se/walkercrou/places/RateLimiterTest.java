@@ -0,0 +1,52 @@
+package se.walkercrou.places;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class RateLimiterTest {
+    @Test
+    public void testBurst() {
+        RateLimiter limiter = new RateLimiter(0.1, 3);
+        for (int i = 0; i < 3; i++)
+            assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testInterruptedAcquire() throws Exception {
+        // one permit every 500 milliseconds
+        final RateLimiter limiter = new RateLimiter(2, 1);
+        long start = System.nanoTime();
+        assertTrue(limiter.tryAcquire());
+
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    limiter.acquire();
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+            }
+        };
+        waiter.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (waiter.getState() != Thread.State.TIMED_WAITING) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+        waiter.interrupt();
+        waiter.join(5000);
+        assertTrue(interrupted.get());
+
+        // the permit reserved by the waiter was given back, so the next one is not a second interval away
+        limiter.acquire();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsed + " ms", elapsed < 800);
+    }
+}
@@ -0,0 +1,163 @@
+package se.walkercrou.places;
+
+import org.junit.Test;
+import se.walkercrou.places.exception.GooglePlacesException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RefreshSchedulerTest {
+    private final List<String> fetched = new ArrayList<>();
+    private int version;
+    private final GooglePlaces client = new GooglePlaces("key") {
+        @Override
+        public Place getPlaceById(String placeId, Param... extraParams) {
+            fetched.add(placeId);
+            assertEquals(RequestPriority.BATCH, RequestTag.current().getPriority());
+            if (placeId.startsWith("dead"))
+                throw new GooglePlacesException(Statuses.STATUS_NOT_FOUND);
+            return new Place().setPlaceId(placeId).setName(placeId.equals("changing") ? "v" + version++ : "same")
+                    .setFields(FieldsParam.find(extraParams));
+        }
+    };
+
+    @Test
+    public void testBudgetAndChanges() {
+        final List<Place> changed = new ArrayList<>();
+        RefreshScheduler scheduler = new RefreshScheduler(client, 3, 1, TimeUnit.MINUTES).setMinAge(0, TimeUnit.MILLISECONDS);
+        scheduler.addListener(new RefreshScheduler.Listener() {
+            @Override
+            public void onChange(PlaceDiff diff) {
+                assertEquals(PlaceDiff.Section.NAME, diff.getChanges().get(0).getSection());
+                changed.add(diff.getCurrent());
+            }
+        });
+        scheduler.track("changing");
+        scheduler.track("stable");
+        scheduler.track("other");
+
+        assertEquals(3, scheduler.refreshNow());
+        assertTrue(changed.isEmpty());
+        for (int i = 0; i < 3; i++)
+            assertEquals(3, scheduler.refreshNow());
+        assertEquals(3, scheduler.getChangeCount());
+        assertEquals("changing", changed.get(0).getPlaceId());
+        assertTrue(scheduler.getScore("changing", System.currentTimeMillis() + 3600000)
+                > scheduler.getScore("stable", System.currentTimeMillis() + 3600000));
+    }
+
+    @Test
+    public void testBudget() {
+        RefreshScheduler scheduler = new RefreshScheduler(client, 2, 1, TimeUnit.MINUTES);
+        scheduler.track(new Place().setPlaceId("fetched"));
+        scheduler.track("a");
+        scheduler.track("b");
+        scheduler.track("c");
+
+        // places that have never been fetched come first
+        assertEquals(2, scheduler.refreshNow());
+        assertEquals(1, scheduler.refreshNow());
+        assertEquals(0, scheduler.refreshNow());
+        assertFalse(fetched.contains("fetched"));
+    }
+
+    @Test
+    public void testMinAge() {
+        RefreshScheduler scheduler = new RefreshScheduler(client, 10, 1, TimeUnit.MINUTES);
+        scheduler.track(new Place().setPlaceId("fresh"));
+        assertEquals(0, scheduler.refreshNow());
+        assertEquals(0, scheduler.getScore("fresh", System.currentTimeMillis()), 0);
+    }
+
+    @Test
+    public void testFailedPlacesBackOff() {
+        RefreshScheduler scheduler = new RefreshScheduler(client, 2, 1, TimeUnit.MINUTES);
+        scheduler.track("dead1");
+        scheduler.track("dead2");
+        assertEquals(2, scheduler.refreshNow());
+        assertEquals(2, scheduler.getFailureCount());
+        long now = System.currentTimeMillis();
+        assertEquals(0, scheduler.getScore("dead1", now), 0);
+        scheduler.track("a");
+        scheduler.track("b");
+
+        // the places that failed do not come back first and take the budget of the others
+        assertEquals(2, scheduler.refreshNow());
+        assertTrue(fetched.contains("a") && fetched.contains("b"));
+        assertEquals(0, scheduler.refreshNow());
+
+        // once the delay has passed they are tried again, with a finite score
+        double score = scheduler.getScore("dead1", now + 2 * RefreshScheduler.DEFAULT_MIN_AGE_MILLIS);
+        assertTrue(score > 0 && !Double.isInfinite(score));
+    }
+
+    @Test
+    public void testListenerFailure() {
+        final List<PlaceDiff> diffs = new ArrayList<>();
+        RefreshScheduler scheduler = new RefreshScheduler(client, 1, 1, TimeUnit.MINUTES).setMinAge(0, TimeUnit.MILLISECONDS);
+        scheduler.addListener(new RefreshScheduler.Listener() {
+            @Override
+            public void onChange(PlaceDiff diff) {
+                throw new IllegalStateException();
+            }
+        });
+        scheduler.addListener(new RefreshScheduler.Listener() {
+            @Override
+            public void onChange(PlaceDiff diff) {
+                diffs.add(diff);
+            }
+        });
+        scheduler.track(new Place().setPlaceId("changing").setName("old"));
+        assertEquals(1, scheduler.refreshNow());
+        assertEquals(1, scheduler.refreshNow());
+        assertEquals(2, diffs.size());
+        assertEquals(2, scheduler.getChangeCount());
+    }
+
+    @Test
+    public void testProjectedRefresh() {
+        final List<PlaceDiff> diffs = new ArrayList<>();
+        RefreshScheduler scheduler = new RefreshScheduler(client, 2, 1, TimeUnit.MINUTES)
+                .setMinAge(0, TimeUnit.MILLISECONDS).setExtraParams(FieldsParam.of(PlaceField.NAME));
+        scheduler.addListener(new RefreshScheduler.Listener() {
+            @Override
+            public void onChange(PlaceDiff diff) {
+                diffs.add(diff);
+            }
+        });
+        scheduler.track(new Place().setPlaceId("stable").setName("same").setPhoneNumber("123").setRating(4.5)
+                .addTypes(Collections.singletonList(Types.TYPE_CAFE)));
+        scheduler.track(new Place().setPlaceId("changing").setName("old").setPhoneNumber("123"));
+        assertEquals(2, scheduler.refreshNow());
+
+        // the sections that were not requested are not reported as removed
+        assertEquals(1, diffs.size());
+        assertEquals("changing", diffs.get(0).getCurrent().getPlaceId());
+        assertEquals(1, diffs.get(0).getChanges().size());
+        assertTrue(diffs.get(0).hasChanged(PlaceDiff.Section.NAME));
+
+        assertEquals(2, scheduler.refreshNow());
+        assertEquals(2, diffs.size());
+        assertEquals(2, scheduler.getChangeCount());
+    }
+
+    @Test
+    public void testAccessDecay() throws InterruptedException {
+        RefreshScheduler scheduler = new RefreshScheduler(client, 1, 1, TimeUnit.MINUTES)
+                .setAccessHalfLife(1, TimeUnit.MILLISECONDS);
+        scheduler.track(new Place().setPlaceId("popular"));
+        scheduler.track(new Place().setPlaceId("other"));
+        for (int i = 0; i < 1000; i++)
+            scheduler.recordAccess("popular");
+        long later = System.currentTimeMillis() + 2 * RefreshScheduler.DEFAULT_MIN_AGE_MILLIS;
+        assertTrue(scheduler.getScore("popular", later) > scheduler.getScore("other", later));
+
+        Thread.sleep(20);
+        scheduler.refreshNow();
+        assertEquals(scheduler.getScore("other", later), scheduler.getScore("popular", later), 0);
+    }
+}
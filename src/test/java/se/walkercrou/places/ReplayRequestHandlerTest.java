@@ -0,0 +1,143 @@
+package se.walkercrou.places;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.HttpPost;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import se.walkercrou.places.exception.GooglePlacesException;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ReplayRequestHandlerTest {
+    private static final String DETAILS = "{\"status\":\"OK\",\"result\":{\"place_id\":\"abc\",\"name\":\"Cafe\","
+            + "\"geometry\":{\"location\":{\"lat\":44.47,\"lng\":-73.19}}}}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> sent = new ArrayList<>();
+    private final RequestHandler server = new RequestHandler() {
+        private String characterEncoding = "UTF-8";
+
+        @Override
+        public String getCharacterEncoding() {
+            return characterEncoding;
+        }
+
+        @Override
+        public void setCharacterEncoding(String characterEncoding) {
+            this.characterEncoding = characterEncoding;
+        }
+
+        @Override
+        public InputStream getInputStream(String uri) throws IOException {
+            sent.add(uri);
+            return new ByteArrayInputStream(new byte[]{1, 2, 3});
+        }
+
+        @Override
+        public String get(String uri) throws IOException {
+            sent.add(uri);
+            return DETAILS;
+        }
+
+        @Override
+        public String post(HttpPost data) throws IOException {
+            sent.add(data.getURI().toString());
+            return "{\"status\":\"OK\"}";
+        }
+    };
+
+    private File record() throws Exception {
+        File archive = folder.newFile();
+        try (ReplayRequestHandler recorder = ReplayRequestHandler.record(server, archive)) {
+            assertTrue(recorder.isRecording());
+            assertEquals("abc", new GooglePlaces("secret", recorder).getPlaceById("abc").getPlaceId());
+            recorder.getInputStream("https://example.com/photo?key=secret&ref=1").close();
+        }
+        return archive;
+    }
+
+    @Test
+    public void testRecordAndReplay() throws Exception {
+        File archive = record();
+        assertEquals(2, sent.size());
+
+        ReplayRequestHandler replay = ReplayRequestHandler.replay(archive);
+        assertFalse(replay.isRecording());
+        assertEquals(2, replay.size());
+        Place place = new GooglePlaces("other", replay).getPlaceById("abc");
+        assertEquals("Cafe", place.getName());
+        try (InputStream in = replay.getInputStream("https://example.com/photo?key=different&ref=1")) {
+            assertArrayEquals(new byte[]{1, 2, 3}, IOUtils.toByteArray(in));
+        }
+        assertEquals(2, replay.getHits());
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    public void testScrub() throws Exception {
+        ReplayRequestHandler replay = ReplayRequestHandler.replay(record());
+        assertEquals("https://example.com/photo?ref=1", replay.scrub("https://example.com/photo?key=secret&ref=1"));
+        assertEquals("https://example.com/photo?ref=1", replay.scrub("https://example.com/photo?ref=1&key=secret"));
+        assertFalse(FileUtils.readFileToString(record(), "UTF-8").contains("secret"));
+
+        replay.addScrubbedParameter("ref");
+        assertEquals("https://example.com/photo", replay.scrub("https://example.com/photo?key=secret&ref=1"));
+    }
+
+    @Test
+    public void testMissAndInjectedErrors() throws Exception {
+        ReplayRequestHandler replay = ReplayRequestHandler.replay(record()).setSeed(1)
+                .setLatency(ReplayRequestHandler.Latency.fixed(1));
+        GooglePlaces client = new GooglePlaces("key", replay);
+        try {
+            client.getPlaceById("unknown");
+            fail();
+        } catch (GooglePlacesException e) {
+            assertEquals(1, replay.getMisses());
+        }
+
+        replay.setErrorRate(1);
+        try {
+            client.getPlaceById("abc");
+            fail();
+        } catch (GooglePlacesException e) {
+            assertTrue(e.getCause() instanceof IOException);
+            assertEquals(1, replay.getInjectedErrors());
+        }
+
+        replay.setErrorRate(0).setStatusErrorRate(1, Statuses.STATUS_OVER_QUERY_LIMIT);
+        assertEquals("{\"status\":\"OVER_QUERY_LIMIT\"}", replay.get("https://example.com/photo?ref=1"));
+        assertEquals(2, replay.getInjectedErrors());
+    }
+
+    @Test
+    public void testLatencyEndsAtDeadline() throws Exception {
+        ReplayRequestHandler replay = ReplayRequestHandler.replay(record())
+                .setLatency(ReplayRequestHandler.Latency.fixed(10000));
+        CallContext previous = CallContext.set(CallContext.withTimeout(100));
+        long start = System.nanoTime();
+        try {
+            replay.get("https://example.com/photo?ref=1");
+            fail();
+        } catch (InterruptedIOException e) {
+            // thrown at the deadline, so that a search keeps the pages it has read
+            assertTrue(CallContext.current().isExpired());
+        } finally {
+            CallContext.set(previous);
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+}
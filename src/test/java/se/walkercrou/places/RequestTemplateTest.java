@@ -0,0 +1,55 @@
+package se.walkercrou.places;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static se.walkercrou.places.GooglePlaces.*;
+
+public class RequestTemplateTest {
+    private final RequestTemplate template = RequestTemplate.json(API_URL, METHOD_NEARBY_SEARCH);
+
+    @Test
+    public void testParams() {
+        String uri = template.begin().param("key", "abc").location("location", 44.478025, -73.196475)
+                .param("radius", 50000).param("opennow", null).build();
+        assertEquals(API_URL + "nearbysearch/json?key=abc&location=44.478025,-73.196475&radius=50000.0&opennow", uri);
+    }
+
+    @Test
+    public void testEncoding() {
+        String uri = template.begin().param("query", "Caf\u00e9 & Bar #1").param("name", "a+b")
+                .params(TypeParam.name("types").value(Arrays.asList(TYPE_BAR, TYPE_CAFE))).build();
+        assertEquals(API_URL + "nearbysearch/json?query=Caf%C3%A9+%26+Bar+%231&name=a%2Bb&types=bar%7Ccafe", uri);
+    }
+
+    @Test
+    public void testLiteralValues() {
+        // '+' and '%' are part of the value, not escapes
+        assertEquals("a%2Bb+c", encode("a+b c"));
+        assertEquals("100%25", encode("100%"));
+        assertEquals("%2541", encode("%41"));
+        assertEquals("a%3Db%26c%3Fd%23", encode("a=b&c?d#"));
+    }
+
+    @Test
+    public void testNonAscii() {
+        assertEquals("Z%C3%BCrich", encode("Z\u00fcrich"));
+        assertEquals("%E6%9D%B1%E4%BA%AC", encode("\u6771\u4eac"));
+        // a code point outside of the basic plane is one escape sequence, not two surrogates
+        assertEquals("%F0%9F%8D%95", encode("\ud83c\udf55"));
+    }
+
+    private static String encode(String value) {
+        StringBuilder out = new StringBuilder();
+        RequestTemplate.encode(out, value);
+        return out.toString();
+    }
+
+    @Test
+    public void testDecimals() {
+        String uri = template.begin().location("location", 0.0001, -180).build();
+        assertEquals(API_URL + "nearbysearch/json?location=0.0001,-180.0", uri);
+    }
+}
@@ -0,0 +1,563 @@
+package se.walkercrou.places;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static se.walkercrou.places.GooglePlacesInterface.*;
+
+/**
+ * A local stand-in for the Google Places API web service, for end-to-end and performance tests without network access
+ * or an API key. The server generates a deterministic set of places within an area and answers nearby, text and radar
+ * searches, details, autocomplete, query autocomplete, photos, adding and deleting places.
+ * <pre>
+ * StubPlacesServer server = new StubPlacesServer(1, 10000, 52.3, 13.1, 52.7, 13.7).start();
+ * GooglePlaces client = new GooglePlaces(server.configure(ClientConfig.builder()).build());
+ * </pre>
+ * Like the real service, a next page token is only accepted after a short delay, and requests beyond a per-key rate
+ * are answered with {@link Statuses#STATUS_OVER_QUERY_LIMIT}.
+ */
+public class StubPlacesServer {
+    private static final String PATH = "/maps/api/place/";
+    private static final String[] WORDS = {"Blue", "Corner", "Golden", "Green", "Little", "Old", "Red", "River",
+            "Royal", "Silver", "Sunny", "Union"};
+    private static final String[] KINDS = {"Bakery", "Bar", "Cafe", "Kitchen", "Market", "Restaurant", "Shop"};
+    private static final String[][] TYPES = {{Types.TYPE_BAKERY, Types.TYPE_FOOD}, {Types.TYPE_BAR},
+            {Types.TYPE_CAFE, Types.TYPE_FOOD}, {Types.TYPE_RESTAURANT, Types.TYPE_FOOD},
+            {Types.TYPE_GROCERY_OR_SUPERMARKET, Types.TYPE_STORE}, {Types.TYPE_RESTAURANT, Types.TYPE_FOOD},
+            {Types.TYPE_STORE}};
+    private static final String[] STREETS = {"Main St", "High St", "Station Rd", "Park Ave", "Market Sq"};
+
+    private final List<StubPlace> places = new ArrayList<>();
+    private final Map<String, StubPlace> byId = new HashMap<>();
+    private final ReentrantReadWriteLock placesLock = new ReentrantReadWriteLock();
+    private final Map<String, PageToken> pageTokens = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Rate> rates = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicLong> requests = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final byte[] photo;
+    private volatile long pageTokenDelayMillis = 2000;
+    private volatile int queriesPerSecond = Integer.MAX_VALUE;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Creates a new server with generated places within the specified area.
+     *
+     * @param seed   of generated places
+     * @param count  of places to generate
+     * @param minLat southern bound
+     * @param minLng western bound
+     * @param maxLat northern bound
+     * @param maxLng eastern bound
+     */
+    public StubPlacesServer(long seed, int count, double minLat, double minLng, double maxLat, double maxLng) {
+        Random random = new Random(seed);
+        for (int i = 0; i < count; i++) {
+            int kind = random.nextInt(KINDS.length);
+            String name = WORDS[random.nextInt(WORDS.length)] + " " + KINDS[kind];
+            double lat = minLat + random.nextDouble() * (maxLat - minLat);
+            double lng = minLng + random.nextDouble() * (maxLng - minLng);
+            add(place("stub-" + i, name, lat, lng, TYPES[kind], random));
+        }
+        photo = image();
+    }
+
+    private static JSONObject place(String id, String name, double lat, double lng, String[] types, Random random) {
+        String address = (1 + random.nextInt(200)) + " " + STREETS[random.nextInt(STREETS.length)];
+        JSONObject place = new JSONObject().put(STRING_PLACE_ID, id).put(STRING_NAME, name)
+                .put(OBJECT_GEOMETRY, new JSONObject().put(OBJECT_LOCATION,
+                        new JSONObject().put(DOUBLE_LATITUDE, lat).put(DOUBLE_LONGITUDE, lng)))
+                .put(ARRAY_TYPES, new JSONArray(types)).put(STRING_VICINITY, address)
+                .put(STRING_ADDRESS, address).put(STRING_SCOPE, "GOOGLE")
+                .put(DOUBLE_RATING, (10 + random.nextInt(41)) / 10.0).put(INTEGER_PRICE_LEVEL, random.nextInt(5))
+                .put(STRING_PHONE_NUMBER, String.format("0%03d %06d", random.nextInt(1000), random.nextInt(1000000)))
+                .put(INTEGER_UTC_OFFSET, 60);
+
+        // opened from morning to evening on every day
+        int opens = 6 + random.nextInt(6), closes = 16 + random.nextInt(8);
+        JSONArray periods = new JSONArray();
+        for (int day = 0; day < 7; day++) {
+            periods.put(new JSONObject()
+                    .put(OBJECT_OPEN, new JSONObject().put(INTEGER_DAY, day)
+                            .put(STRING_TIME, String.format("%02d00", opens)))
+                    .put(OBJECT_CLOSE, new JSONObject().put(INTEGER_DAY, day)
+                            .put(STRING_TIME, String.format("%02d00", closes))));
+        }
+        place.put(OBJECT_HOURS, new JSONObject().put(BOOLEAN_OPENED, random.nextBoolean()).put(ARRAY_PERIODS, periods));
+
+        JSONArray photos = new JSONArray();
+        for (int i = random.nextInt(3); i > 0; i--)
+            photos.put(new JSONObject().put(STRING_PHOTO_REFERENCE, id + "-photo-" + i).put(INTEGER_WIDTH, 640)
+                    .put(INTEGER_HEIGHT, 480));
+        return place.put(ARRAY_PHOTOS, photos);
+    }
+
+    private static byte[] image() {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(new BufferedImage(4, 3, BufferedImage.TYPE_INT_RGB), "png", out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void add(JSONObject json) {
+        StubPlace place = new StubPlace(json);
+        placesLock.writeLock().lock();
+        try {
+            places.add(place);
+            byId.put(place.id, place);
+        } finally {
+            placesLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets how long a next page token is rejected after it was issued.
+     *
+     * @param delayMillis delay in milliseconds
+     * @return this
+     */
+    public StubPlacesServer setPageTokenDelay(long delayMillis) {
+        this.pageTokenDelayMillis = delayMillis;
+        return this;
+    }
+
+    /**
+     * Sets the amount of requests each key may make per second before it is over the query limit.
+     *
+     * @param queriesPerSecond rate limit
+     * @return this
+     */
+    public StubPlacesServer setQueriesPerSecond(int queriesPerSecond) {
+        this.queriesPerSecond = queriesPerSecond;
+        return this;
+    }
+
+    /**
+     * Starts the server on a free port of the loopback interface.
+     *
+     * @return this
+     * @throws IOException if the server could not be started
+     */
+    public StubPlacesServer start() throws IOException {
+        // without this, headers and body are sent in separate packets that wait for delayed acknowledgements
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    StubPlacesServer.this.handle(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+        return this;
+    }
+
+    /**
+     * Stops the server.
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    /**
+     * Returns the base URL of the server.
+     *
+     * @return base url
+     */
+    public String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + PATH;
+    }
+
+    /**
+     * Configures the specified builder to send requests to this server with a fitting page token delay.
+     *
+     * @param builder to configure
+     * @return builder
+     */
+    public ClientConfig.Builder configure(ClientConfig.Builder builder) {
+        return builder.baseUrl(getBaseUrl()).pageTokenDelay(pageTokenDelayMillis).apiKey("stub");
+    }
+
+    /**
+     * Returns the amount of requests made to the specified method.
+     *
+     * @param method of api
+     * @return amount of requests
+     */
+    public long getRequestCount(String method) {
+        AtomicLong count = requests.get(method);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Returns the amount of places known to the server.
+     *
+     * @return amount of places
+     */
+    public int size() {
+        placesLock.readLock().lock();
+        try {
+            return places.size();
+        } finally {
+            placesLock.readLock().unlock();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath().substring(PATH.length());
+        String method = path.endsWith("/json") ? path.substring(0, path.length() - 5) : path;
+        Map<String, String> params = query(exchange.getRequestURI().getRawQuery());
+        requests.putIfAbsent(method, new AtomicLong());
+        requests.get(method).incrementAndGet();
+
+        String key = params.get("key");
+        JSONObject response;
+        if (key == null || key.isEmpty()) {
+            response = status(Statuses.STATUS_REQUEST_DENIED);
+        } else if (!acquire(key)) {
+            response = status(Statuses.STATUS_OVER_QUERY_LIMIT);
+        } else if (method.equals(METHOD_PHOTO)) {
+            if (!params.containsKey("photoreference")) {
+                respond(exchange, 400, "text/plain", new byte[0]);
+            } else {
+                respond(exchange, 200, "image/png", photo);
+            }
+            return;
+        } else {
+            switch (method) {
+                case METHOD_NEARBY_SEARCH:
+                case METHOD_TEXT_SEARCH:
+                    response = search(method, params, MAXIMUM_PAGE_RESULTS);
+                    break;
+                case METHOD_RADAR_SEARCH:
+                    response = search(method, params, MAXIMUM_RADAR_RESULTS);
+                    break;
+                case METHOD_DETAILS:
+                    response = details(params.get("placeid"));
+                    break;
+                case METHOD_AUTOCOMPLETE:
+                case METHOD_QUERY_AUTOCOMPLETE:
+                    response = predictions(params.get("input"));
+                    break;
+                case METHOD_ADD:
+                    response = addPlace(new JSONObject(IOUtils.toString(exchange.getRequestBody(), "UTF-8")));
+                    break;
+                case METHOD_DELETE:
+                    response = deletePlace(new JSONObject(IOUtils.toString(exchange.getRequestBody(), "UTF-8")));
+                    break;
+                default:
+                    respond(exchange, 404, "text/plain", new byte[0]);
+                    return;
+            }
+        }
+        respond(exchange, 200, "application/json; charset=UTF-8", response.toString().getBytes("UTF-8"));
+    }
+
+    private static void respond(HttpExchange exchange, int code, String contentType, byte[] body)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(code, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private static Map<String, String> query(String rawQuery) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null)
+            return params;
+        for (String param : rawQuery.split("&")) {
+            int eq = param.indexOf('=');
+            if (eq > 0)
+                params.put(param.substring(0, eq), URLDecoder.decode(param.substring(eq + 1), "UTF-8"));
+        }
+        return params;
+    }
+
+    private static JSONObject status(String status) {
+        return new JSONObject().put(STRING_STATUS, status);
+    }
+
+    private boolean acquire(String key) {
+        rates.putIfAbsent(key, new Rate());
+        Rate rate = rates.get(key);
+        long second = System.currentTimeMillis() / 1000;
+        rate.lock.lock();
+        try {
+            if (rate.second != second) {
+                rate.second = second;
+                rate.requests = 0;
+            }
+            return ++rate.requests <= queriesPerSecond;
+        } finally {
+            rate.lock.unlock();
+        }
+    }
+
+    private JSONObject search(String method, Map<String, String> params, int pageSize) {
+        String token = params.get("pagetoken");
+        if (token != null) {
+            PageToken page = pageTokens.get(token);
+            if (page == null || !page.method.equals(method) || System.nanoTime() < page.readyAt)
+                return status(Statuses.STATUS_INVALID_REQUEST);
+            pageTokens.remove(token);
+            return page(method, page.results, page.offset, pageSize);
+        }
+
+        final double lat, lng;
+        String location = params.get("location");
+        if (location != null) {
+            String[] parts = location.split(",");
+            lat = Double.parseDouble(parts[0]);
+            lng = Double.parseDouble(parts[1]);
+        } else if (method.equals(METHOD_TEXT_SEARCH)) {
+            lat = Double.NaN;
+            lng = Double.NaN;
+        } else {
+            return status(Statuses.STATUS_INVALID_REQUEST);
+        }
+        double radius = params.containsKey("radius") ? Double.parseDouble(params.get("radius")) : MAXIMUM_RADIUS;
+        String type = params.get("type");
+        String[] words = params.containsKey("query") ? params.get("query").toLowerCase(Locale.ENGLISH).split("\\s+")
+                : params.containsKey("keyword") ? params.get("keyword").toLowerCase(Locale.ENGLISH).split("\\s+")
+                : new String[0];
+
+        // a degree of latitude is at least 110km, which rules out most places before the exact distance is needed
+        double maxDegrees = radius / 110000;
+        List<Hit> hits = new ArrayList<>();
+        placesLock.readLock().lock();
+        try {
+            for (StubPlace place : places) {
+                double distance = 0;
+                if (!Double.isNaN(lat)) {
+                    if (Math.abs(place.lat - lat) > maxDegrees)
+                        continue;
+                    distance = PlaceDiff.distanceMeters(lat, lng, place.lat, place.lng);
+                    if (distance > radius)
+                        continue;
+                }
+                if (type != null && !place.types.contains(type))
+                    continue;
+                if (!place.matches(words))
+                    continue;
+                hits.add(new Hit(place, distance));
+            }
+        } finally {
+            placesLock.readLock().unlock();
+        }
+        if (hits.isEmpty())
+            return status(Statuses.STATUS_ZERO_RESULTS).put(ARRAY_RESULTS, new JSONArray());
+
+        if ("distance".equals(params.get("rankby")) && !Double.isNaN(lat)) {
+            Collections.sort(hits, new Comparator<Hit>() {
+                @Override
+                public int compare(Hit a, Hit b) {
+                    return Double.compare(a.distance, b.distance);
+                }
+            });
+        } else {
+            // by prominence, which the stub takes to be the rating
+            Collections.sort(hits, new Comparator<Hit>() {
+                @Override
+                public int compare(Hit a, Hit b) {
+                    return Double.compare(b.place.rating, a.place.rating);
+                }
+            });
+        }
+        int limit = method.equals(METHOD_RADAR_SEARCH) ? MAXIMUM_RADAR_RESULTS : MAXIMUM_RESULTS;
+        List<JSONObject> results = new ArrayList<>(Math.min(limit, hits.size()));
+        for (int i = 0; i < hits.size() && i < limit; i++)
+            results.add(hits.get(i).place.json);
+        return page(method, results, 0, pageSize);
+    }
+
+    private JSONObject page(String method, List<JSONObject> results, int offset, int pageSize) {
+        JSONArray page = new JSONArray();
+        int end = Math.min(results.size(), offset + pageSize);
+        for (int i = offset; i < end; i++) {
+            JSONObject place = results.get(i);
+            if (method.equals(METHOD_RADAR_SEARCH)) {
+                page.put(new JSONObject().put(STRING_PLACE_ID, place.getString(STRING_PLACE_ID))
+                        .put(OBJECT_GEOMETRY, place.getJSONObject(OBJECT_GEOMETRY)));
+            } else {
+                page.put(place);
+            }
+        }
+        JSONObject response = status(Statuses.STATUS_OK).put(ARRAY_RESULTS, page);
+        if (end < results.size()) {
+            String token = Long.toString(ids.incrementAndGet(), 36) + "-" + Long.toHexString(System.nanoTime());
+            pageTokens.put(token, new PageToken(method, results, end,
+                    System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pageTokenDelayMillis)));
+            response.put(STRING_NEXT_PAGE_TOKEN, token);
+        }
+        return response;
+    }
+
+    private JSONObject details(String placeId) {
+        placesLock.readLock().lock();
+        try {
+            StubPlace place = placeId == null ? null : byId.get(placeId);
+            if (place == null)
+                return status(Statuses.STATUS_NOT_FOUND);
+            return status(Statuses.STATUS_OK).put(OBJECT_RESULT, place.json);
+        } finally {
+            placesLock.readLock().unlock();
+        }
+    }
+
+    private JSONObject predictions(String input) {
+        if (input == null)
+            return status(Statuses.STATUS_INVALID_REQUEST);
+        String prefix = input.toLowerCase(Locale.ENGLISH);
+        JSONArray predictions = new JSONArray();
+        placesLock.readLock().lock();
+        try {
+            for (int i = 0; i < places.size() && predictions.length() < 5; i++) {
+                StubPlace place = places.get(i);
+                if (!place.lowerCaseName.startsWith(prefix))
+                    continue;
+                String name = place.json.getString(STRING_NAME), vicinity = place.json.getString(STRING_VICINITY);
+                predictions.put(new JSONObject().put(STRING_PLACE_ID, place.id)
+                        .put(STRING_DESCRIPTION, name + ", " + vicinity)
+                        .put(ARRAY_TYPES, place.json.getJSONArray(ARRAY_TYPES))
+                        .put(ARRAY_TERMS, new JSONArray()
+                                .put(new JSONObject().put(STRING_VALUE, name).put(INTEGER_OFFSET, 0))
+                                .put(new JSONObject().put(STRING_VALUE, vicinity)
+                                        .put(INTEGER_OFFSET, name.length() + 2)))
+                        .put(ARRAY_MATCHED_SUBSTRINGS, new JSONArray()
+                                .put(new JSONObject().put(INTEGER_OFFSET, 0).put(INTEGER_LENGTH, input.length()))));
+            }
+        } finally {
+            placesLock.readLock().unlock();
+        }
+        return status(predictions.length() == 0 ? Statuses.STATUS_ZERO_RESULTS : Statuses.STATUS_OK)
+                .put(ARRAY_PREDICTIONS, predictions);
+    }
+
+    private JSONObject addPlace(JSONObject input) {
+        JSONObject location = input.optJSONObject(OBJECT_LOCATION);
+        String name = input.optString(STRING_NAME, null);
+        if (location == null || name == null)
+            return status(Statuses.STATUS_INVALID_REQUEST);
+        JSONArray types = input.optJSONArray(ARRAY_TYPES);
+        String[] typeNames = new String[types == null ? 0 : types.length()];
+        for (int i = 0; i < typeNames.length; i++)
+            typeNames[i] = types.getString(i);
+        String id = "added-" + ids.incrementAndGet();
+        add(place(id, name, location.getDouble(DOUBLE_LATITUDE), location.getDouble(DOUBLE_LONGITUDE), typeNames,
+                new Random(id.hashCode())).put(STRING_SCOPE, "APP"));
+        return status(Statuses.STATUS_OK).put(STRING_PLACE_ID, id).put(STRING_SCOPE, "APP");
+    }
+
+    private JSONObject deletePlace(JSONObject input) {
+        String placeId = input.optString(STRING_PLACE_ID, null);
+        placesLock.writeLock().lock();
+        try {
+            StubPlace place = placeId == null ? null : byId.remove(placeId);
+            if (place == null)
+                return status(Statuses.STATUS_NOT_FOUND);
+            places.remove(place);
+            return status(Statuses.STATUS_OK);
+        } finally {
+            placesLock.writeLock().unlock();
+        }
+    }
+
+    private static class StubPlace {
+        private final JSONObject json;
+        private final String id, lowerCaseName;
+        private final double lat, lng, rating;
+        private final List<String> types = new ArrayList<>();
+
+        private StubPlace(JSONObject json) {
+            this.json = json;
+            id = json.getString(STRING_PLACE_ID);
+            lowerCaseName = json.getString(STRING_NAME).toLowerCase(Locale.ENGLISH);
+            JSONObject location = json.getJSONObject(OBJECT_GEOMETRY).getJSONObject(OBJECT_LOCATION);
+            lat = location.getDouble(DOUBLE_LATITUDE);
+            lng = location.getDouble(DOUBLE_LONGITUDE);
+            rating = json.getDouble(DOUBLE_RATING);
+            JSONArray types = json.getJSONArray(ARRAY_TYPES);
+            for (int i = 0; i < types.length(); i++)
+                this.types.add(types.getString(i));
+        }
+
+        private boolean matches(String[] words) {
+            for (String word : words) {
+                if (!word.isEmpty() && !lowerCaseName.contains(word))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    private static class Hit {
+        private final StubPlace place;
+        private final double distance;
+
+        private Hit(StubPlace place, double distance) {
+            this.place = place;
+            this.distance = distance;
+        }
+    }
+
+    private static class Rate {
+        private final ReentrantLock lock = new ReentrantLock();
+        private long second, requests;
+    }
+
+    private static class PageToken {
+        private final String method;
+        private final List<JSONObject> results;
+        private final int offset;
+        private final long readyAt;
+
+        private PageToken(String method, List<JSONObject> results, int offset, long readyAt) {
+            this.method = method;
+            this.results = results;
+            this.offset = offset;
+            this.readyAt = readyAt;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package se.walkercrou.places;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import se.walkercrou.places.exception.GooglePlacesException;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StubPlacesServerTest {
+    private StubPlacesServer server;
+    private GooglePlaces client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubPlacesServer(1, 2000, 52.3, 13.1, 52.7, 13.7).setPageTokenDelay(100).start();
+        client = new GooglePlaces(server.configure(ClientConfig.builder()).build());
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void testSearches() {
+        List<Place> places = client.getNearbyPlaces(52.5, 13.4, 5000, 50);
+        assertEquals(50, places.size());
+        assertEquals(3, server.getRequestCount(GooglePlaces.METHOD_NEARBY_SEARCH));
+        for (Place place : places)
+            assertTrue(PlaceDiff.distanceMeters(52.5, 13.4, place.getLatitude(), place.getLongitude()) <= 5000);
+        assertTrue(places.get(0).getRating() >= places.get(49).getRating());
+
+        List<Place> nearest = client.getNearbyPlacesRankedByDistance(52.5, 13.4, 5);
+        assertEquals(5, nearest.size());
+        for (Place place : client.getPlacesByQuery("golden cafe"))
+            assertEquals("Golden Cafe", place.getName());
+        assertEquals(200, client.getPlacesByRadar(52.5, 13.4, 50000, 200).size());
+    }
+
+    @Test
+    public void testDetailsAndPredictions() throws Exception {
+        Place place = client.getPlaceById("stub-7");
+        assertEquals("stub-7", place.getPlaceId());
+        assertEquals(7, place.getHours().getPeriods().size());
+        assertEquals(place, client.getPlaceById("stub-7"));
+
+        List<Prediction> predictions = client.getPlacePredictions("Gol");
+        assertFalse(predictions.isEmpty());
+        assertTrue(predictions.get(0).getDescription().startsWith("Golden"));
+        assertFalse(client.getQueryPredictions("Red").isEmpty());
+
+        for (Place candidate : client.getNearbyPlaces(52.5, 13.4, 50000, 20)) {
+            if (candidate.getPhotos().isEmpty())
+                continue;
+            try (InputStream in = candidate.getPhotos().get(0).download(100, 100).getInputStream()) {
+                assertTrue(IOUtils.toByteArray(in).length > 0);
+            }
+            return;
+        }
+        fail("No place with photos");
+    }
+
+    @Test
+    public void testAddAndDelete() {
+        Place added = client.addPlace(new PlaceBuilder("Test Place", 52.5, 13.4, Types.TYPE_CAFE), true);
+        assertEquals("Test Place", added.getName());
+        assertEquals(2001, server.size());
+        client.deletePlace(added);
+        assertEquals(2000, server.size());
+    }
+
+    @Test
+    public void testPageTokenNotReady() {
+        client = new GooglePlaces(server.configure(ClientConfig.builder()).pageTokenDelay(0).build());
+        server.setPageTokenDelay(60000);
+        try {
+            client.getNearbyPlaces(52.5, 13.4, 5000, 40);
+            fail();
+        } catch (GooglePlacesException e) {
+            assertEquals(Statuses.STATUS_INVALID_REQUEST, ((GooglePlacesException) e.getCause()).getStatusCode());
+        }
+    }
+
+    @Test
+    public void testOverQueryLimit() {
+        server.setQueriesPerSecond(0);
+        try {
+            client.getNearbyPlaces(52.5, 13.4, 5000);
+            fail();
+        } catch (GooglePlacesException e) {
+            assertEquals(Statuses.STATUS_OVER_QUERY_LIMIT, ((GooglePlacesException) e.getCause()).getStatusCode());
+        }
+    }
+
+    @Test
+    public void testLoadHarness() throws Exception {
+        LoadHarness.Report report = new LoadHarness(client, 4).run(LoadHarness.mixedWorkload(server.size()), 500,
+                TimeUnit.MILLISECONDS);
+        assertTrue(report.getCalls() > 0);
+        assertEquals(0, report.getErrors());
+        assertTrue(report.getLatency(50, TimeUnit.NANOSECONDS) <= report.getLatency(99, TimeUnit.NANOSECONDS));
+    }
+}
@@ -0,0 +1,64 @@
+package se.walkercrou.places;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static se.walkercrou.places.GooglePlaces.*;
+
+public class TypeSetTest {
+    @Test
+    public void testOrderAndSharing() {
+        TypeSet types = TypeSet.of(TYPE_CAFE, TYPE_FOOD, "point_of_interest", TYPE_ESTABLISHMENT, TYPE_FOOD);
+        assertEquals(Arrays.asList(TYPE_CAFE, TYPE_FOOD, "point_of_interest", TYPE_ESTABLISHMENT), types.asList());
+        assertSame(types, TypeSet.of(Arrays.asList(TYPE_CAFE, TYPE_FOOD, "point_of_interest", TYPE_ESTABLISHMENT)));
+        assertSame(TYPE_CAFE, TypeRegistry.intern(new String(TYPE_CAFE)));
+        assertEquals(TYPE_CAFE, TypeRegistry.nameOf(TypeRegistry.idOf(TYPE_CAFE)));
+        assertEquals(-1, TypeRegistry.idOf("undeclared_type"));
+    }
+
+    @Test
+    public void testMasks() {
+        TypeSet types = TypeSet.of(TYPE_ZOO, TYPE_ACCOUNTING, "point_of_interest");
+        assertTrue(types.contains(TYPE_ZOO));
+        assertTrue(types.contains("point_of_interest"));
+        assertFalse(types.contains(TYPE_CAFE));
+        assertTrue(types.containsAny(TypeSet.of(TYPE_CAFE, TYPE_ZOO)));
+        assertTrue(types.containsAny(TypeSet.of("point_of_interest")));
+        assertFalse(types.containsAny(TypeSet.of(TYPE_CAFE, "locality")));
+        assertTrue(types.containsAll(TypeSet.of(TYPE_ACCOUNTING, TYPE_ZOO)));
+        assertFalse(types.containsAll(TypeSet.of(TYPE_ACCOUNTING, TYPE_CAFE)));
+        assertFalse(TypeSet.EMPTY.containsAny(types));
+    }
+
+    @Test
+    public void testIdsAreFrozen() throws Exception {
+        // ids are persisted, changing any of them breaks every stream written before
+        assertEquals(0, TypeRegistry.idOf(TYPE_ACCOUNTING));
+        assertEquals(14, TypeRegistry.idOf(TYPE_CAFE));
+        assertEquals(95, TypeRegistry.idOf(TYPE_ZOO));
+        assertEquals(110, TypeRegistry.idOf(TYPE_POINT_OF_INTEREST));
+        assertEquals(127, TypeRegistry.idOf(TYPE_SUBPREMISE));
+
+        // a type declared without being added to the table would silently have no id
+        int declared = 0;
+        for (Field field : Types.class.getFields()) {
+            if (field.getType() == String.class && field.getName().startsWith("TYPE_")) {
+                assertTrue(field.getName(), TypeRegistry.idOf((String) field.get(null)) >= 0);
+                declared++;
+            }
+        }
+        assertEquals(declared, TypeRegistry.size());
+    }
+
+    @Test
+    public void testResultOnlyTypes() {
+        // types that every result carries and address component types have ids, so they do not overflow
+        TypeSet types = TypeSet.of("point_of_interest", "establishment", "locality", "political", "route");
+        for (String type : types.asList())
+            assertTrue(type, TypeRegistry.idOf(type) >= 0);
+        assertSame(TYPE_POINT_OF_INTEREST, TypeRegistry.intern(new String("point_of_interest")));
+    }
+}